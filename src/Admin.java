@@ -11,38 +11,35 @@ public class Admin extends User {
     
     // Create a new tournament
     public Tournament createTournament(String name, String location, String startDate, String timeControl) {
-        int nextTournamentId = getNextTournamentId();
-        Tournament tournament = new Tournament(nextTournamentId, name, location, startDate, timeControl, 5);
+        Tournament tournament = TournamentStore.getInstance().create(name, location, startDate, timeControl, 5);
+        if (tournament == null) {
+            return null;
+        }
         
         // Assign this tournament to the admin
         for (int i = 0; i < managedTournaments.length; i++) {
             if (managedTournaments[i] == 0) {
-                managedTournaments[i] = nextTournamentId;
+                managedTournaments[i] = tournament.getTournamentID();
                 break;
             }
         }
         
-        saveTournament(tournament);
         return tournament;
     }
     
     // Remove a tournament
     public boolean removeTournament(int tournamentId) {
-        // Remove from managed tournaments
-        boolean found = false;
+        // Remove from managed tournaments; tournaments created before a restart are not in the list
         for (int i = 0; i < managedTournaments.length; i++) {
             if (managedTournaments[i] == tournamentId) {
                 managedTournaments[i] = 0;
-                found = true;
                 break;
             }
         }
         
-        if (!found) {
+        if (!TournamentStore.getInstance().remove(tournamentId)) {
             return false;
         }
-        
-        // In a real system, would remove from database
         System.out.println("Tournament #" + tournamentId + " removed by admin " + getUsername());
         return true;
     }
@@ -88,14 +85,12 @@ public class Admin extends User {
         return true;
     }
     
-    private int getNextTournamentId() {
-        // In a real system, would get from database
-        // For now, just return a random number for demonstration
-        return (int)(Math.random() * 10000) + 1;
-    }
-    
-    private void saveTournament(Tournament tournament) {
-        // In a real system, would save to database
-        System.out.println("Tournament saved: " + tournament.getName());
+    // Store a tournament's changes since it was last saved
+    public boolean saveTournament(Tournament tournament) {
+        boolean saved = TournamentStore.getInstance().save(tournament);
+        if (saved) {
+            System.out.println("Tournament saved: " + tournament.getName());
+        }
+        return saved;
     }
 }
@@ -0,0 +1,549 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out engine work to AnalysisWorker processes over TCP.
+ *
+ * Jobs (a FEN plus depth and movetime limits) are kept in a journal file, so
+ * jobs that were submitted but not finished survive a coordinator restart.
+ * Workers pull one job at a time per engine, so faster or bigger workers
+ * simply take more jobs. A job handed to a worker is leased: the worker's
+ * heartbeats keep the lease alive, and if the heartbeats stop or the
+ * connection drops the job goes back to the front of the queue. A job is
+ * finished exactly once, by its first result or by being given up, and that
+ * is synced to the journal before it counts as done.
+ *
+ * The protocol is one text line per message:
+ * <pre>
+ *     worker:      HELLO &lt;worker&gt;          coordinator: OK
+ *     worker:      GET                     coordinator: JOB &lt;id&gt; &lt;depth&gt; &lt;movetime&gt; &lt;fen&gt;  or  NONE
+ *     worker:      HEARTBEAT               (no reply)
+ *     worker:      RESULT &lt;id&gt; &lt;bestmove&gt; &lt;info line&gt;   (no reply)
+ *     worker:      FAIL &lt;id&gt; &lt;reason&gt;        (no reply)
+ *     client:      SUBMIT &lt;depth&gt; &lt;movetime&gt; &lt;fen&gt;   coordinator: QUEUED &lt;id&gt;
+ *     client:      STATUS                  coordinator: STATUS &lt;pending&gt; &lt;leased&gt; &lt;done&gt;
+ * </pre>
+ */
+public class AnalysisCoordinator {
+    public static final int DEFAULT_PORT = 9370;
+    static final long HEARTBEAT_INTERVAL_MS = 2000;
+    private static final long LEASE_TIMEOUT_MS = 10000;
+    private static final long POLL_WAIT_MS = 1000;
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * A unit of work and, once finished, its result
+     */
+    public static class Job {
+        private final long id;
+        private final String fen;
+        private final int depth;
+        private final int moveTimeMs;
+        private volatile int attempts;
+        private volatile String bestMove;
+        private volatile UciInfo result;
+        private volatile boolean failed;
+
+        Job(long id, String fen, int depth, int moveTimeMs) {
+            this.id = id;
+            this.fen = fen;
+            this.depth = depth;
+            this.moveTimeMs = moveTimeMs;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getFen() {
+            return fen;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public int getMoveTimeMs() {
+            return moveTimeMs;
+        }
+
+        public String getBestMove() {
+            return bestMove;
+        }
+
+        /**
+         * Get the engine's final line for the position, or null while the job is not done
+         */
+        public UciInfo getResult() {
+            return result;
+        }
+
+        public boolean isDone() {
+            return result != null || failed;
+        }
+
+        /**
+         * Check whether the job was given up after failing on several workers
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+    }
+
+    private static class Lease {
+        final Job job;
+        final String worker;
+        volatile long expiresAt;
+
+        Lease(Job job, String worker) {
+            this.job = job;
+            this.worker = worker;
+            this.expiresAt = System.currentTimeMillis() + LEASE_TIMEOUT_MS;
+        }
+    }
+
+    private final int port;
+    private final File journalFile;
+    private final Map<Long, Job> jobs = new ConcurrentHashMap<>();
+    private final LinkedBlockingDeque<Job> pending = new LinkedBlockingDeque<>();
+    private final Map<Long, Lease> leases = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicLong completed = new AtomicLong();
+    private FileOutputStream journalStream;
+    private BufferedWriter journal;
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    /**
+     * Creates a coordinator and restores unfinished jobs from the journal
+     *
+     * @param port the TCP port to listen on
+     * @param journalFile where jobs and results are recorded
+     * @throws IOException if the journal cannot be read or opened
+     */
+    public AnalysisCoordinator(int port, File journalFile) throws IOException {
+        this.port = port;
+        this.journalFile = journalFile;
+        replayJournal();
+        journalStream = new FileOutputStream(journalFile, true);
+        journal = new BufferedWriter(new OutputStreamWriter(journalStream, StandardCharsets.UTF_8));
+        if (endsWithTornLine()) {
+            journal.newLine();
+        }
+    }
+
+    private boolean endsWithTornLine() throws IOException {
+        if (journalFile.length() == 0) return false;
+        try (java.io.RandomAccessFile file = new java.io.RandomAccessFile(journalFile, "r")) {
+            file.seek(file.length() - 1);
+            return file.read() != '\n';
+        }
+    }
+
+    /**
+     * Journal lines: "ADD id depth movetime fen", "DONE id bestmove info...", "FAILED id"
+     */
+    private void replayJournal() throws IOException {
+        if (!journalFile.exists()) return;
+
+        Map<Long, Job> restored = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(journalFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ", 5);
+                try {
+                    long id = Long.parseLong(parts[1]);
+                    if (parts[0].equals("ADD") && parts.length == 5) {
+                        Position.fromFen(parts[4]);
+                        restored.put(id, new Job(id, parts[4], Integer.parseInt(parts[2]), Integer.parseInt(parts[3])));
+                        nextId.set(Math.max(nextId.get(), id + 1));
+                    } else if (parts[0].equals("DONE") && restored.containsKey(id)) {
+                        String[] done = line.split(" ", 4);
+                        complete(restored.get(id), done[2], done.length > 3 ? done[3] : "");
+                    } else if (parts[0].equals("FAILED") && restored.containsKey(id)) {
+                        restored.get(id).failed = true;
+                    }
+                } catch (RuntimeException e) {
+                    // A torn last line from a crash; everything before it is intact
+                    System.err.println("Skipping damaged journal line: " + line);
+                }
+            }
+        }
+
+        for (Job job : restored.values()) {
+            jobs.put(job.id, job);
+            if (job.isDone()) {
+                completed.incrementAndGet();
+            } else {
+                pending.add(job);
+            }
+        }
+    }
+
+    private static void complete(Job job, String bestMove, String infoLine) {
+        UciInfo info = new UciInfo();
+        UciInfoParser.parse(infoLine, info);
+        job.bestMove = bestMove;
+        job.result = info;
+    }
+
+    private synchronized void record(String line, boolean force) {
+        try {
+            journal.write(line);
+            journal.newLine();
+            journal.flush();
+            if (force) {
+                journalStream.getFD().sync();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing analysis journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Queue a position for analysis
+     *
+     * @param fen the position in FEN notation
+     * @param depth the search depth
+     * @param moveTimeMs the time limit, or 0 for depth only
+     * @return the job
+     */
+    public Job submit(String fen, int depth, int moveTimeMs) {
+        List<Job> submitted = submitAll(java.util.Collections.singletonList(fen), depth, moveTimeMs);
+        return submitted.get(0);
+    }
+
+    /**
+     * Queue several positions with the same limits; the journal is synced once for the batch
+     *
+     * @return the jobs, in the same order as the positions
+     * @throws IllegalArgumentException if a position is not valid FEN; nothing is queued then
+     */
+    public List<Job> submitAll(List<String> fens, int depth, int moveTimeMs) {
+        for (String fen : fens) {
+            Position.fromFen(fen);
+        }
+
+        List<Job> submitted = new ArrayList<>();
+        synchronized (this) {
+            for (int i = 0; i < fens.size(); i++) {
+                Job job = new Job(nextId.getAndIncrement(), fens.get(i).trim(), depth, moveTimeMs);
+                record("ADD " + job.id + " " + depth + " " + moveTimeMs + " " + job.fen, i == fens.size() - 1);
+                submitted.add(job);
+            }
+        }
+        for (Job job : submitted) {
+            jobs.put(job.id, job);
+            pending.add(job);
+        }
+        return submitted;
+    }
+
+    /**
+     * Start accepting worker connections and watching leases
+     *
+     * @throws IOException if the port cannot be opened
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        running = true;
+
+        Thread acceptor = new Thread(this::acceptConnections, "analysis-coordinator");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        Thread reaper = new Thread(this::reapExpiredLeases, "analysis-lease-reaper");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    private void acceptConnections() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread handler = new Thread(() -> handleConnection(socket), "analysis-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Error accepting analysis worker: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handleConnection(Socket socket) {
+        String worker = socket.getRemoteSocketAddress().toString();
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.split(" ", 2);
+                switch (parts[0]) {
+                    case "HELLO":
+                        worker = parts.length > 1 ? parts[1] + "@" + worker : worker;
+                        out.println("OK");
+                        break;
+                    case "GET":
+                        Job job = pending.poll(POLL_WAIT_MS, TimeUnit.MILLISECONDS);
+                        while (job != null && job.isDone()) {
+                            // Finished by a late result while it waited in the queue
+                            job = pending.poll();
+                        }
+                        if (job == null) {
+                            out.println("NONE");
+                        } else {
+                            leases.put(job.id, new Lease(job, worker));
+                            out.println("JOB " + job.id + " " + job.depth + " " + job.moveTimeMs + " " + job.fen);
+                        }
+                        break;
+                    case "HEARTBEAT":
+                        renewLeases(worker);
+                        break;
+                    case "RESULT":
+                        handleResult(parts.length > 1 ? parts[1] : "");
+                        break;
+                    case "FAIL":
+                        handleFailure(parts.length > 1 ? parts[1] : "", worker);
+                        break;
+                    case "SUBMIT":
+                        out.println(handleSubmit(parts.length > 1 ? parts[1] : ""));
+                        break;
+                    case "STATUS":
+                        out.println("STATUS " + getPendingCount() + " " + getLeasedCount() + " " + getCompletedCount());
+                        break;
+                    default:
+                        out.println("ERROR unknown command");
+                        break;
+                }
+            }
+        } catch (SocketException e) {
+            // Worker went away; its leases are released below
+        } catch (IOException e) {
+            System.err.println("Error talking to analysis worker " + worker + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            requeueLeases(worker);
+        }
+    }
+
+    private void renewLeases(String worker) {
+        long expiresAt = System.currentTimeMillis() + LEASE_TIMEOUT_MS;
+        for (Lease lease : leases.values()) {
+            if (lease.worker.equals(worker)) {
+                lease.expiresAt = expiresAt;
+            }
+        }
+    }
+
+    private void handleResult(String text) {
+        // "<id> <bestmove> <info line>"
+        String[] parts = text.split(" ", 3);
+        try {
+            long id = Long.parseLong(parts[0]);
+            leases.remove(id);
+            Job job = jobs.get(id);
+            if (job == null) return;
+            String info = parts.length > 2 ? parts[2] : "";
+            // The lease may have expired and the job been requeued; the late result still counts,
+            // but only the first result (or the giving up in retry) finishes the job
+            synchronized (job) {
+                if (job.isDone()) return;
+                pending.remove(job);
+                complete(job, parts[1], info);
+            }
+            record("DONE " + id + " " + parts[1] + " " + info, true);
+            completed.incrementAndGet();
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Ignoring malformed analysis result: " + text);
+        }
+    }
+
+    private void handleFailure(String text, String worker) {
+        String[] parts = text.split(" ", 2);
+        try {
+            Lease lease = leases.remove(Long.parseLong(parts[0]));
+            if (lease != null) {
+                System.err.println("Analysis job " + lease.job.id + " failed on " + worker
+                        + (parts.length > 1 ? ": " + parts[1] : ""));
+                retry(lease.job);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring malformed analysis failure: " + text);
+        }
+    }
+
+    private String handleSubmit(String text) {
+        String[] parts = text.split(" ", 3);
+        try {
+            Job job = submit(parts[2], Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+            return "QUEUED " + job.id;
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            return "ERROR expected SUBMIT <depth> <movetime> <fen>";
+        }
+    }
+
+    private void requeueLeases(String worker) {
+        for (Lease lease : leases.values()) {
+            if (lease.worker.equals(worker) && leases.remove(lease.job.id, lease)) {
+                retry(lease.job);
+            }
+        }
+    }
+
+    private void reapExpiredLeases() {
+        while (running) {
+            try {
+                Thread.sleep(HEARTBEAT_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            for (Lease lease : leases.values()) {
+                if (lease.expiresAt < now && leases.remove(lease.job.id, lease)) {
+                    System.err.println("Lease on analysis job " + lease.job.id + " held by " + lease.worker + " expired");
+                    retry(lease.job);
+                }
+            }
+        }
+    }
+
+    /**
+     * Put a job back at the front of the queue, or give up on it after too many attempts
+     */
+    private void retry(Job job) {
+        synchronized (job) {
+            if (job.isDone()) return;
+            job.attempts++;
+            if (job.attempts < MAX_ATTEMPTS) {
+                pending.addFirst(job);
+                return;
+            }
+            job.failed = true;
+        }
+        record("FAILED " + job.id, true);
+        completed.incrementAndGet();
+    }
+
+    /**
+     * Get a job by ID
+     *
+     * @return the job, or null if unknown
+     */
+    public Job getJob(long id) {
+        return jobs.get(id);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public int getLeasedCount() {
+        return leases.size();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : port;
+    }
+
+    /**
+     * Wait until every submitted job is done
+     *
+     * @param timeoutMs the maximum time to wait
+     * @return true if all jobs finished in time
+     */
+    public boolean awaitCompletion(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (completed.get() < jobs.size()) {
+            if (System.currentTimeMillis() > deadline) return false;
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+    /**
+     * Stop accepting connections and close the journal
+     */
+    public void shutdown() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing analysis coordinator: " + e.getMessage());
+        }
+        synchronized (this) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Error closing analysis journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Run a coordinator. With a FEN file, its positions are queued and the
+     * coordinator reports throughput once all of them are done.
+     *
+     * Usage: AnalysisCoordinator [port] [journal] [fen-file depth movetime]
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        File journal = new File(args.length > 1 ? args[1] : "analysis-jobs.log");
+        AnalysisCoordinator coordinator = new AnalysisCoordinator(port, journal);
+        coordinator.start();
+        System.out.println("Analysis coordinator listening on port " + coordinator.getPort()
+                + " with " + coordinator.getPendingCount() + " unfinished jobs");
+
+        if (args.length > 4) {
+            List<String> fens = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new FileReader(args[2]))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        fens.add(line.trim());
+                    }
+                }
+            }
+            long start = System.currentTimeMillis();
+            coordinator.submitAll(fens, Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+            while (!coordinator.awaitCompletion(5000)) {
+                System.out.println("pending " + coordinator.getPendingCount() + ", leased "
+                        + coordinator.getLeasedCount() + ", done " + coordinator.getCompletedCount());
+            }
+            long elapsed = Math.max(1, System.currentTimeMillis() - start);
+            System.out.printf("%d positions in %d ms (%.1f positions/s)%n",
+                    fens.size(), elapsed, fens.size() * 1000.0 / elapsed);
+            coordinator.shutdown();
+            return;
+        }
+
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs engine jobs handed out by an AnalysisCoordinator.
+ *
+ * A worker leases an EnginePool from this JVM's StockfishManager and opens
+ * one connection to the coordinator per engine. Each connection loops:
+ * fetch a job, search it on its engine, send the result back, while a
+ * heartbeat keeps the job's lease alive during long searches. If the
+ * coordinator goes away the worker keeps reconnecting.
+ */
+public class AnalysisWorker {
+    private static final long RECONNECT_DELAY_MS = 2000;
+
+    private final String host;
+    private final int port;
+    private final String name;
+    private final EnginePool pool;
+    private final List<Thread> slots = new ArrayList<>();
+    private final AtomicLong jobsDone = new AtomicLong();
+    private volatile boolean running;
+
+    /**
+     * Creates a worker
+     *
+     * @param host the coordinator host
+     * @param port the coordinator port
+     * @param engines the number of engine processes to run
+     */
+    public AnalysisWorker(String host, int port, int engines) {
+        this.host = host;
+        this.port = port;
+        this.name = workerName();
+        this.pool = new EnginePool("worker", engines);
+    }
+
+    private static String workerName() {
+        try {
+            return InetAddress.getLocalHost().getHostName() + "-" + ProcessHandle.current().pid();
+        } catch (IOException e) {
+            return "worker-" + ProcessHandle.current().pid();
+        }
+    }
+
+    /**
+     * Start one job loop per engine
+     */
+    public void start() {
+        running = true;
+        for (int i = 0; i < pool.size(); i++) {
+            Thread slot = new Thread(this::runSlot, "analysis-worker-" + i);
+            slot.setDaemon(true);
+            slots.add(slot);
+            slot.start();
+        }
+    }
+
+    private void runSlot() {
+        while (running) {
+            try (Socket socket = new Socket(host, port)) {
+                socket.setTcpNoDelay(true);
+                serve(socket);
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Lost connection to analysis coordinator: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                Thread.sleep(RECONNECT_DELAY_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) throws IOException, InterruptedException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+
+        send(out, "HELLO " + name);
+        if (!"OK".equals(in.readLine())) {
+            throw new IOException("coordinator rejected worker");
+        }
+
+        // Heartbeats are written from a timer thread, so writes share the stream's lock
+        Thread heartbeat = new Thread(() -> {
+            try {
+                while (!socket.isClosed()) {
+                    Thread.sleep(AnalysisCoordinator.HEARTBEAT_INTERVAL_MS);
+                    send(out, "HEARTBEAT");
+                }
+            } catch (InterruptedException e) {
+                // connection finished
+            }
+        }, "analysis-heartbeat");
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+
+        try {
+            while (running) {
+                send(out, "GET");
+                String reply = in.readLine();
+                if (reply == null) {
+                    throw new IOException("coordinator closed the connection");
+                }
+                if (reply.startsWith("JOB ")) {
+                    runJob(reply, out);
+                }
+                // "NONE": the coordinator already waited, so ask again right away
+            }
+        } finally {
+            heartbeat.interrupt();
+        }
+    }
+
+    private void runJob(String reply, PrintWriter out) throws InterruptedException {
+        // "JOB <id> <depth> <movetime> <fen>"
+        String[] parts = reply.split(" ", 5);
+        String id = parts[1];
+        int depth = Integer.parseInt(parts[2]);
+        int moveTimeMs = Integer.parseInt(parts[3]);
+        String fen = parts[4];
+
+        StockfishEngine engine = pool.acquire();
+        if (engine == null) {
+            send(out, "FAIL " + id + " no engine");
+            return;
+        }
+        UciInfo result;
+        try {
+            result = engine.evaluatePosition(fen, depth, moveTimeMs);
+        } finally {
+            pool.release(engine);
+        }
+
+        if (result == null || !result.hasScore()) {
+            send(out, "FAIL " + id + " no evaluation");
+            return;
+        }
+        String bestMove = result.hasPv() ? result.getFirstPvMove() : "(none)";
+        send(out, "RESULT " + id + " " + bestMove + " " + result);
+        jobsDone.incrementAndGet();
+    }
+
+    private static void send(PrintWriter out, String line) {
+        synchronized (out) {
+            out.println(line);
+        }
+    }
+
+    public long getJobsDone() {
+        return jobsDone.get();
+    }
+
+    /**
+     * Stop fetching jobs and release the engines
+     */
+    public void shutdown() {
+        running = false;
+        for (Thread slot : slots) {
+            slot.interrupt();
+        }
+        pool.close();
+    }
+
+    /**
+     * Run a worker until the JVM is stopped.
+     *
+     * Usage: AnalysisWorker [host] [port] [engines]
+     */
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : AnalysisCoordinator.DEFAULT_PORT;
+        int engines = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        AnalysisWorker worker = new AnalysisWorker(host, port, engines);
+        if (worker.pool.size() == 0) {
+            System.err.println("No engine could be started; is Stockfish installed?");
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            worker.shutdown();
+            StockfishManager.getInstance().shutdown();
+        }));
+        worker.start();
+        System.out.println("Analysis worker " + worker.name + " running " + worker.pool.size()
+                + " engines for " + host + ":" + port);
+        Thread.currentThread().join();
+    }
+}
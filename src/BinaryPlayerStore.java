@@ -0,0 +1,546 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Player stats in a memory-mapped file of fixed-width binary records, for
+ * rating pools where parsing playerStats.txt line by line is too slow.
+ *
+ * Every player is one 64-byte record, found through an index from player
+ * ID to record slot, so reading or updating a player is a few loads and
+ * stores into the mapping with no parsing. Updates are made in place: each
+ * record carries a sequence number that is odd while the record is being
+ * written (a seqlock), so readers never see half an update and never take
+ * a lock. {@link #force()} writes the changes to disk.
+ *
+ * Several processes can share the file. Writers take its DataFileLock, so
+ * only one process at a time changes it, and before adding a player a
+ * writer picks up the records other processes have added. Other processes
+ * see updates to existing records at once. They pick up new players on
+ * their next write, or on the first lookup that misses.
+ *
+ * The file starts with a 64-byte header (magic, version, record size,
+ * record count, next ID), followed by the records:
+ *
+ *   0 sequence, 4 id, 8 rating, 12 wins, 16 losses, 20 draws,
+ *   24 points (in half points), 28 unused, 32 last update (epoch ms),
+ *   40 name length, 41-63 name (UTF-8)
+ *
+ * Run "java -cp build BinaryPlayerStore playerStats.txt playerStats.bin" to
+ * convert the text stats (with their journal) into this format.
+ */
+public class BinaryPlayerStore implements AutoCloseable {
+    public static final int RECORD_SIZE = 64;
+    public static final int MAX_NAME_BYTES = 23;
+
+    private static final int MAGIC = 0x43485053; // "CHPS"
+    private static final int VERSION = 1;
+    private static final int HEADER_COUNT = 12;
+    private static final int HEADER_NEXT_ID = 16;
+    private static final int GROW_RECORDS = 16384;
+
+    private static final int SEQUENCE = 0;
+    private static final int ID = 4;
+    private static final int RATING = 8;
+    private static final int WINS = 12;
+    private static final int LOSSES = 16;
+    private static final int DRAWS = 20;
+    private static final int POINTS = 24;
+    private static final int UPDATED = 32;
+    private static final int NAME_LENGTH = 40;
+    private static final int NAME = 41;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    /**
+     * A consistent copy of one record
+     */
+    public static class PlayerRecord {
+        private final int id;
+        private final String name;
+        private final int rating;
+        private final int wins;
+        private final int losses;
+        private final int draws;
+        private final int halfPoints;
+        private final long updated;
+
+        public PlayerRecord(int id, String name, int rating, int wins, int losses, int draws, int halfPoints,
+                long updated) {
+            this.id = id;
+            this.name = name;
+            this.rating = rating;
+            this.wins = wins;
+            this.losses = losses;
+            this.draws = draws;
+            this.halfPoints = halfPoints;
+            this.updated = updated;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getRating() {
+            return rating;
+        }
+
+        public int getWins() {
+            return wins;
+        }
+
+        public int getLosses() {
+            return losses;
+        }
+
+        public int getDraws() {
+            return draws;
+        }
+
+        public double getPoints() {
+            return halfPoints / 2.0;
+        }
+
+        public long getUpdated() {
+            return updated;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d %s %d (+%d -%d =%d, %.1f pts)", id, name, rating, wins, losses, draws,
+                    getPoints());
+        }
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private volatile MappedByteBuffer buffer;
+    // Records already in slotById (and idByName, once built)
+    private int indexedCount;
+    // Record slot for each player ID, -1 where there is none
+    private volatile int[] slotById = new int[0];
+    // Built on first use, so opening the store only reads the IDs
+    private volatile Map<String, Integer> idByName;
+
+    /**
+     * Open a store, creating the file if it does not exist
+     *
+     * @throws IOException if the file cannot be opened or is not a player store
+     */
+    public BinaryPlayerStore(File file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            DataFileLock.runLocked(file, this::open);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Create the header or check it, and index the records; called holding the file's lock
+     */
+    private void open() throws IOException {
+        if (channel.size() == 0) {
+            map(GROW_RECORDS);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, RECORD_SIZE);
+            buffer.putInt(HEADER_COUNT, 0);
+            buffer.putInt(HEADER_NEXT_ID, 1);
+        } else {
+            map((int) (channel.size() / RECORD_SIZE) - 1);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_SIZE) {
+                throw new IOException(file + " is not a player store");
+            }
+        }
+        buildIndex();
+    }
+
+    public int size() {
+        return (int) INT.getAcquire(buffer, HEADER_COUNT);
+    }
+
+    /**
+     * Look up a player's ID by name
+     *
+     * @return the ID, or -1 if there is no such player
+     */
+    public int idOf(String name) {
+        Integer id = names().get(name);
+        if (id == null && catchUp()) {
+            id = names().get(name);
+        }
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Read a player's record
+     *
+     * @return the record, or null if there is no player with this ID
+     */
+    public PlayerRecord get(int id) {
+        int offset = offsetOf(id);
+        if (offset < 0 && catchUp()) {
+            offset = offsetOf(id);
+        }
+        if (offset < 0) return null;
+        MappedByteBuffer records = buffer;
+        while (true) {
+            int sequence = beginRead(records, offset);
+            byte[] name = new byte[Math.min(records.get(offset + NAME_LENGTH) & 0xff, MAX_NAME_BYTES)];
+            records.get(offset + NAME, name);
+            PlayerRecord record = new PlayerRecord(records.getInt(offset + ID), new String(name,
+                    StandardCharsets.UTF_8), records.getInt(offset + RATING), records.getInt(offset + WINS),
+                    records.getInt(offset + LOSSES), records.getInt(offset + DRAWS),
+                    records.getInt(offset + POINTS), records.getLong(offset + UPDATED));
+            if (endRead(records, offset, sequence)) {
+                return record;
+            }
+        }
+    }
+
+    /**
+     * Read a player's rating without copying the rest of the record
+     *
+     * @return the rating, or 0 if there is no player with this ID
+     */
+    public int getRating(int id) {
+        int offset = offsetOf(id);
+        if (offset < 0 && catchUp()) {
+            offset = offsetOf(id);
+        }
+        if (offset < 0) return 0;
+        MappedByteBuffer records = buffer;
+        while (true) {
+            int sequence = beginRead(records, offset);
+            int rating = records.getInt(offset + RATING);
+            if (endRead(records, offset, sequence)) {
+                return rating;
+            }
+        }
+    }
+
+    /**
+     * Add a player with the next free ID
+     *
+     * @return the new ID, or -1 if the name is already taken
+     * @throws IllegalArgumentException if the name does not fit in a record
+     */
+    public synchronized int addPlayer(String name, int rating) {
+        return locked(() -> {
+            catchUp();
+            if (names().containsKey(name)) return -1;
+            int id = buffer.getInt(HEADER_NEXT_ID);
+            return add(id, name, rating, 0, 0, 0) ? id : -1;
+        });
+    }
+
+    /**
+     * Add a player with a given ID and stats
+     *
+     * @return false if the ID or the name is already taken
+     * @throws IllegalArgumentException if the ID is not positive or the name does not fit in a record
+     */
+    public synchronized boolean add(int id, String name, int rating, int wins, int losses, int draws) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("Player ID must be positive: " + id);
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("Name longer than " + MAX_NAME_BYTES + " bytes: " + name);
+        }
+        return locked(() -> {
+            catchUp();
+            if (names().containsKey(name) || offsetOf(id) >= 0) return false;
+            append(id, nameBytes, rating, wins, losses, draws);
+            names().put(name, id);
+            return true;
+        });
+    }
+
+    /**
+     * Write a new record in the next slot and publish it; called holding the file's lock
+     */
+    private void append(int id, byte[] nameBytes, int rating, int wins, int losses, int draws) {
+        int slot = buffer.getInt(HEADER_COUNT);
+        if (recordOffset(slot + 1) > buffer.capacity()) {
+            try {
+                map(slot + GROW_RECORDS);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot grow player store: " + e.getMessage(), e);
+            }
+        }
+        MappedByteBuffer records = buffer;
+        int offset = (int) recordOffset(slot);
+        records.putInt(offset + SEQUENCE, 0);
+        records.putInt(offset + ID, id);
+        records.putInt(offset + RATING, rating);
+        records.putInt(offset + WINS, wins);
+        records.putInt(offset + LOSSES, losses);
+        records.putInt(offset + DRAWS, draws);
+        records.putInt(offset + POINTS, wins * 2 + draws);
+        records.putLong(offset + UPDATED, System.currentTimeMillis());
+        records.put(offset + NAME_LENGTH, (byte) nameBytes.length);
+        records.put(offset + NAME, nameBytes);
+
+        records.putInt(HEADER_NEXT_ID, Math.max(records.getInt(HEADER_NEXT_ID), id + 1));
+        // Publishing the count makes the record visible to other processes
+        INT.setRelease(records, HEADER_COUNT, slot + 1);
+        index(id, slot);
+        indexedCount = slot + 1;
+    }
+
+    /**
+     * Apply a game result to a player's record in place
+     *
+     * @return false if there is no player with this ID
+     */
+    public boolean recordResult(int id, int wins, int losses, int draws, int ratingChange) {
+        int offset = offsetOf(id);
+        if (offset < 0 && catchUp()) {
+            offset = offsetOf(id);
+        }
+        if (offset < 0) return false;
+        int recordOffset = offset;
+        locked(() -> {
+            // Other processes wait for the lock too, so no increment is lost and the seqlock has one writer
+            MappedByteBuffer records = buffer;
+            int sequence = records.getInt(recordOffset + SEQUENCE);
+            INT.setOpaque(records, recordOffset + SEQUENCE, sequence + 1);
+            VarHandle.storeStoreFence();
+            records.putInt(recordOffset + RATING, records.getInt(recordOffset + RATING) + ratingChange);
+            records.putInt(recordOffset + WINS, records.getInt(recordOffset + WINS) + wins);
+            records.putInt(recordOffset + LOSSES, records.getInt(recordOffset + LOSSES) + losses);
+            records.putInt(recordOffset + DRAWS, records.getInt(recordOffset + DRAWS) + draws);
+            records.putInt(recordOffset + POINTS, records.getInt(recordOffset + POINTS) + wins * 2 + draws);
+            records.putLong(recordOffset + UPDATED, System.currentTimeMillis());
+            INT.setRelease(records, recordOffset + SEQUENCE, sequence + 2);
+            return null;
+        });
+        return true;
+    }
+
+    /**
+     * Run a write holding the file's lock
+     *
+     * @throws IllegalStateException if the lock cannot be taken
+     */
+    private <T> T locked(DataFileLock.LockedAction<T> write) {
+        try {
+            return DataFileLock.withLock(file, write);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot lock player store: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Index the records other processes have added since we last looked
+     *
+     * @return whether there were any
+     */
+    private synchronized boolean catchUp() {
+        int count = (int) INT.getAcquire(buffer, HEADER_COUNT);
+        if (count <= indexedCount) return false;
+        if (recordOffset(count) > buffer.capacity()) {
+            try {
+                map((int) Math.max(count, channel.size() / RECORD_SIZE - 1));
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot map player store: " + e.getMessage(), e);
+            }
+        }
+        MappedByteBuffer records = buffer;
+        Map<String, Integer> names = idByName;
+        for (int slot = indexedCount; slot < count; slot++) {
+            int offset = (int) recordOffset(slot);
+            index(records.getInt(offset + ID), slot);
+            if (names != null) {
+                names.put(nameAt(records, offset), records.getInt(offset + ID));
+            }
+        }
+        indexedCount = count;
+        return true;
+    }
+
+    /**
+     * Write all changes to disk
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    /**
+     * Wait until no write is in progress and return the record's sequence number
+     */
+    private static int beginRead(MappedByteBuffer records, int offset) {
+        int sequence;
+        while (((sequence = (int) INT.getAcquire(records, offset + SEQUENCE)) & 1) != 0) {
+            Thread.onSpinWait();
+        }
+        return sequence;
+    }
+
+    /**
+     * Check that the record did not change while it was read
+     */
+    private static boolean endRead(MappedByteBuffer records, int offset, int sequence) {
+        VarHandle.loadLoadFence();
+        return (int) INT.getOpaque(records, offset + SEQUENCE) == sequence;
+    }
+
+    private int offsetOf(int id) {
+        int[] slots = slotById;
+        if (id <= 0 || id >= slots.length || slots[id] < 0) return -1;
+        return (int) recordOffset(slots[id]);
+    }
+
+    private static long recordOffset(int slot) {
+        return RECORD_SIZE + (long) slot * RECORD_SIZE;
+    }
+
+    private void index(int id, int slot) {
+        int[] slots = slotById;
+        if (id >= slots.length) {
+            int length = Math.max(id + 1, slots.length * 2);
+            slots = Arrays.copyOf(slots, length);
+            Arrays.fill(slots, slotById.length, length, -1);
+        }
+        slots[id] = slot;
+        slotById = slots;
+    }
+
+    private void buildIndex() throws IOException {
+        int count = buffer.getInt(HEADER_COUNT);
+        if (recordOffset(count) > buffer.capacity()) {
+            throw new IOException("Player store is truncated: " + count + " records expected");
+        }
+        for (int slot = 0; slot < count; slot++) {
+            int offset = (int) recordOffset(slot);
+            // Writers hold the lock we are holding, so an odd sequence number is a write cut short by a
+            // crash; the values are still usable
+            if ((buffer.getInt(offset + SEQUENCE) & 1) != 0) {
+                buffer.putInt(offset + SEQUENCE, buffer.getInt(offset + SEQUENCE) + 1);
+            }
+            index(buffer.getInt(offset + ID), slot);
+        }
+        indexedCount = count;
+    }
+
+    private Map<String, Integer> names() {
+        Map<String, Integer> names = idByName;
+        if (names != null) return names;
+        synchronized (this) {
+            if (idByName == null) {
+                MappedByteBuffer records = buffer;
+                names = new ConcurrentHashMap<>();
+                for (int slot = 0; slot < indexedCount; slot++) {
+                    int offset = (int) recordOffset(slot);
+                    names.put(nameAt(records, offset), records.getInt(offset + ID));
+                }
+                idByName = names;
+            }
+            return idByName;
+        }
+    }
+
+    private static String nameAt(MappedByteBuffer records, int offset) {
+        byte[] name = new byte[Math.min(records.get(offset + NAME_LENGTH) & 0xff, MAX_NAME_BYTES)];
+        records.get(offset + NAME, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Map the header plus room for the given number of records, growing the file if needed
+     */
+    private void map(int records) throws IOException {
+        long size = recordOffset(records);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Player store cannot hold " + records + " records");
+        }
+        // The old mapping stays valid for readers still using it; both map the same pages
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java BinaryPlayerStore <playerStats.txt> <store.bin>");
+            return;
+        }
+        File target = new File(args[1]);
+        if (target.exists()) {
+            System.err.println(target + " already exists");
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            int migrated = migrate(new File(args[0]), target);
+            System.out.printf("Migrated %d players to %s in %.0f ms%n", migrated, target,
+                    (System.nanoTime() - start) / 1e6);
+        } catch (IOException e) {
+            System.err.println("Error migrating player stats: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Copy the text stats, including changes still in their journal, into a new binary store.
+     * Players who have an account keep their account ID; the others get the IDs after the largest one.
+     *
+     * @return the number of players copied
+     * @throws IOException if either file cannot be used
+     */
+    public static int migrate(File statsFile, File target) throws IOException {
+        UserDirectory users = UserDirectory.getInstance();
+        int migrated = 0;
+        try (PlayerStatsRepository source = new PlayerStatsRepository(statsFile);
+             BinaryPlayerStore store = new BinaryPlayerStore(target)) {
+            List<PlayerStatsRepository.PlayerStats> withoutAccount = new ArrayList<>();
+            for (PlayerStatsRepository.PlayerStats stats : source.getAll()) {
+                UserDirectory.UserRecord user = users.findByUsername(stats.getName());
+                if (user == null || !copy(store, user.getId(), stats)) {
+                    withoutAccount.add(stats);
+                } else {
+                    migrated++;
+                }
+            }
+            for (PlayerStatsRepository.PlayerStats stats : withoutAccount) {
+                if (copy(store, store.buffer.getInt(HEADER_NEXT_ID), stats)) {
+                    migrated++;
+                }
+            }
+        }
+        return migrated;
+    }
+
+    private static boolean copy(BinaryPlayerStore store, int id, PlayerStatsRepository.PlayerStats stats) {
+        try {
+            return store.add(id, stats.getName(), stats.getRating(), stats.getWins(), stats.getLosses(),
+                    stats.getDraws());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Skipping " + stats.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+}
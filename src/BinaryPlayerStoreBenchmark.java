@@ -0,0 +1,96 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Compares BinaryPlayerStore with the text stats in PlayerStatsRepository
+ * on a generated pool of players: opening the store, reading ratings by
+ * player and applying results.
+ *
+ * Run with: java -cp build BinaryPlayerStoreBenchmark [players] [operations]
+ */
+public class BinaryPlayerStoreBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 2000000;
+
+        File directory = Files.createTempDirectory("player-store").toFile();
+        File statsFile = new File(directory, "playerStats.txt");
+        File storeFile = new File(directory, "playerStats.bin");
+        Random random = new Random(42);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(statsFile))) {
+            writer.write("name, wins, losses, draws, rating");
+            writer.newLine();
+            for (int i = 0; i < players; i++) {
+                writer.write(String.format("p%d,%d,%d,%d,%d", i, random.nextInt(50), random.nextInt(50),
+                        random.nextInt(20), 800 + random.nextInt(2000)));
+                writer.newLine();
+            }
+        }
+
+        long start = System.nanoTime();
+        BinaryPlayerStore.migrate(statsFile, storeFile);
+        report("migrate " + players + " players", start);
+
+        start = System.nanoTime();
+        PlayerStatsRepository text = new PlayerStatsRepository(statsFile, PlayerStatsRepository.SyncPolicy.ASYNC);
+        text.size();
+        report("open text store", start);
+
+        start = System.nanoTime();
+        try (BinaryPlayerStore binary = new BinaryPlayerStore(storeFile)) {
+            binary.getRating(1);
+            report("open binary store", start);
+
+            start = System.nanoTime();
+            String[] names = new String[players];
+            int[] ids = new int[players];
+            for (int i = 0; i < players; i++) {
+                names[i] = "p" + i;
+                ids[i] = binary.idOf(names[i]);
+            }
+            report("binary store name index", start);
+
+            long sum = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                sum += text.get(names[random.nextInt(players)]).getRating();
+            }
+            reportPerOperation("text rating lookup by name", start, operations);
+
+            start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                sum += binary.getRating(ids[random.nextInt(players)]);
+            }
+            reportPerOperation("binary rating lookup by ID", start, operations);
+
+            int updates = operations / 10;
+            start = System.nanoTime();
+            for (int i = 0; i < updates; i++) {
+                text.recordResult(names[random.nextInt(players)], 1, 0, 0, 8);
+            }
+            reportPerOperation("text result (async journal)", start, updates);
+
+            start = System.nanoTime();
+            for (int i = 0; i < updates; i++) {
+                binary.recordResult(ids[random.nextInt(players)], 1, 0, 0, 8);
+            }
+            binary.force();
+            reportPerOperation("binary result in place, then force", start, updates);
+            System.out.println("(checksum " + sum + ")");
+        }
+        text.close();
+    }
+
+    private static void report(String label, long startNanos) {
+        System.out.printf("%-40s %10.2f ms%n", label, (System.nanoTime() - startNanos) / 1e6);
+    }
+
+    private static void reportPerOperation(String label, long startNanos, int operations) {
+        System.out.printf("%-40s %10.3f us/op%n", label, (System.nanoTime() - startNanos) / 1e3 / operations);
+    }
+}
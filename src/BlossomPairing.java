@@ -0,0 +1,123 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pairs the next round of a Swiss tournament as a maximum-weight matching,
+ * an alternative to SwissPairing's bracket-by-bracket Dutch pairing for
+ * large or heavily constrained events. Selected with -Dchess.pairing=blossom.
+ *
+ * Each player is a vertex, joined to the next players in the ranking who
+ * may meet them: not a rematch, and no clash of absolute colour
+ * preferences. An edge's weight starts high and loses most for a score
+ * difference, then for a repeated float, an unmet colour preference and
+ * the rating difference. Over those candidate edges, the matching pairs
+ * as many players as possible, and of those pairings the one of greatest
+ * weight. If players are left unpaired, each player is joined to more of
+ * the ranking (up to 256 players) and the round is solved again. Players
+ * still unpaired after that are paired in ranking order, rematches
+ * included, with a warning.
+ */
+public class BlossomPairing {
+    private static final long BASE_WEIGHT = 1L << 40;
+    private static final long SCORE_WEIGHT = 1_000_000;
+    private static final long FLOAT_WEIGHT = 200_000;
+    private static final long COLOUR_WEIGHT = 50_000;
+    private static final int FIRST_NEIGHBOURS = 8;
+    private static final int MAX_NEIGHBOURS = 256;
+
+    private final SwissPairing.History history;
+    private final int[] order;
+    private final int[] rank;
+
+    /**
+     * Prepare to pair the next round
+     *
+     * @param players the tournament's players
+     * @param rounds the rounds already scheduled, with whatever results they have
+     */
+    public BlossomPairing(List<Player> players, List<Round> rounds) {
+        history = new SwissPairing.History(players, rounds);
+        order = SwissPairing.ranking(history);
+        rank = SwissPairing.ranks(order);
+    }
+
+    /**
+     * Pair the next round
+     */
+    public SwissPairing.Pairing pairNextRound() {
+        int bye = SwissPairing.chooseBye(history, order);
+        int[] players = new int[order.length - (bye < 0 ? 0 : 1)];
+        int count = 0;
+        for (int p : order) {
+            if (p != bye) players[count++] = p;
+        }
+
+        int[] mate = null;
+        for (int neighbours = FIRST_NEIGHBOURS; ; neighbours *= 2) {
+            mate = match(players, neighbours);
+            boolean complete = true;
+            for (int m : mate) {
+                if (m < 0) complete = false;
+            }
+            if (complete || neighbours >= Math.min(MAX_NEIGHBOURS, players.length)) break;
+        }
+
+        List<int[]> pairs = new ArrayList<>(players.length / 2);
+        List<Integer> unpaired = new ArrayList<>();
+        for (int i = 0; i < players.length; i++) {
+            if (mate[i] > i) {
+                pairs.add(new int[] {players[i], players[mate[i]]});
+            } else if (mate[i] < 0) {
+                unpaired.add(players[i]);
+            }
+        }
+        for (int i = 0; i + 1 < unpaired.size(); i += 2) {
+            System.err.println("No Swiss pairing without a rematch for " + history.players[unpaired.get(i)].getUsername()
+                    + " and " + history.players[unpaired.get(i + 1)].getUsername());
+            pairs.add(new int[] {unpaired.get(i), unpaired.get(i + 1)});
+        }
+        return SwissPairing.toPairing(history, rank, pairs, bye);
+    }
+
+    /**
+     * Solve the round with each player joined to up to the given number of players ranked below
+     *
+     * @return for each position in players, the position of the opponent, or -1
+     */
+    private int[] match(int[] players, int neighbours) {
+        int[] from = new int[players.length * neighbours];
+        int[] to = new int[from.length];
+        long[] weight = new long[from.length];
+        int edges = 0;
+        for (int i = 0; i < players.length; i++) {
+            for (int j = i + 1; j < players.length && j <= i + neighbours; j++) {
+                if (!history.compatible(players[i], players[j])) continue;
+                from[edges] = i;
+                to[edges] = j;
+                weight[edges] = weight(players[i], players[j]);
+                edges++;
+            }
+        }
+        return new MaxWeightMatching(players.length, Arrays.copyOf(from, edges),
+                Arrays.copyOf(to, edges), Arrays.copyOf(weight, edges)).solve(true);
+    }
+
+    /**
+     * Weigh a pairing of a player with one ranked lower
+     */
+    private long weight(int higher, int lower) {
+        long penalty = 0;
+        int scoreDifference = history.score[higher] - history.score[lower];
+        penalty += SCORE_WEIGHT * scoreDifference * scoreDifference;
+        if (scoreDifference != 0 && (history.lastFloat[higher] == -1 || history.lastFloat[lower] == 1)) {
+            // The higher player would float down, or the lower one up, two rounds running
+            penalty += FLOAT_WEIGHT;
+        }
+        if (!history.coloursFit(higher, lower)) {
+            penalty += COLOUR_WEIGHT * Math.min(Math.abs(history.preference(higher)), Math.abs(history.preference(lower)));
+        }
+        penalty += Math.abs(history.rating[higher] - history.rating[lower]);
+        return BASE_WEIGHT - penalty;
+    }
+}
@@ -4,7 +4,7 @@ import java.awt.Color;
 
 public class ChessBoard {
     private Map<String, String> board;
-    private StockfishEngine stockfishEngine;
+    private ChessEngine stockfishEngine;
     private boolean useStockfish;
     
     // Color definitions for UI representation
@@ -23,7 +23,7 @@ public class ChessBoard {
     private void initializeStockfish() {
         StockfishManager manager = StockfishManager.getInstance();
         if (manager.isStockfishAvailable()) {
-            stockfishEngine = manager.getEngine("board");
+            stockfishEngine = manager.openSession("board");
             useStockfish = stockfishEngine != null && stockfishEngine.isReady();
         } else {
             useStockfish = false;
@@ -239,7 +239,7 @@ public class ChessBoard {
      */
     public void cleanup() {
         if (useStockfish) {
-            StockfishManager.getInstance().closeEngine("board");
+            stockfishEngine.close();
             useStockfish = false;
         }
     }
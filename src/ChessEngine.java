@@ -0,0 +1,84 @@
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * The operations the application needs from a chess engine.
+ * Implemented by StockfishEngine (one engine process) and by EngineSession
+ * (a logical engine that shares processes with other sessions).
+ */
+public interface ChessEngine {
+
+    /**
+     * Analyze the position and get the best move
+     *
+     * @param fen the position in FEN notation
+     * @param timeInMs the time to think in milliseconds
+     * @return the best move in UCI notation, or null if unavailable
+     */
+    String getBestMove(String fen, int timeInMs);
+
+    /**
+     * Search for the best move, reporting the principal variation after every iteration
+     *
+     * @param fen the position in FEN notation
+     * @param limits the time, depth and node limits of the search
+     * @param progress called with each new top line; the UciInfo is reused, so copy it to keep it.
+     *                 Return false to stop the search early. May be null
+     * @return the best move in UCI notation, or null if unavailable
+     */
+    String getBestMove(String fen, SearchLimits limits, Predicate<UciInfo> progress);
+
+    /**
+     * Get a hint for the position
+     *
+     * @param fen the position in FEN notation
+     * @return a suggested move in UCI notation, or null if unavailable
+     */
+    String getHint(String fen);
+
+    /**
+     * Analyze a position and return a detailed evaluation
+     *
+     * @param fen the position in FEN notation
+     * @param depth the depth to analyze to
+     * @return a map with "bestMove", "score" or "mateIn", "depth" and "pvMoves", or null if unavailable
+     */
+    Map<String, Object> analyzePosition(String fen, int depth);
+
+    /**
+     * Check whether a move is legal in a position
+     *
+     * @param fen the position in FEN notation
+     * @param move the move in UCI notation
+     * @return true if the move is legal
+     */
+    boolean isValidMove(String fen, String move);
+
+    /**
+     * Get all legal moves in a position
+     *
+     * @param fen the position in FEN notation
+     * @return the legal moves in UCI notation, or null if unavailable
+     */
+    List<String> getLegalMoves(String fen);
+
+    /**
+     * Set the playing strength (1-20)
+     *
+     * @param strength the strength level
+     */
+    void setEngineStrength(int strength);
+
+    /**
+     * Check if the engine can take requests
+     *
+     * @return true if the engine is ready
+     */
+    boolean isReady();
+
+    /**
+     * Release the engine
+     */
+    void close();
+}
@@ -40,6 +40,11 @@ public class DashboardGUI extends JFrame {
     private JButton dashboardBtn, tournamentsBtn, profileBtn, adminBtn, refereeBtn, trainingBtn;
     private JButton[] sidebarButtons;
     
+    // One analyzer for the dashboard's lifetime, so re-checking an event reuses its cached evaluations
+    private final Object fairPlayLock = new Object();
+    private EnginePool fairPlayPool;
+    private volatile FairPlayAnalyzer fairPlayAnalyzer;
+    
     public DashboardGUI(User user) {
         this.currentUser = user;
         
@@ -100,6 +105,45 @@ public class DashboardGUI extends JFrame {
         updateSidebarSelection("dashboard");
         
         setVisible(true);
+        
+        offerToResumeMatches();
+    }
+    
+    /**
+     * Look for matches left unfinished by a crash, off the event thread, and offer to resume them
+     */
+    private void offerToResumeMatches() {
+        Thread reader = new Thread(() -> {
+            List<LiveMatchJournal.LiveGame> games;
+            try {
+                games = LiveMatchJournal.getInstance().recover();
+            } catch (IllegalStateException e) {
+                System.err.println("Cannot read the live match journal: " + e.getMessage());
+                return;
+            }
+            if (games.isEmpty()) {
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                Object[] options = {"Resume", "Discard"};
+                int choice = JOptionPane.showOptionDialog(this,
+                    games.size() + " unfinished game" + (games.size() == 1 ? " was" : "s were") + " found. Resume "
+                        + (games.size() == 1 ? "it" : "them") + "?",
+                    "Unfinished Games", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE,
+                    null, options, options[0]);
+                for (LiveMatchJournal.LiveGame game : games) {
+                    Match match = game.getMatch();
+                    if (choice == 0) {
+                        match.resumeMatch();
+                        new MatchGUI(match, game).setVisible(true);
+                    } else {
+                        LiveMatchJournal.getInstance().finish(match);
+                    }
+                }
+            });
+        }, "live-match-recovery");
+        reader.setDaemon(true);
+        reader.start();
     }
     
     private JPanel createHeaderPanel() {
@@ -653,6 +697,7 @@ public class DashboardGUI extends JFrame {
             if (currentUser instanceof Player) {
                 boolean joined = targetTournament.addPlayer((Player)currentUser);
                 if (joined) {
+                    TournamentStore.getInstance().save(targetTournament);
                     JOptionPane.showMessageDialog(this, "Successfully joined tournament: " + tournamentName);
                     
                     // Open tournament details
@@ -665,6 +710,7 @@ public class DashboardGUI extends JFrame {
                 Player tempPlayer = new Player(currentUser.getName(), 1200, currentUser.getCountry());
                 boolean joined = targetTournament.addPlayer(tempPlayer);
                 if (joined) {
+                    TournamentStore.getInstance().save(targetTournament);
                     JOptionPane.showMessageDialog(this, "Successfully joined tournament: " + tournamentName);
                     
                     // Open tournament details
@@ -1221,6 +1267,92 @@ public class DashboardGUI extends JFrame {
         }
     }
     
+    /**
+     * Let the referee pick a PGN file of an event and show each player's
+     * engine-match rate, ACPL and time/match correlation
+     */
+    private void runFairPlayCheck() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Select the event's games (PGN)");
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("PGN files", "pgn"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        java.io.File file = chooser.getSelectedFile();
+        
+        JTextArea resultArea = new JTextArea("Analysing " + file.getName() + "...", 20, 90);
+        resultArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        resultArea.setEditable(false);
+        JDialog dialog = new JDialog(this, "Fair-Play Check", false);
+        dialog.add(new JScrollPane(resultArea));
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+        
+        // The analysis takes minutes, so keep it off the event thread; checks run one at a time
+        Thread worker = new Thread(() -> {
+            String text;
+            synchronized (fairPlayLock) {
+                FairPlayAnalyzer analyzer = getFairPlayAnalyzer();
+                try {
+                    FairPlayAnalyzer.Report report = analyzer == null ? null : analyzer.analyzePgn(file);
+                    text = report != null ? report.toString() : "No engine available for the analysis.";
+                } catch (java.io.IOException ex) {
+                    text = "Could not read " + file.getName() + ": " + ex.getMessage();
+                }
+            }
+            String result = text;
+            SwingUtilities.invokeLater(() -> resultArea.setText(result));
+        }, "fair-play-check");
+        worker.setDaemon(true);
+        worker.start();
+    }
+    
+    /**
+     * Get the dashboard's fair-play analyzer, starting its engines on first use.
+     * Call with fairPlayLock held.
+     * 
+     * @return the analyzer, or null if no engine could be started
+     */
+    private FairPlayAnalyzer getFairPlayAnalyzer() {
+        if (fairPlayPool != null && fairPlayPool.size() == 0) {
+            // Nothing started last time (or every engine was lost); try again
+            closeFairPlayAnalyzer();
+        }
+        if (fairPlayPool == null) {
+            int engines = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            fairPlayPool = new EnginePool("fair-play", engines);
+            fairPlayAnalyzer = new FairPlayAnalyzer(fairPlayPool, 14, 500);
+        }
+        return fairPlayPool.size() > 0 ? fairPlayAnalyzer : null;
+    }
+    
+    private void closeFairPlayAnalyzer() {
+        if (fairPlayAnalyzer != null) {
+            fairPlayAnalyzer.shutdown();
+            fairPlayPool.close();
+            fairPlayAnalyzer = null;
+            fairPlayPool = null;
+        }
+    }
+    
+    @Override
+    public void dispose() {
+        super.dispose();
+        // Stopping the analyzer interrupts a running check, which then releases the lock
+        FairPlayAnalyzer running = fairPlayAnalyzer;
+        if (running != null) {
+            running.shutdown();
+        }
+        Thread closer = new Thread(() -> {
+            synchronized (fairPlayLock) {
+                closeFairPlayAnalyzer();
+            }
+        }, "fair-play-close");
+        closer.setDaemon(true);
+        closer.start();
+    }
+    
     private void editProfile() {
         JTextField nameField = new JTextField(currentUser.getName(), 20);
         JTextField countryField = new JTextField(currentUser.getCountry(), 20);
@@ -1279,17 +1411,26 @@ public class DashboardGUI extends JFrame {
     }
     
     private void initializeData() {
-        availableTournaments = new ArrayList<>();
+        TournamentStore store = TournamentStore.getInstance();
+        availableTournaments = store.loadActive();
+        if (store.size() > 0) {
+            return;
+        }
         
-        // Create sample tournaments
-        Tournament t1 = new Tournament(1, "International Chess Open", "New York", "2023-10-15", "90+30", 5);
-        Tournament t2 = new Tournament(2, "City Chess Championship", "London", "2023-11-05", "60+10", 7);
-        Tournament t3 = new Tournament(3, "Weekend Rapid Tournament", "Paris", "2023-09-30", "15+10", 4);
+        // First start: store the sample tournaments
+        Tournament t1 = store.create("International Chess Open", "New York", "2023-10-15", "90+30", 5);
+        Tournament t2 = store.create("City Chess Championship", "London", "2023-11-05", "60+10", 7);
+        Tournament t3 = store.create("Weekend Rapid Tournament", "Paris", "2023-09-30", "15+10", 4);
+        if (t1 == null || t2 == null || t3 == null) {
+            return;
+        }
         
         // Add some players to tournaments
         t1.addPlayer(new Player("Alice", 1600, "USA"));
         t1.addPlayer(new Player("Bob", 1550, "UK"));
         t2.addPlayer(new Player("Charlie", 1700, "France"));
+        store.save(t1);
+        store.save(t2);
         
         availableTournaments.add(t1);
         availableTournaments.add(t2);
@@ -1457,6 +1598,10 @@ public class DashboardGUI extends JFrame {
             }
         });
         
+        JButton fairPlayButton = createSecondaryButton("Fair-Play Check");
+        fairPlayButton.setPreferredSize(new Dimension(140, 40));
+        fairPlayButton.addActionListener(e -> runFairPlayCheck());
+        
         // First add a help text
         JLabel helpLabel = new JLabel("Select a match to manage");
         helpLabel.setFont(REGULAR_FONT);
@@ -1467,6 +1612,7 @@ public class DashboardGUI extends JFrame {
         buttonsPanel.add(Box.createHorizontalGlue());
         
         // Add buttons
+        buttonsPanel.add(fairPlayButton);
         buttonsPanel.add(resolveButton);
         buttonsPanel.add(startButton);
         
@@ -0,0 +1,172 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Exclusive write access to a data file shared by several instances of the
+ * application.
+ *
+ * The lock is an OS file lock on a companion file (the data file's name
+ * plus ".lock"), so it holds across processes, combined with an ordinary
+ * lock for the threads of this process, which file locks do not separate.
+ * The lock is reentrant. Only writers take it: the data files are changed
+ * by appending whole lines or by replacing the file in one atomic rename,
+ * so readers never see a half-written file and need no lock.
+ *
+ * Usage: DataFileLock.runLocked(file, () -> { ... }), or withLock to return a
+ * value; try (DataFileLock lock = DataFileLock.acquire(file)) { ... } also works.
+ */
+public final class DataFileLock implements AutoCloseable {
+    private static final Map<String, DataFileLock> LOCKS = new ConcurrentHashMap<>();
+    private static final long MAX_PAUSE_MS = 20;
+
+    private final File lockFile;
+    private final ReentrantLock threadLock = new ReentrantLock();
+    private FileChannel channel;
+    private FileLock fileLock;
+
+    /**
+     * Work done while holding a file's lock
+     */
+    public interface LockedAction<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Work done while holding a file's lock that returns nothing
+     */
+    public interface LockedTask {
+        void run() throws IOException;
+    }
+
+    private DataFileLock(File lockFile) {
+        this.lockFile = lockFile;
+    }
+
+    /**
+     * Run an action holding the file's lock
+     *
+     * @return what the action returned
+     * @throws IOException if the lock cannot be taken or the action fails
+     */
+    public static <T> T withLock(File file, LockedAction<T> action) throws IOException {
+        DataFileLock lock = acquire(file);
+        try {
+            return action.run();
+        } finally {
+            lock.close();
+        }
+    }
+
+    /**
+     * Run a task holding the file's lock
+     *
+     * @throws IOException if the lock cannot be taken or the task fails
+     */
+    public static void runLocked(File file, LockedTask task) throws IOException {
+        DataFileLock lock = acquire(file);
+        try {
+            task.run();
+        } finally {
+            lock.close();
+        }
+    }
+
+    /**
+     * Wait until no other thread or process holds the lock on the file, then take it
+     *
+     * @throws IOException if the lock file cannot be opened or locked
+     */
+    public static DataFileLock acquire(File file) throws IOException {
+        File lockFile = new File(file.getCanonicalPath() + ".lock");
+        DataFileLock lock = LOCKS.computeIfAbsent(lockFile.getPath(), path -> new DataFileLock(lockFile));
+        lock.threadLock.lock();
+        if (lock.threadLock.getHoldCount() == 1) {
+            try {
+                lock.channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE);
+                lock.fileLock = lock.waitForFileLock();
+            } catch (IOException e) {
+                lock.closeChannel();
+                lock.threadLock.unlock();
+                throw e;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Poll for the file lock instead of blocking in the OS. The OS tracks file locks per process,
+     * so when two threads of one process wait on locks of different files held by another
+     * process, a blocking lock can be refused as a deadlock that does not exist.
+     */
+    private FileLock waitForFileLock() throws IOException {
+        long pauseMs = 1;
+        while (true) {
+            FileLock acquired = channel.tryLock();
+            if (acquired != null) return acquired;
+            try {
+                Thread.sleep(pauseMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for " + lockFile);
+            }
+            pauseMs = Math.min(pauseMs * 2, MAX_PAUSE_MS);
+        }
+    }
+
+    /**
+     * Release the lock
+     */
+    @Override
+    public void close() {
+        if (threadLock.getHoldCount() == 1) {
+            try {
+                if (fileLock != null) {
+                    fileLock.release();
+                }
+            } catch (IOException e) {
+                System.err.println("Error releasing lock on " + lockFile + ": " + e.getMessage());
+            }
+            closeChannel();
+        }
+        threadLock.unlock();
+    }
+
+    private void closeChannel() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing " + lockFile + ": " + e.getMessage());
+        }
+        channel = null;
+        fileLock = null;
+    }
+
+    /**
+     * Replace a file's contents in one step: write a temporary file next to it, sync it, and
+     * rename it over the original. Readers see either the old or the new contents, never a mix,
+     * and a crash leaves the old contents in place. Call this while holding the file's lock.
+     *
+     * @throws IOException if the new contents cannot be written
+     */
+    public static void replace(File file, String contents) throws IOException {
+        File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            stream.write(contents.getBytes(StandardCharsets.UTF_8));
+            stream.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,32 @@
+import java.io.IOException;
+
+/**
+ * Starts the process a StockfishEngine talks UCI to.
+ * The default launcher runs an engine executable; alternatives run an
+ * in-JVM stand-in (ReplayUciEngine, SyntheticUciEngine) or wrap another
+ * launcher to record the traffic (UciSessionRecorder).
+ */
+public interface EngineLauncher {
+
+    /**
+     * Start a new engine process
+     *
+     * @return the running process
+     * @throws IOException if the process could not be started
+     */
+    Process launch() throws IOException;
+
+    /**
+     * Launcher for an engine executable on disk
+     *
+     * @param enginePath the path to the executable
+     * @return a launcher that starts the executable with stderr merged into stdout
+     */
+    static EngineLauncher forExecutable(String enginePath) {
+        return () -> {
+            ProcessBuilder processBuilder = new ProcessBuilder(enginePath);
+            processBuilder.redirectErrorStream(true);
+            return processBuilder.start();
+        };
+    }
+}
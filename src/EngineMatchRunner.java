@@ -0,0 +1,570 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays engine-vs-engine matches without a GUI to compare engine settings.
+ *
+ * Two engine configurations (a name, a strength and optionally a launcher
+ * for a different engine) play many games at once, each game on its own
+ * pair of engines leased from StockfishManager. Every opening of the suite
+ * is played twice with colours reversed. Each game has its own clock, is
+ * recorded in a Match and is adjudicated with Position's rules: checkmate,
+ * stalemate, insufficient material, the fifty-move rule, threefold
+ * repetition, flag fall and illegal moves.
+ *
+ * A sequential probability ratio test (SPRT) is evaluated after every game,
+ * and the run stops as soon as it accepts either hypothesis. The result
+ * reports the Elo difference with a 95% error margin and games per hour.
+ */
+public class EngineMatchRunner {
+    private static final int MAX_PLIES = 600;
+    private static final long TIME_MARGIN_MS = 100;
+    private static final AtomicInteger RUN_IDS = new AtomicInteger();
+    private static final List<String> DEFAULT_OPENINGS = Arrays.asList(
+            "e2e4 e7e5 g1f3 b8c6 f1b5",
+            "e2e4 c7c5 g1f3 d7d6 d2d4",
+            "e2e4 e7e6 d2d4 d7d5",
+            "e2e4 c7c6 d2d4 d7d5",
+            "d2d4 d7d5 c2c4 e7e6",
+            "d2d4 g8f6 c2c4 g7g6",
+            "c2c4 e7e5 b1c3 g8f6",
+            "g1f3 d7d5 g2g3 g8f6");
+
+    /**
+     * One side of the match
+     */
+    public static class EngineConfig {
+        private final String name;
+        private final int strength;
+        private final EngineLauncher launcher;
+
+        /**
+         * @param name shown in the results
+         * @param strength the strength level (1-20)
+         * @param launcher starts the engine, or null for the configured Stockfish
+         */
+        public EngineConfig(String name, int strength, EngineLauncher launcher) {
+            this.name = name;
+            this.strength = strength;
+            this.launcher = launcher;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getStrength() {
+            return strength;
+        }
+    }
+
+    /**
+     * Base time plus increment per move
+     */
+    public static class TimeControl {
+        private final long baseMs;
+        private final long incrementMs;
+
+        public TimeControl(long baseMs, long incrementMs) {
+            this.baseMs = baseMs;
+            this.incrementMs = incrementMs;
+        }
+
+        /**
+         * Parse "seconds+increment", e.g. "10+0.1"
+         *
+         * @throws IllegalArgumentException if the text is not a time control
+         */
+        public static TimeControl parse(String text) {
+            String[] parts = text.split("\\+");
+            try {
+                long base = (long) (Double.parseDouble(parts[0]) * 1000);
+                long increment = parts.length > 1 ? (long) (Double.parseDouble(parts[1]) * 1000) : 0;
+                return new TimeControl(base, increment);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid time control: " + text);
+            }
+        }
+
+        /**
+         * Get the time control in Match's "minutes|increment" form
+         */
+        String toMatchFormat() {
+            return (baseMs / 60000) + "|" + (incrementMs / 1000);
+        }
+
+        @Override
+        public String toString() {
+            return (baseMs / 1000.0) + "+" + (incrementMs / 1000.0);
+        }
+    }
+
+    /**
+     * Sequential probability ratio test on the score, H0: elo = elo0 against H1: elo = elo1.
+     * Uses the normal approximation of the log-likelihood ratio over win/draw/loss counts.
+     */
+    public static class Sprt {
+        private final double elo0;
+        private final double elo1;
+        private final double lowerBound;
+        private final double upperBound;
+
+        public Sprt(double elo0, double elo1, double alpha, double beta) {
+            this.elo0 = elo0;
+            this.elo1 = elo1;
+            this.lowerBound = Math.log(beta / (1 - alpha));
+            this.upperBound = Math.log((1 - beta) / alpha);
+        }
+
+        public double llr(long wins, long draws, long losses) {
+            long games = wins + draws + losses;
+            if (games == 0 || wins + losses == 0) return 0;
+
+            double score = (wins + draws / 2.0) / games;
+            double variance = scoreVariance(wins, draws, losses);
+            if (variance <= 0) return 0;
+
+            double score0 = expectedScore(elo0);
+            double score1 = expectedScore(elo1);
+            return games * (score1 - score0) * (2 * score - score0 - score1) / (2 * variance);
+        }
+
+        public double getLowerBound() {
+            return lowerBound;
+        }
+
+        public double getUpperBound() {
+            return upperBound;
+        }
+
+        @Override
+        public String toString() {
+            return "SPRT elo0=" + elo0 + " elo1=" + elo1;
+        }
+    }
+
+    /**
+     * Running totals, from the first engine's point of view
+     */
+    public static class Results {
+        private long wins;
+        private long draws;
+        private long losses;
+        private long elapsedMs;
+        private double llr;
+        private String decision = "continue";
+        private final Map<String, Integer> terminations = new HashMap<>();
+
+        public synchronized long getGames() {
+            return wins + draws + losses;
+        }
+
+        public synchronized long getWins() {
+            return wins;
+        }
+
+        public synchronized long getDraws() {
+            return draws;
+        }
+
+        public synchronized long getLosses() {
+            return losses;
+        }
+
+        public synchronized double getScore() {
+            long games = getGames();
+            return games == 0 ? 0.5 : (wins + draws / 2.0) / games;
+        }
+
+        /**
+         * Get the Elo difference of the first engine over the second
+         */
+        public synchronized double getEloDifference() {
+            return eloFromScore(getScore());
+        }
+
+        /**
+         * Get the half-width of the 95% confidence interval of the Elo difference
+         */
+        public synchronized double getEloErrorMargin() {
+            long games = getGames();
+            if (games == 0) return Double.POSITIVE_INFINITY;
+            double margin = 1.96 * Math.sqrt(scoreVariance(wins, draws, losses) / games);
+            double score = getScore();
+            return (eloFromScore(score + margin) - eloFromScore(score - margin)) / 2;
+        }
+
+        public synchronized double getLlr() {
+            return llr;
+        }
+
+        /**
+         * Get the SPRT outcome: "H0 accepted", "H1 accepted" or "continue"
+         */
+        public synchronized String getDecision() {
+            return decision;
+        }
+
+        public synchronized double getGamesPerHour() {
+            return elapsedMs == 0 ? 0 : getGames() * 3600000.0 / elapsedMs;
+        }
+
+        /**
+         * Get how many games ended in each way, e.g. "checkmate" or "time forfeit"
+         */
+        public synchronized Map<String, Integer> getTerminations() {
+            return new HashMap<>(terminations);
+        }
+
+        synchronized void add(double score, String termination, Sprt sprt, long elapsedMs) {
+            if (score == 1) wins++;
+            else if (score == 0) losses++;
+            else draws++;
+            terminations.merge(termination, 1, Integer::sum);
+            this.elapsedMs = elapsedMs;
+            if (sprt != null) {
+                llr = sprt.llr(wins, draws, losses);
+                if (llr >= sprt.getUpperBound()) decision = "H1 accepted";
+                else if (llr <= sprt.getLowerBound()) decision = "H0 accepted";
+            }
+        }
+
+        synchronized boolean isDecided() {
+            return !decision.equals("continue");
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("Games: %d (+%d -%d =%d)  Score: %.1f%%  Elo: %+.1f +/- %.1f  LLR: %.2f (%s)  %.0f games/hour",
+                    getGames(), wins, losses, draws, getScore() * 100, getEloDifference(), getEloErrorMargin(),
+                    llr, decision, getGamesPerHour());
+        }
+    }
+
+    private final EngineConfig first;
+    private final EngineConfig second;
+    private final TimeControl timeControl;
+    private final int concurrency;
+    private final List<String> openings;
+    private Sprt sprt;
+    private volatile boolean stopRequested;
+
+    /**
+     * Creates a runner
+     *
+     * @param first the engine whose strength is measured
+     * @param second the reference engine
+     * @param timeControl the clock for each side of each game
+     * @param concurrency the number of games played at once
+     * @param openings opening lines, each a FEN or a list of UCI moves from the start position
+     */
+    public EngineMatchRunner(EngineConfig first, EngineConfig second, TimeControl timeControl,
+                             int concurrency, List<String> openings) {
+        this.first = first;
+        this.second = second;
+        this.timeControl = timeControl;
+        this.concurrency = Math.max(1, concurrency);
+        this.openings = openings == null || openings.isEmpty() ? DEFAULT_OPENINGS : openings;
+    }
+
+    /**
+     * Stop early once the given SPRT accepts a hypothesis
+     */
+    public void setSprt(Sprt sprt) {
+        this.sprt = sprt;
+    }
+
+    /**
+     * Play up to the given number of games
+     *
+     * @param maxGames the game limit; rounded up to an even number so every opening is played with both colours
+     * @param progress called after every game with the running totals, may be null
+     * @return the results, or null if no engines could be started
+     */
+    public Results run(int maxGames, java.util.function.Consumer<Results> progress) throws InterruptedException {
+        // Distinct purposes, so configs with the same name never share (or mix up) engine processes
+        int runId = RUN_IDS.incrementAndGet();
+        EnginePool firstPool = new EnginePool("match-" + runId + "-a-" + first.getName(), concurrency, first.launcher);
+        EnginePool secondPool = new EnginePool("match-" + runId + "-b-" + second.getName(), concurrency, second.launcher);
+        try {
+            if (firstPool.size() == 0 || secondPool.size() == 0) {
+                System.err.println("Could not start the engines for the match");
+                return null;
+            }
+
+            Results results = new Results();
+            long start = System.currentTimeMillis();
+            int games = maxGames + (maxGames % 2);
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(firstPool.size(), secondPool.size()), r -> {
+                Thread thread = new Thread(r, "engine-match");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            for (int i = 0; i < games; i++) {
+                int gameNumber = i + 1;
+                String opening = openings.get((i / 2) % openings.size());
+                boolean firstIsWhite = i % 2 == 0;
+                executor.execute(() -> {
+                    if (stopRequested || results.isDecided()) return;
+                    double score = playLeased(gameNumber, opening, firstIsWhite, firstPool, secondPool, results, start);
+                    if (score >= 0 && progress != null) {
+                        progress.accept(results);
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            return results;
+        } finally {
+            firstPool.close();
+            secondPool.close();
+        }
+    }
+
+    /**
+     * Ask a running match to stop after the games in progress
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    private double playLeased(int gameNumber, String opening, boolean firstIsWhite,
+                              EnginePool firstPool, EnginePool secondPool, Results results, long start) {
+        StockfishEngine firstEngine = null;
+        StockfishEngine secondEngine = null;
+        try {
+            firstEngine = firstPool.acquire();
+            secondEngine = secondPool.acquire();
+            if (firstEngine == null || secondEngine == null) {
+                System.err.println("Skipping game " + gameNumber + ": no engine left to play it");
+                return -1;
+            }
+            prepare(firstEngine, first);
+            prepare(secondEngine, second);
+
+            String[] termination = new String[1];
+            double whiteScore = firstIsWhite
+                    ? playGame(gameNumber, opening, firstEngine, first, secondEngine, second, termination)
+                    : playGame(gameNumber, opening, secondEngine, second, firstEngine, first, termination);
+            double score = firstIsWhite ? whiteScore : 1 - whiteScore;
+            results.add(score, termination[0], sprt, System.currentTimeMillis() - start);
+            return score;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Skipping game " + gameNumber + " with bad opening \"" + opening + "\": " + e.getMessage());
+            return -1;
+        } finally {
+            firstPool.release(firstEngine);
+            secondPool.release(secondEngine);
+        }
+    }
+
+    private static void prepare(StockfishEngine engine, EngineConfig config) {
+        if (engine.getEngineStrength() != config.getStrength()) {
+            engine.setEngineStrength(config.getStrength());
+        }
+        engine.newGame();
+    }
+
+    /**
+     * Play one game
+     *
+     * @return white's score: 1, 0.5 or 0
+     */
+    private double playGame(int gameNumber, String opening, StockfishEngine whiteEngine, EngineConfig white,
+                            StockfishEngine blackEngine, EngineConfig black, String[] termination) {
+        Player whitePlayer = new Player(white.getName(), 0, "Engine");
+        Player blackPlayer = new Player(black.getName(), 0, "Engine");
+        Match match = new Match(gameNumber, whitePlayer, blackPlayer, timeControl.toMatchFormat());
+        match.setStatus("Ongoing");
+
+        Position position = openingPosition(opening);
+        Map<String, Integer> seen = new HashMap<>();
+        long[] clock = {timeControl.baseMs, timeControl.baseMs}; // white, black
+        SimpleDateFormat timestamp = new SimpleDateFormat("HH:mm:ss");
+
+        for (int ply = 0; ; ply++) {
+            boolean whiteToMove = position.isWhiteToMove();
+            String result = adjudicate(position, seen, ply, termination);
+            if (result != null) {
+                match.setStatus("Completed (" + result + ", " + termination[0] + ")");
+                return scoreOf(result);
+            }
+
+            StockfishEngine engine = whiteToMove ? whiteEngine : blackEngine;
+            SearchLimits limits = SearchLimits.clock(clock[0], clock[1], timeControl.incrementMs, timeControl.incrementMs);
+            long moveStart = System.currentTimeMillis();
+            String move = engine.getBestMove(position.toFen(), limits, null);
+            int side = whiteToMove ? 0 : 1;
+            clock[side] -= System.currentTimeMillis() - moveStart;
+
+            if (clock[side] + TIME_MARGIN_MS < 0) {
+                termination[0] = "time forfeit";
+                return finish(match, whiteToMove ? 0 : 1, termination[0]);
+            }
+            clock[side] += timeControl.incrementMs;
+
+            if (move == null || !position.isLegal(move)) {
+                termination[0] = "illegal move";
+                System.err.println("Game " + gameNumber + ": " + (whiteToMove ? white : black).getName()
+                        + " played illegal move " + move + " in " + position.toFen());
+                return finish(match, whiteToMove ? 0 : 1, termination[0]);
+            }
+
+            int piece = position.pieceAt(Position.square(move.substring(0, 2)));
+            String pieceCode = (piece > 0 ? "w" : "b") + " PNBRQK".charAt(Math.abs(piece));
+            match.recordMove(new Move(move.substring(0, 2), move.substring(2, 4), pieceCode, Move.promotionOf(move),
+                    timestamp.format(new Date()), true, whiteToMove ? whitePlayer : blackPlayer));
+            position = position.play(move);
+        }
+    }
+
+    private static double finish(Match match, double whiteScore, String termination) {
+        String result = whiteScore == 1 ? "1-0" : whiteScore == 0 ? "0-1" : "1/2-1/2";
+        match.setStatus("Completed (" + result + ", " + termination + ")");
+        return whiteScore;
+    }
+
+    /**
+     * Decide whether the game is over before the side to move plays
+     *
+     * @return "1-0", "0-1" or "1/2-1/2", or null if the game goes on
+     */
+    private static String adjudicate(Position position, Map<String, Integer> seen, int ply, String[] termination) {
+        if (position.legalMoves().isEmpty()) {
+            if (position.isInCheck()) {
+                termination[0] = "checkmate";
+                return position.isWhiteToMove() ? "0-1" : "1-0";
+            }
+            termination[0] = "stalemate";
+            return "1/2-1/2";
+        }
+        if (position.hasInsufficientMaterial()) {
+            termination[0] = "insufficient material";
+            return "1/2-1/2";
+        }
+        if (position.getHalfmoveClock() >= 100) {
+            termination[0] = "fifty-move rule";
+            return "1/2-1/2";
+        }
+        if (seen.merge(position.repetitionKey(), 1, Integer::sum) >= 3) {
+            termination[0] = "threefold repetition";
+            return "1/2-1/2";
+        }
+        if (ply >= MAX_PLIES) {
+            termination[0] = "move limit";
+            return "1/2-1/2";
+        }
+        return null;
+    }
+
+    private static double scoreOf(String result) {
+        return result.equals("1-0") ? 1 : result.equals("0-1") ? 0 : 0.5;
+    }
+
+    /**
+     * Build the start position of an opening line: a FEN, or UCI moves from the start position
+     */
+    static Position openingPosition(String opening) {
+        String line = opening.trim();
+        if (line.contains("/")) {
+            return Position.fromFen(line);
+        }
+        Position position = Position.startPosition();
+        if (line.isEmpty()) return position;
+        for (String move : line.split("\\s+")) {
+            if (!position.isLegal(move)) {
+                throw new IllegalArgumentException("illegal opening move " + move);
+            }
+            position = position.play(move);
+        }
+        return position;
+    }
+
+    static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    static double eloFromScore(double score) {
+        double clamped = Math.max(1e-6, Math.min(1 - 1e-6, score));
+        return -400 * Math.log10(1 / clamped - 1) + 0.0; // no "-0.0" for an even score
+    }
+
+    /**
+     * Per-game variance of the score
+     */
+    static double scoreVariance(long wins, long draws, long losses) {
+        long games = wins + draws + losses;
+        if (games == 0) return 0;
+        double score = (wins + draws / 2.0) / games;
+        return (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2) + losses * Math.pow(score, 2)) / games;
+    }
+
+    /**
+     * Run a match from the command line.
+     *
+     * Usage: EngineMatchRunner [games] [concurrency] [time-control] [strength-a] [strength-b] [openings-file]
+     * e.g. "EngineMatchRunner 2000 8 10+0.1 20 15". The SPRT bounds default to elo0=0, elo1=5,
+     * alpha=beta=0.05 and can be set with -Dchess.sprt=elo0:elo1:alpha:beta.
+     */
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors() / 2;
+        TimeControl timeControl = TimeControl.parse(args.length > 2 ? args[2] : "10+0.1");
+        int strengthA = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int strengthB = args.length > 4 ? Integer.parseInt(args[4]) : 15;
+        List<String> openings = args.length > 5 ? readOpenings(args[5]) : null;
+
+        String[] sprtArgs = System.getProperty("chess.sprt", "0:5:0.05:0.05").split(":");
+        Sprt sprt = new Sprt(Double.parseDouble(sprtArgs[0]), Double.parseDouble(sprtArgs[1]),
+                Double.parseDouble(sprtArgs[2]), Double.parseDouble(sprtArgs[3]));
+
+        EngineMatchRunner runner = new EngineMatchRunner(
+                new EngineConfig("skill" + strengthA, strengthA, null),
+                new EngineConfig("skill" + strengthB, strengthB, null),
+                timeControl, concurrency, openings);
+        runner.setSprt(sprt);
+
+        System.out.println("Playing up to " + games + " games at " + timeControl + ", " + concurrency
+                + " at a time, " + sprt);
+        Results results = runner.run(games, r -> {
+            if (r.getGames() % 10 == 0) {
+                System.out.println(r);
+            }
+        });
+        if (results != null) {
+            System.out.println("Final: " + results);
+            System.out.println("Terminations: " + results.getTerminations());
+        }
+        StockfishManager.getInstance().shutdown();
+    }
+
+    private static List<String> readOpenings(String file) throws IOException {
+        List<String> openings = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    openings.add(line);
+                }
+            }
+        }
+        return openings;
+    }
+}
@@ -0,0 +1,80 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures our own per-request overhead (StockfishManager, EnginePool,
+ * StockfishEngine I/O and parsing) against a stand-in engine, so it can be
+ * run on machines without the Stockfish binary.
+ *
+ * Run with: java -cp build EngineOverheadBenchmark [requests] [engines] [latency-model | session-file]
+ * e.g. "20000 4 fixed:0" or "500 2 recordings/session-1.uci"
+ */
+public class EngineOverheadBenchmark {
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int engines = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        String source = args.length > 2 ? args[2] : "fixed:0";
+
+        StockfishManager manager = StockfishManager.getInstance();
+        File sessionFile = new File(source);
+        if (sessionFile.isFile()) {
+            manager.setEngineLauncher(ReplayUciEngine.launcher(sessionFile, 0));
+        } else {
+            // movetime is ignored so only the modelled latency and our overhead remain
+            manager.setEngineLauncher(SyntheticUciEngine.launcher(SyntheticUciEngine.LatencyModel.parse(source), 0, 42L));
+        }
+
+        EnginePool pool = new EnginePool("bench", engines);
+        ExecutorService executor = Executors.newFixedThreadPool(pool.size());
+        try {
+            run(pool, executor, Math.max(1, requests / 10));
+            List<Long> latencies = run(pool, executor, requests);
+            report(source, pool.size(), latencies);
+        } finally {
+            executor.shutdownNow();
+            pool.close();
+            manager.shutdown();
+        }
+    }
+
+    private static List<Long> run(EnginePool pool, ExecutorService executor, int requests) throws Exception {
+        List<Future<Long>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            futures.add(executor.submit(() -> {
+                StockfishEngine engine = pool.acquire();
+                if (engine == null) throw new IllegalStateException("No engine could be started");
+                try {
+                    long begin = System.nanoTime();
+                    engine.getBestMove(START_FEN, 1);
+                    return System.nanoTime() - begin;
+                } finally {
+                    pool.release(engine);
+                }
+            }));
+        }
+        List<Long> latencies = new ArrayList<>();
+        for (Future<Long> future : futures) {
+            latencies.add(future.get());
+        }
+        latencies.add(System.nanoTime() - start); // wall clock, removed in report
+        return latencies;
+    }
+
+    private static void report(String source, int engines, List<Long> latencies) {
+        long wall = latencies.remove(latencies.size() - 1);
+        Collections.sort(latencies);
+        int n = latencies.size();
+        System.out.printf("source=%s engines=%d requests=%d%n", source, engines, n);
+        System.out.printf("throughput %.0f requests/s%n", n / (wall / 1e9));
+        System.out.printf("latency p50 %.1f us, p95 %.1f us, p99 %.1f us%n",
+                latencies.get(n / 2) / 1e3, latencies.get(n * 95 / 100) / 1e3, latencies.get(n * 99 / 100) / 1e3);
+    }
+}
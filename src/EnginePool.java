@@ -0,0 +1,135 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of engines leased from StockfishManager for parallel work.
+ * Each engine is registered with the manager under "name-index", so the
+ * pool's processes are supervised and share the resource budget like any
+ * other engine. A pool never shares a process with another pool or client:
+ * a purpose that is already running is left out of the pool. Callers
+ * acquire an engine, use it exclusively and release it.
+ * A pool whose engines could not be started (or were all lost) hands out
+ * null rather than making callers wait for an engine that never comes.
+ */
+public class EnginePool {
+    private final String name;
+    private final EngineLauncher launcher;
+    private final List<String> purposes = new ArrayList<>();
+    private final BlockingQueue<StockfishEngine> idle;
+    private final Map<StockfishEngine, String> purposeOf = new ConcurrentHashMap<>();
+    // Engines that are idle or leased; acquire stops waiting when this reaches zero
+    private final AtomicInteger live = new AtomicInteger();
+
+    /**
+     * Creates a pool and starts its engines
+     *
+     * @param name the prefix for the engine purposes
+     * @param size the number of engine processes to start
+     */
+    public EnginePool(String name, int size) {
+        this(name, size, null);
+    }
+
+    /**
+     * Creates a pool of engines started by a specific launcher
+     *
+     * @param name the prefix for the engine purposes
+     * @param size the number of engine processes to start
+     * @param launcher starts each engine process, or null for the manager's configured engine
+     */
+    public EnginePool(String name, int size, EngineLauncher launcher) {
+        this.name = name;
+        this.launcher = launcher;
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, size), true);
+
+        StockfishManager manager = StockfishManager.getInstance();
+        for (int i = 0; i < size; i++) {
+            String purpose = name + "-" + i;
+            StockfishEngine engine = manager.startEngine(purpose, launcher);
+            if (engine != null) {
+                purposes.add(purpose);
+                purposeOf.put(engine, purpose);
+                idle.add(engine);
+                live.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Take an engine for exclusive use, waiting until one is free
+     *
+     * @return an engine that must be handed back with release, or null if the pool has no engines
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public StockfishEngine acquire() throws InterruptedException {
+        while (live.get() > 0) {
+            StockfishEngine engine = idle.poll(250, TimeUnit.MILLISECONDS);
+            if (engine != null) return engine;
+        }
+        return idle.poll();
+    }
+
+    /**
+     * Take an engine, waiting at most the given time
+     *
+     * @param timeoutMs the maximum time to wait in milliseconds
+     * @return an engine, or null if none became free in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public StockfishEngine acquire(long timeoutMs) throws InterruptedException {
+        return idle.poll(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Return an engine to the pool
+     *
+     * @param engine the engine obtained from acquire
+     */
+    public void release(StockfishEngine engine) {
+        if (engine == null) return;
+
+        if (engine.isClosed()) {
+            // The supervisor gave up on this process; lease a fresh one under the same purpose
+            String purpose = purposeOf.remove(engine);
+            engine = purpose != null ? StockfishManager.getInstance().getEngine(purpose, launcher) : null;
+            if (engine == null) {
+                System.err.println("Engine pool " + name + " lost an engine that could not be restarted");
+                live.decrementAndGet();
+                return;
+            }
+            purposeOf.put(engine, purpose);
+        }
+        idle.offer(engine);
+    }
+
+    /**
+     * Get the number of engines that started and are still running
+     */
+    public int size() {
+        return live.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Stop all engines of the pool
+     */
+    public void close() {
+        StockfishManager manager = StockfishManager.getInstance();
+        for (String purpose : purposes) {
+            manager.closeEngine(purpose);
+        }
+        purposes.clear();
+        purposeOf.clear();
+        idle.clear();
+        live.set(0);
+    }
+}
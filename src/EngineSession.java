@@ -0,0 +1,101 @@
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A logical engine for one client (a game window, a training board).
+ * Requests run on processes shared through an EngineSessionMultiplexer;
+ * the session only keeps its own settings and the last position it asked about.
+ */
+public class EngineSession implements ChessEngine {
+    private final EngineSessionMultiplexer multiplexer;
+    private final String name;
+    private volatile int engineStrength = 20;
+    private volatile String lastFen;
+    private volatile boolean closed;
+
+    EngineSession(EngineSessionMultiplexer multiplexer, String name) {
+        this.multiplexer = multiplexer;
+        this.name = name;
+    }
+
+    @Override
+    public String getBestMove(String fen, int timeInMs) {
+        lastFen = fen;
+        return multiplexer.run(this, null, engine -> engine.getBestMove(fen, timeInMs));
+    }
+
+    @Override
+    public String getBestMove(String fen, SearchLimits limits, Predicate<UciInfo> progress) {
+        lastFen = fen;
+        return multiplexer.run(this, null, engine -> engine.getBestMove(fen, limits, progress));
+    }
+
+    @Override
+    public String getHint(String fen) {
+        lastFen = fen;
+        return multiplexer.run(this, null, engine -> engine.getHint(fen));
+    }
+
+    @Override
+    public Map<String, Object> analyzePosition(String fen, int depth) {
+        lastFen = fen;
+        return multiplexer.run(this, null, engine -> engine.analyzePosition(fen, depth));
+    }
+
+    @Override
+    public boolean isValidMove(String fen, String move) {
+        return multiplexer.run(this, false, engine -> engine.isValidMove(fen, move));
+    }
+
+    @Override
+    public List<String> getLegalMoves(String fen) {
+        return multiplexer.run(this, null, engine -> engine.getLegalMoves(fen));
+    }
+
+    @Override
+    public void setEngineStrength(int strength) {
+        // Applied to a process when this session next uses it
+        engineStrength = Math.max(1, Math.min(20, strength));
+    }
+
+    public int getEngineStrength() {
+        return engineStrength;
+    }
+
+    /**
+     * Get the last position this session asked about
+     *
+     * @return the FEN, or null if the session has not made a request yet
+     */
+    public String getLastFen() {
+        return lastFen;
+    }
+
+    /**
+     * Get the multiplexer whose processes this session's requests run on
+     */
+    EngineSessionMultiplexer getMultiplexer() {
+        return multiplexer;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isReady() {
+        return !closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        multiplexer.closeSession(this);
+    }
+
+    @Override
+    public String toString() {
+        return "EngineSession " + name;
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Shares a few physical engine processes among many logical sessions.
+ *
+ * Every game window or training board gets its own EngineSession, but the
+ * sessions take turns on a small, fixed pool of processes: each request
+ * borrows a process for its duration and gives it back. When a process
+ * switches from one session to another it is sent "ucinewgame" and the
+ * session's strength is re-applied, so sessions never see each other's
+ * search state. Memory therefore stays flat however many windows are open.
+ */
+public class EngineSessionMultiplexer {
+    private static final String POOL_NAME = "shared";
+
+    private final int processCount;
+    private final Set<EngineSession> sessions = ConcurrentHashMap.newKeySet();
+    private final Map<StockfishEngine, EngineSession> lastSession = new ConcurrentHashMap<>();
+    private final AtomicInteger sessionCounter = new AtomicInteger();
+    private EnginePool pool;
+
+    /**
+     * Creates a multiplexer
+     *
+     * @param processCount the number of physical engine processes to share
+     */
+    public EngineSessionMultiplexer(int processCount) {
+        this.processCount = Math.max(1, processCount);
+    }
+
+    /**
+     * Open a new logical session
+     *
+     * @param purpose what the session is for, e.g. "match" or "training"
+     * @return the session, or null if no engine process could be started
+     */
+    public synchronized EngineSession openSession(String purpose) {
+        if (pool == null) {
+            pool = new EnginePool(POOL_NAME, processCount);
+            if (pool.size() == 0) {
+                pool = null;
+                return null;
+            }
+        }
+
+        EngineSession session = new EngineSession(this, purpose + "#" + sessionCounter.incrementAndGet());
+        sessions.add(session);
+        return session;
+    }
+
+    /**
+     * Detach a session; the processes are stopped once no session is left
+     */
+    synchronized void closeSession(EngineSession session) {
+        if (!sessions.remove(session)) return;
+
+        lastSession.values().remove(session);
+        if (sessions.isEmpty() && pool != null) {
+            pool.close();
+            pool = null;
+            lastSession.clear();
+        }
+    }
+
+    /**
+     * Run a request for a session on whichever process is free next
+     *
+     * @param session the session making the request
+     * @param fallback returned if no process is available
+     * @param request the work to do on the borrowed process
+     * @return the request result, or the fallback
+     */
+    <T> T run(EngineSession session, T fallback, Function<StockfishEngine, T> request) {
+        EnginePool current;
+        synchronized (this) {
+            current = pool;
+        }
+        if (current == null || !sessions.contains(session)) return fallback;
+
+        StockfishEngine engine;
+        try {
+            engine = current.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return fallback;
+        }
+        if (engine == null) return fallback;
+
+        try {
+            if (lastSession.get(engine) != session) {
+                // Switching sessions: drop the previous game's state and restore this session's settings
+                engine.newGame();
+                if (engine.getEngineStrength() != session.getEngineStrength()) {
+                    engine.setEngineStrength(session.getEngineStrength());
+                }
+                lastSession.put(engine, session);
+            }
+            return request.apply(engine);
+        } finally {
+            current.release(engine);
+        }
+    }
+
+    /**
+     * Get the number of open sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Get the number of physical processes the sessions share
+     */
+    public int getProcessCount() {
+        return processCount;
+    }
+
+    /**
+     * Close all sessions and stop the shared processes
+     */
+    public synchronized void shutdown() {
+        sessions.clear();
+        lastSession.clear();
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Watches Stockfish processes and restarts them when they die.
+ *
+ * When a supervised process exits without the engine having been closed,
+ * the engine is marked unhealthy and restarted with exponential backoff.
+ * Requests that were in flight on the dead process wait for the restart
+ * and are replayed by StockfishEngine. Engines that keep failing are
+ * abandoned and handed to the abandon handler so the owner can drop them.
+ */
+public class EngineSupervisor {
+    private static final long INITIAL_BACKOFF_MS = 250;
+    private static final long MAX_BACKOFF_MS = 30000;
+    private static final int MAX_RESTART_ATTEMPTS = 6;
+    // A process that survives this long counts as recovered and resets the backoff
+    private static final long STABLE_PERIOD_MS = 60000;
+    private static final int MAX_INCIDENTS = 200;
+
+    public enum IncidentType { CRASHED, RESTARTED, RESTART_FAILED, ABANDONED }
+
+    /**
+     * A single supervision event, kept for reporting
+     */
+    public static class Incident {
+        private final long timestamp;
+        private final String purpose;
+        private final IncidentType type;
+        private final int attempt;
+        private final String detail;
+
+        Incident(String purpose, IncidentType type, int attempt, String detail) {
+            this.timestamp = System.currentTimeMillis();
+            this.purpose = purpose;
+            this.type = type;
+            this.attempt = attempt;
+            this.detail = detail;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getPurpose() {
+            return purpose;
+        }
+
+        public IncidentType getType() {
+            return type;
+        }
+
+        public int getAttempt() {
+            return attempt;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+
+        @Override
+        public String toString() {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(timestamp))
+                    + " [" + purpose + "] " + type + " (attempt " + attempt + "): " + detail;
+        }
+    }
+
+    private static class WatchState {
+        volatile int failures;
+        volatile long startedAt = System.currentTimeMillis();
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final Map<StockfishEngine, WatchState> watched = new ConcurrentHashMap<>();
+    private final List<Incident> incidents = new ArrayList<>();
+    private final List<Consumer<Incident>> listeners = new CopyOnWriteArrayList<>();
+    private final BiConsumer<String, StockfishEngine> abandonHandler;
+
+    /**
+     * Creates a new supervisor
+     *
+     * @param abandonHandler called with the purpose and engine when an engine is given up on
+     */
+    public EngineSupervisor(BiConsumer<String, StockfishEngine> abandonHandler) {
+        this.abandonHandler = abandonHandler;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "engine-supervisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start supervising an engine's current process
+     *
+     * @param purpose the purpose the engine is registered under
+     * @param engine the engine to watch
+     */
+    public void watch(String purpose, StockfishEngine engine) {
+        Process process = engine.getProcess();
+        if (process == null) {
+            return;
+        }
+
+        engine.setSupervisor(this);
+        WatchState state = watched.computeIfAbsent(engine, e -> new WatchState());
+        state.startedAt = System.currentTimeMillis();
+        process.onExit().thenRun(() -> handleExit(purpose, engine, process));
+    }
+
+    private void handleExit(String purpose, StockfishEngine engine, Process process) {
+        WatchState state = watched.get(engine);
+        if (state == null || engine.isClosed()) {
+            // Closed on purpose
+            watched.remove(engine);
+            return;
+        }
+        if (engine.getProcess() != process) {
+            // An old process that has already been replaced
+            return;
+        }
+
+        engine.markCrashed();
+        if (System.currentTimeMillis() - state.startedAt > STABLE_PERIOD_MS) {
+            state.failures = 0;
+        }
+        state.failures++;
+
+        report(new Incident(purpose, IncidentType.CRASHED, state.failures,
+                "process exited with code " + process.exitValue()));
+        scheduleRestart(purpose, engine, state);
+    }
+
+    private void scheduleRestart(String purpose, StockfishEngine engine, WatchState state) {
+        if (state.failures > MAX_RESTART_ATTEMPTS) {
+            abandon(purpose, engine, "gave up after " + MAX_RESTART_ATTEMPTS + " restart attempts");
+            return;
+        }
+
+        long delay = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << (state.failures - 1));
+        scheduler.schedule(() -> attemptRestart(purpose, engine, state), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void attemptRestart(String purpose, StockfishEngine engine, WatchState state) {
+        if (engine.isClosed()) {
+            watched.remove(engine);
+            return;
+        }
+
+        if (engine.restart()) {
+            report(new Incident(purpose, IncidentType.RESTARTED, state.failures, "engine process restarted"));
+            watch(purpose, engine);
+        } else {
+            report(new Incident(purpose, IncidentType.RESTART_FAILED, state.failures, "engine did not come up"));
+            state.failures++;
+            scheduleRestart(purpose, engine, state);
+        }
+    }
+
+    private void abandon(String purpose, StockfishEngine engine, String reason) {
+        watched.remove(engine);
+        report(new Incident(purpose, IncidentType.ABANDONED, MAX_RESTART_ATTEMPTS, reason));
+        engine.close();
+        if (abandonHandler != null) {
+            abandonHandler.accept(purpose, engine);
+        }
+    }
+
+    private void report(Incident incident) {
+        synchronized (incidents) {
+            if (incidents.size() >= MAX_INCIDENTS) {
+                incidents.remove(0);
+            }
+            incidents.add(incident);
+        }
+        System.err.println("Engine incident: " + incident);
+        for (Consumer<Incident> listener : listeners) {
+            listener.accept(incident);
+        }
+    }
+
+    /**
+     * Register a listener that is told about every incident
+     *
+     * @param listener the listener to add
+     */
+    public void addIncidentListener(Consumer<Incident> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Get the most recent incidents, oldest first
+     *
+     * @return a copy of the incident history
+     */
+    public List<Incident> getIncidents() {
+        synchronized (incidents) {
+            return new ArrayList<>(incidents);
+        }
+    }
+
+    /**
+     * Check whether an engine is currently running on a live process
+     *
+     * @param engine the engine to check
+     * @return true if the engine is supervised and not restarting
+     */
+    public boolean isHealthy(StockfishEngine engine) {
+        Process process = engine.getProcess();
+        return watched.containsKey(engine) && !engine.isClosed() && process != null && process.isAlive();
+    }
+
+    /**
+     * Stop supervising; pending restarts are cancelled
+     */
+    public void shutdown() {
+        watched.clear();
+        scheduler.shutdownNow();
+    }
+}
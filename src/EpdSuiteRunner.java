@@ -0,0 +1,463 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs EPD test suites to measure how well an engine configuration solves positions.
+ *
+ * Each EPD record gives a position and its expected answer as "bm" (best
+ * moves, any of which solves it) and/or "am" (moves to avoid). The
+ * positions are spread over a set of engines, and for every position the
+ * runner records whether the final move solved it and the time to
+ * solution: how long into the search the engine settled on a solving move
+ * and kept it to the end. Runs can be saved and compared with each other.
+ */
+public class EpdSuiteRunner {
+    private static final Pattern OPERATION = Pattern.compile("(\\w+)\\s*((?:\"[^\"]*\"|[^;])*);");
+
+    /**
+     * One position of a suite
+     */
+    public static class EpdPosition {
+        private final String id;
+        private final String fen;
+        private final Set<String> bestMoves;
+        private final Set<String> avoidMoves;
+
+        EpdPosition(String id, String fen, Set<String> bestMoves, Set<String> avoidMoves) {
+            this.id = id;
+            this.fen = fen;
+            this.bestMoves = bestMoves;
+            this.avoidMoves = avoidMoves;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getFen() {
+            return fen;
+        }
+
+        /**
+         * Get the "bm" moves in UCI notation; empty if the record only has "am"
+         */
+        public Set<String> getBestMoves() {
+            return bestMoves;
+        }
+
+        /**
+         * Get the "am" moves in UCI notation
+         */
+        public Set<String> getAvoidMoves() {
+            return avoidMoves;
+        }
+
+        /**
+         * Check whether a move answers the position
+         */
+        public boolean isSolution(String move) {
+            if (move == null || avoidMoves.contains(move)) return false;
+            return bestMoves.isEmpty() || bestMoves.contains(move);
+        }
+    }
+
+    /**
+     * The outcome of one position
+     */
+    public static class PositionResult {
+        private final String id;
+        private final boolean solved;
+        private final long timeToSolutionMs;
+        private final String move;
+
+        PositionResult(String id, boolean solved, long timeToSolutionMs, String move) {
+            this.id = id;
+            this.solved = solved;
+            this.timeToSolutionMs = timeToSolutionMs;
+            this.move = move;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public boolean isSolved() {
+            return solved;
+        }
+
+        /**
+         * Get the time from the start of the search until the engine settled on a solving move, or -1 if unsolved
+         */
+        public long getTimeToSolutionMs() {
+            return timeToSolutionMs;
+        }
+
+        public String getMove() {
+            return move;
+        }
+    }
+
+    /**
+     * The results of a suite run, in suite order
+     */
+    public static class RunReport {
+        private final String name;
+        private final Map<String, PositionResult> results;
+        private final long elapsedMs;
+
+        RunReport(String name, Map<String, PositionResult> results, long elapsedMs) {
+            this.name = name;
+            this.results = Collections.unmodifiableMap(results);
+            this.elapsedMs = elapsedMs;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Map<String, PositionResult> getResults() {
+            return results;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        public int getSolvedCount() {
+            int solved = 0;
+            for (PositionResult result : results.values()) {
+                if (result.isSolved()) solved++;
+            }
+            return solved;
+        }
+
+        /**
+         * Get the mean time to solution over the solved positions, or 0 if none were solved
+         */
+        public double getAverageTimeToSolutionMs() {
+            long total = 0;
+            int solved = 0;
+            for (PositionResult result : results.values()) {
+                if (result.isSolved()) {
+                    total += result.getTimeToSolutionMs();
+                    solved++;
+                }
+            }
+            return solved == 0 ? 0 : (double) total / solved;
+        }
+
+        /**
+         * Save the run so a later run can be compared with it
+         *
+         * @throws IOException if the file cannot be written
+         */
+        public void save(File file) throws IOException {
+            try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+                out.println("# " + name);
+                for (PositionResult result : results.values()) {
+                    out.println(result.getId() + "\t" + (result.isSolved() ? "solved" : "failed") + "\t"
+                            + result.getTimeToSolutionMs() + "\t" + result.getMove());
+                }
+            }
+        }
+
+        /**
+         * Load a run written by save
+         *
+         * @throws IOException if the file cannot be read
+         */
+        public static RunReport load(File file) throws IOException {
+            String name = file.getName();
+            Map<String, PositionResult> results = new LinkedHashMap<>();
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("# ")) {
+                        name = line.substring(2);
+                        continue;
+                    }
+                    String[] fields = line.split("\t");
+                    if (fields.length < 4) continue;
+                    try {
+                        results.put(fields[0], new PositionResult(fields[0], fields[1].equals("solved"),
+                                Long.parseLong(fields[2]), fields[3]));
+                    } catch (NumberFormatException e) {
+                        System.err.println("Skipping bad line in " + file + ": " + line);
+                    }
+                }
+            }
+            return new RunReport(name, results, 0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: solved %d/%d, average time to solution %.0f ms, %.1f s total",
+                    name, getSolvedCount(), results.size(), getAverageTimeToSolutionMs(), elapsedMs / 1000.0);
+        }
+    }
+
+    private final List<ChessEngine> engines;
+    private final SearchLimits limits;
+
+    /**
+     * Creates a runner
+     *
+     * @param engines the engines to spread the positions over; each is used by one position at a time
+     * @param limits the search limits for every position, normally a movetime
+     */
+    public EpdSuiteRunner(List<? extends ChessEngine> engines, SearchLimits limits) {
+        this.engines = new ArrayList<>(engines);
+        this.limits = limits;
+    }
+
+    /**
+     * Read an EPD file. Records that cannot be read, or whose moves are not
+     * legal in their position, are reported and skipped.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    public static List<EpdPosition> loadSuite(File file) throws IOException {
+        List<EpdPosition> suite = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                try {
+                    suite.add(parseEpd(line, file.getName() + ":" + lineNumber));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Skipping EPD record at " + file.getName() + ":" + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        return suite;
+    }
+
+    /**
+     * Parse one EPD record
+     *
+     * @param line the record: four FEN fields followed by operations such as "bm Nf3; id \"x\";"
+     * @param defaultId the id to use if the record has none
+     * @throws IllegalArgumentException if the position or its moves are invalid
+     */
+    public static EpdPosition parseEpd(String line, String defaultId) {
+        String[] fields = line.split("\\s+", 5);
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("too few fields");
+        }
+        String operations = fields.length > 4 ? fields[4] : "";
+        Map<String, String> ops = new LinkedHashMap<>();
+        Matcher matcher = OPERATION.matcher(operations);
+        while (matcher.find()) {
+            ops.put(matcher.group(1), matcher.group(2).trim());
+        }
+
+        String halfmove = ops.getOrDefault("hmvc", "0");
+        String fullmove = ops.getOrDefault("fmvn", "1");
+        Position position = Position.fromFen(fields[0] + " " + fields[1] + " " + fields[2] + " " + fields[3]
+                + " " + halfmove + " " + fullmove);
+
+        Set<String> bestMoves = toUci(position, ops.get("bm"));
+        Set<String> avoidMoves = toUci(position, ops.get("am"));
+        if (bestMoves.isEmpty() && avoidMoves.isEmpty()) {
+            throw new IllegalArgumentException("no bm or am operation");
+        }
+        String id = ops.getOrDefault("id", defaultId).replace("\"", "");
+        return new EpdPosition(id, position.toFen(), bestMoves, avoidMoves);
+    }
+
+    private static Set<String> toUci(Position position, String sanMoves) {
+        Set<String> moves = new HashSet<>();
+        if (sanMoves == null) return moves;
+        for (String san : sanMoves.split("\\s+")) {
+            if (!san.isEmpty()) moves.add(position.sanToUci(san));
+        }
+        return moves;
+    }
+
+    /**
+     * Run a suite
+     *
+     * @param name the name of the run in reports, e.g. the configuration under test
+     * @param suite the positions
+     * @return the results, an empty report if there are no engines, or null if the run was interrupted
+     */
+    public RunReport run(String name, List<EpdPosition> suite) {
+        if (engines.isEmpty()) {
+            System.err.println("No engines to run " + name + " on");
+            return new RunReport(name, new LinkedHashMap<>(), 0);
+        }
+        BlockingQueue<ChessEngine> idle = new ArrayBlockingQueue<>(Math.max(1, engines.size()), false, engines);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, engines.size()), r -> {
+            Thread thread = new Thread(r, "epd-suite");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.currentTimeMillis();
+        try {
+            List<Future<PositionResult>> futures = new ArrayList<>();
+            for (EpdPosition position : suite) {
+                futures.add(executor.submit(() -> {
+                    ChessEngine engine = idle.take();
+                    try {
+                        return solve(engine, position);
+                    } finally {
+                        idle.offer(engine);
+                    }
+                }));
+            }
+
+            Map<String, PositionResult> results = new LinkedHashMap<>();
+            for (int i = 0; i < suite.size(); i++) {
+                PositionResult result;
+                try {
+                    result = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    System.err.println("Error solving " + suite.get(i).getId() + ": " + e.getCause());
+                    result = new PositionResult(suite.get(i).getId(), false, -1, null);
+                }
+                results.put(result.getId(), result);
+            }
+            return new RunReport(name, results, System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private PositionResult solve(ChessEngine engine, EpdPosition position) {
+        long start = System.nanoTime();
+        long[] solvedSince = {-1};
+        String bestMove = engine.getBestMove(position.getFen(), limits, info -> {
+            if (!info.hasPv()) return true;
+            boolean solving = position.isSolution(info.getFirstPvMove());
+            if (solving && solvedSince[0] < 0) {
+                solvedSince[0] = (System.nanoTime() - start) / 1_000_000;
+            } else if (!solving) {
+                solvedSince[0] = -1;
+            }
+            return true;
+        });
+
+        boolean solved = position.isSolution(bestMove);
+        long timeToSolution = -1;
+        if (solved) {
+            // No iteration reported the move, so it only showed up at the end
+            timeToSolution = solvedSince[0] >= 0 ? solvedSince[0] : (System.nanoTime() - start) / 1_000_000;
+        }
+        return new PositionResult(position.getId(), solved, timeToSolution, bestMove);
+    }
+
+    /**
+     * Compare two runs of the same suite
+     *
+     * @param baseline the earlier or reference run
+     * @param candidate the run under test
+     * @return a readable report of solve counts, times and positions that changed
+     */
+    public static String compare(RunReport baseline, RunReport candidate) {
+        StringBuilder report = new StringBuilder();
+        report.append("Baseline:  ").append(baseline).append('\n');
+        report.append("Candidate: ").append(candidate).append('\n');
+
+        List<String> gained = new ArrayList<>();
+        List<String> lost = new ArrayList<>();
+        long baselineTime = 0;
+        long candidateTime = 0;
+        int bothSolved = 0;
+        for (PositionResult result : candidate.getResults().values()) {
+            PositionResult before = baseline.getResults().get(result.getId());
+            if (before == null) continue;
+            if (result.isSolved() && !before.isSolved()) gained.add(result.getId());
+            if (!result.isSolved() && before.isSolved()) lost.add(result.getId() + " (played " + result.getMove() + ")");
+            if (result.isSolved() && before.isSolved()) {
+                baselineTime += before.getTimeToSolutionMs();
+                candidateTime += result.getTimeToSolutionMs();
+                bothSolved++;
+            }
+        }
+
+        report.append(String.format("Solved: %+d%n", candidate.getSolvedCount() - baseline.getSolvedCount()));
+        if (bothSolved > 0) {
+            report.append(String.format("Time to solution on the %d positions both solved: %.0f ms -> %.0f ms%n",
+                    bothSolved, (double) baselineTime / bothSolved, (double) candidateTime / bothSolved));
+        }
+        report.append("Newly solved: ").append(gained.isEmpty() ? "none" : String.join(", ", gained)).append('\n');
+        report.append("No longer solved: ").append(lost.isEmpty() ? "none" : String.join(", ", lost)).append('\n');
+        return report.toString();
+    }
+
+    /**
+     * Run a suite from the command line.
+     *
+     * Usage: EpdSuiteRunner [suite.epd] [engines] [movetime-ms] [strength] [save-to] [compare-with]
+     * The suite defaults to resources/epd/tactics.epd.
+     */
+    public static void main(String[] args) throws Exception {
+        File suiteFile = new File(args.length > 0 ? args[0] : "resources/epd/tactics.epd");
+        int engineCount = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int moveTimeMs = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int strength = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        List<EpdPosition> suite = loadSuite(suiteFile);
+        EnginePool pool = new EnginePool("epd", engineCount);
+        List<StockfishEngine> engines = new ArrayList<>();
+        try {
+            for (int i = 0; i < pool.size(); i++) {
+                StockfishEngine engine = pool.acquire();
+                if (engine == null) break;
+                engine.setEngineStrength(strength);
+                engines.add(engine);
+            }
+            if (engines.isEmpty()) {
+                System.err.println("No engine could be started; is Stockfish installed?");
+                return;
+            }
+
+            String name = suiteFile.getName() + " strength " + strength + " movetime " + moveTimeMs;
+            RunReport report = new EpdSuiteRunner(engines, SearchLimits.moveTime(moveTimeMs)).run(name, suite);
+            if (report == null) return;
+
+            for (PositionResult result : report.getResults().values()) {
+                System.out.println(String.format("%-10s %-7s %6d ms  %s", result.getId(),
+                        result.isSolved() ? "solved" : "FAILED", result.getTimeToSolutionMs(), result.getMove()));
+            }
+            System.out.println(report);
+            if (args.length > 4) {
+                report.save(new File(args[4]));
+            }
+            if (args.length > 5) {
+                System.out.print(compare(RunReport.load(new File(args[5])), report));
+            }
+        } finally {
+            for (StockfishEngine engine : engines) {
+                pool.release(engine);
+            }
+            pool.close();
+            StockfishManager.getInstance().shutdown();
+        }
+    }
+}
@@ -0,0 +1,371 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fair-play statistics over a batch of games, for referees.
+ *
+ * All games are reviewed together through a GameReviewPipeline, so their
+ * positions are spread over every engine of the pool and repeated
+ * positions are searched once. For each player the analyzer then reports:
+ * <ul>
+ * <li>engine-match rate: how often the move played was the engine's first choice</li>
+ * <li>average centipawn loss (ACPL)</li>
+ * <li>time/match correlation: the correlation between the time spent on a
+ * move and whether it matched the engine. Honest players tend to match on
+ * quick, obvious moves; a strongly positive value means the long thinks
+ * are the ones that match.</li>
+ * </ul>
+ * Opening moves, forced moves (only one legal reply) and moves in positions
+ * that are already decided are left out, since anyone would match the
+ * engine there.
+ */
+public class FairPlayAnalyzer {
+    private static final int OPENING_PLIES = 16;
+    private static final int DECIDED_SCORE = 500;
+    private static final int MIN_TIMED_MOVES = 10;
+
+    /**
+     * The statistics of one player over all their games in the batch
+     */
+    public static class PlayerReport {
+        private final String name;
+        private int games;
+        private int analysedMoves;
+        private int engineMatches;
+        private long totalLoss;
+        private final List<Long> moveTimes = new ArrayList<>();
+        private final List<Boolean> moveMatches = new ArrayList<>();
+
+        PlayerReport(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getGames() {
+            return games;
+        }
+
+        /**
+         * Get the number of moves counted, after leaving out opening, forced and decided moves
+         */
+        public int getAnalysedMoves() {
+            return analysedMoves;
+        }
+
+        /**
+         * Get the share of counted moves that were the engine's first choice, 0..1
+         */
+        public double getEngineMatchRate() {
+            return analysedMoves == 0 ? 0 : (double) engineMatches / analysedMoves;
+        }
+
+        public double getAverageCentipawnLoss() {
+            return analysedMoves == 0 ? 0 : (double) totalLoss / analysedMoves;
+        }
+
+        /**
+         * Get the Pearson correlation between move time and engine match, -1..1,
+         * or NaN if too few moves have known times
+         */
+        public double getTimeMatchCorrelation() {
+            int n = moveTimes.size();
+            if (n < MIN_TIMED_MOVES) return Double.NaN;
+            double meanTime = 0;
+            double meanMatch = 0;
+            for (int i = 0; i < n; i++) {
+                meanTime += moveTimes.get(i);
+                meanMatch += moveMatches.get(i) ? 1 : 0;
+            }
+            meanTime /= n;
+            meanMatch /= n;
+
+            double covariance = 0;
+            double timeVariance = 0;
+            double matchVariance = 0;
+            for (int i = 0; i < n; i++) {
+                double t = moveTimes.get(i) - meanTime;
+                double m = (moveMatches.get(i) ? 1 : 0) - meanMatch;
+                covariance += t * m;
+                timeVariance += t * t;
+                matchVariance += m * m;
+            }
+            if (timeVariance == 0 || matchVariance == 0) return Double.NaN;
+            return covariance / Math.sqrt(timeVariance * matchVariance);
+        }
+
+        void add(GameReviewPipeline.MoveReview move, long timeMs) {
+            boolean match = move.getClassification() == GameReviewPipeline.Classification.BEST;
+            analysedMoves++;
+            totalLoss += move.getCentipawnLoss();
+            if (match) engineMatches++;
+            if (timeMs >= 0) {
+                moveTimes.add(timeMs);
+                moveMatches.add(match);
+            }
+        }
+
+        @Override
+        public String toString() {
+            double correlation = getTimeMatchCorrelation();
+            return String.format("%-20s games %3d  moves %5d  match %5.1f%%  ACPL %5.1f  time/match %s",
+                    name, games, analysedMoves, getEngineMatchRate() * 100, getAverageCentipawnLoss(),
+                    Double.isNaN(correlation) ? "  n/a" : String.format("%+.2f", correlation));
+        }
+    }
+
+    /**
+     * The result of one batch
+     */
+    public static class Report {
+        private final List<PlayerReport> players;
+        private final int games;
+        private final int skippedGames;
+        private final long elapsedMs;
+
+        Report(List<PlayerReport> players, int games, int skippedGames, long elapsedMs) {
+            this.players = Collections.unmodifiableList(players);
+            this.games = games;
+            this.skippedGames = skippedGames;
+            this.elapsedMs = elapsedMs;
+        }
+
+        /**
+         * Get the players, highest engine-match rate first
+         */
+        public List<PlayerReport> getPlayers() {
+            return players;
+        }
+
+        public int getGames() {
+            return games;
+        }
+
+        /**
+         * Get the number of games left out because their moves could not be read
+         */
+        public int getSkippedGames() {
+            return skippedGames;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(games).append(" games analysed in ").append(elapsedMs / 1000.0).append(" s");
+            if (skippedGames > 0) text.append(" (").append(skippedGames).append(" unreadable games skipped)");
+            text.append('\n');
+            for (PlayerReport player : players) {
+                text.append(player).append('\n');
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * A game prepared for review: who played it and how long each move took
+     */
+    private static class GameInput {
+        final String white;
+        final String black;
+        final String startFen;
+        final List<String> moves;
+        final List<Long> timesMs;
+
+        GameInput(String white, String black, String startFen, List<String> moves, List<Long> timesMs) {
+            this.white = white;
+            this.black = black;
+            this.startFen = startFen;
+            this.moves = moves;
+            this.timesMs = timesMs;
+        }
+    }
+
+    private final GameReviewPipeline pipeline;
+
+    /**
+     * Creates an analyzer
+     *
+     * @param pool the engines to spread the positions over
+     * @param depth the search depth per position
+     * @param moveTimeMs the time limit per position, or 0 for depth only
+     */
+    public FairPlayAnalyzer(EnginePool pool, int depth, int moveTimeMs) {
+        this.pipeline = new GameReviewPipeline(pool, depth, moveTimeMs);
+    }
+
+    /**
+     * Analyse every game of a PGN file
+     *
+     * @return the report, or null if the analysis was interrupted
+     * @throws IOException if the file cannot be read
+     */
+    public Report analyzePgn(File file) throws IOException {
+        List<PgnGame> games = new ArrayList<>();
+        try (PgnReader reader = new PgnReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            PgnGame game;
+            while ((game = reader.next()) != null) {
+                games.add(game);
+            }
+        }
+        return analyzeGames(games);
+    }
+
+    /**
+     * Analyse PGN games; games with unreadable moves are skipped
+     *
+     * @return the report, or null if the analysis was interrupted
+     */
+    public Report analyzeGames(List<PgnGame> games) {
+        List<GameInput> inputs = new ArrayList<>();
+        int skipped = 0;
+        for (PgnGame game : games) {
+            try {
+                inputs.add(new GameInput(game.getWhite(), game.getBlack(), game.getStartFen(),
+                        game.toUciMoves(), game.getMoveTimesMs()));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Skipping game " + game + ": " + e.getMessage());
+                skipped++;
+            }
+        }
+        return analyze(inputs, skipped);
+    }
+
+    /**
+     * Analyse completed matches; move times come from the moves' timestamps
+     *
+     * @return the report, or null if the analysis was interrupted
+     */
+    public Report analyzeMatches(List<Match> matches) {
+        List<GameInput> inputs = new ArrayList<>();
+        for (Match match : matches) {
+            List<String> moves = new ArrayList<>();
+            List<String> timestamps = new ArrayList<>();
+            for (Move move : match.getMoveHistory()) {
+                if (move.isLegal()) {
+                    moves.add(move.toUci());
+                    timestamps.add(move.getTimestamp());
+                }
+            }
+            inputs.add(new GameInput(match.getPlayer1().getUsername(), match.getPlayer2().getUsername(),
+                    Position.START_FEN, moves, timesFromTimestamps(timestamps)));
+        }
+        return analyze(inputs, 0);
+    }
+
+    private Report analyze(List<GameInput> inputs, int skipped) {
+        long start = System.currentTimeMillis();
+        List<String> startFens = new ArrayList<>();
+        List<List<String>> lines = new ArrayList<>();
+        for (GameInput input : inputs) {
+            startFens.add(input.startFen);
+            lines.add(input.moves);
+        }
+        List<GameReviewPipeline.GameReview> reviews = pipeline.reviewGames(startFens, lines);
+        if (reviews == null) return null;
+
+        Map<String, PlayerReport> players = new LinkedHashMap<>();
+        for (int g = 0; g < inputs.size(); g++) {
+            GameInput input = inputs.get(g);
+            PlayerReport white = players.computeIfAbsent(input.white, PlayerReport::new);
+            PlayerReport black = players.computeIfAbsent(input.black, PlayerReport::new);
+            white.games++;
+            black.games++;
+
+            for (GameReviewPipeline.MoveReview move : reviews.get(g).getMoves()) {
+                if (!counts(move)) continue;
+                int index = move.getPly() - 1;
+                long time = index < input.timesMs.size() ? input.timesMs.get(index) : -1;
+                (move.isWhiteMove() ? white : black).add(move, time);
+            }
+        }
+
+        List<PlayerReport> sorted = new ArrayList<>(players.values());
+        sorted.sort(Comparator.comparingDouble(PlayerReport::getEngineMatchRate).reversed());
+        return new Report(sorted, inputs.size(), skipped, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Check whether a move says anything about the player: not book, not forced, not already decided
+     */
+    private static boolean counts(GameReviewPipeline.MoveReview move) {
+        if (move.getClassification() == null || move.getPly() <= OPENING_PLIES) return false;
+        if (Math.abs(move.getEvalBefore()) >= DECIDED_SCORE) return false;
+        return Position.fromFen(move.getFenBefore()).legalMoves().size() > 1;
+    }
+
+    /**
+     * Turn "HH:mm:ss" move timestamps into time per move; the first move's time is unknown
+     */
+    private static List<Long> timesFromTimestamps(List<String> timestamps) {
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss");
+        List<Long> times = new ArrayList<>();
+        long previous = -1;
+        for (String timestamp : timestamps) {
+            long time;
+            try {
+                time = format.parse(timestamp).getTime();
+            } catch (ParseException | NullPointerException e) {
+                time = -1;
+            }
+            if (time < 0 || previous < 0) {
+                times.add(-1L);
+            } else {
+                // Past midnight the clock wraps
+                times.add(time >= previous ? time - previous : time + 86400000 - previous);
+            }
+            previous = time;
+        }
+        return times;
+    }
+
+    /**
+     * Stop the analysis threads; the engine pool is left open
+     */
+    public void shutdown() {
+        pipeline.shutdown();
+    }
+
+    /**
+     * Analyse a PGN file from the command line.
+     *
+     * Usage: FairPlayAnalyzer games.pgn [engines] [depth]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: FairPlayAnalyzer games.pgn [engines] [depth]");
+            return;
+        }
+        int engines = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 14;
+
+        EnginePool pool = new EnginePool("fair-play", engines);
+        FairPlayAnalyzer analyzer = new FairPlayAnalyzer(pool, depth, 0);
+        try {
+            Report report = analyzer.analyzePgn(new File(args[0]));
+            if (report != null) {
+                System.out.print(report);
+            }
+        } finally {
+            analyzer.shutdown();
+            pool.close();
+            StockfishManager.getInstance().shutdown();
+        }
+    }
+}
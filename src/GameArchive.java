@@ -0,0 +1,912 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Archive of finished games, stored compactly and indexed by position.
+ *
+ * Each game is a small header (players, event, date, result, start FEN)
+ * followed by its moves, two bytes per ply (from square, to square and
+ * promotion piece). Games are appended to segment files of up to 256 MB,
+ * and games.idx holds each game's segment and offset, so reading a game by
+ * ID is one read.
+ *
+ * Every position in the first plies of each game (20 by default, see
+ * -Dchess.archive.indexPlies) is indexed by its Zobrist key. New entries
+ * are collected in memory and written out as sorted, memory-mapped run
+ * files, so finding the games that reach a position is a binary search
+ * per run. Games from a custom start position are also indexed under a
+ * marker key, so a search for the standard start position can leave them
+ * out without an entry for every other game.
+ *
+ * Deeper positions are indexed more compactly: each game's deep positions
+ * are kept as a sorted list of 32-bit key prefixes in deep-NNNN.dat files.
+ * Every search also walks those lists, binary searching each game's, and
+ * replays only the games whose list holds the prefix, to confirm the full
+ * key. The walk is needed whatever the position's move counters say, since
+ * the Zobrist key leaves them out.
+ *
+ * Several processes may share an archive. Writers hold the DataFileLock
+ * of games.idx, and before writing they pick up what other processes have
+ * added: new segment and deep files, games, and index runs. Games another
+ * process added since the last run are indexed in memory here as well.
+ * Searches and reads catch up the same way when games.idx has grown.
+ *
+ * A game's deep record is written before its games.idx entry, and each
+ * game's entry after its record, so a game listed in games.idx is always
+ * complete. On opening, and whenever a writer catches up, a game or deep
+ * record torn by a crash is cut off. Games missing from the index are
+ * indexed again.
+ */
+public class GameArchive implements AutoCloseable {
+    public static final String RESULT_WHITE_WINS = "1-0";
+    public static final String RESULT_BLACK_WINS = "0-1";
+    public static final String RESULT_DRAW = "1/2-1/2";
+    public static final String RESULT_UNKNOWN = "*";
+
+    private static final String[] RESULTS = {RESULT_UNKNOWN, RESULT_WHITE_WINS, RESULT_BLACK_WINS, RESULT_DRAW};
+    private static final String PROMOTIONS = "qrbn";
+    private static final long SEGMENT_BYTES = 256L << 20;
+    private static final int OFFSET_BITS = 40;
+    private static final int RUN_MAGIC = 0x5A4F4252; // "ZOBR"
+    private static final int RUN_POSTINGS = 1 << 21;
+    // Index key of every game from a custom start position
+    private static final long CUSTOM_START_KEY = 0x435553544F4D5354L; // "CUSTOMST"
+
+    private static GameArchive instance;
+
+    /**
+     * A game read back from the archive
+     */
+    public static class ArchivedGame {
+        private final int id;
+        private final String white;
+        private final String black;
+        private final String event;
+        private final long date;
+        private final String result;
+        private final String startFen;
+        private final List<String> moves;
+
+        public ArchivedGame(int id, String white, String black, String event, long date, String result,
+                String startFen, List<String> moves) {
+            this.id = id;
+            this.white = white;
+            this.black = black;
+            this.event = event;
+            this.date = date;
+            this.result = result;
+            this.startFen = startFen;
+            this.moves = moves;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getWhite() {
+            return white;
+        }
+
+        public String getBlack() {
+            return black;
+        }
+
+        public String getEvent() {
+            return event;
+        }
+
+        public long getDate() {
+            return date;
+        }
+
+        public String getResult() {
+            return result;
+        }
+
+        public String getStartFen() {
+            return startFen;
+        }
+
+        /**
+         * Get the moves in UCI notation
+         */
+        public List<String> getMoves() {
+            return moves;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + id + " " + white + " - " + black + " " + result + " (" + moves.size() + " plies)";
+        }
+    }
+
+    private final File directory;
+    // The file whose lock writers hold
+    private final File lockFile;
+    private final int indexPlies;
+    private final FileChannel gameIndex;
+    private final List<FileChannel> segments = new ArrayList<>();
+    private final List<MappedByteBuffer> runs = new ArrayList<>();
+    private final List<FileChannel> deepFiles = new ArrayList<>();
+    private final List<MappedByteBuffer> deepMaps = new ArrayList<>();
+    private int games;
+    // Games covered by the runs
+    private int indexedGames;
+    // End of the last valid deep record, and the game it belongs to
+    private int deepEndFile;
+    private long deepEndOffset;
+    private int deepGames;
+    // Index entries not yet written to a run
+    private long[] pendingKeys = new long[1024];
+    private int[] pendingIds = new int[1024];
+    private int pendingCount;
+    // Key prefixes of the deep positions of the game being indexed
+    private int[] deepPrefixes = new int[256];
+    private int deepCount;
+
+    /**
+     * Open an archive, creating the directory if needed
+     *
+     * @param indexPlies how many plies of each game to index by position
+     * @throws IOException if the archive cannot be opened
+     */
+    public GameArchive(File directory, int indexPlies) throws IOException {
+        this.directory = directory;
+        this.indexPlies = indexPlies;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        lockFile = new File(directory, "games.idx");
+        gameIndex = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        DataFileLock.runLocked(lockFile, this::load);
+    }
+
+    /**
+     * Open the files, cut off anything torn by a crash and index what the index is missing;
+     * called holding the lock
+     */
+    private void load() throws IOException {
+        openNewFiles();
+        recoverGames();
+        loadRuns();
+        indexNewGames(0);
+    }
+
+    /**
+     * Get the application's archive, in the directory named by -Dchess.archive.dir (default "archive")
+     */
+    public static synchronized GameArchive getInstance() throws IOException {
+        if (instance == null) {
+            instance = new GameArchive(new File(System.getProperty("chess.archive.dir", "archive")),
+                    Integer.getInteger("chess.archive.indexPlies", 20));
+        }
+        return instance;
+    }
+
+    public synchronized int size() throws IOException {
+        catchUpIfGrown();
+        return games;
+    }
+
+    /**
+     * Add a finished game. Moves that cannot be played from the start position end the game there.
+     *
+     * @param startFen the start position, or null for the standard one
+     * @param moves the moves in UCI notation
+     * @return the game's ID
+     * @throws IOException if the game cannot be written
+     */
+    public synchronized int add(String white, String black, String event, long date, String result,
+            String startFen, List<String> moves) throws IOException {
+        return DataFileLock.withLock(lockFile, () -> {
+            refresh();
+            return append(white, black, event, date, result, startFen, moves);
+        });
+    }
+
+    /**
+     * Write a game, its deep record and then its games.idx entry; called holding the lock
+     */
+    private int append(String white, String black, String event, long date, String result,
+            String startFen, List<String> moves) throws IOException {
+        int id = games + 1;
+        List<String> playable = collectPositions(id, startFen, moves, true);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + playable.size() * 2);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // length, filled in below
+        out.writeInt(id);
+        out.writeLong(date);
+        out.writeByte(Math.max(0, Arrays.asList(RESULTS).indexOf(result)));
+        out.writeUTF(white == null ? "" : white);
+        out.writeUTF(black == null ? "" : black);
+        out.writeUTF(event == null ? "" : event);
+        out.writeUTF(startFen == null || startFen.equals(Position.START_FEN) ? "" : startFen);
+        out.writeShort(playable.size());
+        for (String move : playable) {
+            out.writeShort(pack(move));
+        }
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        record.putInt(0, record.capacity() - 4);
+
+        int savedDeepFile = deepEndFile;
+        long savedDeepOffset = deepEndOffset;
+        try {
+            FileChannel segment = segmentFor(record.capacity());
+            long offset = segment.size();
+            while (record.hasRemaining()) {
+                segment.write(record, offset + record.position());
+            }
+            writeDeep(id);
+            ByteBuffer pointer = ByteBuffer.allocate(8).putLong(0, ((long) (segments.size() - 1) << OFFSET_BITS) | offset);
+            while (pointer.hasRemaining()) {
+                gameIndex.write(pointer, (long) games * 8 + pointer.position());
+            }
+        } catch (IOException e) {
+            // The next game takes this ID, and its deep record this one's place
+            removePending(id, id);
+            deepEndFile = savedDeepFile;
+            deepEndOffset = savedDeepOffset;
+            deepGames = id - 1;
+            throw e;
+        }
+        games = id;
+
+        if (pendingCount >= RUN_POSTINGS) {
+            writeRun();
+        }
+        return id;
+    }
+
+    /**
+     * Write every game added so far to disk
+     *
+     * @throws IOException if the files cannot be synced
+     */
+    public synchronized void flush() throws IOException {
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).force(false);
+        }
+        gameIndex.force(false);
+        if (!deepFiles.isEmpty()) {
+            deepFiles.get(deepFiles.size() - 1).force(false);
+        }
+    }
+
+    /**
+     * Read a game
+     *
+     * @return the game, or null if there is no game with this ID
+     * @throws IOException if the game cannot be read
+     */
+    public synchronized ArchivedGame get(int id) throws IOException {
+        if (id > games) {
+            catchUpIfGrown();
+        }
+        if (id < 1 || id > games) return null;
+        ByteBuffer pointer = ByteBuffer.allocate(8);
+        gameIndex.read(pointer, (id - 1) * 8L);
+        long location = pointer.getLong(0);
+        FileChannel segment = segments.get((int) (location >>> OFFSET_BITS));
+        long offset = location & ((1L << OFFSET_BITS) - 1);
+
+        ByteBuffer length = ByteBuffer.allocate(4);
+        segment.read(length, offset);
+        ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+        while (record.hasRemaining() && segment.read(record, offset + 4 + record.position()) >= 0) {
+            // keep reading
+        }
+        DataInputStream in = new DataInputStream(new java.io.ByteArrayInputStream(record.array()));
+        int storedId = in.readInt();
+        long date = in.readLong();
+        String result = RESULTS[in.readByte() & 3];
+        String white = in.readUTF();
+        String black = in.readUTF();
+        String event = in.readUTF();
+        String startFen = in.readUTF();
+        int plies = in.readUnsignedShort();
+        List<String> moves = new ArrayList<>(plies);
+        for (int i = 0; i < plies; i++) {
+            moves.add(unpack(in.readShort()));
+        }
+        return new ArchivedGame(storedId, white, black, event, date, result,
+                startFen.isEmpty() ? Position.START_FEN : startFen, moves);
+    }
+
+    /**
+     * Find the games that reach a position (same placement, side to move, castling rights and
+     * en passant square)
+     *
+     * @return the IDs of the games, in increasing order
+     * @throws IOException if the archive cannot be read
+     */
+    public synchronized List<Integer> findGames(Position position) throws IOException {
+        catchUpIfGrown();
+        long key = position.zobristKey();
+        Set<Integer> found = lookup(key);
+        if (key == Position.startPosition().zobristKey()) {
+            // Every game from the standard start, which are not worth an index entry each
+            Set<Integer> custom = lookup(CUSTOM_START_KEY);
+            for (int id = 1; id <= games; id++) {
+                if (!custom.contains(id)) found.add(id);
+            }
+        }
+        // The key ignores the move counters, so any position may also come up deep in a game
+        searchDeep(key, found);
+        List<Integer> ids = new ArrayList<>(found);
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Write the pending index entries and release the files
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        DataFileLock.runLocked(lockFile, () -> {
+            refresh();
+            if (pendingCount > 0) {
+                writeRun();
+            }
+        });
+        flush();
+        gameIndex.close();
+        for (FileChannel segment : segments) {
+            segment.close();
+        }
+        for (FileChannel deep : deepFiles) {
+            deep.close();
+        }
+    }
+
+    /**
+     * Pack a UCI move into 16 bits: from square, to square, promotion piece
+     */
+    static short pack(String uciMove) {
+        int from = Position.square(uciMove.substring(0, 2));
+        int to = Position.square(uciMove.substring(2, 4));
+        int promotion = uciMove.length() > 4 ? PROMOTIONS.indexOf(Character.toLowerCase(uciMove.charAt(4))) + 1 : 0;
+        return (short) (from | to << 6 | promotion << 12);
+    }
+
+    static String unpack(short packed) {
+        String move = Position.squareName(packed & 63) + Position.squareName((packed >> 6) & 63);
+        int promotion = (packed >> 12) & 7;
+        return promotion == 0 ? move : move + PROMOTIONS.charAt(promotion - 1);
+    }
+
+    /**
+     * Play the moves, queue an index entry for each distinct position in the indexed plies (if
+     * asked to), collect the key prefixes of the deeper ones, and return the moves that could be played
+     */
+    private List<String> collectPositions(int id, String startFen, List<String> moves, boolean queue) {
+        Position position = startFen == null ? Position.startPosition() : Position.fromFen(startFen);
+        boolean standardStart = startFen == null || startFen.equals(Position.START_FEN);
+        Set<Long> seen = new HashSet<>();
+        if (queue && !standardStart) {
+            addPending(CUSTOM_START_KEY, id, seen);
+            addPending(position.zobristKey(), id, seen);
+        }
+        deepCount = 0;
+        List<String> playable = new ArrayList<>(moves.size());
+        for (int ply = 0; ply < moves.size(); ply++) {
+            String move = moves.get(ply);
+            try {
+                pack(move);
+                position = position.play(move);
+            } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+                System.err.println("Game " + id + ": cannot play " + move + " at ply " + (ply + 1) + ", ending the game there");
+                break;
+            }
+            playable.add(move);
+            if (ply < indexPlies) {
+                if (queue) {
+                    addPending(position.zobristKey(), id, seen);
+                }
+            } else {
+                if (deepCount == deepPrefixes.length) {
+                    deepPrefixes = Arrays.copyOf(deepPrefixes, deepCount * 2);
+                }
+                deepPrefixes[deepCount++] = (int) (position.zobristKey() >>> 32);
+            }
+        }
+        return playable;
+    }
+
+    private void addPending(long key, int id, Set<Long> seen) {
+        if (!seen.add(key)) return;
+        if (pendingCount == pendingKeys.length) {
+            pendingKeys = Arrays.copyOf(pendingKeys, pendingCount * 2);
+            pendingIds = Arrays.copyOf(pendingIds, pendingCount * 2);
+        }
+        pendingKeys[pendingCount] = key;
+        pendingIds[pendingCount] = id;
+        pendingCount++;
+    }
+
+    /**
+     * Drop the pending entries of the games with IDs in the range, inclusive
+     */
+    private void removePending(int low, int high) {
+        int kept = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            if (pendingIds[i] >= low && pendingIds[i] <= high) continue;
+            pendingKeys[kept] = pendingKeys[i];
+            pendingIds[kept] = pendingIds[i];
+            kept++;
+        }
+        pendingCount = kept;
+    }
+
+    private Set<Integer> lookup(long key) {
+        Set<Integer> found = new HashSet<>();
+        for (MappedByteBuffer run : runs) {
+            searchRun(run, key, found);
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            if (pendingKeys[i] == key) {
+                found.add(pendingIds[i]);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Write the collected deep key prefixes of a game after the last valid deep record, sorted and
+     * without repeats: game ID, prefix count (unsigned short), the prefixes. Every game has a record,
+     * so the records run in ID order without gaps.
+     */
+    private void writeDeep(int id) throws IOException {
+        Arrays.sort(deepPrefixes, 0, deepCount);
+        int distinct = 0;
+        for (int i = 0; i < deepCount; i++) {
+            if (i == 0 || deepPrefixes[i] != deepPrefixes[i - 1]) deepPrefixes[distinct++] = deepPrefixes[i];
+        }
+        deepCount = 0;
+
+        ByteBuffer record = ByteBuffer.allocate(6 + distinct * 4);
+        record.putInt(id).putShort((short) distinct);
+        for (int i = 0; i < distinct; i++) {
+            record.putInt(deepPrefixes[i]);
+        }
+        record.flip();
+        if (deepFiles.isEmpty()) {
+            deepFiles.add(openDeep(0));
+        } else if (deepEndOffset + record.capacity() > SEGMENT_BYTES) {
+            deepFiles.get(deepEndFile).force(false);
+            if (deepEndFile + 1 == deepFiles.size()) {
+                deepFiles.add(openDeep(deepFiles.size()));
+            }
+            deepEndFile++;
+            deepEndOffset = 0;
+        }
+        FileChannel deep = deepFiles.get(deepEndFile);
+        while (record.hasRemaining()) {
+            deep.write(record, deepEndOffset + record.position());
+        }
+        deepEndOffset += record.capacity();
+        deepGames = id;
+    }
+
+    /**
+     * Move the end of the deep records past the complete records that follow it, one per game in
+     * ID order. Anything else there was torn by a crash and is cut off, with any later files.
+     */
+    private void walkDeep() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(6);
+        while (deepEndFile < deepFiles.size()) {
+            FileChannel deep = deepFiles.get(deepEndFile);
+            long size = deep.size();
+            if (deepEndOffset == size && deepEndFile + 1 < deepFiles.size()) {
+                deepEndFile++;
+                deepEndOffset = 0;
+                continue;
+            }
+            if (deepEndOffset == size) return;
+            header.clear();
+            while (header.hasRemaining() && deep.read(header, deepEndOffset + header.position()) > 0) {
+                // keep reading
+            }
+            int id = header.getInt(0);
+            long end = deepEndOffset + 6 + (header.getShort(4) & 0xFFFF) * 4L;
+            if (header.hasRemaining() || id != deepGames + 1 || id > games || end > size) {
+                deep.truncate(deepEndOffset);
+                while (deepFiles.size() > deepEndFile + 1) {
+                    int last = deepFiles.size() - 1;
+                    deepFiles.remove(last).close();
+                    if (last < deepMaps.size()) deepMaps.remove(last);
+                    Files.delete(deepFile(last).toPath());
+                }
+                return;
+            }
+            deepEndOffset = end;
+            deepGames = id;
+        }
+    }
+
+    /**
+     * Find the games whose deep positions include the key, replaying the candidates to rule out
+     * games that only share its prefix
+     */
+    private void searchDeep(long key, Set<Integer> found) throws IOException {
+        int prefix = (int) (key >>> 32);
+        for (int number = 0; number < deepFiles.size() && number <= deepEndFile; number++) {
+            MappedByteBuffer deep = mapDeep(number);
+            // Records past the end may be another process's write in progress
+            long end = number < deepEndFile ? deep.limit() : Math.min(deep.limit(), deepEndOffset);
+            int position = 0;
+            while (position < end) {
+                int id = deep.getInt(position);
+                int count = deep.getShort(position + 4) & 0xFFFF;
+                int first = position + 6;
+                position = first + count * 4;
+                if (!containsPrefix(deep, first, count, prefix) || found.contains(id)) continue;
+                if (reaches(get(id), key)) {
+                    found.add(id);
+                }
+            }
+        }
+    }
+
+    private static boolean containsPrefix(MappedByteBuffer deep, int first, int count, int prefix) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int candidate = deep.getInt(first + middle * 4);
+            if (candidate < prefix) {
+                low = middle + 1;
+            } else if (candidate > prefix) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean reaches(ArchivedGame game, long key) {
+        Position position = Position.fromFen(game.getStartFen());
+        if (position.zobristKey() == key) return true;
+        for (String move : game.getMoves()) {
+            position = position.play(move);
+            if (position.zobristKey() == key) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Map a deep file, mapping it again if it has grown since
+     */
+    private MappedByteBuffer mapDeep(int number) throws IOException {
+        FileChannel channel = deepFiles.get(number);
+        MappedByteBuffer deep = number < deepMaps.size() ? deepMaps.get(number) : null;
+        if (deep == null || deep.limit() != channel.size()) {
+            deep = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (number < deepMaps.size()) {
+                deepMaps.set(number, deep);
+            } else {
+                deepMaps.add(deep);
+            }
+        }
+        return deep;
+    }
+
+    /**
+     * Sort the pending entries by key and write them as a run, called holding the lock after
+     * refresh(), so the run's number is the next free one:
+     * magic, key count, entry count, the distinct keys, where each key's game IDs start, the game IDs.
+     * The run is written under a temporary name and renamed into place, then the manifest is replaced.
+     */
+    private void writeRun() throws IOException {
+        sortPending(0, pendingCount - 1);
+        int distinct = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            if (i == 0 || pendingKeys[i] != pendingKeys[i - 1]) distinct++;
+        }
+
+        ByteBuffer run = ByteBuffer.allocate(12 + distinct * 12 + 4 + pendingCount * 4);
+        run.putInt(RUN_MAGIC).putInt(distinct).putInt(pendingCount);
+        for (int i = 0; i < pendingCount; i++) {
+            if (i == 0 || pendingKeys[i] != pendingKeys[i - 1]) run.putLong(pendingKeys[i]);
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            if (i == 0 || pendingKeys[i] != pendingKeys[i - 1]) run.putInt(i);
+        }
+        run.putInt(pendingCount);
+        for (int i = 0; i < pendingCount; i++) {
+            run.putInt(pendingIds[i]);
+        }
+        run.flip();
+
+        File file = runFile(runs.size());
+        File temp = new File(directory, file.getName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (run.hasRemaining()) {
+                channel.write(run);
+            }
+            channel.force(false);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        flush();
+        DataFileLock.replace(new File(directory, "positions.meta"), "runs " + (runs.size() + 1) + "\ngames " + games
+                + "\ndeepFiles " + (deepFiles.isEmpty() ? 0 : deepEndFile + 1) + "\ndeepBytes " + deepEndOffset
+                + "\ndeepGames " + deepGames + "\n");
+        runs.add(mapRun(file));
+        indexedGames = games;
+        pendingCount = 0;
+    }
+
+    private static void searchRun(MappedByteBuffer run, long key, Set<Integer> found) {
+        int distinct = run.getInt(4);
+        int low = 0;
+        int high = distinct - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long candidate = run.getLong(12 + middle * 8);
+            if (candidate < key) {
+                low = middle + 1;
+            } else if (candidate > key) {
+                high = middle - 1;
+            } else {
+                int starts = 12 + distinct * 8;
+                int ids = starts + (distinct + 1) * 4;
+                int from = run.getInt(starts + middle * 4);
+                int to = run.getInt(starts + (middle + 1) * 4);
+                for (int i = from; i < to; i++) {
+                    found.add(run.getInt(ids + i * 4));
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sort the pending keys, moving the game IDs along
+     */
+    private void sortPending(int low, int high) {
+        while (high - low > 16) {
+            long pivot = pendingKeys[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (pendingKeys[i] < pivot) i++;
+                while (pendingKeys[j] > pivot) j--;
+                if (i <= j) {
+                    swapPending(i++, j--);
+                }
+            }
+            // Recurse into the smaller side, loop on the larger one
+            if (j - low < high - i) {
+                sortPending(low, j);
+                low = i;
+            } else {
+                sortPending(i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && pendingKeys[j - 1] > pendingKeys[j]; j--) {
+                swapPending(j, j - 1);
+            }
+        }
+    }
+
+    private void swapPending(int i, int j) {
+        long key = pendingKeys[i];
+        pendingKeys[i] = pendingKeys[j];
+        pendingKeys[j] = key;
+        int id = pendingIds[i];
+        pendingIds[i] = pendingIds[j];
+        pendingIds[j] = id;
+    }
+
+    /**
+     * Count the games in games.idx, dropping entries whose game did not reach its segment
+     * and cutting off anything written after the last complete game
+     */
+    private void recoverGames() throws IOException {
+        games = (int) (gameIndex.size() / 8);
+        ByteBuffer pointer = ByteBuffer.allocate(8);
+        ByteBuffer length = ByteBuffer.allocate(4);
+        while (games > 0) {
+            pointer.clear();
+            gameIndex.read(pointer, (games - 1) * 8L);
+            long location = pointer.getLong(0);
+            int segmentNumber = (int) (location >>> OFFSET_BITS);
+            long offset = location & ((1L << OFFSET_BITS) - 1);
+            if (segmentNumber < segments.size()) {
+                FileChannel segment = segments.get(segmentNumber);
+                length.clear();
+                if (segment.read(length, offset) == 4 && offset + 4 + length.getInt(0) <= segment.size()) {
+                    segment.truncate(offset + 4 + length.getInt(0));
+                    break;
+                }
+            }
+            games--;
+        }
+        gameIndex.truncate(games * 8L);
+        if (games == 0) {
+            for (FileChannel segment : segments) {
+                segment.truncate(0);
+            }
+        }
+    }
+
+    /**
+     * Read positions.meta: runs, games (covered by the runs), deepFiles, deepBytes and deepGames (where
+     * the deep records stood when the last run was written), -1 for what is missing
+     */
+    private long[] readMeta() throws IOException {
+        long[] meta = {-1, -1, -1, -1, -1};
+        File file = new File(directory, "positions.meta");
+        if (!file.exists()) return meta;
+        List<String> names = Arrays.asList("runs", "games", "deepFiles", "deepBytes", "deepGames");
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            String[] parts = line.trim().split(" ");
+            if (parts.length != 2 || !names.contains(parts[0])) continue;
+            meta[names.indexOf(parts[0])] = Long.parseLong(parts[1]);
+        }
+        return meta;
+    }
+
+    private void loadRuns() throws IOException {
+        long[] meta = readMeta();
+        int runCount = (int) Math.max(0, meta[0]);
+        indexedGames = (int) Math.max(0, meta[1]);
+        int deepFileCount = (int) Math.max(0, meta[2]);
+        if (indexedGames > games || (indexedGames > 0 && meta[4] < 0)) {
+            // Games were lost in a crash after their index entries were written, or the index
+            // predates the deep positions; rebuild it
+            System.err.println("Game archive index does not match the games; rebuilding it");
+            runCount = 0;
+            indexedGames = 0;
+            deepFileCount = 0;
+            meta[3] = 0;
+            meta[4] = 0;
+            for (int i = deepFiles.size() - 1; i >= 0; i--) {
+                deepFiles.remove(i).close();
+                Files.delete(deepFile(i).toPath());
+            }
+            DataFileLock.replace(new File(directory, "positions.meta"),
+                    "runs 0\ngames 0\ndeepFiles 0\ndeepBytes 0\ndeepGames 0\n");
+        }
+        for (int i = 0; i < runCount; i++) {
+            runs.add(mapRun(runFile(i)));
+        }
+        if (deepFiles.size() < deepFileCount) {
+            throw new IOException(deepFile(deepFiles.size()) + " is missing");
+        }
+        // The deep records are checked from where they stood at the last run
+        deepEndFile = Math.max(0, deepFileCount - 1);
+        deepEndOffset = deepFileCount == 0 ? 0 : Math.max(0, meta[3]);
+        deepGames = (int) Math.max(0, meta[4]);
+    }
+
+    /**
+     * Map the runs other processes have written, and drop the pending entries they cover
+     */
+    private void syncRuns() throws IOException {
+        long[] meta = readMeta();
+        for (int i = runs.size(); i < meta[0]; i++) {
+            runs.add(mapRun(runFile(i)));
+        }
+        if (meta[1] > indexedGames) {
+            removePending(1, (int) meta[1]);
+            indexedGames = (int) meta[1];
+        }
+    }
+
+    /**
+     * Pick up what other processes have written; called holding the lock
+     */
+    private void refresh() throws IOException {
+        int known = games;
+        openNewFiles();
+        recoverGames();
+        if (games < known) {
+            throw new IOException("Game archive lost games " + (games + 1) + " to " + known);
+        }
+        syncRuns();
+        indexNewGames(known);
+    }
+
+    /**
+     * Catch up with other processes if they have added games
+     */
+    private void catchUpIfGrown() throws IOException {
+        if (gameIndex.size() / 8 > games) {
+            DataFileLock.runLocked(lockFile, this::refresh);
+        }
+    }
+
+    /**
+     * Queue index entries for the games after the given one that no run covers, and write the
+     * deep records that are missing
+     */
+    private void indexNewGames(int known) throws IOException {
+        walkDeep();
+        int queueAfter = Math.max(known, indexedGames);
+        for (int id = Math.min(queueAfter, deepGames) + 1; id <= games; id++) {
+            ArchivedGame game = get(id);
+            collectPositions(id, game.getStartFen(), game.getMoves(), id > queueAfter);
+            if (id > deepGames) {
+                writeDeep(id);
+            } else {
+                deepCount = 0;
+            }
+        }
+    }
+
+    private void openNewFiles() throws IOException {
+        for (int i = segments.size(); segmentFile(i).exists(); i++) {
+            segments.add(openSegment(i));
+        }
+        for (int i = deepFiles.size(); deepFile(i).exists(); i++) {
+            deepFiles.add(openDeep(i));
+        }
+    }
+
+    private MappedByteBuffer mapRun(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer run = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (run.getInt(0) != RUN_MAGIC) {
+                throw new IOException(file + " is not a position index run");
+            }
+            return run;
+        }
+    }
+
+    /**
+     * Get the segment to append a record to, starting a new one when the current one is full
+     */
+    private FileChannel segmentFor(int recordBytes) throws IOException {
+        if (segments.isEmpty() || segments.get(segments.size() - 1).size() + recordBytes > SEGMENT_BYTES) {
+            if (!segments.isEmpty()) {
+                segments.get(segments.size() - 1).force(false);
+            }
+            segments.add(openSegment(segments.size()));
+        }
+        return segments.get(segments.size() - 1);
+    }
+
+    private FileChannel openSegment(int number) throws IOException {
+        return FileChannel.open(segmentFile(number).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    private File segmentFile(int number) {
+        return new File(directory, String.format("games-%04d.seg", number));
+    }
+
+    private FileChannel openDeep(int number) throws IOException {
+        return FileChannel.open(deepFile(number).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    private File deepFile(int number) {
+        return new File(directory, String.format("deep-%04d.dat", number));
+    }
+
+    private File runFile(int number) {
+        return new File(directory, String.format("positions-%04d.run", number));
+    }
+}
@@ -0,0 +1,95 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fills a GameArchive with random legal games and measures adding games,
+ * reopening the archive, reading games by ID and finding the games that
+ * reach a position, both inside and beyond the indexed plies. The archive
+ * size is reported per game and extrapolated to a million games.
+ *
+ * Run with: java -cp build GameArchiveBenchmark [games] [plies]
+ */
+public class GameArchiveBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : 80;
+
+        File directory = Files.createTempDirectory("archive").toFile();
+        Random random = new Random(42);
+        List<List<String>> sample = new ArrayList<>();
+
+        long start = System.nanoTime();
+        try (GameArchive archive = new GameArchive(directory, 20)) {
+            for (int g = 0; g < count; g++) {
+                List<String> moves = randomGame(random, plies);
+                archive.add("white" + g % 1000, "black" + g % 997, "Benchmark", g * 60000L,
+                        GameArchive.RESULT_DRAW, null, moves);
+                if (g % (count / 10 + 1) == 0) {
+                    sample.add(moves);
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long bytes = 0;
+        for (File file : directory.listFiles()) {
+            bytes += file.length();
+        }
+        System.out.printf("Added %d games in %.1f s, %.3f ms per game%n", count, seconds, seconds * 1000 / count);
+        System.out.printf("Archive is %.1f MB, %.0f bytes per game, about %.0f MB per million games%n",
+                bytes / 1e6, (double) bytes / count, bytes / 1e6 * 1000000 / count);
+
+        start = System.nanoTime();
+        try (GameArchive archive = new GameArchive(directory, 20)) {
+            report("reopen " + archive.size() + " games", start);
+
+            start = System.nanoTime();
+            int reads = Math.min(count, 10000);
+            long total = 0;
+            for (int i = 0; i < reads; i++) {
+                total += archive.get(1 + random.nextInt(count)).getMoves().size();
+            }
+            System.out.printf("%-40s %10.3f ms/op%n", "get by ID", (System.nanoTime() - start) / 1e6 / reads);
+
+            for (List<String> moves : sample) {
+                for (int ply : new int[] {4, 12, 20, 40, 60}) {
+                    Position position = positionAfter(moves, Math.min(ply, moves.size()));
+                    start = System.nanoTime();
+                    int found = archive.findGames(position).size();
+                    report("findGames after " + ply + " plies: " + found, start);
+                }
+            }
+            System.out.println("(" + total + " plies read)");
+        }
+    }
+
+    private static List<String> randomGame(Random random, int plies) {
+        Position position = Position.startPosition();
+        List<String> moves = new ArrayList<>();
+        for (int i = 0; i < plies; i++) {
+            List<String> legal = position.legalMoves();
+            if (legal.isEmpty()) break;
+            // Favour the first few moves so games share openings, as real ones do
+            String move = legal.get(i < 8 ? random.nextInt(Math.min(3, legal.size())) : random.nextInt(legal.size()));
+            moves.add(move);
+            position = position.play(move);
+        }
+        return moves;
+    }
+
+    private static Position positionAfter(List<String> moves, int plies) {
+        Position position = Position.startPosition();
+        for (int i = 0; i < plies; i++) {
+            position = position.play(moves.get(i));
+        }
+        return position;
+    }
+
+    private static void report(String label, long startNanos) {
+        System.out.printf("%-40s %10.2f ms%n", label, (System.nanoTime() - startNanos) / 1e6);
+    }
+}
@@ -0,0 +1,457 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reviews finished games move by move.
+ *
+ * Every position of a game (or of a whole batch of games) is evaluated once,
+ * and the evaluations are spread over all engines of an EnginePool at the
+ * same time instead of walking the game ply by ply on one engine. Positions
+ * that occur more than once in a batch, such as common openings, are only
+ * searched once, and finished evaluations are kept in a cache so later
+ * batches (say, a referee checking the same event again) do not search them
+ * again. The results are then put back in move order: each move gets its
+ * centipawn loss and a classification, and each side an average centipawn
+ * loss (ACPL).
+ */
+public class GameReviewPipeline {
+    // Scores are clamped so one lost position does not dominate the average
+    private static final int SCORE_CAP = 1000;
+    private static final int INACCURACY_LOSS = 50;
+    private static final int MISTAKE_LOSS = 100;
+    private static final int BLUNDER_LOSS = 300;
+    private static final int CACHE_SIZE = 200000;
+
+    public enum Classification {
+        BEST, GOOD, INACCURACY, MISTAKE, BLUNDER
+    }
+
+    /**
+     * The verdict on a single move
+     */
+    public static class MoveReview {
+        private final int ply;
+        private final String move;
+        private final String fenBefore;
+        private final String bestMove;
+        private final int evalBefore;
+        private final int evalAfter;
+        private final int centipawnLoss;
+        private final Classification classification;
+
+        MoveReview(int ply, String move, String fenBefore, String bestMove,
+                   int evalBefore, int evalAfter, int centipawnLoss, Classification classification) {
+            this.ply = ply;
+            this.move = move;
+            this.fenBefore = fenBefore;
+            this.bestMove = bestMove;
+            this.evalBefore = evalBefore;
+            this.evalAfter = evalAfter;
+            this.centipawnLoss = centipawnLoss;
+            this.classification = classification;
+        }
+
+        /**
+         * Get the ply number, starting at 1 for the first move of the game
+         */
+        public int getPly() {
+            return ply;
+        }
+
+        public String getMove() {
+            return move;
+        }
+
+        public String getFenBefore() {
+            return fenBefore;
+        }
+
+        public String getBestMove() {
+            return bestMove;
+        }
+
+        /**
+         * Get the evaluation before the move, in centipawns from the mover's point of view
+         */
+        public int getEvalBefore() {
+            return evalBefore;
+        }
+
+        /**
+         * Get the evaluation after the move, in centipawns from the mover's point of view
+         */
+        public int getEvalAfter() {
+            return evalAfter;
+        }
+
+        public int getCentipawnLoss() {
+            return centipawnLoss;
+        }
+
+        /**
+         * Get the classification, or null if the position could not be evaluated
+         */
+        public Classification getClassification() {
+            return classification;
+        }
+
+        public boolean isWhiteMove() {
+            return ply % 2 == 1;
+        }
+
+        @Override
+        public String toString() {
+            String number = (ply + 1) / 2 + (isWhiteMove() ? ". " : "... ");
+            if (classification == null) {
+                return number + move + " (not evaluated)";
+            }
+            return number + move + " " + classification + " loss " + centipawnLoss
+                    + (classification == Classification.BEST ? "" : ", best " + bestMove);
+        }
+    }
+
+    /**
+     * An annotated game
+     */
+    public static class GameReview {
+        private final List<MoveReview> moves;
+        private final int positions;
+        private final long elapsedMs;
+
+        GameReview(List<MoveReview> moves, int positions, long elapsedMs) {
+            this.moves = Collections.unmodifiableList(moves);
+            this.positions = positions;
+            this.elapsedMs = elapsedMs;
+        }
+
+        /**
+         * Get the reviewed moves in game order
+         */
+        public List<MoveReview> getMoves() {
+            return moves;
+        }
+
+        /**
+         * Get the average centipawn loss of one side
+         *
+         * @param white true for white, false for black
+         * @return the average loss, or 0 if that side has no evaluated moves
+         */
+        public double getAverageCentipawnLoss(boolean white) {
+            long total = 0;
+            int count = 0;
+            for (MoveReview move : moves) {
+                if (move.isWhiteMove() == white && move.getClassification() != null) {
+                    total += move.getCentipawnLoss();
+                    count++;
+                }
+            }
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        /**
+         * Count one side's moves with the given classification
+         */
+        public int count(boolean white, Classification classification) {
+            int count = 0;
+            for (MoveReview move : moves) {
+                if (move.isWhiteMove() == white && move.getClassification() == classification) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Get the number of positions evaluated for this game
+         */
+        public int getPositions() {
+            return positions;
+        }
+
+        /**
+         * Get the wall-clock time of the review; for a batch this is the time of the whole batch
+         */
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        public double getPositionsPerSecond() {
+            return elapsedMs == 0 ? positions : positions * 1000.0 / elapsedMs;
+        }
+    }
+
+    /**
+     * A game to review: a start position and its moves in UCI notation
+     */
+    private static class GameLine {
+        final List<String> fens = new ArrayList<>();
+        final List<String> moves = new ArrayList<>();
+    }
+
+    private final EnginePool pool;
+    private final int depth;
+    private final int moveTimeMs;
+    private final ExecutorService executor;
+    private volatile double lastPositionsPerSecond;
+    private final Map<String, UciInfo> cache = new LinkedHashMap<String, UciInfo>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UciInfo> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Creates a review pipeline
+     *
+     * @param pool the engines to spread the positions over
+     * @param depth the search depth per position
+     * @param moveTimeMs the time limit per position, or 0 for depth only
+     */
+    public GameReviewPipeline(EnginePool pool, int depth, int moveTimeMs) {
+        this.pool = pool;
+        this.depth = depth;
+        this.moveTimeMs = moveTimeMs;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, pool.size()), r -> {
+            Thread thread = new Thread(r, "game-review");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Review a match from the standard starting position
+     *
+     * @param match the match whose move history is reviewed; illegal moves are skipped
+     * @return the annotated game, or null if the review was interrupted
+     */
+    public GameReview review(Match match) {
+        List<GameReview> reviews = reviewAll(Collections.singletonList(match));
+        return reviews == null ? null : reviews.get(0);
+    }
+
+    /**
+     * Review a game given as UCI moves
+     *
+     * @param startFen the starting position
+     * @param moves the moves in UCI notation
+     * @return the annotated game, or null if the review was interrupted
+     */
+    public GameReview review(String startFen, List<String> moves) {
+        List<GameReview> reviews = reviewLines(Collections.singletonList(toLine(startFen, moves)));
+        return reviews == null ? null : reviews.get(0);
+    }
+
+    /**
+     * Review a batch of matches, evaluating the positions of all games in parallel
+     *
+     * @param matches the matches to review
+     * @return one review per match, in the same order, or null if the review was interrupted
+     */
+    public List<GameReview> reviewAll(List<Match> matches) {
+        List<GameLine> lines = new ArrayList<>();
+        for (Match match : matches) {
+            List<String> moves = new ArrayList<>();
+            for (Move move : match.getMoveHistory()) {
+                if (move.isLegal()) {
+                    moves.add(move.toUci());
+                }
+            }
+            lines.add(toLine(Position.START_FEN, moves));
+        }
+        return reviewLines(lines);
+    }
+
+    /**
+     * Review a batch of games given as UCI moves, evaluating the positions of all games in parallel
+     *
+     * @param startFens the starting position of each game
+     * @param games the moves of each game in UCI notation
+     * @return one review per game, in the same order, or null if the review was interrupted
+     */
+    public List<GameReview> reviewGames(List<String> startFens, List<List<String>> games) {
+        List<GameLine> lines = new ArrayList<>();
+        for (int i = 0; i < games.size(); i++) {
+            lines.add(toLine(startFens.get(i), games.get(i)));
+        }
+        return reviewLines(lines);
+    }
+
+    /**
+     * Get the engine searches per second of the most recent review or batch; cached positions are not counted
+     */
+    public double getLastPositionsPerSecond() {
+        return lastPositionsPerSecond;
+    }
+
+    private GameLine toLine(String startFen, List<String> moves) {
+        GameLine line = new GameLine();
+        Position position = Position.fromFen(startFen);
+        line.fens.add(position.toFen());
+        for (String move : moves) {
+            try {
+                position = position.play(move);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Stopping review at unplayable move " + move + ": " + e.getMessage());
+                break;
+            }
+            line.moves.add(move);
+            line.fens.add(position.toFen());
+        }
+        return line;
+    }
+
+    private List<GameReview> reviewLines(List<GameLine> lines) {
+        long start = System.currentTimeMillis();
+
+        // Submit every distinct position up front so all engines stay busy
+        Map<String, Future<UciInfo>> evaluations = new HashMap<>();
+        int searched = 0;
+        for (GameLine line : lines) {
+            for (String fen : line.fens) {
+                String key = positionKey(fen);
+                if (evaluations.containsKey(key)) continue;
+                UciInfo cached;
+                synchronized (cache) {
+                    cached = cache.get(key);
+                }
+                if (cached != null) {
+                    evaluations.put(key, CompletableFuture.completedFuture(cached));
+                } else {
+                    evaluations.put(key, executor.submit(() -> evaluate(key, fen)));
+                    searched++;
+                }
+            }
+        }
+
+        List<GameReview> reviews = new ArrayList<>();
+        try {
+            List<List<MoveReview>> annotated = new ArrayList<>();
+            for (GameLine line : lines) {
+                annotated.add(annotate(line, evaluations));
+            }
+
+            long elapsed = System.currentTimeMillis() - start;
+            for (int i = 0; i < lines.size(); i++) {
+                reviews.add(new GameReview(annotated.get(i), lines.get(i).fens.size(), elapsed));
+            }
+            lastPositionsPerSecond = elapsed == 0 ? searched : searched * 1000.0 / elapsed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Future<UciInfo> future : evaluations.values()) {
+                future.cancel(true);
+            }
+            return null;
+        }
+        return reviews;
+    }
+
+    private List<MoveReview> annotate(GameLine line, Map<String, Future<UciInfo>> evaluations)
+            throws InterruptedException {
+        List<MoveReview> reviews = new ArrayList<>();
+        UciInfo before = result(evaluations.get(positionKey(line.fens.get(0))));
+
+        for (int i = 0; i < line.moves.size(); i++) {
+            UciInfo after = result(evaluations.get(positionKey(line.fens.get(i + 1))));
+            String move = line.moves.get(i);
+            String bestMove = before != null ? before.getFirstPvMove() : null;
+
+            if (before == null || after == null || !before.hasScore() || !after.hasScore()) {
+                reviews.add(new MoveReview(i + 1, move, line.fens.get(i), bestMove, 0, 0, 0, null));
+            } else {
+                // The position after the move is scored for the opponent, so flip its sign
+                int evalBefore = centipawns(before);
+                int evalAfter = -centipawns(after);
+                boolean best = move.equals(bestMove);
+                int loss = best ? 0 : Math.max(0, evalBefore - evalAfter);
+                reviews.add(new MoveReview(i + 1, move, line.fens.get(i), bestMove,
+                        evalBefore, evalAfter, loss, best ? Classification.BEST : classify(loss)));
+            }
+            before = after;
+        }
+        return reviews;
+    }
+
+    private UciInfo evaluate(String key, String fen) throws InterruptedException {
+        StockfishEngine engine = pool.acquire();
+        if (engine == null) return null;
+        UciInfo info;
+        try {
+            info = engine.evaluatePosition(fen, depth, moveTimeMs);
+        } finally {
+            pool.release(engine);
+        }
+        if (info != null && info.hasScore()) {
+            synchronized (cache) {
+                cache.put(key, info);
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Get the number of evaluations kept for later batches
+     */
+    public int getCachedPositions() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private static UciInfo result(Future<UciInfo> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            System.err.println("Error evaluating position for review: " + e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * The FEN without the move clocks, so transpositions share an evaluation
+     */
+    private static String positionKey(String fen) {
+        int end = fen.length();
+        for (int spaces = 0, i = 0; i < fen.length(); i++) {
+            if (fen.charAt(i) == ' ' && ++spaces == 4) {
+                end = i;
+                break;
+            }
+        }
+        return fen.substring(0, end);
+    }
+
+    /**
+     * Convert a score to centipawns for the side to move, with mates at the cap
+     */
+    static int centipawns(UciInfo info) {
+        if (info.isMateScore()) {
+            // "mate 0" means the side to move has been mated
+            return info.getScoreMate() > 0 ? SCORE_CAP : -SCORE_CAP;
+        }
+        return Math.max(-SCORE_CAP, Math.min(SCORE_CAP, info.getScoreCp()));
+    }
+
+    static Classification classify(int centipawnLoss) {
+        if (centipawnLoss >= BLUNDER_LOSS) return Classification.BLUNDER;
+        if (centipawnLoss >= MISTAKE_LOSS) return Classification.MISTAKE;
+        if (centipawnLoss >= INACCURACY_LOSS) return Classification.INACCURACY;
+        return Classification.GOOD;
+    }
+
+    /**
+     * Stop the review threads; the engine pool is left open
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,249 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Base class for engines that run inside the JVM but look like a separate
+ * process to StockfishEngine. Commands written to the process are handed to
+ * handleCommand on a dedicated thread, and whatever it prints is read back
+ * by StockfishEngine exactly as if a real engine had written it, so all of
+ * our own parsing and scheduling overhead is exercised.
+ */
+public abstract class InProcessUciEngine extends Process {
+    private final BytePipe toEngine = new BytePipe();
+    private final BytePipe fromEngine = new BytePipe();
+    private final CompletableFuture<Process> exit = new CompletableFuture<>();
+    private final Thread engineThread;
+    private volatile int exitCode = -1;
+
+    protected InProcessUciEngine(String threadName) {
+        engineThread = new Thread(this::run, threadName);
+        engineThread.setDaemon(true);
+    }
+
+    /**
+     * Start the engine thread; subclasses call this once they are fully constructed
+     */
+    protected final InProcessUciEngine start() {
+        engineThread.start();
+        return this;
+    }
+
+    /**
+     * Handle one UCI command
+     *
+     * @param command the command line, without the line terminator
+     * @param out where to write the engine's responses
+     * @return false to terminate the engine (e.g. on "quit")
+     * @throws InterruptedException if the engine is destroyed while responding
+     */
+    protected abstract boolean handleCommand(String command, PrintWriter out) throws InterruptedException;
+
+    private void run() {
+        int code = 0;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(toEngine.input, StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(fromEngine.output, StandardCharsets.UTF_8), true)) {
+            String command;
+            while ((command = in.readLine()) != null) {
+                if (!handleCommand(command.trim(), out)) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            code = 143;
+        } catch (IOException e) {
+            code = 1;
+        } finally {
+            fromEngine.close();
+            toEngine.close();
+            exitCode = code;
+            exit.complete(this);
+        }
+    }
+
+    /**
+     * Sleep while responding, in a way that destroy() can cut short
+     */
+    protected static void pause(long millis) throws InterruptedException {
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return toEngine.output;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return fromEngine.input;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        try {
+            exit.get();
+        } catch (ExecutionException e) {
+            // never completed exceptionally
+        }
+        return exitCode;
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            exit.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public int exitValue() {
+        if (!exit.isDone()) {
+            throw new IllegalThreadStateException("engine is still running");
+        }
+        return exitCode;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return !exit.isDone();
+    }
+
+    @Override
+    public CompletableFuture<Process> onExit() {
+        return exit;
+    }
+
+    @Override
+    public void destroy() {
+        toEngine.close();
+        engineThread.interrupt();
+    }
+
+    /**
+     * Simple blocking byte pipe. java.io.PipedInputStream is not usable here because
+     * it fails once the last writing thread dies, and StockfishEngine is called from
+     * short-lived worker threads.
+     */
+    private static final class BytePipe {
+        private final byte[] buffer = new byte[64 * 1024];
+        private int readPos;
+        private int count;
+        private boolean closed;
+
+        final InputStream input = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return BytePipe.this.read(b, off, len);
+            }
+
+            @Override
+            public int available() {
+                synchronized (BytePipe.this) {
+                    return count;
+                }
+            }
+
+            @Override
+            public void close() {
+                BytePipe.this.close();
+            }
+        };
+
+        final OutputStream output = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                BytePipe.this.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                BytePipe.this.close();
+            }
+        };
+
+        private synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            try {
+                while (count == 0 && !closed) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (count == 0) return -1;
+
+            int n = Math.min(len, count);
+            for (int i = 0; i < n; i++) {
+                b[off + i] = buffer[(readPos + i) % buffer.length];
+            }
+            readPos = (readPos + n) % buffer.length;
+            count -= n;
+            notifyAll();
+            return n;
+        }
+
+        private synchronized void write(byte[] b, int off, int len) throws IOException {
+            int written = 0;
+            try {
+                while (written < len) {
+                    while (count == buffer.length && !closed) {
+                        wait();
+                    }
+                    if (closed) {
+                        throw new IOException("Pipe closed");
+                    }
+                    int writePos = (readPos + count) % buffer.length;
+                    int n = Math.min(len - written, buffer.length - count);
+                    for (int i = 0; i < n; i++) {
+                        buffer[(writePos + i) % buffer.length] = b[off + written + i];
+                    }
+                    count += n;
+                    written += n;
+                    notifyAll();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        private synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+    }
+}
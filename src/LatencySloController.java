@@ -0,0 +1,246 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Keeps interactive engine requests inside a latency objective.
+ *
+ * For every engine it records how long recent requests took from the moment
+ * they were asked for (including any wait for a shared process) to the
+ * final answer, and derives p50 and p95 from them. The search limits for
+ * the next request follow from that: while p95 is above the target the
+ * movetime is cut, and once the movetime is at its floor the depth and then
+ * the node count are capped as well. When p95 is comfortably below the
+ * target the limits are relaxed again, depth and node caps first.
+ *
+ * Requests beyond a small number per engine process are turned away at
+ * once instead of queueing, so a burst of clicks cannot build a backlog
+ * that takes seconds to drain. Sessions of one EngineSessionMultiplexer
+ * queue on the same processes, so they share one allowance: the per-process
+ * limit times the multiplexer's process count.
+ */
+public class LatencySloController {
+    private static final int WINDOW = 64;
+    // Decisions look at recent requests only, so the effect of the last change shows quickly
+    private static final int CONTROL_WINDOW = 16;
+    private static final int ADJUST_EVERY = 4;
+    private static final int MIN_MOVE_TIME_MS = 50;
+    private static final int MIN_DEPTH = 6;
+    private static final int MAX_DEPTH_CAP = 40;
+    private static final long MIN_NODES = 20000;
+    private static final double DECREASE = 0.7;
+    private static final double INCREASE = 1.15;
+    private static final double RELAX_BELOW = 0.6;
+
+    private static LatencySloController instance;
+
+    /**
+     * Latency history and current limits of one engine
+     */
+    private class EngineState {
+        final long[] samples = new long[WINDOW];
+        int sampleCount;
+        int next;
+        int sinceAdjust;
+        int moveTimeMs = initialMoveTimeMs();
+        int depthCap;
+        long nodeCap;
+        long lastNps;
+
+        synchronized void record(long latencyMs, long nps) {
+            samples[next] = latencyMs;
+            next = (next + 1) % WINDOW;
+            sampleCount = Math.min(WINDOW, sampleCount + 1);
+            if (nps > 0) {
+                lastNps = nps;
+            }
+            if (++sinceAdjust >= ADJUST_EVERY) {
+                sinceAdjust = 0;
+                adjust();
+            }
+        }
+
+        synchronized long percentile(double fraction, int window) {
+            int count = Math.min(window, sampleCount);
+            if (count == 0) return 0;
+            long[] sorted = new long[count];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = samples[(next - 1 - i + WINDOW) % WINDOW];
+            }
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(count - 1, Math.floor(fraction * count))];
+        }
+
+        synchronized SearchLimits limits() {
+            return SearchLimits.moveTime(moveTimeMs).withDepth(depthCap).withNodes(nodeCap);
+        }
+
+        private void adjust() {
+            long p95 = percentile(0.95, CONTROL_WINDOW);
+            if (p95 > targetP95Ms) {
+                tighten();
+            } else if (p95 < targetP95Ms * RELAX_BELOW) {
+                relax();
+            }
+        }
+
+        private void tighten() {
+            if (moveTimeMs > MIN_MOVE_TIME_MS) {
+                moveTimeMs = Math.max(MIN_MOVE_TIME_MS, (int) (moveTimeMs * DECREASE));
+            } else if (depthCap == 0 || depthCap > MIN_DEPTH) {
+                depthCap = depthCap == 0 ? MAX_DEPTH_CAP / 2 : Math.max(MIN_DEPTH, depthCap - 2);
+            } else if (lastNps > 0) {
+                long nodes = nodeCap == 0 ? lastNps * moveTimeMs / 1000 : (long) (nodeCap * DECREASE);
+                nodeCap = Math.max(MIN_NODES, nodes);
+            }
+        }
+
+        private void relax() {
+            if (nodeCap > 0) {
+                nodeCap = 0;
+            } else if (depthCap > 0) {
+                depthCap += 2;
+                if (depthCap >= MAX_DEPTH_CAP) {
+                    depthCap = 0;
+                }
+            } else {
+                moveTimeMs = Math.min(maxMoveTimeMs, (int) Math.ceil(moveTimeMs * INCREASE));
+            }
+        }
+    }
+
+    private final long targetP95Ms;
+    private final int maxMoveTimeMs;
+    private final int maxOutstanding;
+    private final Map<ChessEngine, EngineState> states = Collections.synchronizedMap(new WeakHashMap<>());
+    // Keyed by what requests actually queue on: the engine, or a session's multiplexer
+    private final Map<Object, Semaphore> admissions = Collections.synchronizedMap(new WeakHashMap<>());
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Creates a controller
+     *
+     * @param targetP95Ms the latency objective: 95% of requests should finish within this time
+     * @param maxMoveTimeMs the movetime used when there is room, and the upper bound for it
+     * @param maxOutstanding the most requests one engine process may have running or waiting
+     */
+    public LatencySloController(long targetP95Ms, int maxMoveTimeMs, int maxOutstanding) {
+        this.targetP95Ms = targetP95Ms;
+        this.maxMoveTimeMs = maxMoveTimeMs;
+        this.maxOutstanding = Math.max(1, maxOutstanding);
+    }
+
+    /**
+     * Get the controller shared by the hint services. The objective can be set with
+     * -Dchess.hint.sloMs (default 1200) and the longest think time with -Dchess.hint.maxMoveTimeMs (default 1000).
+     */
+    public static synchronized LatencySloController getInstance() {
+        if (instance == null) {
+            instance = new LatencySloController(
+                    Long.getLong("chess.hint.sloMs", 1200),
+                    Integer.getInteger("chess.hint.maxMoveTimeMs", 1000),
+                    Integer.getInteger("chess.hint.maxOutstanding", 2));
+        }
+        return instance;
+    }
+
+    private int initialMoveTimeMs() {
+        // Leave room for process hand-over and GUI work within the objective
+        return (int) Math.max(MIN_MOVE_TIME_MS, Math.min(maxMoveTimeMs, targetP95Ms * 0.8));
+    }
+
+    private EngineState state(ChessEngine engine) {
+        synchronized (states) {
+            return states.computeIfAbsent(engine, e -> new EngineState());
+        }
+    }
+
+    /**
+     * Get the admission limit for the processes the engine's requests run on
+     */
+    private Semaphore admission(ChessEngine engine) {
+        synchronized (admissions) {
+            if (engine instanceof EngineSession) {
+                EngineSessionMultiplexer multiplexer = ((EngineSession) engine).getMultiplexer();
+                return admissions.computeIfAbsent(multiplexer,
+                        m -> new Semaphore(maxOutstanding * multiplexer.getProcessCount()));
+            }
+            return admissions.computeIfAbsent(engine, e -> new Semaphore(maxOutstanding));
+        }
+    }
+
+    /**
+     * Search for the best move within the engine's current limits and record how long it took
+     *
+     * @param engine the engine to search on
+     * @param fen the position in FEN notation
+     * @param progress receives each new top line; may be null
+     * @return the best move, or null if the engine failed or the request was turned away
+     */
+    public String getBestMove(ChessEngine engine, String fen, Predicate<UciInfo> progress) {
+        EngineState state = state(engine);
+        Semaphore admission = admission(engine);
+        if (!admission.tryAcquire()) {
+            rejected.incrementAndGet();
+            return null;
+        }
+
+        long start = System.nanoTime();
+        long[] nps = {0};
+        boolean[] cancelled = {false};
+        try {
+            String bestMove = engine.getBestMove(fen, state.limits(), info -> {
+                if (info.getNps() > 0) {
+                    nps[0] = info.getNps();
+                }
+                if (progress != null && !progress.test(info)) {
+                    cancelled[0] = true;
+                }
+                return !cancelled[0];
+            });
+            // Searches the caller cut short say nothing about latency
+            if (bestMove != null && !cancelled[0]) {
+                state.record((System.nanoTime() - start) / 1_000_000, nps[0]);
+            }
+            return bestMove;
+        } finally {
+            admission.release();
+        }
+    }
+
+    /**
+     * Get the limits the next request on the engine will use
+     */
+    public SearchLimits getLimits(ChessEngine engine) {
+        return state(engine).limits();
+    }
+
+    /**
+     * Get the median latency of recent requests on the engine, in milliseconds
+     */
+    public long getP50(ChessEngine engine) {
+        return state(engine).percentile(0.5, WINDOW);
+    }
+
+    /**
+     * Get the 95th percentile latency of recent requests on the engine, in milliseconds
+     */
+    public long getP95(ChessEngine engine) {
+        return state(engine).percentile(0.95, WINDOW);
+    }
+
+    /**
+     * Get the number of requests turned away because the engine's processes already had enough work
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getTargetP95Ms() {
+        return targetP95Ms;
+    }
+}
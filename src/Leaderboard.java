@@ -1,64 +1,119 @@
-import java.util.List;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 
-public class Leaderboard {
-    private List<Integer> playerIDs;
-    private List<Float> points;
-    private List<Integer> rankings;
+/**
+ * Players ranked by points (a win is 1, a draw 0.5), best first; equal
+ * points are ranked by name.
+ *
+ * The ranking is kept sorted as points change, so an update costs
+ * O(log n) however many players there are. As a projection of the match
+ * event log it is fed every finished match.
+ */
+public class Leaderboard implements MatchEventLog.Projection {
+    private final Map<String, Float> points = new HashMap<>();
+    private final TreeSet<String> ranking = new TreeSet<>((a, b) -> {
+        int byPoints = Float.compare(points.get(b), points.get(a));
+        return byPoints != 0 ? byPoints : a.compareTo(b);
+    });
 
-    public Leaderboard() {
-        playerIDs = new ArrayList<>();
-        points = new ArrayList<>();
-        rankings = new ArrayList<>();
+    /**
+     * Set a player's points
+     */
+    public synchronized void updateLeaderboard(String player, float newPoints) {
+        if (points.containsKey(player)) {
+            ranking.remove(player);
+        }
+        points.put(player, newPoints);
+        ranking.add(player);
     }
 
-    public void updateLeaderboard(int playerID, float points) {
-        int index = playerIDs.indexOf(playerID);
-        if (index != -1) {
-            this.points.set(index, points);
-        } else {
-            playerIDs.add(playerID);
-            this.points.add(points);
-            rankings.add(playerIDs.size());
-        }
-        sortLeaderboard();
+    /**
+     * Add to a player's points
+     */
+    public synchronized void addPoints(String player, float change) {
+        updateLeaderboard(player, points.getOrDefault(player, 0f) + change);
     }
 
-    private void sortLeaderboard() {
-        // Create list of indices to sort
-        List<Integer> indices = new ArrayList<>();
-        for (int i = 0; i < playerIDs.size(); i++) {
-            indices.add(i);
+    public synchronized float getPoints(String player) {
+        return points.getOrDefault(player, 0f);
+    }
+
+    /**
+     * Get the best players, best first
+     */
+    public synchronized List<String> getTop(int count) {
+        List<String> top = new ArrayList<>(Math.min(count, ranking.size()));
+        for (String player : ranking) {
+            if (top.size() == count) break;
+            top.add(player);
         }
+        return top;
+    }
+
+    /**
+     * Get a player's rank, 1 for the leader, or 0 if the player has no points entry
+     */
+    public synchronized int getRank(String player) {
+        if (!points.containsKey(player)) return 0;
+        return ranking.headSet(player).size() + 1;
+    }
 
-        // Sort indices based on points (descending)
-        indices.sort((i1, i2) -> Float.compare(points.get(i2), points.get(i1)));
+    public synchronized int size() {
+        return points.size();
+    }
 
-        // Reorder all lists based on sorted indices
-        List<Integer> sortedPlayerIDs = new ArrayList<>();
-        List<Float> sortedPoints = new ArrayList<>();
-        List<Integer> sortedRankings = new ArrayList<>();
+    /**
+     * Describe the player at a rank, counting from 0
+     */
+    public synchronized String getTopPlayer(int n) {
+        List<String> top = getTop(n + 1);
+        String player = top.get(n);
+        return player + ": " + points.get(player) + " points";
+    }
 
-        for (int i = 0; i < indices.size(); i++) {
-            int originalIndex = indices.get(i);
-            sortedPlayerIDs.add(playerIDs.get(originalIndex));
-            sortedPoints.add(points.get(originalIndex));
-            sortedRankings.add(i + 1); // Rankings start at 1
+    public synchronized void displayLeaderboard() {
+        int rank = 1;
+        for (String player : ranking) {
+            System.out.println(rank++ + ". " + player + ": " + points.get(player));
         }
+    }
+
+    @Override
+    public synchronized void apply(MatchEventLog.Event event) {
+        if (event.getType() != MatchEventLog.EventType.MATCH_ENDED) return;
+        float whiteScore = MatchEventLog.whiteScore(event.getResult());
+        if (whiteScore < 0) return;
+        addPoints(event.getWhite(), whiteScore);
+        addPoints(event.getBlack(), 1 - whiteScore);
+    }
 
-        // Update the original lists
-        playerIDs = sortedPlayerIDs;
-        points = sortedPoints;
-        rankings = sortedRankings;
+    @Override
+    public Leaderboard emptyCopy() {
+        return new Leaderboard();
     }
 
-    public String getTopPlayer(int n) {
-        return "Player " + playerIDs.get(n) + ": " + points.get(n) + " points";
+    @Override
+    public synchronized void merge(MatchEventLog.Projection other) {
+        for (Map.Entry<String, Float> entry : ((Leaderboard) other).points.entrySet()) {
+            addPoints(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public synchronized void writeSnapshot(List<String> lines) {
+        for (Map.Entry<String, Float> entry : points.entrySet()) {
+            lines.add(entry.getKey() + "\t" + entry.getValue());
+        }
     }
 
-    public void displayLeaderboard() {
-        for (int i = 0; i < playerIDs.size(); i++) {
-            System.out.println((i+1) + ". Player " + playerIDs.get(i) + ": " + points.get(i));
+    @Override
+    public synchronized void readSnapshot(List<String> lines) {
+        for (String line : lines) {
+            String[] parts = line.split("\t");
+            updateLeaderboard(parts[0], Float.parseFloat(parts[1]));
         }
     }
 }
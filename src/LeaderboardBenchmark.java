@@ -0,0 +1,93 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures sorting a tournament's players by rating with stats served by
+ * PlayerStatsRepository, against the old way of scanning playerStats.txt
+ * on every getRating call. The benchmark works on a generated stats file,
+ * not the application's own.
+ *
+ * Run with: java -cp build LeaderboardBenchmark [players]
+ */
+public class LeaderboardBenchmark {
+    // The file-scan variant needs minutes at 10k players, so it runs on a sample
+    private static final int LEGACY_SAMPLE = 500;
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+
+        File statsFile = File.createTempFile("playerStats", ".txt");
+        statsFile.deleteOnExit();
+        Random random = new Random(42);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(statsFile))) {
+            writer.write("name, wins, losses, draws, rating");
+            writer.newLine();
+            for (int i = 0; i < count; i++) {
+                writer.write(String.format("player%d,%d,%d,%d,%d", i, random.nextInt(50), random.nextInt(50),
+                        random.nextInt(20), 800 + random.nextInt(2000)));
+                writer.newLine();
+            }
+        }
+        System.setProperty("chess.stats.file", statsFile.getPath());
+
+        Tournament tournament = new Tournament(1, "Benchmark", "Nowhere", "2024-01-01", "90+30", 9);
+        List<Player> players = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Player player = new Player("player" + i, 1200, "XX");
+            players.add(player);
+            tournament.addPlayer(player);
+        }
+
+        long start = System.nanoTime();
+        PlayerStatsRepository.getInstance().size();
+        report("initial load of " + count + " players", start);
+
+        for (int round = 0; round < 3; round++) {
+            tournament.getLeaderboard();
+        }
+        start = System.nanoTime();
+        String leaderboard = tournament.getLeaderboard();
+        report("Tournament.getLeaderboard, " + count + " players", start);
+
+        start = System.nanoTime();
+        players.sort(Comparator.comparingInt(Player::getRating).reversed());
+        report("sort by getRating, " + count + " players", start);
+
+        List<Player> sample = new ArrayList<>(players.subList(0, Math.min(LEGACY_SAMPLE, count)));
+        start = System.nanoTime();
+        sample.sort(Comparator.comparingInt((Player p) -> scanRating(statsFile, p.getName())).reversed());
+        report("sort by file scan, " + sample.size() + " players", start);
+
+        System.out.println(leaderboard.substring(0, leaderboard.indexOf('\n', leaderboard.indexOf('\n') + 1)));
+    }
+
+    /**
+     * The lookup Player.getRating used to do: read the file until the player's line
+     */
+    private static int scanRating(File file, String name) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts[0].equals(name)) {
+                    return Integer.parseInt(parts[4].trim());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    private static void report(String label, long startNanos) {
+        System.out.printf("%-45s %10.2f ms%n", label, (System.nanoTime() - startNanos) / 1e6);
+    }
+}
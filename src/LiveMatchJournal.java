@@ -0,0 +1,657 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Journal of the matches being played, so they can be resumed after a
+ * crash.
+ *
+ * Each change to a live match is one line: the match begins, a move is
+ * played (with the board and both clocks after it), a clock checkpoint
+ * (once a second while the match runs), the match finishes. Callers only
+ * queue the line, so the Swing event thread never waits for the disk; a
+ * background thread writes whatever has queued up with one fsync, keeping
+ * only the latest clock checkpoint of each match. When the journal passes
+ * a few MB it is rewritten with just the unfinished matches.
+ *
+ * On startup the journal is read and every match without a finish line
+ * can be rebuilt: players, moves, board, side to move and clocks. A clock
+ * is charged up to the last line written for the match, not for the time
+ * the application was down.
+ *
+ * Several instances of the application can share a data directory, so
+ * each one writes its own journal: the first of liveMatches.journal,
+ * liveMatches.journal.1, ... that no running instance owns. An instance
+ * owns its journal by holding an OS lock on "<journal>.owner" until it
+ * exits, which the OS also releases when it crashes. Recovery takes over
+ * the journals no instance owns and never touches a live peer's matches.
+ * Appends and compaction hold the journal's DataFileLock.
+ *
+ * Line format, tab-separated:
+ * "B id match logKey tournament timeControl whiteMs blackMs savedAt" followed by
+ * username, name, country and user ID of White and then Black;
+ * "M id from to piece time board enPassant whiteMs blackMs savedAt", where
+ * a promotion piece follows the destination square (e8N) and compaction
+ * leaves out everything after the time for all but the last move;
+ * "C id whiteMs blackMs savedAt"; "F id".
+ */
+public class LiveMatchJournal {
+    private static final long COMPACT_BYTES = 4L << 20;
+    private static final String NONE = "-";
+
+    private static LiveMatchJournal instance;
+
+    /**
+     * An unfinished match read back from the journal
+     */
+    public static class LiveGame {
+        private final Match match;
+        private final Map<String, String> board;
+        private final String enPassant;
+        private final long savedAt;
+
+        public LiveGame(Match match, Map<String, String> board, String enPassant, long savedAt) {
+            this.match = match;
+            this.board = board;
+            this.enPassant = enPassant;
+            this.savedAt = savedAt;
+        }
+
+        /**
+         * Get the match with its moves and clocks restored; start it with Match.resumeMatch
+         */
+        public Match getMatch() {
+            return match;
+        }
+
+        /**
+         * Get the board as MatchGUI keeps it: square name ("e4") to piece code ("wP"),
+         * or null if no move was played
+         */
+        public Map<String, String> getBoard() {
+            return board;
+        }
+
+        /**
+         * Get the square a pawn passed over with its last move, or null
+         */
+        public String getEnPassant() {
+            return enPassant;
+        }
+
+        /**
+         * Get when the match was last saved, in milliseconds since the epoch
+         */
+        public long getSavedAt() {
+            return savedAt;
+        }
+    }
+
+    /**
+     * The lines that describe one unfinished match
+     */
+    private static class GameLines {
+        final String begin;
+        // Every move but the last, cut down to "M id from to piece time"
+        final List<String> moves = new ArrayList<>();
+        String lastMove;
+        String clock;
+
+        GameLines(String begin) {
+            this.begin = begin;
+        }
+    }
+
+    private final File base;
+    private final File file;
+    private final FileLock owner;
+    private final Thread writer;
+    private final LinkedBlockingQueue<String> queue = new LinkedBlockingQueue<>();
+    // Written and read by the writer thread only, after the constructor
+    private final Map<Integer, GameLines> games = new LinkedHashMap<>();
+    // The matches unfinished when the journal was opened, until recover hands them out
+    private Map<Integer, GameLines> unfinished;
+    private FileOutputStream out;
+    private long length;
+    private int nextId = 1;
+    private long queued;
+    private long written;
+
+    /**
+     * Take the first journal of the given name that no running instance owns, and read the
+     * matches it holds
+     *
+     * @param base the first journal's file; the others add ".1", ".2", ... to its name
+     * @throws IOException if the journal cannot be locked or read
+     */
+    public LiveMatchJournal(File base) throws IOException {
+        this.base = base;
+        int slot = 0;
+        FileLock lock;
+        while ((lock = own(journalFile(base, slot))) == null) {
+            slot++;
+        }
+        owner = lock;
+        file = journalFile(base, slot);
+        nextId = read(file, games) + 1;
+        unfinished = new LinkedHashMap<>(games);
+        out = new FileOutputStream(file, true);
+
+        writer = new Thread(this::writeLines, "live-match-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Get the application's journal, named after liveMatches.journal unless -Dchess.live.file
+     * names another one
+     */
+    public static synchronized LiveMatchJournal getInstance() {
+        if (instance == null) {
+            File file = new File(System.getProperty("chess.live.file", "liveMatches.journal"));
+            try {
+                instance = new LiveMatchJournal(file);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot read " + file + ": " + e.getMessage(), e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Start journaling a match
+     */
+    public void begin(Match match) {
+        int id;
+        synchronized (this) {
+            id = nextId++;
+        }
+        match.setLiveId(id);
+        StringBuilder line = new StringBuilder("B\t").append(id).append('\t').append(match.getMatchID())
+                .append('\t').append(match.getLogKey())
+                .append('\t').append(match.getTournamentId()).append('\t').append(match.getTimeControl())
+                .append('\t').append(match.getWhiteTimeLeft()).append('\t').append(match.getBlackTimeLeft())
+                .append('\t').append(System.currentTimeMillis());
+        for (Player player : new Player[] {match.getPlayer1(), match.getPlayer2()}) {
+            line.append('\t').append(player.getUsername()).append('\t').append(player.getName())
+                    .append('\t').append(player.getCountry()).append('\t').append(player.getID());
+        }
+        enqueue(line.toString());
+    }
+
+    /**
+     * Record a move with the board after it
+     *
+     * @param board square name to piece code, as MatchGUI keeps it
+     * @param enPassant the square the moved pawn passed over, or null
+     */
+    public void movePlayed(Match match, Move move, Map<String, String> board, String enPassant) {
+        if (match.getLiveId() < 0) return;
+        enqueue("M\t" + match.getLiveId() + "\t" + move.getFrom() + "\t" + move.getTo()
+                + (move.getPromotion() == null ? "" : move.getPromotion()) + "\t" + move.getPiece()
+                + "\t" + (move.getTimestamp() == null || move.getTimestamp().isEmpty() ? NONE : move.getTimestamp())
+                + "\t" + encodeBoard(board) + "\t" + (enPassant == null ? NONE : enPassant)
+                + "\t" + match.getWhiteTimeLeft() + "\t" + match.getBlackTimeLeft() + "\t" + System.currentTimeMillis());
+    }
+
+    /**
+     * Record both clocks; called about once a second while the match runs
+     */
+    public void clockTick(Match match) {
+        if (match.getLiveId() < 0) return;
+        enqueue("C\t" + match.getLiveId() + "\t" + match.getWhiteTimeLeft() + "\t" + match.getBlackTimeLeft()
+                + "\t" + System.currentTimeMillis());
+    }
+
+    /**
+     * Stop journaling a match; it will not be offered for resuming
+     */
+    public void finish(Match match) {
+        if (match.getLiveId() < 0) return;
+        enqueue("F\t" + match.getLiveId());
+        match.setLiveId(-1);
+    }
+
+    /**
+     * Wait until everything queued so far is on disk
+     */
+    public synchronized void flush() {
+        long target = queued;
+        while (written < target) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the journal this instance writes
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Write what is queued and give up the journal, leaving its unfinished matches to be
+     * recovered by the next instance that opens it
+     */
+    public void close() throws IOException {
+        flush();
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+        owner.release();
+        owner.channel().close();
+    }
+
+    /**
+     * Rebuild the matches left unfinished by a crash: those in this instance's journal when it
+     * was opened, which only the first call returns, and those in the journals of instances
+     * that are no longer running, which are moved into this instance's journal. Matches that
+     * are not resumed should be given to finish so they are not offered again at the next start.
+     */
+    public synchronized List<LiveGame> recover() {
+        try {
+            adoptOrphans();
+        } catch (IOException e) {
+            System.err.println("Cannot take over unfinished matches: " + e.getMessage());
+        }
+        List<LiveGame> recovered = new ArrayList<>();
+        unfinished.entrySet().parallelStream().map(entry -> {
+            try {
+                return rebuild(entry.getKey(), entry.getValue());
+            } catch (RuntimeException e) {
+                System.err.println("Cannot resume live match " + entry.getKey() + ": " + e.getMessage());
+                return null;
+            }
+        }).forEachOrdered(game -> {
+            if (game != null) recovered.add(game);
+        });
+        unfinished = new LinkedHashMap<>();
+        return recovered;
+    }
+
+    /**
+     * Move the unfinished matches of every journal no running instance owns into this one, under
+     * new IDs, and delete that journal once they are on disk here
+     */
+    private void adoptOrphans() throws IOException {
+        File[] candidates = base.getAbsoluteFile().getParentFile().listFiles();
+        if (candidates == null) return;
+        String prefix = base.getName() + ".";
+        for (File journal : candidates) {
+            String name = journal.getName();
+            boolean isJournal = name.equals(base.getName())
+                    || name.startsWith(prefix) && name.substring(prefix.length()).matches("\\d+");
+            if (!isJournal || journal.getAbsoluteFile().equals(file.getAbsoluteFile())) continue;
+            FileLock orphan = own(journal);
+            if (orphan == null) continue;
+            try {
+                DataFileLock.runLocked(journal, () -> {
+                    Map<Integer, GameLines> orphaned = new LinkedHashMap<>();
+                    read(journal, orphaned);
+                    for (GameLines lines : orphaned.values()) {
+                        int id;
+                        synchronized (this) {
+                            id = nextId++;
+                        }
+                        GameLines adopted = new GameLines(withId(lines.begin, id));
+                        enqueue(adopted.begin);
+                        for (String move : lines.moves) {
+                            adopted.moves.add(withId(move, id));
+                            enqueue(withId(move, id));
+                        }
+                        if (lines.lastMove != null) {
+                            adopted.lastMove = withId(lines.lastMove, id);
+                            enqueue(adopted.lastMove);
+                        }
+                        if (lines.clock != null) {
+                            adopted.clock = withId(lines.clock, id);
+                            enqueue(adopted.clock);
+                        }
+                        unfinished.put(id, adopted);
+                    }
+                    flush();
+                    if (!journal.delete()) {
+                        throw new IOException("Cannot delete " + journal);
+                    }
+                });
+            } finally {
+                orphan.release();
+                orphan.channel().close();
+            }
+        }
+    }
+
+    /**
+     * Lock a journal's owner file for this instance
+     *
+     * @return the lock, or null if a running instance owns the journal
+     */
+    private static FileLock own(File journal) throws IOException {
+        FileChannel channel = FileChannel.open(new File(journal.getPath() + ".owner").toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = null;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Another journal in this process owns it
+        }
+        if (lock == null) {
+            channel.close();
+        }
+        return lock;
+    }
+
+    private static File journalFile(File base, int slot) {
+        return slot == 0 ? base : new File(base.getPath() + "." + slot);
+    }
+
+    private LiveGame rebuild(int id, GameLines lines) {
+        String[] begin = lines.begin.split("\t");
+        Player white = new Player(begin[10], 1200, begin[11], begin[9], "", Integer.parseInt(begin[12]));
+        Player black = new Player(begin[14], 1200, begin[15], begin[13], "", Integer.parseInt(begin[16]));
+        Match match = new Match(Integer.parseInt(begin[2]), white, black, begin[5]);
+        match.setLogKey(Long.parseLong(begin[3]));
+        match.setTournamentId(Integer.parseInt(begin[4]));
+        match.setLiveId(id);
+
+        long whiteMs = Long.parseLong(begin[6]);
+        long blackMs = Long.parseLong(begin[7]);
+        long savedAt = Long.parseLong(begin[8]);
+        Map<String, String> board = null;
+        String enPassant = null;
+        for (String line : lines.moves) {
+            restoreMove(match, line.split("\t"));
+        }
+        if (lines.lastMove != null) {
+            String[] move = lines.lastMove.split("\t");
+            restoreMove(match, move);
+            board = decodeBoard(move[6]);
+            enPassant = NONE.equals(move[7]) ? null : move[7];
+            whiteMs = Long.parseLong(move[8]);
+            blackMs = Long.parseLong(move[9]);
+            savedAt = Long.parseLong(move[10]);
+        }
+        if (lines.clock != null) {
+            String[] clock = lines.clock.split("\t");
+            if (Long.parseLong(clock[4]) >= savedAt) {
+                whiteMs = Long.parseLong(clock[2]);
+                blackMs = Long.parseLong(clock[3]);
+                savedAt = Long.parseLong(clock[4]);
+            }
+        }
+        match.restoreClocks(whiteMs, blackMs);
+        return new LiveGame(match, board, enPassant, savedAt);
+    }
+
+    private static void restoreMove(Match match, String[] move) {
+        Player mover = match.isWhiteTurn() ? match.getPlayer1() : match.getPlayer2();
+        // A promotion is written after the destination square, e.g. "e8N"
+        String promotion = move[3].length() > 2 ? move[3].substring(2) : null;
+        match.restoreMove(new Move(move[2], move[3].substring(0, 2), move[4], promotion,
+                NONE.equals(move[5]) ? "" : move[5], true, mover));
+    }
+
+    private synchronized void enqueue(String line) {
+        queued++;
+        queue.add(line);
+    }
+
+    /**
+     * The writer thread: write what has queued up, keeping only the last clock line per match,
+     * then fsync once
+     */
+    private void writeLines() {
+        List<String> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            Map<String, Integer> lastClock = new HashMap<>();
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.get(i).startsWith("C\t")) {
+                    lastClock.put(idOf(batch.get(i)), i);
+                }
+            }
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < batch.size(); i++) {
+                String line = batch.get(i);
+                if (line.startsWith("C\t") && lastClock.get(idOf(line)) != i) continue;
+                apply(games, line);
+                text.append(line).append('\n');
+            }
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            // Lines only count as written once they are on disk, so flush waits out a failing disk
+            long pauseMs = 100;
+            while (!append(bytes)) {
+                try {
+                    Thread.sleep(pauseMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                pauseMs = Math.min(pauseMs * 2, 5000);
+            }
+            synchronized (this) {
+                written += batch.size();
+                notifyAll();
+            }
+            batch.clear();
+            if (length > COMPACT_BYTES) {
+                try {
+                    DataFileLock.runLocked(file, this::compact);
+                } catch (IOException e) {
+                    System.err.println("Error compacting " + file + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Append lines and fsync them; on failure, cut the journal back to its last good length so a
+     * retry does not follow a partial line
+     *
+     * @return whether the lines were written
+     */
+    private boolean append(byte[] bytes) {
+        try {
+            DataFileLock.runLocked(file, () -> {
+                out.write(bytes);
+                out.getFD().sync();
+            });
+            length += bytes.length;
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing " + file + ", retrying: " + e.getMessage());
+            try {
+                out.getChannel().truncate(length);
+            } catch (IOException truncateError) {
+                System.err.println("Error truncating " + file + ": " + truncateError.getMessage());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Rewrite the journal with only the unfinished matches; call this holding the journal's lock
+     */
+    private void compact() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (GameLines lines : games.values()) {
+            text.append(lines.begin).append('\n');
+            for (String move : lines.moves) {
+                text.append(move).append('\n');
+            }
+            if (lines.lastMove != null) {
+                text.append(lines.lastMove).append('\n');
+            }
+            if (lines.clock != null) {
+                text.append(lines.clock).append('\n');
+            }
+        }
+        out.close();
+        DataFileLock.replace(file, text.toString());
+        out = new FileOutputStream(file, true);
+        length = file.length();
+    }
+
+    /**
+     * Read a journal into a table of unfinished matches. A line torn by a crash ends the journal.
+     *
+     * @return the highest match ID begun in the journal, or 0
+     */
+    private int read(File journal, Map<Integer, GameLines> into) throws IOException {
+        if (!journal.exists()) return 0;
+        dropTornLine(journal);
+        int highest = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    apply(into, line);
+                    if (line.startsWith("B\t")) {
+                        highest = Math.max(highest, Integer.parseInt(idOf(line)));
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Ignoring unreadable line in " + journal + ": " + line);
+                }
+            }
+        }
+        if (journal == file) {
+            length = journal.length();
+        }
+        return highest;
+    }
+
+    /**
+     * Cut off a last line that has no line end, written partly before a crash, so new lines do not
+     * join it
+     */
+    private static void dropTornLine(File file) throws IOException {
+        try (RandomAccessFile journal = new RandomAccessFile(file, "rw")) {
+            long end = journal.length();
+            while (end > 0) {
+                journal.seek(end - 1);
+                if (journal.read() == '\n') break;
+                end--;
+            }
+            if (end < journal.length()) {
+                System.err.println("Dropping a torn line at the end of " + file);
+                journal.setLength(end);
+            }
+        }
+    }
+
+    private static void apply(Map<Integer, GameLines> games, String line) {
+        if (line.isEmpty()) return;
+        int id = Integer.parseInt(idOf(line));
+        switch (line.charAt(0)) {
+            case 'B':
+                if (fields(line) < 17) throw new IllegalArgumentException("short line");
+                games.put(id, new GameLines(line));
+                break;
+            case 'M':
+                GameLines lines = games.get(id);
+                int fields = fields(line);
+                if (fields == 6) {
+                    // A move without the board, as compaction writes all but the last move of a match
+                    if (lines != null) lines.moves.add(line);
+                } else if (fields < 11) {
+                    throw new IllegalArgumentException("short line");
+                } else if (lines != null) {
+                    if (lines.lastMove != null) lines.moves.add(shortMove(lines.lastMove));
+                    lines.lastMove = line;
+                }
+                break;
+            case 'C':
+                if (fields(line) < 5) throw new IllegalArgumentException("short line");
+                if (games.containsKey(id)) games.get(id).clock = line;
+                break;
+            case 'F':
+                games.remove(id);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown line");
+        }
+    }
+
+    private static String shortMove(String line) {
+        int end = -1;
+        for (int i = 0; i < 6; i++) {
+            end = line.indexOf('\t', end + 1);
+        }
+        return line.substring(0, end);
+    }
+
+    private static int fields(String line) {
+        int count = 1;
+        for (int i = line.indexOf('\t'); i >= 0; i = line.indexOf('\t', i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Give a line another match ID
+     */
+    private static String withId(String line, int id) {
+        int start = line.indexOf('\t') + 1;
+        int end = line.indexOf('\t', start);
+        return line.substring(0, start) + id + (end < 0 ? "" : line.substring(end));
+    }
+
+    private static String idOf(String line) {
+        int start = line.indexOf('\t') + 1;
+        int end = line.indexOf('\t', start);
+        return end < 0 ? line.substring(start) : line.substring(start, end);
+    }
+
+    /**
+     * Encode a board as 64 characters from a1 to h8: FEN piece letters, "." for empty squares
+     */
+    static String encodeBoard(Map<String, String> board) {
+        char[] squares = new char[64];
+        java.util.Arrays.fill(squares, '.');
+        for (Map.Entry<String, String> entry : board.entrySet()) {
+            int square = Position.square(entry.getKey());
+            char piece = entry.getValue().charAt(1);
+            squares[square] = entry.getValue().charAt(0) == 'w' ? piece : Character.toLowerCase(piece);
+        }
+        return new String(squares);
+    }
+
+    static Map<String, String> decodeBoard(String encoded) {
+        Map<String, String> board = new HashMap<>();
+        for (int square = 0; square < 64; square++) {
+            char piece = encoded.charAt(square);
+            if (piece == '.') continue;
+            board.put(Position.squareName(square), (Character.isUpperCase(piece) ? "w" : "b") + Character.toUpperCase(piece));
+        }
+        return board;
+    }
+}
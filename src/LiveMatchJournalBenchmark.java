@@ -0,0 +1,98 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plays many concurrent matches into a LiveMatchJournal, measuring what a
+ * move and a clock checkpoint cost the caller, then reopens the journal as
+ * after a crash and measures how long recovering every match takes.
+ *
+ * Run with: java -cp build LiveMatchJournalBenchmark [games] [moves]
+ */
+public class LiveMatchJournalBenchmark {
+    private static final String[] SHUFFLE = {"g1f3", "g8f6", "f3g1", "f6g8"};
+
+    public static void main(String[] args) throws IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int moves = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+
+        File directory = Files.createTempDirectory("live-matches").toFile();
+        File file = new File(directory, "liveMatches.journal");
+        LiveMatchJournal journal = new LiveMatchJournal(file);
+
+        List<Match> matches = new ArrayList<>();
+        List<Map<String, String>> boards = new ArrayList<>();
+        for (int g = 0; g < games; g++) {
+            Player white = new Player("white" + g, 1500, "");
+            Player black = new Player("black" + g, 1500, "");
+            Match match = new Match(g, white, black, "10|0");
+            journal.begin(match);
+            matches.add(match);
+            boards.add(startBoard());
+        }
+
+        // Every match plays a move in turn, with a clock checkpoint per match between rounds of moves
+        long start = System.nanoTime();
+        long calls = 0;
+        for (int m = 0; m < moves; m++) {
+            String uci = SHUFFLE[m % SHUFFLE.length];
+            String from = uci.substring(0, 2);
+            String to = uci.substring(2);
+            for (int g = 0; g < games; g++) {
+                Match match = matches.get(g);
+                Map<String, String> board = boards.get(g);
+                String piece = board.remove(from);
+                board.put(to, piece);
+                Move move = new Move(from, to, piece, "12:00:00", true, match.getCurrentPlayer());
+                match.recordMove(move);
+                journal.movePlayed(match, move, board, null);
+                journal.clockTick(match);
+                calls += 2;
+            }
+        }
+        double micros = (System.nanoTime() - start) / 1e3;
+        System.out.printf("%d games, %d moves each: %.2f us per call on the caller's thread%n",
+                games, moves, micros / calls);
+
+        start = System.nanoTime();
+        journal.flush();
+        System.out.printf("%-40s %10.2f ms (%.1f MB)%n", "waiting for the writer",
+                (System.nanoTime() - start) / 1e6, journal.getFile().length() / 1e6);
+
+        // A crash: the process is gone and gives up the journal, the next start opens the same file
+        journal.close();
+        start = System.nanoTime();
+        LiveMatchJournal reopened = new LiveMatchJournal(file);
+        List<LiveMatchJournal.LiveGame> recovered = reopened.recover();
+        double millis = (System.nanoTime() - start) / 1e6;
+        int mismatches = 0;
+        for (LiveMatchJournal.LiveGame game : recovered) {
+            Match match = game.getMatch();
+            Match original = matches.get(match.getMatchID());
+            if (match.getMoveHistory().size() != moves || match.isWhiteTurn() != original.isWhiteTurn()
+                    || !game.getBoard().equals(boards.get(match.getMatchID()))) {
+                mismatches++;
+            }
+        }
+        System.out.printf("%-40s %10.2f ms (%d games, %d mismatches)%n", "open and recover", millis,
+                recovered.size(), mismatches);
+        System.exit(0);
+    }
+
+    private static Map<String, String> startBoard() {
+        Map<String, String> board = new HashMap<>();
+        String[] backRow = {"R", "N", "B", "Q", "K", "B", "N", "R"};
+        for (int col = 0; col < 8; col++) {
+            char file = (char) ('a' + col);
+            board.put(file + "1", "w" + backRow[col]);
+            board.put(file + "2", "wP");
+            board.put(file + "7", "bP");
+            board.put(file + "8", "b" + backRow[col]);
+        }
+        return board;
+    }
+}
@@ -68,18 +68,12 @@ public class LoginGUI extends JFrame {
         // Start with login panel
         cardLayout.show(cards, "login");
         
-        // Ensure users.txt exists
+        // Ensure there is an account to log in with
         try {
-            File usersFile = new File("users.txt");
-            if (!usersFile.exists()) {
-                usersFile.createNewFile();
+            UserDirectory directory = UserDirectory.getInstance();
+            if (directory.size() == 0) {
                 // Create admin user by default
-                try (BufferedWriter writer = new BufferedWriter(new FileWriter(usersFile))) {
-                    // username,passwordHash,role,name,country,id
-                    String adminHash = User.hashPassword("admin");
-                    writer.write("admin," + adminHash + ",2,Administrator,Global,1");
-                    writer.newLine();
-                }
+                directory.add(new UserDirectory.UserRecord("admin", User.hashPassword("admin"), 2, "Administrator", "Global", 1));
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -792,35 +786,17 @@ public class LoginGUI extends JFrame {
         }
         
         try {
-            // Check if username exists
-            if (userExists(username)) {
+            // Create the account; the directory checks the username and allocates the ID
+            try {
+                UserDirectory.getInstance().register(username, password, role, name, country);
+            } catch (IllegalArgumentException e) {
                 JOptionPane.showMessageDialog(this, 
                     "Username already exists",
                     "Registration Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
-            
-            // Get next available ID
-            int nextId = getNextUserId();
-            
-            // Hash the password
-            String passwordHash = User.hashPassword(password);
-            
-            // Save user to file
-            File usersFile = new File("users.txt");
-            try (FileWriter fw = new FileWriter(usersFile, true);
-                 BufferedWriter writer = new BufferedWriter(fw)) {
-                // Format: username,passwordHash,role,name,country,id
-                writer.write(username + "," + passwordHash + "," + role + "," + name + "," + country + "," + nextId);
-                writer.newLine();
-            }
 
-            File statsFile = new File("playerStats.txt");
-            try (FileWriter fw = new FileWriter(statsFile, true);
-                 BufferedWriter writer = new BufferedWriter(fw)) {
-                writer.write(username + ", 0, 0, 0, 1200");
-                writer.newLine();
-            }
+            PlayerStatsRepository.getInstance().addPlayer(username, 1200);
 
 
 
@@ -853,87 +829,27 @@ public class LoginGUI extends JFrame {
     }
     
     private User authenticate(String username, String password) throws IOException {
-        File usersFile = new File("users.txt");
-        if (!usersFile.exists()) {
+        UserDirectory.UserRecord record = UserDirectory.getInstance().authenticate(username, password);
+        if (record == null) {
             return null;
         }
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(usersFile))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 6 && parts[0].equals(username)) {
-                    String storedHash = parts[1];
-                    int role = Integer.parseInt(parts[2]);
-                    String name = parts[3];
-                    String country = parts[4];
-                    int id = Integer.parseInt(parts[5]);
-                    
-                    // Verify password
-                    if (User.verifyPasswordHash(password, storedHash)) {
-                        // Create appropriate user type based on role
-                        switch (role) {
-                            case 0: // Player
-                                return new Player(name, 1200, country, username, storedHash, id); // Default rating 1200
-                            case 1: // Referee
-                                return new Referee(id, name, country, username, storedHash);
-                            case 2: // Admin
-                                return new Admin(id, name, country, username, storedHash, 2);
-                            default:
-                                return new User(id, name, country, username, storedHash, role);
-                        }
-                    }
-                }
-            }
+        String storedHash = record.getPasswordHash();
+        int id = record.getId();
+        String name = record.getName();
+        String country = record.getCountry();
+        
+        // Create appropriate user type based on role
+        switch (record.getRole()) {
+            case 0: // Player
+                return new Player(name, 1200, country, username, storedHash, id); // Default rating 1200
+            case 1: // Referee
+                return new Referee(id, name, country, username, storedHash);
+            case 2: // Admin
+                return new Admin(id, name, country, username, storedHash, 2);
+            default:
+                return new User(id, name, country, username, storedHash, record.getRole());
         }
-        
-        return null;
-    }
-    
-    private boolean userExists(String username) throws IOException {
-        File usersFile = new File("users.txt");
-        if (!usersFile.exists()) {
-            return false;
-        }
-        
-        try (BufferedReader reader = new BufferedReader(new FileReader(usersFile))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length > 0 && parts[0].equals(username)) {
-                    return true;
-                }
-            }
-        }
-        
-        return false;
-    }
-    
-    private int getNextUserId() throws IOException {
-        File usersFile = new File("users.txt");
-        if (!usersFile.exists()) {
-            return 1;
-        }
-        
-        int maxId = 0;
-        try (BufferedReader reader = new BufferedReader(new FileReader(usersFile))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 6) {
-                    try {
-                        int id = Integer.parseInt(parts[5]);
-                        if (id > maxId) {
-                            maxId = id;
-                        }
-                    } catch (NumberFormatException e) {
-                        // Skip invalid lines
-                    }
-                }
-            }
-        }
-        
-        return maxId + 1;
     }
     
     private void handleGuestLogin() {
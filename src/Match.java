@@ -1,3 +1,4 @@
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import javax.swing.Timer;
@@ -18,6 +19,11 @@ public class Match {
     private long whiteTimeLeft; // in milliseconds
     private long blackTimeLeft;
     private long lastMoveTimestamp;
+    private int tournamentId = -1;
+    private long logKey = -1;
+    private boolean resultRecorded;
+    private int ratingChange;
+    private int liveId = -1;
 
     public Match(int matchID, Player player1, Player player2, String timeControl) {
         this.matchID = matchID;
@@ -34,12 +40,28 @@ public class Match {
 
     public void startMatch() {
         this.status = "Ongoing";
+        try {
+            MatchEventLog.getInstance().matchStarted(this);
+        } catch (IOException e) {
+            System.err.println("Error logging the start of match " + matchID + ": " + e.getMessage());
+        }
         whiteTimer = new Timer(1000, e -> toggleTurn());
         blackTimer = new Timer(1000, e -> toggleTurn());
         whiteTimer.start();
         lastMoveTimestamp = System.currentTimeMillis() + 1000; // Start with 1 second subtracted for accuracy
     }
 
+    /**
+     * Start the clocks of a match rebuilt from the live match journal, without logging a new start
+     */
+    void resumeMatch() {
+        this.status = "Ongoing";
+        whiteTimer = new Timer(1000, e -> toggleTurn());
+        blackTimer = new Timer(1000, e -> toggleTurn());
+        (isWhiteTurn ? whiteTimer : blackTimer).start();
+        lastMoveTimestamp = System.currentTimeMillis() + 1000;
+    }
+
     public Player getCurrentPlayer() {
         return isWhiteTurn ? player1 : player2;
     }
@@ -67,24 +89,55 @@ public class Match {
             status = "Completed (White timed out)";
             whiteTimer.stop();
             blackTimer.stop();
+            winner = player2;
+            loser = player1;
+            recordResult("0-1");
         } else if (blackTimeLeft <= 0) {
             status = "Completed (Black timed out)";
             whiteTimer.stop();
             blackTimer.stop();
+            winner = player1;
+            loser = player2;
+            recordResult("1-0");
         }
     }
 
     public void recordMove(Move move) {
         moveHistory.add(move);
-        if (moveHistory.size() == 1) {
-            whiteTimer.start(); // Start white's timer on the first move
+        if (moveHistory.size() == 1 && whiteTimer != null) {
+            whiteTimer.start(); // Start white's timer on the first move (not used by headless games)
         }
         if (move.isLegal()) {
             isWhiteTurn = !isWhiteTurn;
             lastMoveTimestamp = System.currentTimeMillis();
+            if (logKey >= 0) {
+                try {
+                    MatchEventLog.getInstance().movePlayed(this, move.toUci());
+                } catch (IOException e) {
+                    System.err.println("Error logging a move of match " + matchID + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Put back a move read from the live match journal; it is not logged again
+     */
+    void restoreMove(Move move) {
+        moveHistory.add(move);
+        if (move.isLegal()) {
+            isWhiteTurn = !isWhiteTurn;
         }
     }
 
+    /**
+     * Set both clocks, in milliseconds
+     */
+    void restoreClocks(long whiteTimeLeft, long blackTimeLeft) {
+        this.whiteTimeLeft = whiteTimeLeft;
+        this.blackTimeLeft = blackTimeLeft;
+    }
+
     public List<Move> getMoveHistory() {
         return moveHistory;
     }
@@ -96,6 +149,14 @@ public class Match {
         return moveHistory.get(moveHistory.size() - 1);
     }
 
+    public int getMatchID() {
+        return matchID;
+    }
+
+    public String getTimeControl() {
+        return timeControl;
+    }
+
     public Player getPlayer1() {
         return player1;
     }
@@ -108,17 +169,60 @@ public class Match {
         return winner;
     }
 
+    /**
+     * End the match with a win. The result and rating changes are recorded once per match,
+     * however many of setWinner, setLoser and setDraw are called.
+     */
     public void setWinner(Player winner) {
         this.winner = winner;
+        this.loser = winner == player1 ? player2 : player1;
         this.status = "Completed";
-        winner.changePlayerStats(1,0, 0,20);
+        recordResult(winner == player1 ? "1-0" : "0-1");
+    }
 
+    /**
+     * End the match with a loss; the opponent wins
+     */
+    public void setLoser(Player loser) {
+        setWinner(loser == player1 ? player2 : player1);
     }
 
-    public void setLoser(Player loser){
-        this.loser = loser;
-        this.status = "Completed";
-        loser.changePlayerStats(0,1, 0,-10);
+    /**
+     * End the match in a draw
+     */
+    public void setDraw() {
+        this.status = "Completed (Draw)";
+        recordResult("1/2-1/2");
+    }
+
+    public Player getLoser() {
+        return loser;
+    }
+
+    /**
+     * Get White's rating change from the result, or 0 if no result has been recorded
+     */
+    public int getRatingChange() {
+        return ratingChange;
+    }
+
+    private void recordResult(String result) {
+        if (resultRecorded) return;
+        try {
+            ratingChange = MatchEventLog.getInstance().matchEnded(this, result);
+            // Only once the result is on disk, so a failed write is retried by the next call
+            resultRecorded = true;
+        } catch (IOException e) {
+            System.err.println("Error recording the result of match " + matchID + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Set the outcome read back from storage; unlike setWinner, player stats are left alone
+     */
+    void restoreResult(Player winner, String status) {
+        this.winner = winner;
+        this.status = status;
     }
 
     public String getStatus() {
@@ -141,6 +245,39 @@ public class Match {
         return blackTimeLeft;
     }
 
+    public int getTournamentId() {
+        return tournamentId;
+    }
+
+    /**
+     * Mark the match as part of a tournament, for its standings
+     */
+    public void setTournamentId(int tournamentId) {
+        this.tournamentId = tournamentId;
+    }
+
+    /**
+     * Get the match's key in the match event log, or -1 if it has not been logged
+     */
+    long getLogKey() {
+        return logKey;
+    }
+
+    void setLogKey(long logKey) {
+        this.logKey = logKey;
+    }
+
+    /**
+     * Get the match's ID in the live match journal, or -1 if it is not being journaled
+     */
+    int getLiveId() {
+        return liveId;
+    }
+
+    void setLiveId(int liveId) {
+        this.liveId = liveId;
+    }
+
     public int getCurrentTurn() {
         return isWhiteTurn ? 0 : 1;  // 0 for white's turn, 1 for black's turn
     }
@@ -0,0 +1,828 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Append-only log of what happens in matches: a match starts, a move is
+ * played, a match ends, a player's rating is adjusted.
+ *
+ * Results are recorded here once per match (Match.setWinner, setLoser,
+ * setDraw and timeouts all go through matchEnded). Everything that follows
+ * from results is a projection of the log, keyed by username: each
+ * player's record (which Player's wins, losses, draws and rating read),
+ * the points leaderboard and tournament standings. Projections are updated as events are appended,
+ * and can be rebuilt from the log at any time. Their state is merged from
+ * independent parts, so a rebuild splits the log into ranges and replays
+ * them on several threads.
+ *
+ * Every 10,000 events the projections are written to a snapshot file
+ * together with the log position they cover; on startup the snapshot is
+ * read and only the events after it are replayed.
+ *
+ * Several instances of the application may share the log. Appends take
+ * the log's DataFileLock and first apply the events other instances have
+ * appended, so sequence numbers are never handed out twice. A line torn by
+ * a crash is ignored and cut off by the next append.
+ *
+ * Log format, one event per line, tab-separated:
+ * "sequence S match tournament white black timeControl",
+ * "sequence M match move", "sequence E match tournament white black result",
+ * "sequence A match player ratingChange". A match is identified by the
+ * sequence number of its S event.
+ */
+public class MatchEventLog {
+    private static final int SNAPSHOT_EVERY = 10000;
+    private static final int K_FACTOR = 32;
+    private static final String SNAPSHOT_HEADER = "# snapshot ";
+    // Replay ranges stay well below the 2 GB limit of one mapping
+    private static final long MAX_RANGE_BYTES = 1L << 30;
+
+    private static MatchEventLog instance;
+
+    public enum EventType {
+        MATCH_STARTED('S'), MOVE_PLAYED('M'), MATCH_ENDED('E'), RATING_ADJUSTED('A');
+
+        private final char code;
+
+        EventType(char code) {
+            this.code = code;
+        }
+
+        static EventType of(char code) {
+            for (EventType type : values()) {
+                if (type.code == code) return type;
+            }
+            throw new IllegalArgumentException("Unknown event type " + code);
+        }
+    }
+
+    /**
+     * One line of the log. Fields that do not belong to the event's type are null, -1 or 0.
+     */
+    public static class Event {
+        private final long sequence;
+        private final EventType type;
+        private final long matchKey;
+        private final int tournamentId;
+        private final String white;
+        private final String black;
+        // Time control, move, result or player, depending on the type
+        private final String text;
+        private final int ratingChange;
+
+        Event(long sequence, EventType type, long matchKey, int tournamentId, String white, String black,
+                String text, int ratingChange) {
+            this.sequence = sequence;
+            this.type = type;
+            this.matchKey = matchKey;
+            this.tournamentId = tournamentId;
+            this.white = white;
+            this.black = black;
+            this.text = text;
+            this.ratingChange = ratingChange;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public EventType getType() {
+            return type;
+        }
+
+        public long getMatchKey() {
+            return matchKey;
+        }
+
+        public int getTournamentId() {
+            return tournamentId;
+        }
+
+        public String getWhite() {
+            return white;
+        }
+
+        public String getBlack() {
+            return black;
+        }
+
+        public String getTimeControl() {
+            return type == EventType.MATCH_STARTED ? text : null;
+        }
+
+        /**
+         * Get the move in UCI notation
+         */
+        public String getMove() {
+            return type == EventType.MOVE_PLAYED ? text : null;
+        }
+
+        /**
+         * Get the result: "1-0", "0-1" or "1/2-1/2"
+         */
+        public String getResult() {
+            return type == EventType.MATCH_ENDED ? text : null;
+        }
+
+        /**
+         * Get the player whose rating was adjusted
+         */
+        public String getPlayer() {
+            return type == EventType.RATING_ADJUSTED ? text : null;
+        }
+
+        public int getRatingChange() {
+            return ratingChange;
+        }
+
+        Event numbered(long newSequence) {
+            long key = type == EventType.MATCH_STARTED ? newSequence : matchKey;
+            return new Event(newSequence, type, key, tournamentId, white, black, text, ratingChange);
+        }
+
+        String toLine() {
+            StringBuilder line = new StringBuilder().append(sequence).append('\t').append(type.code)
+                    .append('\t').append(matchKey);
+            switch (type) {
+                case MATCH_STARTED:
+                case MATCH_ENDED:
+                    line.append('\t').append(tournamentId).append('\t').append(white).append('\t').append(black)
+                            .append('\t').append(text);
+                    break;
+                case MOVE_PLAYED:
+                    line.append('\t').append(text);
+                    break;
+                default:
+                    line.append('\t').append(text).append('\t').append(ratingChange);
+            }
+            return line.append('\n').toString();
+        }
+
+        static Event parse(String line) {
+            String[] parts = line.split("\t");
+            long sequence = Long.parseLong(parts[0]);
+            EventType type = EventType.of(parts[1].charAt(0));
+            long matchKey = Long.parseLong(parts[2]);
+            switch (type) {
+                case MATCH_STARTED:
+                case MATCH_ENDED:
+                    return new Event(sequence, type, matchKey, Integer.parseInt(parts[3]), parts[4], parts[5], parts[6], 0);
+                case MOVE_PLAYED:
+                    return new Event(sequence, type, matchKey, -1, null, null, parts[3], 0);
+                default:
+                    return new Event(sequence, type, matchKey, -1, null, null, parts[3], Integer.parseInt(parts[4]));
+            }
+        }
+    }
+
+    /**
+     * State derived from the log. Applying events in any order gives the same state,
+     * so parts built from separate ranges of the log can be merged.
+     */
+    public interface Projection {
+        void apply(Event event);
+
+        /**
+         * Create an empty projection of the same kind, for replaying part of the log
+         */
+        Projection emptyCopy();
+
+        /**
+         * Add the state of a projection of the same kind built from other events
+         */
+        void merge(Projection other);
+
+        void writeSnapshot(List<String> lines);
+
+        void readSnapshot(List<String> lines);
+    }
+
+    /**
+     * A player's results as recorded in the log
+     */
+    public static class PlayerRecord {
+        private int wins;
+        private int losses;
+        private int draws;
+        private int ratingChange;
+
+        public int getGames() {
+            return wins + losses + draws;
+        }
+
+        public int getWins() {
+            return wins;
+        }
+
+        public int getLosses() {
+            return losses;
+        }
+
+        public int getDraws() {
+            return draws;
+        }
+
+        /**
+         * Get the sum of the rating adjustments
+         */
+        public int getRatingChange() {
+            return ratingChange;
+        }
+
+        public float getPoints() {
+            return wins + draws * 0.5f;
+        }
+
+        void add(int newWins, int newLosses, int newDraws, int change) {
+            wins += newWins;
+            losses += newLosses;
+            draws += newDraws;
+            ratingChange += change;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d-%d-%d, rating %+d", wins, losses, draws, ratingChange);
+        }
+    }
+
+    /**
+     * Each player's wins, losses, draws and rating adjustments
+     */
+    public static class PlayerRecords implements Projection {
+        private final Map<String, PlayerRecord> records = new HashMap<>();
+
+        public synchronized PlayerRecord get(String player) {
+            return records.get(player);
+        }
+
+        public synchronized int size() {
+            return records.size();
+        }
+
+        private PlayerRecord recordOf(String player) {
+            return records.computeIfAbsent(player, name -> new PlayerRecord());
+        }
+
+        @Override
+        public synchronized void apply(Event event) {
+            if (event.getType() == EventType.MATCH_ENDED) {
+                float whiteScore = whiteScore(event.getResult());
+                if (whiteScore < 0) return;
+                int whiteWins = whiteScore == 1 ? 1 : 0;
+                int blackWins = whiteScore == 0 ? 1 : 0;
+                int draws = whiteScore == 0.5f ? 1 : 0;
+                recordOf(event.getWhite()).add(whiteWins, blackWins, draws, 0);
+                recordOf(event.getBlack()).add(blackWins, whiteWins, draws, 0);
+            } else if (event.getType() == EventType.RATING_ADJUSTED) {
+                recordOf(event.getPlayer()).add(0, 0, 0, event.getRatingChange());
+            }
+        }
+
+        @Override
+        public PlayerRecords emptyCopy() {
+            return new PlayerRecords();
+        }
+
+        @Override
+        public synchronized void merge(Projection other) {
+            for (Map.Entry<String, PlayerRecord> entry : ((PlayerRecords) other).records.entrySet()) {
+                PlayerRecord record = entry.getValue();
+                recordOf(entry.getKey()).add(record.wins, record.losses, record.draws, record.ratingChange);
+            }
+        }
+
+        @Override
+        public synchronized void writeSnapshot(List<String> lines) {
+            for (Map.Entry<String, PlayerRecord> entry : records.entrySet()) {
+                PlayerRecord record = entry.getValue();
+                lines.add(entry.getKey() + "\t" + record.wins + "\t" + record.losses + "\t" + record.draws
+                        + "\t" + record.ratingChange);
+            }
+        }
+
+        @Override
+        public synchronized void readSnapshot(List<String> lines) {
+            for (String line : lines) {
+                String[] parts = line.split("\t");
+                recordOf(parts[0]).add(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                        Integer.parseInt(parts[3]), Integer.parseInt(parts[4]));
+            }
+        }
+    }
+
+    /**
+     * Points per player in each tournament
+     */
+    public static class TournamentStandings implements Projection {
+        private final Map<Integer, Map<String, Float>> standings = new HashMap<>();
+
+        /**
+         * Get a tournament's players and points, best first
+         */
+        public synchronized List<Map.Entry<String, Float>> get(int tournamentId) {
+            List<Map.Entry<String, Float>> table = new ArrayList<>(standings.getOrDefault(tournamentId, new HashMap<>()).entrySet());
+            table.sort((a, b) -> {
+                int byPoints = Float.compare(b.getValue(), a.getValue());
+                return byPoints != 0 ? byPoints : a.getKey().compareTo(b.getKey());
+            });
+            return table;
+        }
+
+        private void add(int tournamentId, String player, float points) {
+            standings.computeIfAbsent(tournamentId, id -> new HashMap<>()).merge(player, points, Float::sum);
+        }
+
+        @Override
+        public synchronized void apply(Event event) {
+            if (event.getType() != EventType.MATCH_ENDED || event.getTournamentId() < 0) return;
+            float whiteScore = whiteScore(event.getResult());
+            if (whiteScore < 0) return;
+            add(event.getTournamentId(), event.getWhite(), whiteScore);
+            add(event.getTournamentId(), event.getBlack(), 1 - whiteScore);
+        }
+
+        @Override
+        public TournamentStandings emptyCopy() {
+            return new TournamentStandings();
+        }
+
+        @Override
+        public synchronized void merge(Projection other) {
+            for (Map.Entry<Integer, Map<String, Float>> tournament : ((TournamentStandings) other).standings.entrySet()) {
+                for (Map.Entry<String, Float> entry : tournament.getValue().entrySet()) {
+                    add(tournament.getKey(), entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        @Override
+        public synchronized void writeSnapshot(List<String> lines) {
+            for (Map.Entry<Integer, Map<String, Float>> tournament : standings.entrySet()) {
+                for (Map.Entry<String, Float> entry : tournament.getValue().entrySet()) {
+                    lines.add(tournament.getKey() + "\t" + entry.getKey() + "\t" + entry.getValue());
+                }
+            }
+        }
+
+        @Override
+        public synchronized void readSnapshot(List<String> lines) {
+            for (String line : lines) {
+                String[] parts = line.split("\t");
+                add(Integer.parseInt(parts[0]), parts[1], Float.parseFloat(parts[2]));
+            }
+        }
+    }
+
+    private final File file;
+    private final File snapshotFile;
+    private PlayerRecords records = new PlayerRecords();
+    private Leaderboard leaderboard = new Leaderboard();
+    private TournamentStandings standings = new TournamentStandings();
+    // Bytes of the log applied to the projections, always at a line end
+    private long appliedLength;
+    private long lastSequence;
+    private long eventsSinceSnapshot;
+
+    /**
+     * Open a log, reading the snapshot and replaying the events after it
+     *
+     * @param file the log; the snapshot is the same name plus ".snapshot"
+     * @throws IOException if the log cannot be read
+     */
+    public MatchEventLog(File file) throws IOException {
+        this.file = file;
+        this.snapshotFile = new File(file.getPath() + ".snapshot");
+        if (!readSnapshot()) {
+            appliedLength = 0;
+            lastSequence = 0;
+        }
+        replayTail(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Get the application's log, matchEvents.log unless -Dchess.events.file names another one
+     */
+    public static synchronized MatchEventLog getInstance() {
+        if (instance == null) {
+            File file = new File(System.getProperty("chess.events.file", "matchEvents.log"));
+            try {
+                instance = new MatchEventLog(file);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot read " + file + ": " + e.getMessage(), e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Record that a match started and give it its key in the log
+     *
+     * @throws IOException if the event cannot be written
+     */
+    public synchronized long matchStarted(Match match) throws IOException {
+        Event started = append(List.of(startEvent(match)), false).get(0);
+        match.setLogKey(started.getMatchKey());
+        return started.getMatchKey();
+    }
+
+    /**
+     * Record a move of a started match
+     *
+     * @throws IOException if the event cannot be written
+     */
+    public synchronized void movePlayed(Match match, String uciMove) throws IOException {
+        if (match.getLogKey() < 0) return;
+        append(List.of(new Event(0, EventType.MOVE_PLAYED, match.getLogKey(), -1, null, null, uciMove, 0)), false);
+    }
+
+    /**
+     * Record a match's result and the rating adjustments it causes (Elo, K = 32). The events are
+     * synced to disk before the projections, and with them both players' stats, change.
+     *
+     * @param result "1-0", "0-1" or "1/2-1/2"
+     * @return White's rating change (Black's is the opposite)
+     * @throws IOException if the events cannot be written
+     */
+    public synchronized int matchEnded(Match match, String result) throws IOException {
+        float whiteScore = whiteScore(result);
+        if (whiteScore < 0) {
+            throw new IllegalArgumentException("Not a result: " + result);
+        }
+        Player white = match.getPlayer1();
+        Player black = match.getPlayer2();
+        double expected = 1.0 / (1.0 + Math.pow(10, (black.getRating() - white.getRating()) / 400.0));
+        int change = (int) Math.round(K_FACTOR * (whiteScore - expected));
+
+        List<Event> events = new ArrayList<>();
+        if (match.getLogKey() < 0) {
+            events.add(startEvent(match));
+        }
+        long key = match.getLogKey();
+        events.add(new Event(0, EventType.MATCH_ENDED, key, match.getTournamentId(), white.getUsername(),
+                black.getUsername(), result, 0));
+        events.add(new Event(0, EventType.RATING_ADJUSTED, key, -1, null, null, white.getUsername(), change));
+        events.add(new Event(0, EventType.RATING_ADJUSTED, key, -1, null, null, black.getUsername(), -change));
+        List<Event> written = append(events, true);
+        if (match.getLogKey() < 0) {
+            match.setLogKey(written.get(0).getMatchKey());
+        }
+        return change;
+    }
+
+    /**
+     * Get a player's record from the log, or null if the player has no finished match
+     */
+    public PlayerRecord getRecord(String player) {
+        catchUp();
+        return currentRecords().get(player);
+    }
+
+    public Leaderboard getLeaderboard() {
+        catchUp();
+        synchronized (this) {
+            return leaderboard;
+        }
+    }
+
+    /**
+     * Get a tournament's players and points, best first
+     */
+    public List<Map.Entry<String, Float>> getStandings(int tournamentId) {
+        catchUp();
+        synchronized (this) {
+            return standings.get(tournamentId);
+        }
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Throw the projections away and rebuild them from the whole log, then write a snapshot
+     *
+     * @param threads how many threads replay the log
+     * @throws IOException if the log cannot be read
+     */
+    public synchronized void rebuild(int threads) throws IOException {
+        records = new PlayerRecords();
+        leaderboard = new Leaderboard();
+        standings = new TournamentStandings();
+        appliedLength = 0;
+        lastSequence = 0;
+        replayTail(threads);
+        snapshot();
+    }
+
+    /**
+     * Write the projections and the log position they cover to the snapshot file
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public synchronized void snapshot() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(SNAPSHOT_HEADER + lastSequence + " " + appliedLength);
+        Projection[] projections = projections();
+        String[] names = {"records", "leaderboard", "standings"};
+        for (int i = 0; i < projections.length; i++) {
+            lines.add("[" + names[i] + "]");
+            projections[i].writeSnapshot(lines);
+        }
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        DataFileLock.runLocked(snapshotFile, () -> DataFileLock.replace(snapshotFile, text.toString()));
+        eventsSinceSnapshot = 0;
+    }
+
+    /**
+     * Get how much of a result White scored: 1, 0.5 or 0, or -1 if the result is not decisive or drawn
+     */
+    static float whiteScore(String result) {
+        if ("1-0".equals(result)) return 1;
+        if ("0-1".equals(result)) return 0;
+        if ("1/2-1/2".equals(result)) return 0.5f;
+        return -1;
+    }
+
+    private Event startEvent(Match match) {
+        return new Event(0, EventType.MATCH_STARTED, -1, match.getTournamentId(), match.getPlayer1().getUsername(),
+                match.getPlayer2().getUsername(), match.getTimeControl(), 0);
+    }
+
+    private synchronized PlayerRecords currentRecords() {
+        return records;
+    }
+
+    private Projection[] projections() {
+        return new Projection[] {records, leaderboard, standings};
+    }
+
+    /**
+     * Number and append events under the log's lock, after applying what other instances appended
+     *
+     * @return the events as written
+     */
+    private List<Event> append(List<Event> events, boolean sync) throws IOException {
+        List<Event> written = new ArrayList<>(events.size());
+        DataFileLock.runLocked(file, () -> {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                replayTail(1);
+                if (channel.size() > appliedLength) {
+                    // A line torn by a crash
+                    channel.truncate(appliedLength);
+                }
+                StringBuilder text = new StringBuilder();
+                long matchKey = -1;
+                for (Event event : events) {
+                    Event numbered = event.numbered(++lastSequence);
+                    if (numbered.getType() == EventType.MATCH_STARTED) {
+                        matchKey = numbered.getMatchKey();
+                    } else if (numbered.getMatchKey() < 0) {
+                        // Ends a match started in the same batch
+                        numbered = new Event(numbered.getSequence(), numbered.getType(), matchKey, numbered.getTournamentId(),
+                                numbered.getWhite(), numbered.getBlack(), numbered.text, numbered.getRatingChange());
+                    }
+                    written.add(numbered);
+                    text.append(numbered.toLine());
+                }
+                ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+                long position = appliedLength;
+                while (bytes.hasRemaining()) {
+                    position += channel.write(bytes, position);
+                }
+                if (sync) {
+                    channel.force(false);
+                }
+                appliedLength = position;
+            }
+        });
+        for (Event event : written) {
+            for (Projection projection : projections()) {
+                projection.apply(event);
+            }
+        }
+        eventsSinceSnapshot += written.size();
+        if (eventsSinceSnapshot >= SNAPSHOT_EVERY) {
+            snapshot();
+        }
+        return written;
+    }
+
+    /**
+     * Apply the events other instances appended since the log was last read
+     */
+    private synchronized void catchUp() {
+        if (file.length() == appliedLength) return;
+        try {
+            replayTail(1);
+        } catch (IOException e) {
+            System.err.println("Error reading " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Apply the complete lines after appliedLength. The range is split at line ends into one part
+     * per thread; each part is replayed into empty projections, which are then merged in.
+     */
+    private synchronized void replayTail(int threads) throws IOException {
+        if (!file.exists()) return;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long end = completeLength(channel);
+            if (end <= appliedLength) return;
+
+            int parts = (int) Math.max(1, Math.min(threads, (end - appliedLength) / (1 << 20)));
+            parts = (int) Math.max(parts, (end - appliedLength) / MAX_RANGE_BYTES + 1);
+            long[] bounds = new long[parts + 1];
+            bounds[0] = appliedLength;
+            bounds[parts] = end;
+            for (int i = 1; i < parts; i++) {
+                bounds[i] = Math.max(bounds[i - 1], nextLineStart(channel, appliedLength + (end - appliedLength) * i / parts, end));
+            }
+
+            List<Future<Object[]>> results = new ArrayList<>();
+            ExecutorService executor = parts == 1 ? null : Executors.newFixedThreadPool(Math.min(parts, threads), daemonThreads());
+            try {
+                for (int i = 0; i < parts; i++) {
+                    long from = bounds[i];
+                    long to = bounds[i + 1];
+                    if (executor == null) {
+                        results.add(CompletableFuture.completedFuture(replayRange(channel, from, to)));
+                    } else {
+                        results.add(executor.submit(() -> replayRange(channel, from, to)));
+                    }
+                }
+                for (Future<Object[]> result : results) {
+                    Object[] part = result.get();
+                    Projection[] projections = projections();
+                    for (int p = 0; p < projections.length; p++) {
+                        projections[p].merge((Projection) part[p]);
+                    }
+                    lastSequence = Math.max(lastSequence, (Long) part[projections.length]);
+                    eventsSinceSnapshot += (Long) part[projections.length + 1];
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted replaying " + file);
+            } catch (ExecutionException e) {
+                throw new IOException("Cannot replay " + file + ": " + e.getCause().getMessage(), e.getCause());
+            } finally {
+                if (executor != null) executor.shutdown();
+            }
+            appliedLength = end;
+        }
+    }
+
+    /**
+     * Replay the lines in [from, to) into empty projections
+     *
+     * @return the projections, followed by the last sequence number and the number of events
+     */
+    private Object[] replayRange(FileChannel channel, long from, long to) throws IOException {
+        Projection[] projections = projections();
+        Object[] part = new Object[projections.length + 2];
+        for (int p = 0; p < projections.length; p++) {
+            part[p] = projections[p].emptyCopy();
+        }
+        long last = 0;
+        long count = 0;
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        byte[] line = new byte[256];
+        int length = 0;
+        while (bytes.hasRemaining()) {
+            byte b = bytes.get();
+            if (b != '\n') {
+                if (length == line.length) line = Arrays.copyOf(line, length * 2);
+                line[length++] = b;
+                continue;
+            }
+            String text = new String(line, 0, length, StandardCharsets.UTF_8);
+            length = 0;
+            Event event;
+            try {
+                event = Event.parse(text);
+            } catch (RuntimeException e) {
+                System.err.println("Skipping unreadable event in " + file + ": " + text);
+                continue;
+            }
+            for (int p = 0; p < projections.length; p++) {
+                ((Projection) part[p]).apply(event);
+            }
+            last = Math.max(last, event.getSequence());
+            count++;
+        }
+        part[projections.length] = last;
+        part[projections.length + 1] = count;
+        return part;
+    }
+
+    /**
+     * Read the snapshot if it is present and matches the log
+     *
+     * @return false if the log has to be replayed from the start
+     */
+    private boolean readSnapshot() throws IOException {
+        if (!snapshotFile.exists()) return false;
+        List<String> lines = Files.readAllLines(snapshotFile.toPath(), StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).startsWith(SNAPSHOT_HEADER)) return false;
+        String[] header = lines.get(0).substring(SNAPSHOT_HEADER.length()).trim().split(" ");
+        long sequence = Long.parseLong(header[0]);
+        long length = Long.parseLong(header[1]);
+        if (length > file.length()) {
+            System.err.println(snapshotFile + " is ahead of " + file + "; replaying the whole log");
+            return false;
+        }
+
+        Map<String, List<String>> sections = new HashMap<>();
+        List<String> section = null;
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.startsWith("[") && line.endsWith("]")) {
+                section = new ArrayList<>();
+                sections.put(line.substring(1, line.length() - 1), section);
+            } else if (section != null && !line.isEmpty()) {
+                section.add(line);
+            }
+        }
+        try {
+            records.readSnapshot(sections.getOrDefault("records", List.of()));
+            leaderboard.readSnapshot(sections.getOrDefault("leaderboard", List.of()));
+            standings.readSnapshot(sections.getOrDefault("standings", List.of()));
+        } catch (RuntimeException e) {
+            System.err.println("Unreadable snapshot " + snapshotFile + "; replaying the whole log");
+            records = new PlayerRecords();
+            leaderboard = new Leaderboard();
+            standings = new TournamentStandings();
+            return false;
+        }
+        lastSequence = sequence;
+        appliedLength = length;
+        return true;
+    }
+
+    /**
+     * Get the length of the log up to the end of its last complete line
+     */
+    private static long completeLength(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = size;
+        while (position > 0) {
+            int chunk = (int) Math.min(buffer.capacity(), position);
+            buffer.clear().limit(chunk);
+            channel.read(buffer, position - chunk);
+            for (int i = chunk - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') return position - chunk + i + 1;
+            }
+            position -= chunk;
+        }
+        return 0;
+    }
+
+    /**
+     * Get the start of the first line beginning at or after the given position, at most end
+     */
+    private static long nextLineStart(FileChannel channel, long from, long end) throws IOException {
+        if (from == 0) return 0;
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = from - 1;
+        while (position < end) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return Math.min(end, position + i + 1);
+            }
+            position += read;
+        }
+        return end;
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger number = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, "match-events-replay-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Measures MatchEventLog on a generated history: appending live matches,
+ * opening the log with and without a snapshot, and rebuilding the
+ * projections on one thread and on several.
+ *
+ * Run with: java -cp build MatchEventLogBenchmark [games] [threads]
+ */
+public class MatchEventLogBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int players = Math.max(2, games / 10);
+
+        File directory = Files.createTempDirectory("match-events").toFile();
+        File log = new File(directory, "matchEvents.log");
+        File statsFile = new File(directory, "playerStats.txt");
+        System.setProperty("chess.stats.file", statsFile.getPath());
+        System.setProperty("chess.stats.sync", "async");
+        Random random = new Random(42);
+
+        // A history of finished games, written directly: start, 60 moves, result, two rating adjustments
+        long sequence = 0;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(log))) {
+            for (int g = 0; g < games; g++) {
+                String white = "p" + random.nextInt(players);
+                String black = "p" + random.nextInt(players);
+                int tournament = random.nextInt(4) == 0 ? random.nextInt(100) : -1;
+                long key = ++sequence;
+                write(writer, new MatchEventLog.Event(key, MatchEventLog.EventType.MATCH_STARTED, key, tournament,
+                        white, black, "10|0", 0));
+                for (int m = 0; m < 60; m++) {
+                    write(writer, new MatchEventLog.Event(++sequence, MatchEventLog.EventType.MOVE_PLAYED, key, -1,
+                            null, null, "e2e4", 0));
+                }
+                String result = new String[] {"1-0", "0-1", "1/2-1/2"}[random.nextInt(3)];
+                int change = random.nextInt(33) - 16;
+                write(writer, new MatchEventLog.Event(++sequence, MatchEventLog.EventType.MATCH_ENDED, key, tournament,
+                        white, black, result, 0));
+                write(writer, new MatchEventLog.Event(++sequence, MatchEventLog.EventType.RATING_ADJUSTED, key, -1,
+                        null, null, white, change));
+                write(writer, new MatchEventLog.Event(++sequence, MatchEventLog.EventType.RATING_ADJUSTED, key, -1,
+                        null, null, black, -change));
+            }
+        }
+        System.out.printf("Generated %d games, %d events, %.1f MB%n", games, sequence, log.length() / 1e6);
+
+        long start = System.nanoTime();
+        MatchEventLog events = new MatchEventLog(log);
+        report("open without snapshot (" + threads + " threads)", start);
+
+        start = System.nanoTime();
+        events.rebuild(1);
+        report("rebuild on 1 thread", start);
+
+        start = System.nanoTime();
+        events.rebuild(threads);
+        report("rebuild on " + threads + " threads", start);
+
+        start = System.nanoTime();
+        events = new MatchEventLog(log);
+        report("open from snapshot", start);
+        System.out.println("leader: " + events.getLeaderboard().getTopPlayer(0) + ", " + events.getRecord("p0"));
+
+        Player white = new Player("white", 1500, "");
+        Player black = new Player("black", 1500, "");
+        int live = Math.min(games, 1000);
+        start = System.nanoTime();
+        for (int g = 0; g < live; g++) {
+            Match match = new Match(g, white, black, "10|0");
+            events.matchStarted(match);
+            for (int m = 0; m < 60; m++) {
+                events.movePlayed(match, "e2e4");
+            }
+            events.matchEnded(match, g % 2 == 0 ? "1-0" : "0-1");
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-40s %10.3f ms/game (%.0f events/s)%n", "live games, 60 moves each",
+                seconds * 1000 / live, live * 64 / seconds);
+        System.exit(0);
+    }
+
+    private static void write(BufferedWriter writer, MatchEventLog.Event event) throws IOException {
+        writer.write(event.toLine());
+    }
+
+    private static void report(String label, long startNanos) {
+        System.out.printf("%-40s %10.2f ms%n", label, (System.nanoTime() - startNanos) / 1e6);
+    }
+}
@@ -25,8 +25,11 @@ public class MatchGUI extends JFrame {
     private JButton analyzeButton;
     private JButton hintButton;
     private JTextArea analysisTextArea;
-    private StockfishEngine stockfishEngine;
+    private ChessEngine stockfishEngine;
+    private ProgressiveHintService hintService;
     private String lastPawnDoubleMove = null; // Track last pawn that moved 2 squares for en passant
+    private boolean archived = false;
+    private LiveMatchJournal liveJournal;
     
     private static final Color BACKGROUND_COLOR = new Color(240, 240, 245);
     private static final Color HEADER_COLOR = new Color(50, 50, 75);
@@ -41,6 +44,13 @@ public class MatchGUI extends JFrame {
     private static final Font CLOCK_FONT = new Font("Monospaced", Font.BOLD, 18);
 
     public MatchGUI(Match match) {
+        this(match, null);
+    }
+    
+    /**
+     * Open a match; a match resumed from the live match journal is shown with its board and moves
+     */
+    public MatchGUI(Match match, LiveMatchJournal.LiveGame resumed) {
         this.match = match;
         setTitle("Chess Match - " + match.getPlayer1().getUsername() + " vs " + match.getPlayer2().getUsername());
         setSize(1000, 700);
@@ -88,6 +98,18 @@ public class MatchGUI extends JFrame {
         
         add(mainPanel, BorderLayout.CENTER);
         
+        // Journal the match so it can be resumed after a crash
+        try {
+            liveJournal = LiveMatchJournal.getInstance();
+        } catch (IllegalStateException e) {
+            System.err.println("Live match journal unavailable: " + e.getMessage());
+        }
+        if (resumed != null) {
+            boardPanel.restoreBoard(resumed.getBoard(), resumed.getEnPassant());
+        } else if (liveJournal != null) {
+            liveJournal.begin(match);
+        }
+        
         // Apply custom styling to all components
         SwingUtilities.invokeLater(this::applyCustomStyling);
         
@@ -101,8 +123,14 @@ public class MatchGUI extends JFrame {
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
+                if (liveJournal != null) {
+                    liveJournal.finish(match);
+                }
+                if (hintService != null) {
+                    hintService.shutdown();
+                }
                 if (stockfishEngine != null) {
-                    StockfishManager.getInstance().closeEngine("match");
+                    stockfishEngine.close();
                 }
             }
         });
@@ -114,7 +142,10 @@ public class MatchGUI extends JFrame {
     private void initializeStockfish() {
         StockfishManager manager = StockfishManager.getInstance();
         if (manager.isStockfishAvailable()) {
-            stockfishEngine = manager.getEngine("match");
+            stockfishEngine = manager.openSession("match");
+            if (stockfishEngine != null) {
+                hintService = new ProgressiveHintService(stockfishEngine);
+            }
         }
     }
     
@@ -464,6 +495,7 @@ public class MatchGUI extends JFrame {
             
             if (response == JOptionPane.YES_OPTION) {
                 // Accept draw
+                match.setDraw();
                 match.setStatus("Draw by agreement");
                 statusLabel.setText("Status: Draw by agreement");
                 winnerLabel.setText("Winner: None (Draw)");
@@ -471,6 +503,7 @@ public class MatchGUI extends JFrame {
                 // Disable game controls
                 offerDrawButton.setEnabled(false);
                 resignButton.setEnabled(false);
+                archiveGame(GameArchive.RESULT_DRAW);
             } else {
                 JOptionPane.showMessageDialog(this, "Draw offer declined.");
             }
@@ -496,6 +529,7 @@ public class MatchGUI extends JFrame {
             // Disable game controls
             offerDrawButton.setEnabled(false);
             resignButton.setEnabled(false);
+            archiveGame(winner == match.getPlayer1() ? GameArchive.RESULT_WHITE_WINS : GameArchive.RESULT_BLACK_WINS);
         }
     }
 
@@ -509,15 +543,57 @@ public class MatchGUI extends JFrame {
                     whiteClock.setText("Time: " + formatMillis(w));
                     blackClock.setText("Time: " + formatMillis(b));
                 statusLabel.setText("Status: " + match.getStatus());
+                if (liveJournal != null && match.getStatus().equals("Ongoing")) {
+                    liveJournal.clockTick(match);
+                }
 
                 if (!match.getStatus().equals("Ongoing")) {
                     clockTimer.cancel();
+                    if (match.getStatus().contains("White timed out")) {
+                        archiveGame(GameArchive.RESULT_BLACK_WINS);
+                    } else if (match.getStatus().contains("Black timed out")) {
+                        archiveGame(GameArchive.RESULT_WHITE_WINS);
+                    }
                 }
                 });
             }
         }, 0, 1000);
     }
 
+    /**
+     * Store the finished game in the game archive, once, off the event thread
+     */
+    private void archiveGame(String result) {
+        if (archived) {
+            return;
+        }
+        archived = true;
+        if (liveJournal != null) {
+            liveJournal.finish(match);
+        }
+        
+        List<String> moves = new java.util.ArrayList<>();
+        for (Move move : match.getMoveHistory()) {
+            if (move.isLegal()) {
+                moves.add(move.toUci());
+            }
+        }
+        String white = match.getPlayer1().getUsername();
+        String black = match.getPlayer2().getUsername();
+        String event = "Match " + match.getMatchID() + " (" + match.getTimeControl() + ")";
+        Thread writer = new Thread(() -> {
+            try {
+                GameArchive archive = GameArchive.getInstance();
+                archive.add(white, black, event, System.currentTimeMillis(), result, null, moves);
+                archive.flush();
+            } catch (java.io.IOException e) {
+                System.err.println("Error archiving game: " + e.getMessage());
+            }
+        }, "game-archive");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
     private String formatMillis(long ms) {
         long seconds = ms / 1000;
         long minutes = seconds / 60;
@@ -528,6 +604,8 @@ public class MatchGUI extends JFrame {
     private class ChessBoardPanel extends JPanel {
         private JLabel[][] squares = new JLabel[8][8];
         private Map<String, String> piecePositions = new HashMap<>();
+        private JLabel[] highlightedSquares;
+        private javax.swing.Timer highlightTimer;
         private static final int BOARD_SIZE = 480; // Adjust as needed for your UI
         private int squareSize;
         
@@ -617,6 +695,29 @@ public class MatchGUI extends JFrame {
             }
         }
 
+        /**
+         * Show a board read from the live match journal and the moves that led to it
+         */
+        private void restoreBoard(Map<String, String> board, String enPassant) {
+            for (Move move : match.getMoveHistory()) {
+                moveHistoryArea.append(move.getPiece() + ": " + move.getFrom() + " -> " + move.getTo() + "\n");
+            }
+            if (board == null) {
+                return;
+            }
+            for (int row = 0; row < 8; row++) {
+                for (int col = 0; col < 8; col++) {
+                    squares[row][col].setText("");
+                }
+            }
+            piecePositions.clear();
+            for (Map.Entry<String, String> entry : board.entrySet()) {
+                String square = entry.getKey();
+                setPiece(square.charAt(0) - 'a', square.charAt(1) - '1', entry.getValue());
+            }
+            lastPawnDoubleMove = enPassant;
+        }
+
         private void setPiece(int col, int row, String piece) {
             String symbol = getUnicodeSymbol(piece);
             squares[row][col].setText(symbol);
@@ -744,15 +845,19 @@ public class MatchGUI extends JFrame {
                     }
                     
                     // Update the board
-                    updateBoard(fromPosition, toPosition, pieceCode);
+                    String placedPiece = updateBoard(fromPosition, toPosition, pieceCode);
+                    String promotion = placedPiece.equals(pieceCode) ? null : placedPiece.substring(1);
                     moveHistoryArea.append(pieceCode + ": " + fromPosition + " -> " + toPosition + "\n");
                     
                     // Create a Move object to record in match history
                     SimpleDateFormat formatter = new SimpleDateFormat("HH:mm:ss");
                     String timestamp = formatter.format(new Date());
                     Player currentPlayer = match.getCurrentPlayer();
-                    Move move = new Move(fromPosition, toPosition, pieceCode, timestamp, true, currentPlayer);
+                    Move move = new Move(fromPosition, toPosition, pieceCode, promotion, timestamp, true, currentPlayer);
                     match.recordMove(move);
+                    if (liveJournal != null) {
+                        liveJournal.movePlayed(match, move, piecePositions, lastPawnDoubleMove);
+                    }
                     
                     // Update the title to show whose turn it is
                     updateTitle();
@@ -786,7 +891,12 @@ public class MatchGUI extends JFrame {
             }
         }
 
-        private void updateBoard(String from, String to, String pieceCode) {
+        /**
+         * Move a piece on the board, asking which piece a pawn promotes to
+         * 
+         * @return the piece now standing on the destination square
+         */
+        private String updateBoard(String from, String to, String pieceCode) {
             int fromCol = from.charAt(0) - 'a';
             int fromRow = from.charAt(1) - '1';
             int toCol = to.charAt(0) - 'a';
@@ -838,6 +948,7 @@ public class MatchGUI extends JFrame {
             if (capturedPiece != null && !moveHistoryArea.getText().contains("En passant capture")) {
                 moveHistoryArea.append("Captured: " + getUnicodeSymbol(capturedPiece) + "\n");
             }
+            return pieceCode;
         }
         
         private String handlePawnPromotion(String pieceCode) {
@@ -969,8 +1080,13 @@ public class MatchGUI extends JFrame {
             return true;
         }
 
+        /**
+         * Highlight a move, replacing any highlight still showing so improving hints update in place
+         */
         public void highlightMove(String uciMove) {
-            if (uciMove.length() < 4) return;
+            if (uciMove == null || uciMove.length() < 4) return;
+            
+            clearHighlight();
             
             // Extract source and destination coordinates
             int fromFile = uciMove.charAt(0) - 'a';
@@ -983,14 +1099,22 @@ public class MatchGUI extends JFrame {
             
             // Highlight destination square
             squares[toRank][toFile].setBorder(BorderFactory.createLineBorder(Color.GREEN, 2));
+            highlightedSquares = new JLabel[] { squares[fromRank][fromFile], squares[toRank][toFile] };
             
-            // Schedule removal of highlights
-            javax.swing.Timer timer = new javax.swing.Timer(2000, e -> {
-                squares[fromRank][fromFile].setBorder(null);
-                squares[toRank][toFile].setBorder(null);
-            });
-            timer.setRepeats(false);
-            timer.start();
+            // Schedule removal of highlights, counted from the latest update
+            if (highlightTimer == null) {
+                highlightTimer = new javax.swing.Timer(2000, e -> clearHighlight());
+                highlightTimer.setRepeats(false);
+            }
+            highlightTimer.restart();
+        }
+        
+        private void clearHighlight() {
+            if (highlightedSquares == null) return;
+            for (JLabel square : highlightedSquares) {
+                square.setBorder(null);
+            }
+            highlightedSquares = null;
         }
         
         private void checkGameState() {
@@ -1003,6 +1127,7 @@ public class MatchGUI extends JFrame {
                     
                     // Update player stats
                     updatePlayerStats(winner.equals("White"));
+                    archiveGame(winner.equals("White") ? GameArchive.RESULT_WHITE_WINS : GameArchive.RESULT_BLACK_WINS);
                     
                     // Show dialog
                     winnerLabel.setText(winner + " wins by checkmate!");
@@ -1020,25 +1145,12 @@ public class MatchGUI extends JFrame {
             Player winner = whiteWins ? match.getPlayer1() : match.getPlayer2();
             Player loser = whiteWins ? match.getPlayer2() : match.getPlayer1();
             
-            // Update ratings
             int winnerOriginalRating = winner.getRating();
             int loserOriginalRating = loser.getRating();
             
-            // Simple ELO calculation (K=32)
-            int kFactor = 32;
-            double winnerExpected = 1.0 / (1.0 + Math.pow(10, (loserOriginalRating - winnerOriginalRating) / 400.0));
-            int ratingChange = (int) (kFactor * (1.0 - winnerExpected));
-            
-            winner.updateRating(ratingChange);
-            loser.updateRating(-ratingChange);
-            
-            // Update wins/losses
-            winner.recordWin();
-            loser.recordLoss();
-            
-            // Update stats file
-            winner.changePlayerStats(1, 0, 0, ratingChange);
-            loser.changePlayerStats(0, 1, 0, -ratingChange);
+            // Records the result and the rating changes once, in the match event log the players' stats come from
+            match.setWinner(winner);
+            int ratingChange = Math.abs(match.getRatingChange());
             
             // Show rating changes
             moveHistoryArea.append(String.format(
@@ -1117,22 +1229,26 @@ public class MatchGUI extends JFrame {
         
         String fen = StockfishEngine.boardToFen(boardPanel.piecePositions, match.isWhiteTurn());
         
-        new Thread(() -> {
-            String hint = stockfishEngine.getHint(fen);
-            
-            if (hint != null) {
-                String formattedHint = formatMove(hint);
-                
-                SwingUtilities.invokeLater(() -> {
-                    analysisTextArea.setText("Suggested move: " + formattedHint);
-                    boardPanel.highlightMove(hint);
-                });
+        // The first answer shows at once; deeper answers replace it as the search goes on
+        hintService.requestHint(fen, hint -> SwingUtilities.invokeLater(() -> {
+            if (hint != null && hint.getMove() == null) {
+                analysisTextArea.setText("No hint yet, thinking...");
+            } else if (hint != null) {
+                analysisTextArea.setText("Suggested move: " + formatMove(hint.getMove()) + describeHint(hint));
+                boardPanel.highlightMove(hint.getMove());
             } else {
-                SwingUtilities.invokeLater(() -> {
-                    analysisTextArea.setText("Could not get a hint.");
-                });
+                analysisTextArea.setText("Could not get a hint.");
             }
-        }).start();
+        }));
+    }
+    
+    private String describeHint(ProgressiveHintService.Hint hint) {
+        switch (hint.getSource()) {
+            case BOOK: return hint.isFinal() ? " (book)" : " (book, thinking...)";
+            case STATIC: return " (wins material, thinking...)";
+            case CACHE: return "";
+            default: return hint.isFinal() ? "" : " (depth " + hint.getDepth() + ", thinking...)";
+        }
     }
     
     private String formatMove(String uciMove) {
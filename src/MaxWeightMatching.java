@@ -0,0 +1,602 @@
+import java.util.Arrays;
+
+/**
+ * Maximum-weight matching in a general graph, by Edmonds' blossom
+ * algorithm with dual variables (after Galil's description). This is a
+ * port of Joris van Rantwijk's mwmatching.
+ *
+ * Weights are integers, so every dual variable stays an integer as well.
+ * Each stage looks for one augmenting path and costs O(n + m) plus the
+ * dual updates, and there are at most n/2 stages. Sparse graphs, where
+ * each vertex has a few dozen candidate edges, solve quickly even with
+ * thousands of vertices.
+ */
+public class MaxWeightMatching {
+
+    /**
+     * A growable list of ints
+     */
+    private static class IntList {
+        int[] items = new int[16];
+        int size;
+
+        void add(int item) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = item;
+        }
+
+        int pop() {
+            return items[--size];
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(items, size);
+        }
+    }
+
+    private final int vertexCount;
+    private final int edgeCount;
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final long[] weight;
+
+    // Endpoint p of edge p / 2 is vertex endpoint[p]
+    private int[] endpoint;
+    // The endpoints leading away from each vertex: p such that endpoint[p ^ 1] is the vertex
+    private int[][] neighbourEnds;
+    // The endpoint of the edge by which each vertex is matched, or -1
+    private int[] mate;
+    // Per top-level blossom (and vertex): 0 free, 1 S, 2 T; 5 marks a blossom during scanBlossom
+    private int[] label;
+    private int[] labelEnd;
+    private int[] inBlossom;
+    private int[] blossomParent;
+    private int[][] blossomChildren;
+    private int[] blossomBase;
+    private int[][] blossomEnds;
+    private int[] bestEdge;
+    private int[][] blossomBestEdges;
+    private IntList unusedBlossoms;
+    private long[] dual;
+    private boolean[] allowEdge;
+    private IntList queue;
+    // Scratch space for addBlossom, all -1 between calls
+    private int[] bestEdgeTo;
+
+    /**
+     * Prepare a graph
+     *
+     * @param vertexCount vertices are numbered from 0
+     * @param edgeFrom one end of each edge
+     * @param edgeTo the other end of each edge
+     * @param weight the weight of each edge
+     */
+    public MaxWeightMatching(int vertexCount, int[] edgeFrom, int[] edgeTo, long[] weight) {
+        this.vertexCount = vertexCount;
+        this.edgeCount = edgeFrom.length;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.weight = weight;
+    }
+
+    /**
+     * Find a matching of maximum weight
+     *
+     * @param maxCardinality whether to find the heaviest of the matchings with the most edges
+     * @return for each vertex the vertex it is matched to, or -1
+     */
+    public int[] solve(boolean maxCardinality) {
+        int n = vertexCount;
+        int[] result = new int[n];
+        Arrays.fill(result, -1);
+        if (edgeCount == 0) return result;
+
+        long maxWeight = 0;
+        for (long w : weight) maxWeight = Math.max(maxWeight, w);
+        endpoint = new int[2 * edgeCount];
+        int[] degree = new int[n];
+        for (int k = 0; k < edgeCount; k++) {
+            endpoint[2 * k] = edgeFrom[k];
+            endpoint[2 * k + 1] = edgeTo[k];
+            degree[edgeFrom[k]]++;
+            degree[edgeTo[k]]++;
+        }
+        neighbourEnds = new int[n][];
+        for (int v = 0; v < n; v++) neighbourEnds[v] = new int[degree[v]];
+        Arrays.fill(degree, 0);
+        for (int k = 0; k < edgeCount; k++) {
+            neighbourEnds[edgeFrom[k]][degree[edgeFrom[k]]++] = 2 * k + 1;
+            neighbourEnds[edgeTo[k]][degree[edgeTo[k]]++] = 2 * k;
+        }
+
+        mate = new int[n];
+        Arrays.fill(mate, -1);
+        label = new int[2 * n];
+        labelEnd = new int[2 * n];
+        Arrays.fill(labelEnd, -1);
+        inBlossom = new int[n];
+        for (int v = 0; v < n; v++) inBlossom[v] = v;
+        blossomParent = new int[2 * n];
+        Arrays.fill(blossomParent, -1);
+        blossomChildren = new int[2 * n][];
+        blossomBase = new int[2 * n];
+        for (int v = 0; v < 2 * n; v++) blossomBase[v] = v < n ? v : -1;
+        blossomEnds = new int[2 * n][];
+        bestEdge = new int[2 * n];
+        Arrays.fill(bestEdge, -1);
+        blossomBestEdges = new int[2 * n][];
+        unusedBlossoms = new IntList();
+        for (int b = n; b < 2 * n; b++) unusedBlossoms.add(b);
+        dual = new long[2 * n];
+        Arrays.fill(dual, 0, n, maxWeight);
+        allowEdge = new boolean[edgeCount];
+        queue = new IntList();
+        bestEdgeTo = new int[2 * n];
+        Arrays.fill(bestEdgeTo, -1);
+
+        for (int stage = 0; stage < n; stage++) {
+            Arrays.fill(label, 0);
+            Arrays.fill(bestEdge, -1);
+            Arrays.fill(blossomBestEdges, n, 2 * n, null);
+            Arrays.fill(allowEdge, false);
+            queue.size = 0;
+            for (int v = 0; v < n; v++) {
+                if (mate[v] == -1 && label[inBlossom[v]] == 0) assignLabel(v, 1, -1);
+            }
+
+            boolean augmented = false;
+            while (true) {
+                while (queue.size > 0 && !augmented) {
+                    int v = queue.pop();
+                    for (int p : neighbourEnds[v]) {
+                        int k = p / 2;
+                        int w = endpoint[p];
+                        if (inBlossom[v] == inBlossom[w]) continue;
+                        long kSlack = 0;
+                        if (!allowEdge[k]) {
+                            kSlack = slack(k);
+                            if (kSlack <= 0) allowEdge[k] = true;
+                        }
+                        if (allowEdge[k]) {
+                            if (label[inBlossom[w]] == 0) {
+                                assignLabel(w, 2, p ^ 1);
+                            } else if (label[inBlossom[w]] == 1) {
+                                int base = scanBlossom(v, w);
+                                if (base >= 0) {
+                                    addBlossom(base, k);
+                                } else {
+                                    augmentMatching(k);
+                                    augmented = true;
+                                    break;
+                                }
+                            } else if (label[w] == 0) {
+                                label[w] = 2;
+                                labelEnd[w] = p ^ 1;
+                            }
+                        } else if (label[inBlossom[w]] == 1) {
+                            int b = inBlossom[v];
+                            if (bestEdge[b] == -1 || kSlack < slack(bestEdge[b])) bestEdge[b] = k;
+                        } else if (label[w] == 0) {
+                            if (bestEdge[w] == -1 || kSlack < slack(bestEdge[w])) bestEdge[w] = k;
+                        }
+                    }
+                }
+                if (augmented) break;
+
+                // No augmenting path with the allowed edges: change the duals to allow more
+                int deltaType = -1;
+                long delta = 0;
+                int deltaEdge = -1;
+                int deltaBlossom = -1;
+                if (!maxCardinality) {
+                    deltaType = 1;
+                    delta = Long.MAX_VALUE;
+                    for (int v = 0; v < n; v++) delta = Math.min(delta, dual[v]);
+                }
+                for (int v = 0; v < n; v++) {
+                    if (label[inBlossom[v]] == 0 && bestEdge[v] != -1) {
+                        long d = slack(bestEdge[v]);
+                        if (deltaType == -1 || d < delta) {
+                            delta = d;
+                            deltaType = 2;
+                            deltaEdge = bestEdge[v];
+                        }
+                    }
+                }
+                for (int b = 0; b < 2 * n; b++) {
+                    if (blossomParent[b] == -1 && label[b] == 1 && bestEdge[b] != -1) {
+                        long d = slack(bestEdge[b]) / 2;
+                        if (deltaType == -1 || d < delta) {
+                            delta = d;
+                            deltaType = 3;
+                            deltaEdge = bestEdge[b];
+                        }
+                    }
+                }
+                for (int b = n; b < 2 * n; b++) {
+                    if (blossomBase[b] >= 0 && blossomParent[b] == -1 && label[b] == 2
+                            && (deltaType == -1 || dual[b] < delta)) {
+                        delta = dual[b];
+                        deltaType = 4;
+                        deltaBlossom = b;
+                    }
+                }
+                if (deltaType == -1) {
+                    // Maximum cardinality reached; a last update makes the duals optimal
+                    deltaType = 1;
+                    delta = Long.MAX_VALUE;
+                    for (int v = 0; v < n; v++) delta = Math.min(delta, dual[v]);
+                    delta = Math.max(0, delta);
+                }
+
+                for (int v = 0; v < n; v++) {
+                    if (label[inBlossom[v]] == 1) {
+                        dual[v] -= delta;
+                    } else if (label[inBlossom[v]] == 2) {
+                        dual[v] += delta;
+                    }
+                }
+                for (int b = n; b < 2 * n; b++) {
+                    if (blossomBase[b] >= 0 && blossomParent[b] == -1) {
+                        if (label[b] == 1) {
+                            dual[b] += delta;
+                        } else if (label[b] == 2) {
+                            dual[b] -= delta;
+                        }
+                    }
+                }
+
+                if (deltaType == 1) {
+                    break;
+                } else if (deltaType == 2) {
+                    allowEdge[deltaEdge] = true;
+                    int i = edgeFrom[deltaEdge];
+                    if (label[inBlossom[i]] == 0) i = edgeTo[deltaEdge];
+                    queue.add(i);
+                } else if (deltaType == 3) {
+                    allowEdge[deltaEdge] = true;
+                    queue.add(edgeFrom[deltaEdge]);
+                } else {
+                    expandBlossom(deltaBlossom, false);
+                }
+            }
+            if (!augmented) break;
+
+            // Expand S-blossoms whose dual has reached zero
+            for (int b = n; b < 2 * n; b++) {
+                if (blossomParent[b] == -1 && blossomBase[b] >= 0 && label[b] == 1 && dual[b] == 0) {
+                    expandBlossom(b, true);
+                }
+            }
+        }
+
+        for (int v = 0; v < n; v++) {
+            if (mate[v] >= 0) result[v] = endpoint[mate[v]];
+        }
+        return result;
+    }
+
+    private long slack(int k) {
+        return dual[edgeFrom[k]] + dual[edgeTo[k]] - 2 * weight[k];
+    }
+
+    private void leaves(int b, IntList out) {
+        if (b < vertexCount) {
+            out.add(b);
+        } else {
+            for (int child : blossomChildren[b]) leaves(child, out);
+        }
+    }
+
+    private int[] leaves(int b) {
+        IntList out = new IntList();
+        leaves(b, out);
+        return out.toArray();
+    }
+
+    /**
+     * Label vertex w, and its top-level blossom, S (1) or T (2), reached through endpoint p
+     */
+    private void assignLabel(int w, int t, int p) {
+        while (true) {
+            int b = inBlossom[w];
+            label[w] = label[b] = t;
+            labelEnd[w] = labelEnd[b] = p;
+            bestEdge[w] = bestEdge[b] = -1;
+            if (t == 1) {
+                leaves(b, queue);
+                return;
+            }
+            // A T-blossom's mate becomes an S-blossom
+            int base = blossomBase[b];
+            w = endpoint[mate[base]];
+            t = 1;
+            p = mate[base] ^ 1;
+        }
+    }
+
+    /**
+     * Trace back from v and w to find a new blossom's base, or -1 if they lead to different
+     * free vertices, giving an augmenting path
+     */
+    private int scanBlossom(int v, int w) {
+        IntList path = new IntList();
+        int base = -1;
+        while (v != -1 || w != -1) {
+            int b = inBlossom[v];
+            if ((label[b] & 4) != 0) {
+                base = blossomBase[b];
+                break;
+            }
+            path.add(b);
+            label[b] = 5;
+            if (labelEnd[b] == -1) {
+                v = -1;
+            } else {
+                v = endpoint[labelEnd[b]];
+                b = inBlossom[v];
+                v = endpoint[labelEnd[b]];
+            }
+            if (w != -1) {
+                int swap = v;
+                v = w;
+                w = swap;
+            }
+        }
+        for (int i = 0; i < path.size; i++) label[path.items[i]] = 1;
+        return base;
+    }
+
+    /**
+     * Make a new blossom from the S-vertices joined by edge k, with the given base
+     */
+    private void addBlossom(int base, int k) {
+        int v = edgeFrom[k];
+        int w = edgeTo[k];
+        int bb = inBlossom[base];
+        int bv = inBlossom[v];
+        int bw = inBlossom[w];
+        int b = unusedBlossoms.pop();
+        blossomBase[b] = base;
+        blossomParent[b] = -1;
+        blossomParent[bb] = b;
+
+        IntList path = new IntList();
+        IntList ends = new IntList();
+        while (bv != bb) {
+            blossomParent[bv] = b;
+            path.add(bv);
+            ends.add(labelEnd[bv]);
+            v = endpoint[labelEnd[bv]];
+            bv = inBlossom[v];
+        }
+        path.add(bb);
+        int[] children = reversed(path);
+        int[] reversedEnds = reversed(ends);
+        IntList allChildren = new IntList();
+        IntList allEnds = new IntList();
+        for (int child : children) allChildren.add(child);
+        for (int end : reversedEnds) allEnds.add(end);
+        allEnds.add(2 * k);
+        while (bw != bb) {
+            blossomParent[bw] = b;
+            allChildren.add(bw);
+            allEnds.add(labelEnd[bw] ^ 1);
+            w = endpoint[labelEnd[bw]];
+            bw = inBlossom[w];
+        }
+        blossomChildren[b] = allChildren.toArray();
+        blossomEnds[b] = allEnds.toArray();
+        label[b] = 1;
+        labelEnd[b] = labelEnd[bb];
+        dual[b] = 0;
+
+        for (int leaf : leaves(b)) {
+            if (label[inBlossom[leaf]] == 2) {
+                // A former T-vertex becomes an S-vertex and must be scanned
+                queue.add(leaf);
+            }
+            inBlossom[leaf] = b;
+        }
+
+        // The least-slack edge from the new blossom to each other S-blossom
+        IntList reached = new IntList();
+        for (int child : blossomChildren[b]) {
+            if (blossomBestEdges[child] == null) {
+                for (int leaf : leaves(child)) {
+                    for (int p : neighbourEnds[leaf]) considerBestEdge(b, p / 2, reached);
+                }
+            } else {
+                for (int edge : blossomBestEdges[child]) considerBestEdge(b, edge, reached);
+            }
+            blossomBestEdges[child] = null;
+            bestEdge[child] = -1;
+        }
+        int[] best = new int[reached.size];
+        for (int i = 0; i < best.length; i++) {
+            best[i] = bestEdgeTo[reached.items[i]];
+            bestEdgeTo[reached.items[i]] = -1;
+        }
+        blossomBestEdges[b] = best;
+        bestEdge[b] = -1;
+        for (int edge : best) {
+            if (bestEdge[b] == -1 || slack(edge) < slack(bestEdge[b])) bestEdge[b] = edge;
+        }
+    }
+
+    private void considerBestEdge(int b, int edge, IntList reached) {
+        int j = edgeTo[edge];
+        if (inBlossom[j] == b) j = edgeFrom[edge];
+        int bj = inBlossom[j];
+        if (bj != b && label[bj] == 1 && (bestEdgeTo[bj] == -1 || slack(edge) < slack(bestEdgeTo[bj]))) {
+            if (bestEdgeTo[bj] == -1) reached.add(bj);
+            bestEdgeTo[bj] = edge;
+        }
+    }
+
+    /**
+     * Undo a blossom, relabelling its children if the blossom was a T-blossom in this stage
+     */
+    private void expandBlossom(int b, boolean endStage) {
+        int[] children = blossomChildren[b];
+        for (int s : children) {
+            blossomParent[s] = -1;
+            if (s < vertexCount) {
+                inBlossom[s] = s;
+            } else if (endStage && dual[s] == 0) {
+                expandBlossom(s, endStage);
+            } else {
+                for (int leaf : leaves(s)) inBlossom[leaf] = s;
+            }
+        }
+
+        if (!endStage && label[b] == 2) {
+            // Relabel the children on the even-length path from the entry child to the base
+            int length = children.length;
+            int[] ends = blossomEnds[b];
+            int entryChild = inBlossom[endpoint[labelEnd[b] ^ 1]];
+            int j = indexOf(children, entryChild);
+            int jStep;
+            int endTrick;
+            if ((j & 1) != 0) {
+                j -= length;
+                jStep = 1;
+                endTrick = 0;
+            } else {
+                jStep = -1;
+                endTrick = 1;
+            }
+            int p = labelEnd[b];
+            while (j != 0) {
+                label[endpoint[p ^ 1]] = 0;
+                label[endpoint[ends[wrap(j - endTrick, length)] ^ endTrick ^ 1]] = 0;
+                assignLabel(endpoint[p ^ 1], 2, p);
+                allowEdge[ends[wrap(j - endTrick, length)] / 2] = true;
+                j += jStep;
+                p = ends[wrap(j - endTrick, length)] ^ endTrick;
+                allowEdge[p / 2] = true;
+                j += jStep;
+            }
+            int bv = children[wrap(j, length)];
+            label[endpoint[p ^ 1]] = label[bv] = 2;
+            labelEnd[endpoint[p ^ 1]] = labelEnd[bv] = p;
+            bestEdge[bv] = -1;
+            j += jStep;
+            while (children[wrap(j, length)] != entryChild) {
+                bv = children[wrap(j, length)];
+                if (label[bv] == 1) {
+                    j += jStep;
+                    continue;
+                }
+                int reachedLeaf = -1;
+                for (int leaf : leaves(bv)) {
+                    if (label[leaf] != 0) {
+                        reachedLeaf = leaf;
+                        break;
+                    }
+                }
+                if (reachedLeaf >= 0) {
+                    label[reachedLeaf] = 0;
+                    label[endpoint[mate[blossomBase[bv]]]] = 0;
+                    assignLabel(reachedLeaf, 2, labelEnd[reachedLeaf]);
+                }
+                j += jStep;
+            }
+        }
+
+        label[b] = labelEnd[b] = -1;
+        blossomChildren[b] = blossomEnds[b] = null;
+        blossomBase[b] = -1;
+        blossomBestEdges[b] = null;
+        bestEdge[b] = -1;
+        unusedBlossoms.add(b);
+    }
+
+    /**
+     * Swap matched and unmatched edges along the path through blossom b from vertex v to the
+     * base, making v the new base
+     */
+    private void augmentBlossom(int b, int v) {
+        int t = v;
+        while (blossomParent[t] != b) t = blossomParent[t];
+        if (t >= vertexCount) augmentBlossom(t, v);
+
+        int[] children = blossomChildren[b];
+        int[] ends = blossomEnds[b];
+        int length = children.length;
+        int i = indexOf(children, t);
+        int j = i;
+        int jStep;
+        int endTrick;
+        if ((i & 1) != 0) {
+            j -= length;
+            jStep = 1;
+            endTrick = 0;
+        } else {
+            jStep = -1;
+            endTrick = 1;
+        }
+        while (j != 0) {
+            j += jStep;
+            t = children[wrap(j, length)];
+            int p = ends[wrap(j - endTrick, length)] ^ endTrick;
+            if (t >= vertexCount) augmentBlossom(t, endpoint[p]);
+            j += jStep;
+            t = children[wrap(j, length)];
+            if (t >= vertexCount) augmentBlossom(t, endpoint[p ^ 1]);
+            mate[endpoint[p]] = p ^ 1;
+            mate[endpoint[p ^ 1]] = p;
+        }
+        // Rotate so that the child containing v comes first
+        blossomChildren[b] = rotate(children, i);
+        blossomEnds[b] = rotate(ends, i);
+        blossomBase[b] = blossomBase[blossomChildren[b][0]];
+    }
+
+    /**
+     * Swap matched and unmatched edges along the augmenting path through edge k
+     */
+    private void augmentMatching(int k) {
+        int[][] starts = {{edgeFrom[k], 2 * k + 1}, {edgeTo[k], 2 * k}};
+        for (int[] start : starts) {
+            int s = start[0];
+            int p = start[1];
+            while (true) {
+                int bs = inBlossom[s];
+                if (bs >= vertexCount) augmentBlossom(bs, s);
+                mate[s] = p;
+                if (labelEnd[bs] == -1) break;
+                int t = endpoint[labelEnd[bs]];
+                int bt = inBlossom[t];
+                s = endpoint[labelEnd[bt]];
+                int j = endpoint[labelEnd[bt] ^ 1];
+                if (bt >= vertexCount) augmentBlossom(bt, j);
+                mate[j] = labelEnd[bt];
+                p = labelEnd[bt] ^ 1;
+            }
+        }
+    }
+
+    private static int wrap(int index, int length) {
+        return index < 0 ? index + length : index;
+    }
+
+    private static int indexOf(int[] items, int item) {
+        for (int i = 0; i < items.length; i++) {
+            if (items[i] == item) return i;
+        }
+        return -1;
+    }
+
+    private static int[] reversed(IntList list) {
+        int[] result = new int[list.size];
+        for (int i = 0; i < list.size; i++) result[i] = list.items[list.size - 1 - i];
+        return result;
+    }
+
+    private static int[] rotate(int[] items, int start) {
+        int[] result = new int[items.length];
+        for (int i = 0; i < items.length; i++) result[i] = items[(start + i) % items.length];
+        return result;
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Cross-checks MaxWeightMatching against an exhaustive search on small
+ * random graphs. Each matching must be valid (mates agree, every pair is
+ * an edge) and match the best weight found by trying every matching, both
+ * with and without maximum cardinality. Mismatching graphs are printed.
+ *
+ * Run with: java -cp build MaxWeightMatchingCheck [graphs] [max vertices]
+ */
+public class MaxWeightMatchingCheck {
+
+    public static void main(String[] args) {
+        int graphs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int maxVertices = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Random random = new Random(42);
+        int mismatches = 0;
+        long start = System.nanoTime();
+        for (int g = 0; g < graphs; g++) {
+            int n = 1 + random.nextInt(maxVertices);
+            double density = 0.2 + random.nextDouble() * 0.8;
+            // Small weights give many ties, large ones exercise the dual updates
+            int range = random.nextBoolean() ? 5 : 1000000;
+            long[][] weight = new long[n][n];
+            boolean[][] edge = new boolean[n][n];
+            int edges = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    if (random.nextDouble() < density) {
+                        edge[i][j] = edge[j][i] = true;
+                        weight[i][j] = weight[j][i] = 1 + random.nextInt(range);
+                        edges++;
+                    }
+                }
+            }
+            int[] from = new int[edges];
+            int[] to = new int[edges];
+            long[] weights = new long[edges];
+            int e = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    if (!edge[i][j]) continue;
+                    from[e] = i;
+                    to[e] = j;
+                    weights[e] = weight[i][j];
+                    e++;
+                }
+            }
+
+            for (boolean maxCardinality : new boolean[] {false, true}) {
+                int[] mate = new MaxWeightMatching(n, from, to, weights).solve(maxCardinality);
+                long[] best = best(unmatched(n), 0, edge, weight, maxCardinality);
+                long[] found = score(mate, edge, weight);
+                boolean ok = found != null && found[1] == best[1] && (!maxCardinality || found[0] == best[0]);
+                if (!ok) {
+                    mismatches++;
+                    System.out.println("Mismatch on graph " + g + (maxCardinality ? " (max cardinality)" : "")
+                            + ": " + n + " vertices, edges " + describe(from, to, weights) + ", got "
+                            + Arrays.toString(mate) + (found == null ? " (invalid)" : " weight " + found[1]
+                            + " pairs " + found[0]) + ", best weight " + best[1] + " pairs " + best[0]);
+                }
+            }
+        }
+        System.out.printf("%d graphs of up to %d vertices in %.1f s, %d mismatches%n",
+                graphs, maxVertices, (System.nanoTime() - start) / 1e9, mismatches);
+    }
+
+    /**
+     * Try every matching of the vertices from the given one on (-1 is undecided, -2 left unmatched)
+     *
+     * @return the best {pairs, weight}: by weight, or by pairs and then weight
+     */
+    private static long[] best(int[] mate, int vertex, boolean[][] edge, long[][] weight, boolean maxCardinality) {
+        int n = mate.length;
+        while (vertex < n && mate[vertex] != -1) vertex++;
+        if (vertex == n) {
+            return score(mate, edge, weight);
+        }
+        // Leave the vertex unmatched
+        mate[vertex] = -2;
+        long[] best = best(mate, vertex + 1, edge, weight, maxCardinality);
+        for (int other = vertex + 1; other < n; other++) {
+            if (!edge[vertex][other] || mate[other] != -1) continue;
+            mate[vertex] = other;
+            mate[other] = vertex;
+            long[] candidate = best(mate, vertex + 1, edge, weight, maxCardinality);
+            mate[other] = -1;
+            if (maxCardinality ? candidate[0] > best[0] || candidate[0] == best[0] && candidate[1] > best[1]
+                    : candidate[1] > best[1]) {
+                best = candidate;
+            }
+        }
+        mate[vertex] = -1;
+        return best;
+    }
+
+    /**
+     * Count the pairs and total weight of a matching (-1 or -2 for unmatched), or null if it is invalid
+     */
+    private static long[] score(int[] mate, boolean[][] edge, long[][] weight) {
+        long pairs = 0;
+        long total = 0;
+        for (int i = 0; i < mate.length; i++) {
+            int j = mate[i];
+            if (j < 0) continue;
+            if (j >= mate.length || mate[j] != i || !edge[i][j]) return null;
+            if (i < j) {
+                pairs++;
+                total += weight[i][j];
+            }
+        }
+        return new long[] {pairs, total};
+    }
+
+    private static int[] unmatched(int n) {
+        int[] mate = new int[n];
+        Arrays.fill(mate, -1);
+        return mate;
+    }
+
+    private static String describe(int[] from, int[] to, long[] weights) {
+        StringBuilder text = new StringBuilder();
+        for (int e = 0; e < from.length; e++) {
+            text.append(e == 0 ? "" : " ").append(from[e]).append('-').append(to[e]).append(':').append(weights[e]);
+        }
+        return text.toString();
+    }
+}
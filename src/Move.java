@@ -2,14 +2,25 @@ public class Move {
     private String from;
     private String to;
     private String piece;
+    private String promotion;
     private String timestamp;
     private boolean legal;
     private Player player;
 
     public Move(String from, String to, String piece, String timestamp, boolean legal, Player player) {
+        this(from, to, piece, null, timestamp, legal, player);
+    }
+
+    /**
+     * Create a move that may promote a pawn
+     *
+     * @param promotion the piece a pawn promotes to ("Q", "R", "B" or "N"), or null
+     */
+    public Move(String from, String to, String piece, String promotion, String timestamp, boolean legal, Player player) {
         this.from = from;
         this.to = to;
         this.piece = piece;
+        this.promotion = promotion;
         this.timestamp = timestamp;
         this.legal = legal;
         this.player = player;
@@ -27,6 +38,13 @@ public class Move {
         return piece;
     }
 
+    /**
+     * Get the piece a pawn promoted to ("Q", "R", "B" or "N"), or null if the move is not a promotion
+     */
+    public String getPromotion() {
+        return promotion;
+    }
+
     public String getTimestamp() {
         return timestamp;
     }
@@ -39,6 +57,29 @@ public class Move {
         return player;
     }
 
+    /**
+     * Get the move in UCI notation, e.g. "e2e4" or "e7e8n". A pawn reaching the last rank
+     * without a recorded promotion piece promotes to a queen.
+     */
+    public String toUci() {
+        String uci = from + to;
+        if (promotion != null) {
+            return uci + promotion.toLowerCase();
+        }
+        boolean pawn = piece != null && piece.endsWith("P");
+        if (pawn && (to.endsWith("8") || to.endsWith("1"))) {
+            uci += "q";
+        }
+        return uci;
+    }
+
+    /**
+     * Get the promotion piece of a UCI move, e.g. "N" for "e7e8n", or null if it does not promote
+     */
+    public static String promotionOf(String uci) {
+        return uci.length() > 4 ? uci.substring(4, 5).toUpperCase() : null;
+    }
+
     public String getMoveDetails() {
         return piece + " from " + from + " to " + to + (legal ? "" : " (ILLEGAL)") + " by " + player.getUsername();
     }
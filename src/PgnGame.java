@@ -0,0 +1,143 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One game read from a PGN file: its tag pairs, its moves in standard
+ * algebraic notation and, where the PGN recorded them, the clock times
+ * from [%clk] and [%emt] comments.
+ */
+public class PgnGame {
+    private final Map<String, String> tags = new LinkedHashMap<>();
+    private final List<String> moves = new ArrayList<>();
+    // Per ply; -1 where the PGN has no value
+    private final List<Long> clocksMs = new ArrayList<>();
+    private final List<Long> elapsedMs = new ArrayList<>();
+
+    public String getTag(String name) {
+        return tags.get(name);
+    }
+
+    public Map<String, String> getTags() {
+        return Collections.unmodifiableMap(tags);
+    }
+
+    public String getWhite() {
+        return tags.getOrDefault("White", "?");
+    }
+
+    public String getBlack() {
+        return tags.getOrDefault("Black", "?");
+    }
+
+    /**
+     * Get the result: "1-0", "0-1", "1/2-1/2" or "*"
+     */
+    public String getResult() {
+        return tags.getOrDefault("Result", "*");
+    }
+
+    /**
+     * Get the start position, from the FEN tag or the standard starting position
+     */
+    public String getStartFen() {
+        return tags.getOrDefault("FEN", Position.START_FEN);
+    }
+
+    /**
+     * Get the moves in standard algebraic notation
+     */
+    public List<String> getMoves() {
+        return Collections.unmodifiableList(moves);
+    }
+
+    /**
+     * Convert the moves to UCI notation by playing them from the start position
+     *
+     * @throws IllegalArgumentException if a move is illegal or ambiguous
+     */
+    public List<String> toUciMoves() {
+        List<String> uciMoves = new ArrayList<>();
+        Position position = Position.fromFen(getStartFen());
+        for (int i = 0; i < moves.size(); i++) {
+            String uci;
+            try {
+                uci = position.sanToUci(moves.get(i));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("ply " + (i + 1) + ": " + e.getMessage());
+            }
+            uciMoves.add(uci);
+            position = position.play(uci);
+        }
+        return uciMoves;
+    }
+
+    /**
+     * Get the time spent on each move in milliseconds, from [%emt] comments or
+     * from the drop of the mover's [%clk] (plus the increment of the
+     * TimeControl tag). Unknown times are -1.
+     */
+    public List<Long> getMoveTimesMs() {
+        long[] timeControl = parseTimeControl(getTag("TimeControl"));
+        List<Long> times = new ArrayList<>();
+        for (int ply = 0; ply < moves.size(); ply++) {
+            long elapsed = elapsedMs.get(ply);
+            if (elapsed < 0) {
+                long before = ply >= 2 ? clocksMs.get(ply - 2) : timeControl[0];
+                long after = clocksMs.get(ply);
+                if (before >= 0 && after >= 0) {
+                    elapsed = Math.max(0, before - after + timeControl[1]);
+                }
+            }
+            times.add(elapsed);
+        }
+        return times;
+    }
+
+    /**
+     * Parse a PGN TimeControl such as "300+2" into {base, increment} in milliseconds, -1 base if unknown
+     */
+    private static long[] parseTimeControl(String timeControl) {
+        if (timeControl == null) return new long[]{-1, 0};
+        try {
+            String[] parts = timeControl.split("\\+");
+            long base = (long) (Double.parseDouble(parts[0]) * 1000);
+            long increment = parts.length > 1 ? (long) (Double.parseDouble(parts[1]) * 1000) : 0;
+            return new long[]{base, increment};
+        } catch (NumberFormatException e) {
+            // "-", "?" or a multi-period control
+            return new long[]{-1, 0};
+        }
+    }
+
+    void setTag(String name, String value) {
+        tags.put(name, value);
+    }
+
+    void addMove(String san) {
+        moves.add(san);
+        clocksMs.add(-1L);
+        elapsedMs.add(-1L);
+    }
+
+    /**
+     * Attach a clock reading to the last move
+     */
+    void setClock(long ms) {
+        if (!moves.isEmpty()) clocksMs.set(moves.size() - 1, ms);
+    }
+
+    /**
+     * Attach an elapsed move time to the last move
+     */
+    void setElapsed(long ms) {
+        if (!moves.isEmpty()) elapsedMs.set(moves.size() - 1, ms);
+    }
+
+    @Override
+    public String toString() {
+        return getWhite() + " - " + getBlack() + " " + getResult() + " (" + moves.size() + " plies)";
+    }
+}
@@ -0,0 +1,79 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Writes random legal games to a PGN file with PgnWriter, then imports the
+ * file with PgnImporter: once per thread count without storage, to measure
+ * parsing alone, and once into a GameArchive. Every imported game is
+ * checked against the moves that were written.
+ *
+ * Run with: java -cp build PgnImportBenchmark [games] [threads]
+ */
+public class PgnImportBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        File directory = Files.createTempDirectory("pgn-import").toFile();
+        File pgn = new File(directory, "games.pgn");
+        Random random = new Random(42);
+        List<List<String>> written = new ArrayList<>();
+        for (int g = 0; g < count; g++) {
+            written.add(randomGame(random, 40 + random.nextInt(80)));
+        }
+        long start = System.nanoTime();
+        try (PgnWriter writer = new PgnWriter(new OutputStreamWriter(new FileOutputStream(pgn), StandardCharsets.UTF_8))) {
+            for (int g = 0; g < count; g++) {
+                List<String> moves = written.get(g);
+                Map<String, String> tags = new LinkedHashMap<>();
+                tags.put("Event", "Benchmark");
+                tags.put("Date", "2020.01." + String.format("%02d", 1 + g % 28));
+                tags.put("White", "white" + g % 1000);
+                tags.put("Black", "black" + g % 997);
+                tags.put("Result", "1/2-1/2");
+                tags.put("WhiteElo", String.valueOf(1200 + g % 1000));
+                writer.write(tags, Position.START_FEN, moves);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Wrote %d games (%.1f MB) in %.1f s, %.0f games/minute%n",
+                count, pgn.length() / 1e6, seconds, count * 60 / seconds);
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            int[] index = new int[1];
+            int[] mismatches = new int[1];
+            PgnImporter.Summary summary = new PgnImporter(threads).importFile(pgn, game -> {
+                if (!game.getMoves().equals(written.get(index[0]++))) mismatches[0]++;
+            });
+            System.out.printf("%2d threads, no storage: %s, %d mismatches%n", threads, summary, mismatches[0]);
+        }
+
+        try (GameArchive archive = new GameArchive(new File(directory, "archive"), 20)) {
+            PgnImporter.Summary summary = new PgnImporter(maxThreads).importFile(pgn, PgnImporter.archiveSink(archive));
+            System.out.printf("%2d threads, into archive: %s%n", maxThreads, summary);
+        }
+    }
+
+    private static List<String> randomGame(Random random, int plies) {
+        Position position = Position.startPosition();
+        List<String> moves = new ArrayList<>();
+        for (int i = 0; i < plies; i++) {
+            List<String> legal = position.legalMoves();
+            if (legal.isEmpty()) break;
+            String move = legal.get(random.nextInt(legal.size()));
+            moves.add(move);
+            position = position.play(move);
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,388 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports PGN files of any size into storage, parsing games in parallel.
+ *
+ * The input is read line by line and cut into batches of whole games at
+ * game boundaries; it is never held in memory as a whole. Worker threads
+ * parse the batches and check every move against the rules (Position), and
+ * one writer thread hands the games to the sink in input order. At most a
+ * few batches per worker are in flight: when the workers or the sink fall
+ * behind, reading waits.
+ *
+ * Games with illegal or ambiguous moves are reported and skipped.
+ */
+public class PgnImporter {
+    private static final int BATCH_GAMES = 256;
+    private static final Future<List<ImportedGame>> END = CompletableFuture.completedFuture(null);
+
+    /**
+     * Receives the imported games, one at a time and in input order
+     */
+    public interface GameSink {
+        void accept(ImportedGame game) throws IOException;
+    }
+
+    /**
+     * A game read from PGN with its moves resolved to UCI notation
+     */
+    public static class ImportedGame {
+        private final Map<String, String> tags;
+        private final String startFen;
+        private final List<String> moves;
+
+        public ImportedGame(Map<String, String> tags, String startFen, List<String> moves) {
+            this.tags = tags;
+            this.startFen = startFen;
+            this.moves = moves;
+        }
+
+        public Map<String, String> getTags() {
+            return tags;
+        }
+
+        public String getWhite() {
+            return tags.getOrDefault("White", "?");
+        }
+
+        public String getBlack() {
+            return tags.getOrDefault("Black", "?");
+        }
+
+        public String getEvent() {
+            return tags.getOrDefault("Event", "?");
+        }
+
+        /**
+         * Get the result: "1-0", "0-1", "1/2-1/2" or "*"
+         */
+        public String getResult() {
+            return tags.getOrDefault("Result", "*");
+        }
+
+        /**
+         * Get the Date tag as milliseconds since the epoch (UTC midnight), with unknown month and
+         * day taken as 1, or 0 if the year is unknown
+         */
+        public long getDate() {
+            String[] parts = tags.getOrDefault("Date", "????.??.??").split("\\.");
+            try {
+                int year = Integer.parseInt(parts[0]);
+                int month = parts.length > 1 && parts[1].matches("\\d+") ? Integer.parseInt(parts[1]) : 1;
+                int day = parts.length > 2 && parts[2].matches("\\d+") ? Integer.parseInt(parts[2]) : 1;
+                return LocalDate.of(year, month, day).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            } catch (RuntimeException e) {
+                return 0;
+            }
+        }
+
+        public String getStartFen() {
+            return startFen;
+        }
+
+        /**
+         * Get the moves in UCI notation
+         */
+        public List<String> getMoves() {
+            return moves;
+        }
+
+        /**
+         * Build a completed Match with this game's players, moves and result. The players are
+         * created from the tags (rating from WhiteElo and BlackElo) and their stats are left alone.
+         */
+        public Match toMatch(int matchId) {
+            Player white = new Player(getWhite(), elo("WhiteElo"), "");
+            Player black = new Player(getBlack(), elo("BlackElo"), "");
+            Match match = new Match(matchId, white, black, appTimeControl(tags.get("TimeControl")));
+            Position position = Position.fromFen(startFen);
+            for (String move : moves) {
+                int piece = position.pieceAt(Position.square(move.substring(0, 2)));
+                String pieceCode = (piece > 0 ? "w" : "b") + " PNBRQK".charAt(Math.abs(piece));
+                match.recordMove(new Move(move.substring(0, 2), move.substring(2, 4), pieceCode,
+                        Move.promotionOf(move), "", true, position.isWhiteToMove() ? white : black));
+                position = position.play(move);
+            }
+            String result = getResult();
+            Player winner = result.equals("1-0") ? white : result.equals("0-1") ? black : null;
+            match.restoreResult(winner, result.equals("*") ? "Ongoing" : "Completed (" + result + ")");
+            return match;
+        }
+
+        private int elo(String tag) {
+            try {
+                return Integer.parseInt(tags.getOrDefault(tag, "1200").trim());
+            } catch (NumberFormatException e) {
+                return 1200;
+            }
+        }
+
+        /**
+         * Convert PGN's "seconds+increment" to the application's "minutes|increment"
+         */
+        private static String appTimeControl(String timeControl) {
+            try {
+                String[] parts = timeControl.split("\\+");
+                return Math.max(1, Integer.parseInt(parts[0]) / 60) + "|" + (parts.length > 1 ? Integer.parseInt(parts[1]) : 0);
+            } catch (RuntimeException e) {
+                return "10|0";
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getWhite() + " - " + getBlack() + " " + getResult() + " (" + moves.size() + " plies)";
+        }
+    }
+
+    /**
+     * Counts from one import
+     */
+    public static class Summary {
+        private final int imported;
+        private final int skipped;
+        private final long elapsedMs;
+
+        public Summary(int imported, int skipped, long elapsedMs) {
+            this.imported = imported;
+            this.skipped = skipped;
+            this.elapsedMs = elapsedMs;
+        }
+
+        public int getImported() {
+            return imported;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        /**
+         * Get the import rate in games per minute
+         */
+        public double getGamesPerMinute() {
+            return elapsedMs == 0 ? 0 : (imported + skipped) * 60000.0 / elapsedMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Imported %d games, skipped %d, in %.1f s (%.0f games/minute)",
+                    imported, skipped, elapsedMs / 1000.0, getGamesPerMinute());
+        }
+    }
+
+    private final int threads;
+
+    /**
+     * Creates an importer
+     *
+     * @param threads the number of parsing threads
+     */
+    public PgnImporter(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Import a PGN file
+     *
+     * @throws IOException if the file cannot be read or the sink fails
+     */
+    public Summary importFile(File file, GameSink sink) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return importGames(reader, sink);
+        }
+    }
+
+    /**
+     * Import every game of the PGN input
+     *
+     * @throws IOException if the input cannot be read or the sink fails
+     */
+    public Summary importGames(Reader input, GameSink sink) throws IOException {
+        long start = System.currentTimeMillis();
+        AtomicInteger skipped = new AtomicInteger();
+        int[] imported = new int[1];
+        IOException[] sinkFailure = new IOException[1];
+        BlockingQueue<Future<List<ImportedGame>>> inFlight = new ArrayBlockingQueue<>(threads * 2);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService parsers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "pgn-parser-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread writer = new Thread(() -> {
+            try {
+                while (true) {
+                    Future<List<ImportedGame>> batch = inFlight.take();
+                    if (batch == END) break;
+                    for (ImportedGame game : batch.get()) {
+                        sink.accept(game);
+                        imported[0]++;
+                    }
+                }
+            } catch (IOException e) {
+                sinkFailure[0] = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                sinkFailure[0] = new IOException("PGN parsing failed", e.getCause());
+            }
+            // Let the reader finish if it is waiting for room
+            inFlight.clear();
+        }, "pgn-import-writer");
+        writer.start();
+
+        try {
+            BufferedReader reader = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input, 1 << 16);
+            StringBuilder batch = new StringBuilder();
+            int batchGames = 0;
+            boolean inMoves = false;
+            boolean inComment = false;
+            String line;
+            while ((line = reader.readLine()) != null && writer.isAlive()) {
+                if (!inComment && line.startsWith("[") && inMoves) {
+                    // The next game's tags: the previous game is complete
+                    inMoves = false;
+                    if (++batchGames == BATCH_GAMES) {
+                        submit(parsers, inFlight, batch.toString(), skipped, writer);
+                        batch.setLength(0);
+                        batchGames = 0;
+                    }
+                }
+                if (!line.startsWith("[") || inComment) {
+                    inComment = scanComments(line, inComment);
+                    inMoves |= !line.trim().isEmpty() && !line.startsWith("%");
+                }
+                batch.append(line).append('\n');
+            }
+            if (batch.length() > 0) {
+                submit(parsers, inFlight, batch.toString(), skipped, writer);
+            }
+            enqueue(inFlight, END, writer);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("PGN import interrupted");
+        } finally {
+            parsers.shutdownNow();
+            writer.interrupt();
+        }
+        if (sinkFailure[0] != null) {
+            throw sinkFailure[0];
+        }
+        return new Summary(imported[0], skipped.get(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Import a PGN file into the game archive from the command line.
+     *
+     * Usage: PgnImporter games.pgn [threads]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: PgnImporter games.pgn [threads]");
+            return;
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        GameArchive archive = GameArchive.getInstance();
+        try {
+            Summary summary = new PgnImporter(threads).importFile(new File(args[0]), archiveSink(archive));
+            System.out.println(summary);
+        } finally {
+            archive.close();
+        }
+    }
+
+    /**
+     * Get a sink that adds the games to a game archive
+     */
+    public static GameSink archiveSink(GameArchive archive) {
+        return game -> archive.add(game.getWhite(), game.getBlack(), game.getEvent(), game.getDate(),
+                game.getResult(), game.getStartFen(), game.getMoves());
+    }
+
+    private void submit(ExecutorService parsers, BlockingQueue<Future<List<ImportedGame>>> inFlight, String text,
+            AtomicInteger skipped, Thread writer) throws InterruptedException {
+        Future<List<ImportedGame>> parsed = parsers.submit(() -> parse(text, skipped));
+        if (!enqueue(inFlight, parsed, writer)) {
+            parsed.cancel(true);
+        }
+    }
+
+    /**
+     * Queue a batch for the writer, giving up if the writer has stopped after a sink failure
+     *
+     * @return whether the batch was queued
+     */
+    private static boolean enqueue(BlockingQueue<Future<List<ImportedGame>>> inFlight, Future<List<ImportedGame>> batch,
+            Thread writer) throws InterruptedException {
+        while (!inFlight.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            if (!writer.isAlive()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parse a batch of games, resolving their moves
+     */
+    private static List<ImportedGame> parse(String text, AtomicInteger skipped) throws IOException {
+        List<ImportedGame> games = new ArrayList<>(BATCH_GAMES);
+        try (PgnReader reader = new PgnReader(new StringReader(text))) {
+            PgnGame game;
+            while ((game = reader.next()) != null) {
+                try {
+                    games.add(new ImportedGame(game.getTags(), game.getStartFen(), game.toUciMoves()));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Skipping game " + game + ": " + e.getMessage());
+                    skipped.incrementAndGet();
+                }
+            }
+        }
+        return games;
+    }
+
+    /**
+     * Follow brace comments through a movetext line
+     *
+     * @return whether the line ends inside a comment
+     */
+    private static boolean scanComments(String line, boolean inComment) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inComment) {
+                inComment = c != '}';
+            } else if (c == '{') {
+                inComment = true;
+            } else if (c == ';') {
+                break;
+            }
+        }
+        return inComment;
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads games from PGN text one at a time, so files with thousands of games
+ * never have to be held in memory at once.
+ *
+ * Tag pairs, move numbers, NAGs, variations and comments are handled;
+ * variations are skipped, and comments only matter for their [%clk] and
+ * [%emt] clock annotations.
+ */
+public class PgnReader implements Closeable {
+    private static final Pattern TAG = Pattern.compile("\\[\\s*(\\w+)\\s+\"((?:[^\"\\\\]|\\\\.)*)\"\\s*\\]");
+    private static final Pattern CLOCK = Pattern.compile("\\[%(clk|emt)\\s+(\\d+):(\\d+):(\\d+(?:\\.\\d+)?)\\s*\\]");
+
+    private final BufferedReader reader;
+    private String pendingLine;
+    private boolean inComment;
+    private int variationDepth;
+    private final StringBuilder comment = new StringBuilder();
+    private long lineNumber;
+
+    public PgnReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    /**
+     * Read the next game
+     *
+     * @return the game, or null at the end of the input
+     * @throws IOException if the input cannot be read
+     */
+    public PgnGame next() throws IOException {
+        PgnGame game = null;
+        boolean inMoves = false;
+        inComment = false;
+        variationDepth = 0;
+
+        String line;
+        while ((line = nextLine()) != null) {
+            String trimmed = line.trim();
+            if (!inComment && variationDepth == 0 && trimmed.startsWith("[")) {
+                if (inMoves) {
+                    // A game without a result token ends where the next one's tags start
+                    pendingLine = line;
+                    lineNumber--;
+                    return game;
+                }
+                if (game == null) game = new PgnGame();
+                Matcher tag = TAG.matcher(trimmed);
+                if (tag.matches()) {
+                    game.setTag(tag.group(1), tag.group(2).replace("\\\"", "\"").replace("\\\\", "\\"));
+                } else {
+                    System.err.println("Ignoring malformed PGN tag on line " + lineNumber + ": " + trimmed);
+                }
+                continue;
+            }
+            if (trimmed.isEmpty() || trimmed.startsWith("%")) continue;
+
+            if (game == null) game = new PgnGame();
+            inMoves = true;
+            if (parseMovetext(line, game)) {
+                return game;
+            }
+        }
+        return game;
+    }
+
+    /**
+     * Parse one line of movetext
+     *
+     * @return true if the line ended the game with a result token
+     */
+    private boolean parseMovetext(String line, PgnGame game) {
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= line.length(); i++) {
+            char c = i < line.length() ? line.charAt(i) : ' ';
+            if (inComment) {
+                if (c == '}') {
+                    inComment = false;
+                    if (variationDepth == 0) readComment(game);
+                } else {
+                    comment.append(c);
+                }
+                continue;
+            }
+            if (c == '{' || c == ';' || c == '(' || c == ')' || Character.isWhitespace(c)) {
+                if (token.length() > 0 && variationDepth == 0 && readToken(token.toString(), game)) {
+                    return true;
+                }
+                token.setLength(0);
+                if (c == '{') {
+                    inComment = true;
+                    comment.setLength(0);
+                } else if (c == ';') {
+                    // Rest-of-line comment
+                    comment.setLength(0);
+                    comment.append(line.substring(i + 1));
+                    if (variationDepth == 0) readComment(game);
+                    break;
+                } else if (c == '(') {
+                    variationDepth++;
+                } else if (c == ')') {
+                    variationDepth = Math.max(0, variationDepth - 1);
+                }
+            } else {
+                token.append(c);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Handle one movetext token
+     *
+     * @return true if the token is a game result
+     */
+    private static boolean readToken(String token, PgnGame game) {
+        if (token.equals("1-0") || token.equals("0-1") || token.equals("1/2-1/2") || token.equals("*")) {
+            if (game.getTag("Result") == null) game.setTag("Result", token);
+            return true;
+        }
+        if (token.startsWith("$")) return false;
+
+        // Strip a move number such as "12." or "12..."
+        String move = token.replaceFirst("^\\d+\\.+", "");
+        if (!move.isEmpty() && !move.matches("\\d+")) {
+            game.addMove(move);
+        }
+        return false;
+    }
+
+    private void readComment(PgnGame game) {
+        Matcher clock = CLOCK.matcher(comment);
+        while (clock.find()) {
+            long ms = Long.parseLong(clock.group(2)) * 3600000 + Long.parseLong(clock.group(3)) * 60000
+                    + (long) (Double.parseDouble(clock.group(4)) * 1000);
+            if (clock.group(1).equals("clk")) {
+                game.setClock(ms);
+            } else {
+                game.setElapsed(ms);
+            }
+        }
+        comment.setLength(0);
+    }
+
+    private String nextLine() throws IOException {
+        lineNumber++;
+        if (pendingLine != null) {
+            String line = pendingLine;
+            pendingLine = null;
+            return line;
+        }
+        return reader.readLine();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,204 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Writes games as PGN text one at a time, so any number of matches or
+ * archived games can be exported without holding them all in memory.
+ *
+ * Each game gets the seven standard tags (plus FEN and SetUp for games not
+ * starting from the standard position) and its moves in standard algebraic
+ * notation, wrapped at 80 columns.
+ */
+public class PgnWriter implements Closeable {
+    private static final String[] SEVEN_TAGS = {"Event", "Site", "Date", "Round", "White", "Black", "Result"};
+    private static final int LINE_WIDTH = 80;
+
+    private final BufferedWriter writer;
+    private int games;
+
+    public PgnWriter(Writer writer) {
+        this.writer = writer instanceof BufferedWriter ? (BufferedWriter) writer : new BufferedWriter(writer);
+    }
+
+    /**
+     * Write a match; its legal moves are the game's moves
+     *
+     * @throws IOException if the output cannot be written
+     */
+    public void write(Match match) throws IOException {
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("Event", "Match " + match.getMatchID());
+        tags.put("White", match.getPlayer1().getUsername());
+        tags.put("Black", match.getPlayer2().getUsername());
+        tags.put("Result", resultOf(match));
+        tags.put("TimeControl", pgnTimeControl(match.getTimeControl()));
+        List<String> moves = new ArrayList<>();
+        for (Move move : match.getMoveHistory()) {
+            if (move.isLegal()) {
+                moves.add(move.toUci());
+            }
+        }
+        write(tags, Position.START_FEN, moves);
+    }
+
+    /**
+     * Write a game from the game archive
+     *
+     * @throws IOException if the output cannot be written
+     */
+    public void write(GameArchive.ArchivedGame game) throws IOException {
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("Event", game.getEvent());
+        tags.put("Date", formatDate(game.getDate()));
+        tags.put("White", game.getWhite());
+        tags.put("Black", game.getBlack());
+        tags.put("Result", game.getResult());
+        write(tags, game.getStartFen(), game.getMoves());
+    }
+
+    /**
+     * Write a game read from PGN, keeping all its tags
+     *
+     * @throws IOException if the output cannot be written
+     * @throws IllegalArgumentException if a move is illegal or ambiguous
+     */
+    public void write(PgnGame game) throws IOException {
+        write(game.getTags(), game.getStartFen(), game.toUciMoves());
+    }
+
+    /**
+     * Write a game
+     *
+     * @param tags tag pairs; missing standard tags are written as "?" (Result as "*")
+     * @param startFen the start position
+     * @param uciMoves the moves in UCI notation
+     * @throws IOException if the output cannot be written
+     * @throws IllegalArgumentException if a move is illegal
+     */
+    public void write(Map<String, String> tags, String startFen, List<String> uciMoves) throws IOException {
+        if (games++ > 0) {
+            writer.newLine();
+        }
+        for (String name : SEVEN_TAGS) {
+            String value = tags.get(name);
+            writeTag(name, value == null || value.isEmpty() ? (name.equals("Result") ? "*" : "?") : value);
+        }
+        boolean standardStart = startFen == null || startFen.equals(Position.START_FEN);
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            boolean setUp = tag.getKey().equals("FEN") || tag.getKey().equals("SetUp");
+            if (!isSevenTag(tag.getKey()) && !setUp && tag.getValue() != null) {
+                writeTag(tag.getKey(), tag.getValue());
+            }
+        }
+        if (!standardStart) {
+            writeTag("SetUp", "1");
+            writeTag("FEN", startFen);
+        }
+        writer.newLine();
+
+        Position position = standardStart ? Position.startPosition() : Position.fromFen(startFen);
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < uciMoves.size(); i++) {
+            if (position.isWhiteToMove()) {
+                appendToken(line, position.getFullmoveNumber() + ".");
+            } else if (i == 0) {
+                appendToken(line, position.getFullmoveNumber() + "...");
+            }
+            String uci = uciMoves.get(i);
+            appendToken(line, position.toSan(uci));
+            position = position.play(uci);
+        }
+        String result = tags.get("Result");
+        appendToken(line, result == null || result.isEmpty() ? "*" : result);
+        writer.write(line.toString());
+        writer.newLine();
+    }
+
+    /**
+     * Get how many games have been written
+     */
+    public int getGameCount() {
+        return games;
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Get a match's result as a PGN result token
+     */
+    static String resultOf(Match match) {
+        String status = match.getStatus() == null ? "" : match.getStatus();
+        if (match.getWinner() != null) {
+            return match.getWinner() == match.getPlayer1() ? "1-0" : "0-1";
+        }
+        for (String result : new String[] {"1-0", "0-1", "1/2-1/2"}) {
+            if (status.contains(result)) return result;
+        }
+        if (status.contains("White timed out")) return "0-1";
+        if (status.contains("Black timed out")) return "1-0";
+        if (status.contains("Draw")) return "1/2-1/2";
+        return "*";
+    }
+
+    /**
+     * Format an archived game's date (UTC midnight, or 0 if unknown) as a PGN date
+     */
+    static String formatDate(long date) {
+        if (date == 0) return "????.??.??";
+        SimpleDateFormat format = new SimpleDateFormat("yyyy.MM.dd");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(date));
+    }
+
+    /**
+     * Convert the application's "minutes|increment" to PGN's "seconds+increment"
+     */
+    static String pgnTimeControl(String timeControl) {
+        if (timeControl == null) return "-";
+        String[] parts = timeControl.split("\\|");
+        try {
+            int seconds = Integer.parseInt(parts[0].trim()) * 60;
+            return parts.length > 1 && !parts[1].trim().equals("0") ? seconds + "+" + parts[1].trim() : String.valueOf(seconds);
+        } catch (NumberFormatException e) {
+            return timeControl;
+        }
+    }
+
+    private void writeTag(String name, String value) throws IOException {
+        writer.write("[" + name + " \"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"]");
+        writer.newLine();
+    }
+
+    private void appendToken(StringBuilder line, String token) throws IOException {
+        if (line.length() > 0 && line.length() + 1 + token.length() > LINE_WIDTH) {
+            writer.write(line.toString());
+            writer.newLine();
+            line.setLength(0);
+        }
+        if (line.length() > 0) line.append(' ');
+        line.append(token);
+    }
+
+    private static boolean isSevenTag(String name) {
+        for (String tag : SEVEN_TAGS) {
+            if (tag.equals(name)) return true;
+        }
+        return false;
+    }
+}
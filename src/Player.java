@@ -1,11 +1,3 @@
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.util.Objects;
-import java.io.FileReader;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-
 public class Player extends User {
     private int rating;
     private int wins;
@@ -48,23 +40,12 @@ public class Player extends User {
         totalPoints += 0.5f;
     }
 
-    // Get player's rating
+    // Get player's rating: the stored rating plus the adjustments in the match event log
     public int getRating() {
-        try (BufferedReader reader = new BufferedReader(new FileReader("playerStats.txt"))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts[0].equals(getName())) {
-                    rating = Integer.parseInt(parts[4].trim());
-                    break;
-                }
-            }
-        } catch (FileNotFoundException e) {
-            System.err.println("File not found: " + e.getMessage());
-        } catch (IOException e) {
-            System.err.println("Error reading file: " + e.getMessage());
-        }
-        return rating;
+        PlayerStatsRepository.PlayerStats stats = PlayerStatsRepository.getInstance().get(getName());
+        int base = stats != null ? stats.getRating() : rating;
+        MatchEventLog.PlayerRecord record = logRecord();
+        return record == null ? base : base + record.getRatingChange();
     }
 
     // Get player's total points
@@ -72,61 +53,34 @@ public class Player extends User {
         return totalPoints;
     }
 
-    // Get player's wins
+    // Get player's wins: those stored from before the match event log plus those in it
     public int getWins() {
-        try (BufferedReader reader = new BufferedReader(new FileReader("playerStats.txt"))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts[0].equals(getName())) {
-                    wins = Integer.parseInt(parts[1].trim());
-                    break;
-                }
-            }
-        } catch (FileNotFoundException e) {
-            System.err.println("File not found: " + e.getMessage());
-        } catch (IOException e) {
-            System.err.println("Error reading file: " + e.getMessage());
-        }
-        return wins;
+        PlayerStatsRepository.PlayerStats stats = PlayerStatsRepository.getInstance().get(getName());
+        MatchEventLog.PlayerRecord record = logRecord();
+        return (stats != null ? stats.getWins() : wins) + (record == null ? 0 : record.getWins());
     }
 
     // Get player's losses
     public int getLosses() {
-        try (BufferedReader reader = new BufferedReader(new FileReader("playerStats.txt"))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts[0].equals(getName())) {
-                    losses = Integer.parseInt(parts[2].trim());
-                    break;
-                }
-            }
-        } catch (FileNotFoundException e) {
-            System.err.println("File not found: " + e.getMessage());
-        } catch (IOException e) {
-            System.err.println("Error reading file: " + e.getMessage());
-        }
-        return losses;
+        PlayerStatsRepository.PlayerStats stats = PlayerStatsRepository.getInstance().get(getName());
+        MatchEventLog.PlayerRecord record = logRecord();
+        return (stats != null ? stats.getLosses() : losses) + (record == null ? 0 : record.getLosses());
     }
 
     // Get player's draws
     public int getDraws() {
-        try (BufferedReader reader = new BufferedReader(new FileReader("playerStats.txt"))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts[0].equals(getName())) {
-                    draws = Integer.parseInt(parts[3].trim());
-                    break;
-                }
-            }
-        } catch (FileNotFoundException e) {
-            System.err.println("File not found: " + e.getMessage());
-        } catch (IOException e) {
-            System.err.println("Error reading file: " + e.getMessage());
+        PlayerStatsRepository.PlayerStats stats = PlayerStatsRepository.getInstance().get(getName());
+        MatchEventLog.PlayerRecord record = logRecord();
+        return (stats != null ? stats.getDraws() : draws) + (record == null ? 0 : record.getDraws());
+    }
+
+    // Get the player's results from the match event log, which keys them by username
+    private MatchEventLog.PlayerRecord logRecord() {
+        try {
+            return MatchEventLog.getInstance().getRecord(getUsername());
+        } catch (IllegalStateException e) {
+            return null;
         }
-        return draws;
     }
 
     // Update player's rating after a match
@@ -140,32 +94,6 @@ public class Player extends User {
                 getName(), rating, wins, losses, draws, totalPoints);
     }
 
-    public void changePlayerStats(int newWin, int newLoss, int newDraw, int newPoints){
-        try (BufferedReader reader = new BufferedReader(new FileReader("playerStats.txt"))){
-            StringBuilder updatedContent = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts[0].equals(getName())){
-                    int updatedWins = Integer.parseInt(parts[1].trim()) + newWin;
-                    int updatedLosses = Integer.parseInt(parts[2].trim()) + newLoss;
-                    int updatedDraws = Integer.parseInt(parts[3].trim()) + newDraw;
-                    int updatedTotalPoints = Integer.parseInt(parts[4].trim()) + newPoints;
-                    line = String.format("%s,%d,%d,%d,%d", getName(), updatedWins, updatedLosses, updatedDraws, updatedTotalPoints);
-                }
-                updatedContent.append(line).append("\n");
-            }
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter("playerStats.txt"))){
-                writer.write(updatedContent.toString());
-            }
-        }
-        catch (FileNotFoundException e) {
-            System.err.println("File not found: " + e.getMessage());
-        } catch (IOException e) {
-            System.err.println("Error reading file: " + e.getMessage());
-        }
-    }
-
 
 
     @Override
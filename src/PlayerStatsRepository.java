@@ -0,0 +1,646 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory copy of the player stats, shared by the whole process.
+ *
+ * The stats are read once into a map keyed by player name, so stat lookups
+ * (for example inside a sort comparator) cost a hash lookup instead of a
+ * file scan.
+ *
+ * On disk the stats are a snapshot, playerStats.txt, plus a journal of
+ * changes since the snapshot, playerStats.txt.journal. Recording a result
+ * appends one line to the journal instead of rewriting the snapshot, so it
+ * costs the same however many players there are. A background thread
+ * writes the journal: everything that arrived while it was writing the
+ * previous batch goes out in the next batch with a single fsync (group
+ * commit). Every few thousand changes the snapshot is rewritten and the
+ * journal emptied. On startup the journal is replayed on top of the
+ * snapshot; a line torn by a crash ends the replay.
+ *
+ * Several instances of the application may share the files. Writing a
+ * batch and compacting take the files' DataFileLock; before writing, the
+ * journal thread checks that the files are still the version it last saw
+ * (the snapshot's sequence number and the journal's length), and if not,
+ * reads the other instance's changes and applies its own on top, so no
+ * update is lost. Lookups take no file lock. If the files are changed by
+ * someone else (another instance, or an edit by hand) the new contents
+ * are picked up on the next lookup. The files are only looked at again
+ * once a second has passed since the last check, which a timer thread
+ * signals, so hot loops never touch the disk or even the clock.
+ *
+ * A change only counts as stored once its journal write (or a compaction
+ * covering it) has been fsynced. If writing fails, the batch stays pending
+ * and is tried again a second later; callers waiting under GROUP_COMMIT
+ * keep waiting. close() stores what is pending and stops both threads.
+ *
+ * Snapshot format, one player per line after a header: name, wins, losses, draws, rating.
+ * Journal format, tab-separated: "sequence A name rating" or "sequence R name wins losses draws rating-change".
+ */
+public class PlayerStatsRepository implements AutoCloseable {
+    private static final String HEADER = "name, wins, losses, draws, rating";
+    // The snapshot covers journal records up to this sequence number
+    private static final String SEQUENCE_PREFIX = "# journal ";
+    private static final long CHECK_INTERVAL_MS = 1000;
+    private static final int COMPACT_EVERY = 5000;
+    private static final long RETRY_DELAY_MS = 1000;
+
+    private static PlayerStatsRepository instance;
+
+    /**
+     * When a change counts as stored
+     */
+    public enum SyncPolicy {
+        /** The caller waits until its change is fsynced; concurrent changes share one fsync */
+        GROUP_COMMIT,
+        /** The caller returns at once; the change is fsynced with the next batch, a few milliseconds later */
+        ASYNC
+    }
+
+    /**
+     * One player's line of the stats file
+     */
+    public static class PlayerStats {
+        private final String name;
+        private final int wins;
+        private final int losses;
+        private final int draws;
+        private final int rating;
+
+        public PlayerStats(String name, int wins, int losses, int draws, int rating) {
+            this.name = name;
+            this.wins = wins;
+            this.losses = losses;
+            this.draws = draws;
+            this.rating = rating;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getWins() {
+            return wins;
+        }
+
+        public int getLosses() {
+            return losses;
+        }
+
+        public int getDraws() {
+            return draws;
+        }
+
+        public int getRating() {
+            return rating;
+        }
+
+        PlayerStats plus(int newWins, int newLosses, int newDraws, int ratingChange) {
+            return new PlayerStats(name, wins + newWins, losses + newLosses, draws + newDraws, rating + ratingChange);
+        }
+
+        String toLine() {
+            return String.format("%s,%d,%d,%d,%d", name, wins, losses, draws, rating);
+        }
+    }
+
+    private final File file;
+    private final File journalFile;
+    private final SyncPolicy policy;
+    private final Map<String, PlayerStats> stats = new LinkedHashMap<>();
+    // Lines that could not be parsed are kept so a rewrite does not lose them
+    private final List<String> unreadableLines = new ArrayList<>();
+    private final List<String> pending = new ArrayList<>();
+    private long snapshotModified = -1;
+    private long snapshotLength = -1;
+    private long journalLength;
+    // Sequence numbers of journal records, shared by every instance writing the files
+    private long snapshotSequence;
+    private long lastSequence;
+    // Numbers handed to this instance's changes, to wait for them to be written
+    private long lastTicket;
+    private long writtenTicket;
+    private long journalRecords;
+    private long syncCount;
+    private boolean writing;
+    // Set when a failed write may have left part of a batch in the journal; only a compaction repairs that
+    private boolean compactionNeeded;
+    private volatile boolean checkDue = true;
+    private final Thread timer;
+    private final Thread writer;
+
+    /**
+     * Creates a repository that makes callers wait for their change to be fsynced
+     *
+     * @param file the snapshot file; the journal is the same name plus ".journal"
+     */
+    public PlayerStatsRepository(File file) {
+        this(file, SyncPolicy.GROUP_COMMIT);
+    }
+
+    /**
+     * Creates a repository; the files are read on first use
+     *
+     * @param file the snapshot file; the journal is the same name plus ".journal"
+     * @param policy whether changes wait for their fsync
+     */
+    public PlayerStatsRepository(File file, SyncPolicy policy) {
+        this.file = file;
+        this.journalFile = new File(file.getPath() + ".journal");
+        this.policy = policy;
+
+        timer = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(CHECK_INTERVAL_MS);
+                    checkDue = true;
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }, "player-stats-check");
+        timer.setDaemon(true);
+        timer.start();
+
+        writer = new Thread(this::writeJournal, "player-stats-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Get the repository for the application's stats file, playerStats.txt
+     * unless -Dchess.stats.file names another one. -Dchess.stats.sync=async
+     * lets changes return before they are fsynced.
+     */
+    public static synchronized PlayerStatsRepository getInstance() {
+        if (instance == null) {
+            SyncPolicy policy = "async".equalsIgnoreCase(System.getProperty("chess.stats.sync"))
+                    ? SyncPolicy.ASYNC : SyncPolicy.GROUP_COMMIT;
+            instance = new PlayerStatsRepository(new File(System.getProperty("chess.stats.file", "playerStats.txt")), policy);
+        }
+        return instance;
+    }
+
+    /**
+     * Get a player's stats
+     *
+     * @param name the player's name as written in the stats file
+     * @return the stats, or null if the player has no line in the file
+     */
+    public synchronized PlayerStats get(String name) {
+        refreshIfChanged();
+        return stats.get(name);
+    }
+
+    /**
+     * Get every player's stats in file order
+     */
+    public synchronized List<PlayerStats> getAll() {
+        refreshIfChanged();
+        return new ArrayList<>(stats.values());
+    }
+
+    public synchronized int size() {
+        refreshIfChanged();
+        return stats.size();
+    }
+
+    /**
+     * Add a player with no games
+     *
+     * @return false if the player already has stats
+     */
+    public boolean addPlayer(String name, int rating) {
+        long ticket;
+        synchronized (this) {
+            refreshIfChanged();
+            if (stats.containsKey(name)) return false;
+            stats.put(name, new PlayerStats(name, 0, 0, 0, rating));
+            ticket = append("A\t" + name + "\t" + rating);
+        }
+        awaitWritten(ticket);
+        return true;
+    }
+
+    /**
+     * Add a result to a player's stats
+     *
+     * @return the updated stats, or null if the player has no stats
+     */
+    public PlayerStats recordResult(String name, int wins, int losses, int draws, int ratingChange) {
+        PlayerStats updated;
+        long ticket;
+        synchronized (this) {
+            refreshIfChanged();
+            PlayerStats current = stats.get(name);
+            if (current == null) return null;
+            updated = current.plus(wins, losses, draws, ratingChange);
+            stats.put(name, updated);
+            ticket = append("R\t" + name + "\t" + wins + "\t" + losses + "\t" + draws + "\t" + ratingChange);
+        }
+        awaitWritten(ticket);
+        return updated;
+    }
+
+    /**
+     * Wait until every change made so far is fsynced
+     */
+    public void flush() {
+        long ticket;
+        synchronized (this) {
+            ticket = lastTicket;
+        }
+        awaitDurable(ticket);
+    }
+
+    /**
+     * Get the number of fsyncs of the journal so far
+     */
+    public synchronized long getSyncCount() {
+        return syncCount;
+    }
+
+    private long append(String record) {
+        long ticket = ++lastTicket;
+        pending.add(record);
+        notifyAll();
+        return ticket;
+    }
+
+    private void awaitWritten(long ticket) {
+        if (policy == SyncPolicy.GROUP_COMMIT) {
+            awaitDurable(ticket);
+        }
+    }
+
+    private synchronized void awaitDurable(long ticket) {
+        boolean interrupted = false;
+        while (writtenTicket < ticket) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Store every pending change and stop the timer and journal threads
+     */
+    @Override
+    public void close() {
+        flush();
+        timer.interrupt();
+        writer.interrupt();
+    }
+
+    /**
+     * The journal thread: take everything pending, write it with one fsync under the
+     * files' lock, repeat. A batch that could not be stored goes back to the front of
+     * the queue and is tried again after a pause.
+     */
+    private void writeJournal() {
+        while (true) {
+            List<String> batch;
+            long batchTicket;
+            synchronized (this) {
+                while (pending.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                batch = new ArrayList<>(pending);
+                pending.clear();
+                batchTicket = lastTicket;
+                writing = true;
+            }
+
+            boolean stored = false;
+            try {
+                stored = DataFileLock.withLock(file, () -> storeBatch(batch, batchTicket));
+            } catch (IOException e) {
+                System.err.println("Error locking player stats: " + e.getMessage());
+            }
+            if (!stored) {
+                synchronized (this) {
+                    pending.addAll(0, batch);
+                    writing = false;
+                }
+                try {
+                    Thread.sleep(RETRY_DELAY_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Append a batch to the journal with one fsync. If that fails, the journal is cut back
+     * to where the batch began so it can be appended again later; if even that fails, part
+     * of the batch may be in the journal, and only a compaction (from memory, which holds
+     * every change) can store it without applying some of it twice. Called holding the
+     * files' lock.
+     *
+     * @return whether the batch is now durable
+     */
+    private boolean storeBatch(List<String> batch, long batchTicket) {
+        if (compactionNeeded) {
+            return compactNow();
+        }
+        byte[] bytes = numberBatch(batch);
+        long before = journalFile.length();
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            out.write(bytes);
+            out.getFD().sync();
+            finishBatch(batch.size(), bytes.length, batchTicket);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing player stats journal: " + e.getMessage());
+        }
+        try (RandomAccessFile journal = new RandomAccessFile(journalFile, "rw")) {
+            journal.setLength(before);
+            return false;
+        } catch (IOException e) {
+            System.err.println("Error repairing player stats journal: " + e.getMessage());
+        }
+        compactionNeeded = true;
+        return compactNow();
+    }
+
+    /**
+     * Give the batch its journal sequence numbers. Called holding the files' lock. If another
+     * instance wrote to the files since we last read them, their changes are read first and
+     * ours applied on top, so nothing either instance wrote is lost and the sequence numbers
+     * keep increasing.
+     */
+    private synchronized byte[] numberBatch(List<String> batch) {
+        if (changedOnDisk()) {
+            load(true);
+            for (String record : batch) {
+                applyChange(record, true);
+            }
+            for (String record : pending) {
+                applyChange(record, true);
+            }
+        }
+        StringBuilder text = new StringBuilder();
+        for (String record : batch) {
+            text.append(++lastSequence).append('\t').append(record).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Record a batch written to the journal and wake its callers
+     *
+     * @param writtenBytes the bytes appended to the journal
+     */
+    private synchronized void finishBatch(int records, int writtenBytes, long batchTicket) {
+        writing = false;
+        journalLength += writtenBytes;
+        journalRecords += records;
+        syncCount++;
+        writtenTicket = Math.max(writtenTicket, batchTicket);
+        if (journalRecords >= COMPACT_EVERY) {
+            compact();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Compact after a journal write that could not be undone. The in-memory stats hold
+     * every change of this instance and, as of the last numberBatch, of the others.
+     * Called holding the files' lock.
+     *
+     * @return whether the snapshot was written
+     */
+    private synchronized boolean compactNow() {
+        if (!compact()) return false;
+        compactionNeeded = false;
+        writing = false;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Check whether the files differ from the version we last read or wrote. The snapshot's
+     * sequence number is its version, since every compaction raises it; the journal only grows
+     * between compactions, so its length is its version.
+     */
+    private boolean changedOnDisk() {
+        if (journalFile.length() != journalLength) return true;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            long sequence = 0;
+            String line;
+            for (int i = 0; i < 2 && (line = reader.readLine()) != null; i++) {
+                if (line.startsWith(SEQUENCE_PREFIX)) {
+                    sequence = Long.parseLong(line.substring(SEQUENCE_PREFIX.length()).trim());
+                }
+            }
+            return sequence != snapshotSequence || file.lastModified() != snapshotModified;
+        } catch (FileNotFoundException e) {
+            return snapshotLength > 0;
+        } catch (IOException | NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Write the snapshot (to a temporary file that is then moved into place) and empty the journal.
+     * The snapshot records the last sequence it covers, so a crash before the journal is emptied
+     * does not apply those changes twice. Called holding the files' lock.
+     *
+     * @return whether the snapshot was written and the journal emptied
+     */
+    private boolean compact() {
+        StringBuilder text = new StringBuilder();
+        text.append(HEADER).append(System.lineSeparator());
+        text.append(SEQUENCE_PREFIX).append(lastSequence).append(System.lineSeparator());
+        for (PlayerStats entry : stats.values()) {
+            text.append(entry.toLine()).append(System.lineSeparator());
+        }
+        for (String line : unreadableLines) {
+            text.append(line).append(System.lineSeparator());
+        }
+        try {
+            DataFileLock.replace(file, text.toString());
+            try (RandomAccessFile journal = new RandomAccessFile(journalFile, "rw")) {
+                journal.setLength(0);
+            }
+        } catch (IOException e) {
+            System.err.println("Error compacting player stats: " + e.getMessage());
+            return false;
+        }
+        // Changes still pending are covered by the snapshot
+        pending.clear();
+        writtenTicket = lastTicket;
+        snapshotSequence = lastSequence;
+        journalRecords = 0;
+        journalLength = 0;
+        snapshotModified = file.lastModified();
+        snapshotLength = file.length();
+        return true;
+    }
+
+    private void refreshIfChanged() {
+        // Until the journal thread has written our changes, the files are expected to differ
+        if (!checkDue || writing || !pending.isEmpty()) return;
+        checkDue = false;
+        if (file.lastModified() != snapshotModified || file.length() != snapshotLength
+                || journalFile.length() != journalLength) {
+            load(false);
+        }
+    }
+
+    /**
+     * Read the snapshot and replay the journal on top of it. Readers do this without the files'
+     * lock: the snapshot is only ever replaced whole, and the journal only grows by whole records.
+     *
+     * @param locked whether we hold the files' lock and may repair a torn journal
+     */
+    private void load(boolean locked) {
+        stats.clear();
+        unreadableLines.clear();
+        long sequence = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.equals(HEADER)) continue;
+                if (line.startsWith(SEQUENCE_PREFIX)) {
+                    sequence = Long.parseLong(line.substring(SEQUENCE_PREFIX.length()).trim());
+                    continue;
+                }
+                PlayerStats entry = parse(line);
+                if (entry != null) {
+                    stats.put(entry.getName(), entry);
+                } else {
+                    unreadableLines.add(line);
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // No stats yet
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error reading player stats: " + e.getMessage());
+        }
+        snapshotModified = file.lastModified();
+        snapshotLength = file.length();
+        snapshotSequence = sequence;
+
+        lastSequence = Math.max(lastSequence, sequence);
+        replayJournal(locked);
+    }
+
+    /**
+     * Apply the journal records newer than the snapshot. A damaged record (a write torn by
+     * a crash) ends the replay; holding the lock, the journal is cut back to the last good
+     * record. Without it the damaged part may still be another instance's write in progress,
+     * so it is only skipped, and read again at the next check.
+     */
+    private void replayJournal(boolean locked) {
+        long goodLength = 0;
+        journalRecords = 0;
+        try {
+            byte[] bytes = Files.readAllBytes(journalFile.toPath());
+            int start = 0;
+            // A record counts only with its newline; anything after the last one is torn
+            for (int end = 0; end < bytes.length; end++) {
+                if (bytes[end] != '\n') continue;
+                String line = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+                if (!applyRecord(line)) {
+                    System.err.println("Ignoring damaged player stats journal record: " + line);
+                    break;
+                }
+                journalRecords++;
+                start = end + 1;
+                goodLength = start;
+            }
+        } catch (java.nio.file.NoSuchFileException e) {
+            // Nothing recorded since the snapshot
+        } catch (IOException e) {
+            System.err.println("Error reading player stats journal: " + e.getMessage());
+        }
+
+        if (locked && journalFile.length() > goodLength) {
+            try (RandomAccessFile journal = new RandomAccessFile(journalFile, "rw")) {
+                journal.setLength(goodLength);
+            } catch (IOException e) {
+                System.err.println("Error repairing player stats journal: " + e.getMessage());
+            }
+        }
+        journalLength = locked ? journalFile.length() : goodLength;
+    }
+
+    private boolean applyRecord(String line) {
+        int tab = line.indexOf('\t');
+        try {
+            long sequence = Long.parseLong(line.substring(0, Math.max(tab, 0)));
+            if (!applyChange(line.substring(tab + 1), sequence > snapshotSequence)) {
+                return false;
+            }
+            lastSequence = Math.max(lastSequence, sequence);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Apply one change, "A name rating" or "R name wins losses draws rating-change"
+     *
+     * @param apply false to only check that the change is well-formed
+     * @return false if it is not
+     */
+    private boolean applyChange(String record, boolean apply) {
+        String[] parts = record.split("\t");
+        try {
+            if (parts[0].equals("A") && parts.length == 3) {
+                int rating = Integer.parseInt(parts[2]);
+                if (apply) {
+                    stats.putIfAbsent(parts[1], new PlayerStats(parts[1], 0, 0, 0, rating));
+                }
+            } else if (parts[0].equals("R") && parts.length == 6) {
+                int wins = Integer.parseInt(parts[2]);
+                int losses = Integer.parseInt(parts[3]);
+                int draws = Integer.parseInt(parts[4]);
+                int ratingChange = Integer.parseInt(parts[5]);
+                PlayerStats current = stats.get(parts[1]);
+                if (apply && current != null) {
+                    stats.put(parts[1], current.plus(wins, losses, draws, ratingChange));
+                }
+            } else {
+                return false;
+            }
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static PlayerStats parse(String line) {
+        String[] parts = line.split(",");
+        if (parts.length < 5) return null;
+        try {
+            return new PlayerStats(parts[0].trim(), Integer.parseInt(parts[1].trim()), Integer.parseInt(parts[2].trim()),
+                    Integer.parseInt(parts[3].trim()), Integer.parseInt(parts[4].trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,765 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable chess position with full FEN state (side to move, castling
+ * rights, en passant square and move clocks).
+ *
+ * Squares are numbered 0..63 from a1 to h8 (index = rank * 8 + file).
+ * Pieces are stored as signed codes: positive for white, negative for
+ * black, with PAWN..KING as the absolute value.
+ */
+public final class Position {
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    public static final int EMPTY = 0;
+    public static final int PAWN = 1;
+    public static final int KNIGHT = 2;
+    public static final int BISHOP = 3;
+    public static final int ROOK = 4;
+    public static final int QUEEN = 5;
+    public static final int KING = 6;
+
+    static final int WHITE_KINGSIDE = 1;
+    static final int WHITE_QUEENSIDE = 2;
+    static final int BLACK_KINGSIDE = 4;
+    static final int BLACK_QUEENSIDE = 8;
+
+    private static final String PIECE_LETTERS = " PNBRQK";
+
+    private final int[] board;
+    private final boolean whiteToMove;
+    private final int castlingRights;
+    private final int enPassantSquare;
+    private final int halfmoveClock;
+    private final int fullmoveNumber;
+    private long zobristKey;
+
+    private Position(int[] board, boolean whiteToMove, int castlingRights, int enPassantSquare,
+                     int halfmoveClock, int fullmoveNumber) {
+        this.board = board;
+        this.whiteToMove = whiteToMove;
+        this.castlingRights = castlingRights;
+        this.enPassantSquare = enPassantSquare;
+        this.halfmoveClock = halfmoveClock;
+        this.fullmoveNumber = fullmoveNumber;
+    }
+
+    /**
+     * Get the standard starting position
+     */
+    public static Position startPosition() {
+        return fromFen(START_FEN);
+    }
+
+    /**
+     * Parse a position from FEN. Missing trailing fields default to "- - 0 1".
+     *
+     * @param fen the FEN string
+     * @return the position
+     * @throws IllegalArgumentException if the FEN is malformed
+     */
+    public static Position fromFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 2) {
+            throw new IllegalArgumentException("Invalid FEN: " + fen);
+        }
+
+        int[] board = new int[64];
+        int rank = 7;
+        int file = 0;
+        for (char c : fields[0].toCharArray()) {
+            if (c == '/') {
+                rank--;
+                file = 0;
+            } else if (c >= '1' && c <= '8') {
+                file += c - '0';
+            } else {
+                int type = PIECE_LETTERS.indexOf(Character.toUpperCase(c));
+                if (type <= 0 || file > 7 || rank < 0) {
+                    throw new IllegalArgumentException("Invalid FEN: " + fen);
+                }
+                board[rank * 8 + file] = Character.isUpperCase(c) ? type : -type;
+                file++;
+            }
+        }
+        if (rank != 0) {
+            throw new IllegalArgumentException("Invalid FEN: " + fen);
+        }
+
+        boolean whiteToMove = fields[1].equals("w");
+        int castling = 0;
+        if (fields.length > 2) {
+            for (char c : fields[2].toCharArray()) {
+                switch (c) {
+                    case 'K': castling |= WHITE_KINGSIDE; break;
+                    case 'Q': castling |= WHITE_QUEENSIDE; break;
+                    case 'k': castling |= BLACK_KINGSIDE; break;
+                    case 'q': castling |= BLACK_QUEENSIDE; break;
+                    default: break;
+                }
+            }
+        }
+        int enPassant = fields.length > 3 && !fields[3].equals("-") ? square(fields[3]) : -1;
+        int halfmove = fields.length > 4 ? Integer.parseInt(fields[4]) : 0;
+        int fullmove = fields.length > 5 ? Integer.parseInt(fields[5]) : 1;
+
+        return new Position(board, whiteToMove, castling, enPassant, halfmove, fullmove);
+    }
+
+    /**
+     * Get the position in FEN notation
+     */
+    public String toFen() {
+        StringBuilder fen = new StringBuilder(90);
+        for (int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                int piece = board[rank * 8 + file];
+                if (piece == EMPTY) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                char letter = PIECE_LETTERS.charAt(Math.abs(piece));
+                fen.append(piece > 0 ? letter : Character.toLowerCase(letter));
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (rank > 0) {
+                fen.append('/');
+            }
+        }
+
+        fen.append(whiteToMove ? " w " : " b ");
+        if (castlingRights == 0) {
+            fen.append('-');
+        } else {
+            if ((castlingRights & WHITE_KINGSIDE) != 0) fen.append('K');
+            if ((castlingRights & WHITE_QUEENSIDE) != 0) fen.append('Q');
+            if ((castlingRights & BLACK_KINGSIDE) != 0) fen.append('k');
+            if ((castlingRights & BLACK_QUEENSIDE) != 0) fen.append('q');
+        }
+        fen.append(' ').append(enPassantSquare >= 0 ? squareName(enPassantSquare) : "-");
+        fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+        return fen.toString();
+    }
+
+    /**
+     * Play a move given in UCI notation (e.g. "e2e4", "e1g1", "e7e8q").
+     * The move is applied as given; legality is not checked. A pawn reaching
+     * the last rank without a promotion letter becomes a queen.
+     *
+     * @param uciMove the move
+     * @return the position after the move
+     * @throws IllegalArgumentException if the move text is malformed or the from-square is empty
+     */
+    public Position play(String uciMove) {
+        if (uciMove == null || uciMove.length() < 4) {
+            throw new IllegalArgumentException("Invalid move: " + uciMove);
+        }
+        int from = square(uciMove.substring(0, 2));
+        int to = square(uciMove.substring(2, 4));
+        int promotion = uciMove.length() > 4 ? PIECE_LETTERS.indexOf(Character.toUpperCase(uciMove.charAt(4))) : EMPTY;
+        return play(from, to, promotion);
+    }
+
+    Position play(int from, int to, int promotion) {
+        int piece = board[from];
+        if (piece == EMPTY) {
+            throw new IllegalArgumentException("No piece on " + squareName(from));
+        }
+
+        int[] next = board.clone();
+        int type = Math.abs(piece);
+        int sign = piece > 0 ? 1 : -1;
+        boolean capture = next[to] != EMPTY;
+
+        next[from] = EMPTY;
+        next[to] = piece;
+
+        int newEnPassant = -1;
+        if (type == PAWN) {
+            if (to == enPassantSquare && (to & 7) != (from & 7) && !capture) {
+                // En passant: the captured pawn sits behind the target square
+                next[to - 8 * sign] = EMPTY;
+                capture = true;
+            }
+            if (Math.abs(to - from) == 16) {
+                newEnPassant = (from + to) / 2;
+            }
+            int lastRank = sign > 0 ? 7 : 0;
+            if (to >> 3 == lastRank) {
+                next[to] = sign * (promotion > PAWN && promotion < KING ? promotion : QUEEN);
+            }
+        } else if (type == KING && Math.abs(to - from) == 2) {
+            // Castling: move the rook as well
+            if (to > from) {
+                next[from + 1] = next[from + 3];
+                next[from + 3] = EMPTY;
+            } else {
+                next[from - 1] = next[from - 4];
+                next[from - 4] = EMPTY;
+            }
+        }
+
+        int rights = castlingRights & CASTLING_MASK[from] & CASTLING_MASK[to];
+        int halfmove = type == PAWN || capture ? 0 : halfmoveClock + 1;
+        int fullmove = whiteToMove ? fullmoveNumber : fullmoveNumber + 1;
+
+        return new Position(next, !whiteToMove, rights, newEnPassant, halfmove, fullmove);
+    }
+
+    /**
+     * Get all legal moves in UCI notation
+     */
+    public List<String> legalMoves() {
+        List<String> moves = new ArrayList<>();
+        for (int move : generateLegal()) {
+            moves.add(moveToUci(move));
+        }
+        return moves;
+    }
+
+    /**
+     * Check whether a move in UCI notation is legal here. A pawn move to the
+     * last rank without a promotion letter counts as a queen promotion.
+     */
+    public boolean isLegal(String uciMove) {
+        if (uciMove == null || uciMove.length() < 4) return false;
+        String normalized = uciMove.length() == 4 && isPromotion(uciMove) ? uciMove + "q" : uciMove;
+        for (int move : generateLegal()) {
+            if (moveToUci(move).equals(normalized)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Convert a move in standard algebraic notation (e.g. "Nbd7", "exd8=Q+", "O-O") to UCI
+     *
+     * @throws IllegalArgumentException if the move is not legal here or is ambiguous
+     */
+    public String sanToUci(String san) {
+        String text = san.trim().replaceAll("[+#!?]+$", "").replace("e.p.", "").trim();
+        // Only the moves matching the text are checked for leaving the king in check
+        int[] pseudo = generatePseudoLegal();
+
+        if (text.equals("O-O") || text.equals("0-0") || text.equals("O-O-O") || text.equals("0-0-0")) {
+            int king = findKing(whiteToMove);
+            int to = text.length() == 3 ? king + 2 : king - 2;
+            for (int move : pseudo) {
+                if ((move & 63) == king && ((move >> 6) & 63) == to && keepsKingSafe(move)) return moveToUci(move);
+            }
+            throw new IllegalArgumentException("Illegal castling: " + san);
+        }
+
+        int type = PAWN;
+        if (!text.isEmpty() && "NBRQK".indexOf(text.charAt(0)) >= 0) {
+            type = PIECE_LETTERS.indexOf(text.charAt(0));
+            text = text.substring(1);
+        }
+        int promotion = EMPTY;
+        int equals = text.indexOf('=');
+        if (equals >= 0 && equals + 1 < text.length()) {
+            promotion = PIECE_LETTERS.indexOf(text.charAt(equals + 1));
+            text = text.substring(0, equals);
+        } else if (type == PAWN && !text.isEmpty() && "NBRQ".indexOf(text.charAt(text.length() - 1)) >= 0) {
+            promotion = PIECE_LETTERS.indexOf(text.charAt(text.length() - 1));
+            text = text.substring(0, text.length() - 1);
+        }
+        text = text.replace("x", "").replace("-", "");
+        if (text.length() < 2) {
+            throw new IllegalArgumentException("Invalid move: " + san);
+        }
+        int to = square(text.substring(text.length() - 2));
+        String hint = text.substring(0, text.length() - 2);
+
+        int found = -1;
+        for (int move : pseudo) {
+            int from = move & 63;
+            if (((move >> 6) & 63) != to || Math.abs(board[from]) != type || (move >> 12) != promotion) continue;
+            String fromName = squareName(from);
+            boolean matches = true;
+            for (char c : hint.toCharArray()) {
+                if (c != fromName.charAt(0) && c != fromName.charAt(1)) matches = false;
+            }
+            if (!matches || !keepsKingSafe(move)) continue;
+            if (found >= 0) {
+                throw new IllegalArgumentException("Ambiguous move: " + san);
+            }
+            found = move;
+        }
+        if (found < 0) {
+            throw new IllegalArgumentException("Illegal move: " + san);
+        }
+        return moveToUci(found);
+    }
+
+    /**
+     * Convert a legal move in UCI notation to standard algebraic notation, with the file, rank or
+     * square of the moving piece where needed to tell it apart and "+" or "#" for check and mate.
+     * A pawn move to the last rank without a promotion letter becomes a queen promotion.
+     *
+     * @throws IllegalArgumentException if the move is not legal here
+     */
+    public String toSan(String uciMove) {
+        if (uciMove == null || uciMove.length() < 4) {
+            throw new IllegalArgumentException("Invalid move: " + uciMove);
+        }
+        int wanted = square(uciMove.substring(0, 2)) | square(uciMove.substring(2, 4)) << 6;
+        if (uciMove.length() > 4) {
+            wanted |= PIECE_LETTERS.indexOf(Character.toUpperCase(uciMove.charAt(4))) << 12;
+        } else if (isPromotion(uciMove)) {
+            wanted |= QUEEN << 12;
+        }
+        int[] pseudo = generatePseudoLegal();
+        int move = -1;
+        for (int candidate : pseudo) {
+            if (candidate == wanted && keepsKingSafe(candidate)) move = candidate;
+        }
+        if (move < 0) {
+            throw new IllegalArgumentException("Illegal move: " + uciMove);
+        }
+        int from = move & 63;
+        int to = (move >> 6) & 63;
+        int type = Math.abs(board[from]);
+
+        StringBuilder san = new StringBuilder();
+        if (type == KING && Math.abs(to - from) == 2) {
+            san.append(to > from ? "O-O" : "O-O-O");
+        } else if (type == PAWN) {
+            boolean capture = (from & 7) != (to & 7);
+            if (capture) san.append((char) ('a' + (from & 7))).append('x');
+            san.append(squareName(to));
+            if (move >> 12 != EMPTY) san.append('=').append(PIECE_LETTERS.charAt(move >> 12));
+        } else {
+            san.append(PIECE_LETTERS.charAt(type));
+            boolean ambiguous = false;
+            boolean sameFile = false;
+            boolean sameRank = false;
+            for (int other : pseudo) {
+                int otherFrom = other & 63;
+                if (otherFrom == from || ((other >> 6) & 63) != to || board[otherFrom] != board[from]
+                        || !keepsKingSafe(other)) continue;
+                ambiguous = true;
+                sameFile |= (otherFrom & 7) == (from & 7);
+                sameRank |= (otherFrom >> 3) == (from >> 3);
+            }
+            if (ambiguous) {
+                if (!sameFile) {
+                    san.append((char) ('a' + (from & 7)));
+                } else if (!sameRank) {
+                    san.append((char) ('1' + (from >> 3)));
+                } else {
+                    san.append(squareName(from));
+                }
+            }
+            if (board[to] != EMPTY) san.append('x');
+            san.append(squareName(to));
+        }
+
+        Position after = play(from, to, move >> 12);
+        if (after.isInCheck()) {
+            san.append(after.generateLegal().length == 0 ? '#' : '+');
+        }
+        return san.toString();
+    }
+
+    private boolean isPromotion(String uciMove) {
+        try {
+            int from = square(uciMove.substring(0, 2));
+            int to = square(uciMove.substring(2, 4));
+            return Math.abs(board[from]) == PAWN && (to >> 3 == 7 || to >> 3 == 0);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check whether the side to move is in check
+     */
+    public boolean isInCheck() {
+        int king = findKing(whiteToMove);
+        return king >= 0 && isAttacked(king, !whiteToMove);
+    }
+
+    public boolean isCheckmate() {
+        return isInCheck() && generateLegal().length == 0;
+    }
+
+    public boolean isStalemate() {
+        return !isInCheck() && generateLegal().length == 0;
+    }
+
+    /**
+     * Check whether neither side can possibly mate: bare kings, or a single minor piece
+     */
+    public boolean hasInsufficientMaterial() {
+        int minors = 0;
+        for (int piece : board) {
+            int type = Math.abs(piece);
+            if (type == PAWN || type == ROOK || type == QUEEN) return false;
+            if (type == KNIGHT || type == BISHOP) minors++;
+        }
+        return minors <= 1;
+    }
+
+    /**
+     * Get a 64-bit Zobrist hash of what makes positions the same for repetition: placement,
+     * side to move, castling rights and en passant square. Equal positions have equal keys;
+     * different positions collide with negligible probability.
+     */
+    public long zobristKey() {
+        long key = zobristKey;
+        if (key == 0) {
+            for (int square = 0; square < 64; square++) {
+                key ^= ZOBRIST_PIECES[board[square] + 6][square];
+            }
+            key ^= ZOBRIST_CASTLING[castlingRights];
+            if (enPassantSquare >= 0) {
+                key ^= ZOBRIST_EN_PASSANT[enPassantSquare & 7];
+            }
+            if (!whiteToMove) {
+                key ^= ZOBRIST_BLACK_TO_MOVE;
+            }
+            zobristKey = key;
+        }
+        return key;
+    }
+
+    /**
+     * Get the part of the FEN that must match for a position to count as repeated
+     * (placement, side to move, castling rights and en passant square)
+     */
+    public String repetitionKey() {
+        String fen = toFen();
+        int end = fen.length();
+        for (int spaces = 0, i = 0; i < fen.length(); i++) {
+            if (fen.charAt(i) == ' ' && ++spaces == 4) {
+                end = i;
+                break;
+            }
+        }
+        return fen.substring(0, end);
+    }
+
+    /**
+     * Check whether a square is attacked by the given side
+     */
+    public boolean isAttacked(int square, boolean byWhite) {
+        int sign = byWhite ? 1 : -1;
+        int file = square & 7;
+        int rank = square >> 3;
+
+        // Pawns attack diagonally forward, so look one rank behind the square
+        int pawnRank = rank - sign;
+        if (pawnRank >= 0 && pawnRank < 8) {
+            if (file > 0 && board[pawnRank * 8 + file - 1] == sign * PAWN) return true;
+            if (file < 7 && board[pawnRank * 8 + file + 1] == sign * PAWN) return true;
+        }
+        for (int[] step : KNIGHT_STEPS) {
+            int target = offset(square, step[0], step[1]);
+            if (target >= 0 && board[target] == sign * KNIGHT) return true;
+        }
+        for (int[] step : KING_STEPS) {
+            int target = offset(square, step[0], step[1]);
+            if (target >= 0 && board[target] == sign * KING) return true;
+        }
+        for (int[] step : ROOK_STEPS) {
+            if (slidesInto(square, step, sign * ROOK, sign * QUEEN)) return true;
+        }
+        for (int[] step : BISHOP_STEPS) {
+            if (slidesInto(square, step, sign * BISHOP, sign * QUEEN)) return true;
+        }
+        return false;
+    }
+
+    private boolean slidesInto(int square, int[] step, int piece, int queen) {
+        int target = offset(square, step[0], step[1]);
+        while (target >= 0) {
+            int occupant = board[target];
+            if (occupant != EMPTY) {
+                return occupant == piece || occupant == queen;
+            }
+            target = offset(target, step[0], step[1]);
+        }
+        return false;
+    }
+
+    private int findKing(boolean white) {
+        int king = white ? KING : -KING;
+        for (int square = 0; square < 64; square++) {
+            if (board[square] == king) return square;
+        }
+        return -1;
+    }
+
+    /**
+     * Legal moves encoded as from | to &lt;&lt; 6 | promotion &lt;&lt; 12
+     */
+    int[] generateLegal() {
+        int[] pseudo = new int[256];
+        int count = generatePseudoLegal(pseudo);
+        int legal = 0;
+        for (int i = 0; i < count; i++) {
+            if (keepsKingSafe(pseudo[i])) {
+                pseudo[legal++] = pseudo[i];
+            }
+        }
+        return java.util.Arrays.copyOf(pseudo, legal);
+    }
+
+    /**
+     * Get the pseudo-legal moves (legal except that they may leave the king in check)
+     */
+    private int[] generatePseudoLegal() {
+        int[] pseudo = new int[256];
+        return java.util.Arrays.copyOf(pseudo, generatePseudoLegal(pseudo));
+    }
+
+    /**
+     * Check that a pseudo-legal move does not leave the mover's king attacked
+     */
+    private boolean keepsKingSafe(int move) {
+        Position next = play(move & 63, (move >> 6) & 63, move >> 12);
+        int king = next.findKing(whiteToMove);
+        return king >= 0 && !next.isAttacked(king, !whiteToMove);
+    }
+
+    private int generatePseudoLegal(int[] moves) {
+        int count = 0;
+        int sign = whiteToMove ? 1 : -1;
+        for (int from = 0; from < 64; from++) {
+            int piece = board[from] * sign;
+            if (piece <= 0) continue;
+
+            switch (piece) {
+                case PAWN:
+                    count = addPawnMoves(from, sign, moves, count);
+                    break;
+                case KNIGHT:
+                    count = addSteps(from, KNIGHT_STEPS, sign, moves, count);
+                    break;
+                case KING:
+                    count = addSteps(from, KING_STEPS, sign, moves, count);
+                    count = addCastling(from, moves, count);
+                    break;
+                default:
+                    if (piece != BISHOP) count = addSlides(from, ROOK_STEPS, sign, moves, count);
+                    if (piece != ROOK) count = addSlides(from, BISHOP_STEPS, sign, moves, count);
+                    break;
+            }
+        }
+        return count;
+    }
+
+    private int addPawnMoves(int from, int sign, int[] moves, int count) {
+        int rank = from >> 3;
+        int lastRank = sign > 0 ? 7 : 0;
+        int startRank = sign > 0 ? 1 : 6;
+
+        int forward = offset(from, 0, sign);
+        if (forward >= 0 && board[forward] == EMPTY) {
+            count = addPawnMove(from, forward, lastRank, moves, count);
+            int twoSquares = offset(forward, 0, sign);
+            if (rank == startRank && board[twoSquares] == EMPTY) {
+                moves[count++] = from | twoSquares << 6;
+            }
+        }
+        for (int df = -1; df <= 1; df += 2) {
+            int target = offset(from, df, sign);
+            if (target < 0) continue;
+            if (board[target] * sign < 0 || target == enPassantSquare) {
+                count = addPawnMove(from, target, lastRank, moves, count);
+            }
+        }
+        return count;
+    }
+
+    private static int addPawnMove(int from, int to, int lastRank, int[] moves, int count) {
+        if (to >> 3 == lastRank) {
+            for (int promotion = QUEEN; promotion >= KNIGHT; promotion--) {
+                moves[count++] = from | to << 6 | promotion << 12;
+            }
+        } else {
+            moves[count++] = from | to << 6;
+        }
+        return count;
+    }
+
+    private int addSteps(int from, int[][] steps, int sign, int[] moves, int count) {
+        for (int[] step : steps) {
+            int target = offset(from, step[0], step[1]);
+            if (target >= 0 && board[target] * sign <= 0) {
+                moves[count++] = from | target << 6;
+            }
+        }
+        return count;
+    }
+
+    private int addSlides(int from, int[][] steps, int sign, int[] moves, int count) {
+        for (int[] step : steps) {
+            int target = offset(from, step[0], step[1]);
+            while (target >= 0) {
+                int occupant = board[target] * sign;
+                if (occupant > 0) break;
+                moves[count++] = from | target << 6;
+                if (occupant < 0) break;
+                target = offset(target, step[0], step[1]);
+            }
+        }
+        return count;
+    }
+
+    private int addCastling(int from, int[] moves, int count) {
+        int home = whiteToMove ? 4 : 60;
+        if (from != home || isAttacked(home, !whiteToMove)) return count;
+
+        int rook = whiteToMove ? ROOK : -ROOK;
+        int kingside = whiteToMove ? WHITE_KINGSIDE : BLACK_KINGSIDE;
+        int queenside = whiteToMove ? WHITE_QUEENSIDE : BLACK_QUEENSIDE;
+
+        if ((castlingRights & kingside) != 0 && board[home + 3] == rook
+                && board[home + 1] == EMPTY && board[home + 2] == EMPTY
+                && !isAttacked(home + 1, !whiteToMove)) {
+            moves[count++] = home | (home + 2) << 6;
+        }
+        if ((castlingRights & queenside) != 0 && board[home - 4] == rook
+                && board[home - 1] == EMPTY && board[home - 2] == EMPTY && board[home - 3] == EMPTY
+                && !isAttacked(home - 1, !whiteToMove)) {
+            moves[count++] = home | (home - 2) << 6;
+        }
+        // The destination square itself is checked by the legality test
+        return count;
+    }
+
+    static String moveToUci(int move) {
+        String uci = squareName(move & 63) + squareName((move >> 6) & 63);
+        int promotion = move >> 12;
+        return promotion == EMPTY ? uci : uci + Character.toLowerCase(PIECE_LETTERS.charAt(promotion));
+    }
+
+    /**
+     * The square reached by moving the given number of files and ranks, or -1 if that leaves the board
+     */
+    private static int offset(int square, int files, int ranks) {
+        int file = (square & 7) + files;
+        int rank = (square >> 3) + ranks;
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) return -1;
+        return rank * 8 + file;
+    }
+
+    private static final int[][] KNIGHT_STEPS = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}};
+    private static final int[][] KING_STEPS = {{1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}};
+    private static final int[][] ROOK_STEPS = {{1, 0}, {0, 1}, {-1, 0}, {0, -1}};
+    private static final int[][] BISHOP_STEPS = {{1, 1}, {-1, 1}, {-1, -1}, {1, -1}};
+
+    // Zobrist keys from a fixed seed: java.util.Random's sequence is specified, so keys stored on disk stay valid
+    private static final long[][] ZOBRIST_PIECES = new long[13][64];
+    private static final long[] ZOBRIST_CASTLING = new long[16];
+    private static final long[] ZOBRIST_EN_PASSANT = new long[8];
+    private static final long ZOBRIST_BLACK_TO_MOVE;
+    static {
+        java.util.Random random = new java.util.Random(0x2D358DCCAA6C78A5L);
+        for (int piece = 0; piece < 13; piece++) {
+            for (int square = 0; square < 64; square++) {
+                ZOBRIST_PIECES[piece][square] = piece == 6 ? 0 : random.nextLong();
+            }
+        }
+        for (int i = 0; i < 16; i++) {
+            ZOBRIST_CASTLING[i] = i == 0 ? 0 : random.nextLong();
+        }
+        for (int i = 0; i < 8; i++) {
+            ZOBRIST_EN_PASSANT[i] = random.nextLong();
+        }
+        ZOBRIST_BLACK_TO_MOVE = random.nextLong();
+    }
+
+    // Castling rights that survive a move touching the square
+    private static final int[] CASTLING_MASK = new int[64];
+    static {
+        java.util.Arrays.fill(CASTLING_MASK, 15);
+        CASTLING_MASK[0] &= ~WHITE_QUEENSIDE;
+        CASTLING_MASK[7] &= ~WHITE_KINGSIDE;
+        CASTLING_MASK[4] &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+        CASTLING_MASK[56] &= ~BLACK_QUEENSIDE;
+        CASTLING_MASK[63] &= ~BLACK_KINGSIDE;
+        CASTLING_MASK[60] &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+    }
+
+    public boolean isWhiteToMove() {
+        return whiteToMove;
+    }
+
+    /**
+     * Get the piece on a square
+     *
+     * @param square 0..63
+     * @return the signed piece code, or EMPTY
+     */
+    public int pieceAt(int square) {
+        return board[square];
+    }
+
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    /**
+     * Convert a square name such as "e4" to its index
+     *
+     * @throws IllegalArgumentException if the name is not a square
+     */
+    public static int square(String name) {
+        if (name.length() != 2) {
+            throw new IllegalArgumentException("Invalid square: " + name);
+        }
+        int file = name.charAt(0) - 'a';
+        int rank = name.charAt(1) - '1';
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) {
+            throw new IllegalArgumentException("Invalid square: " + name);
+        }
+        return rank * 8 + file;
+    }
+
+    /**
+     * Convert a square index to its name, e.g. 28 to "e4"
+     */
+    public static String squareName(int square) {
+        return "" + (char) ('a' + (square & 7)) + (char) ('1' + (square >> 3));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Position)) return false;
+        Position that = (Position) other;
+        return whiteToMove == that.whiteToMove && castlingRights == that.castlingRights
+                && enPassantSquare == that.enPassantSquare && java.util.Arrays.equals(board, that.board);
+    }
+
+    @Override
+    public int hashCode() {
+        return java.util.Arrays.hashCode(board) * 31 + (whiteToMove ? 1 : 0) + castlingRights * 7 + enPassantSquare;
+    }
+
+    @Override
+    public String toString() {
+        return toFen();
+    }
+}
@@ -0,0 +1,287 @@
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Anytime hints: an answer is shown straight away and then improved while
+ * the engine keeps thinking.
+ *
+ * A request is first answered from the fastest source available: positions
+ * hinted before are served from a cache and a few well-known opening
+ * positions from a small built-in book, both without touching the engine.
+ * Otherwise the first answer is the engine's shallow iterations, which
+ * arrive within milliseconds of the search starting. Every deeper iteration
+ * that is reported replaces the previous answer until the search ends. How
+ * long the search may take is decided by a LatencySloController, so hints
+ * stay within the latency objective under load. Starting a new request
+ * stops the search for the old one.
+ *
+ * The first answer has a strict budget (chess.hint.budgetMs, default 50).
+ * The shared engine process may be busy with another session, so if the
+ * search has reported nothing by then, the request is answered with the
+ * best capture that wins material on the spot, or else with an explicit
+ * "no hint yet" (a PENDING answer without a move). The search carries on
+ * and its answers replace the stand-in as they arrive.
+ */
+public class ProgressiveHintService {
+    private static final int CACHE_SIZE = 256;
+    private static final long FIRST_ANSWER_BUDGET_MS = Long.getLong("chess.hint.budgetMs", 50);
+    // Indexed by piece type as in Position: pawn, knight, bishop, rook, queen, king
+    private static final int[] PIECE_VALUES = {0, 100, 300, 300, 500, 900, 10000};
+
+    // Placement and side to move -> book move
+    private static final Map<String, String> BOOK = new HashMap<>();
+    static {
+        BOOK.put("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w", "e2e4");
+        BOOK.put("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b", "e7e5");
+        BOOK.put("rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w", "g1f3");
+        BOOK.put("rnbqkbnr/pppp1ppp/8/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R b", "b8c6");
+        BOOK.put("r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w", "f1b5");
+        BOOK.put("rnbqkbnr/pppppppp/8/8/3P4/8/PPP1PPPP/RNBQKBNR b", "d7d5");
+        BOOK.put("rnbqkbnr/ppp1pppp/8/3p4/3P4/8/PPP1PPPP/RNBQKBNR w", "c2c4");
+        BOOK.put("rnbqkbnr/pppppppp/8/8/2P5/8/PP1PPPPP/RNBQKBNR b", "e7e5");
+        BOOK.put("rnbqkbnr/pppppppp/8/8/8/5N2/PPPPPPPP/RNBQKB1R b", "d7d5");
+    }
+
+    public enum Source {
+        CACHE, BOOK, STATIC, PENDING, SEARCH
+    }
+
+    /**
+     * One answer to a hint request
+     */
+    public static class Hint {
+        private final String move;
+        private final int depth;
+        private final Source source;
+        private final boolean finalAnswer;
+
+        Hint(String move, int depth, Source source, boolean finalAnswer) {
+            this.move = move;
+            this.depth = depth;
+            this.source = source;
+            this.finalAnswer = finalAnswer;
+        }
+
+        /**
+         * Get the suggested move, or null for a PENDING answer
+         */
+        public String getMove() {
+            return move;
+        }
+
+        /**
+         * Get the search depth behind the answer, or 0 for book moves
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        public Source getSource() {
+            return source;
+        }
+
+        /**
+         * Check whether this is the last answer for the request
+         */
+        public boolean isFinal() {
+            return finalAnswer;
+        }
+    }
+
+    private final ChessEngine engine;
+    private final LatencySloController controller;
+    private final ExecutorService searchThread;
+    private final ScheduledExecutorService deadlines;
+    private final AtomicLong generation = new AtomicLong();
+    private final Map<String, Hint> cache = new LinkedHashMap<String, Hint>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Hint> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Creates a hint service using the shared latency controller
+     *
+     * @param engine the engine used for searches
+     */
+    public ProgressiveHintService(ChessEngine engine) {
+        this(engine, LatencySloController.getInstance());
+    }
+
+    /**
+     * Creates a hint service
+     *
+     * @param engine the engine used for searches
+     * @param controller decides the search limits and turns requests away when the engine is overloaded
+     */
+    public ProgressiveHintService(ChessEngine engine, LatencySloController controller) {
+        this.engine = engine;
+        this.controller = controller;
+        this.searchThread = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "hint-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.deadlines = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hint-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Hands a request's answers to its listener, and the stand-in answer only if nothing came first
+     */
+    private static class Answers {
+        private final Consumer<Hint> listener;
+        private boolean answered;
+
+        Answers(Consumer<Hint> listener) {
+            this.listener = listener;
+        }
+
+        synchronized void deliver(Hint hint) {
+            answered = true;
+            listener.accept(hint);
+        }
+
+        synchronized void deliverIfFirst(Hint hint) {
+            if (answered) return;
+            answered = true;
+            listener.accept(hint);
+        }
+    }
+
+    /**
+     * Request a hint. Cache and book answers are delivered before this method
+     * returns; search answers follow from a background thread. Without either,
+     * a STATIC or PENDING answer is delivered when the first-answer budget runs
+     * out before the search reports. The listener is called once with a final
+     * answer (or with null if no hint could be found) unless a newer request
+     * supersedes this one.
+     *
+     * @param fen the position in FEN notation
+     * @param listener receives each improved answer, last one marked final
+     */
+    public void requestHint(String fen, Consumer<Hint> listener) {
+        long request = generation.incrementAndGet();
+        String key = positionKey(fen);
+
+        Hint cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        if (cached != null) {
+            listener.accept(new Hint(cached.getMove(), cached.getDepth(), Source.CACHE, true));
+            return;
+        }
+
+        Answers answers = new Answers(listener);
+        String bookMove = BOOK.get(key);
+        if (bookMove != null) {
+            // Still search, so a better-than-book move can replace it
+            answers.deliver(new Hint(bookMove, 0, Source.BOOK, false));
+        } else {
+            deadlines.schedule(() -> {
+                if (request != generation.get()) return;
+                String capture = bestCapture(fen);
+                answers.deliverIfFirst(new Hint(capture, 0, capture != null ? Source.STATIC : Source.PENDING, false));
+            }, FIRST_ANSWER_BUDGET_MS, TimeUnit.MILLISECONDS);
+        }
+
+        searchThread.execute(() -> search(request, fen, key, bookMove, answers));
+    }
+
+    private void search(long request, String fen, String key, String bookMove, Answers answers) {
+        if (request != generation.get()) return;
+
+        int[] lastDepth = {0};
+        String bestMove = controller.getBestMove(engine, fen, info -> {
+            if (request != generation.get()) {
+                return false;
+            }
+            if (info.getDepth() > lastDepth[0]) {
+                lastDepth[0] = info.getDepth();
+                answers.deliver(new Hint(info.getFirstPvMove(), info.getDepth(), Source.SEARCH, false));
+            }
+            return true;
+        });
+
+        if (request != generation.get()) return;
+
+        if (bestMove == null || bestMove.equals("(none)")) {
+            // The engine failed or was too busy; a book move is still a good answer
+            answers.deliver(bookMove != null ? new Hint(bookMove, 0, Source.BOOK, true) : null);
+            return;
+        }
+
+        Hint hint = new Hint(bestMove, lastDepth[0], Source.SEARCH, true);
+        synchronized (cache) {
+            cache.put(key, hint);
+        }
+        answers.deliver(hint);
+    }
+
+    /**
+     * Find the capture that wins the most material at once: the captured piece, less the capturing
+     * piece if the square is defended. Returns null if no capture wins material.
+     */
+    static String bestCapture(String fen) {
+        Position position;
+        try {
+            position = Position.fromFen(fen);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        String best = null;
+        int bestGain = 0;
+        for (String move : position.legalMoves()) {
+            int target = Position.square(move.substring(2, 4));
+            int victim = position.pieceAt(target);
+            if (victim == 0) continue;
+            int gain = PIECE_VALUES[Math.abs(victim)];
+            Position after = position.play(move);
+            if (after.isAttacked(target, after.isWhiteToMove())) {
+                gain -= PIECE_VALUES[Math.abs(position.pieceAt(Position.square(move.substring(0, 2))))];
+            }
+            if (gain > bestGain) {
+                bestGain = gain;
+                best = move;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Stop delivering answers for the current request
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Stop the service; a running search is stopped at its next iteration
+     */
+    public void shutdown() {
+        cancel();
+        searchThread.shutdown();
+        deadlines.shutdownNow();
+    }
+
+    /**
+     * Placement and side to move only, since the board windows do not track the other FEN fields
+     */
+    private static String positionKey(String fen) {
+        int first = fen.indexOf(' ');
+        if (first < 0 || first + 2 > fen.length()) return fen;
+        return fen.substring(0, first + 2);
+    }
+}
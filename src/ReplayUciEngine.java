@@ -0,0 +1,173 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-JVM stand-in engine that plays back a session recorded by UciSessionRecorder.
+ *
+ * Every command received is matched against the recorded commands, starting
+ * where the previous match left off: first by exact text, then by command
+ * verb (so "position fen ..." and "go movetime ..." still match when the
+ * benchmark uses different positions). The recorded responses are written
+ * back with their original delays, scaled by the speed factor. When the
+ * recording runs out it starts again from the beginning.
+ */
+public class ReplayUciEngine extends InProcessUciEngine {
+
+    /**
+     * A recorded command with the responses that followed it
+     */
+    static class Exchange {
+        final String command;
+        final String verb;
+        final List<Long> responseDelaysMicros = new ArrayList<>();
+        final List<String> responses = new ArrayList<>();
+
+        Exchange(String command) {
+            this.command = command;
+            int space = command.indexOf(' ');
+            this.verb = space < 0 ? command : command.substring(0, space);
+        }
+    }
+
+    private final List<Exchange> exchanges;
+    private final double speed;
+    private int cursor;
+
+    private ReplayUciEngine(List<Exchange> exchanges, double speed) {
+        super("uci-replay");
+        this.exchanges = exchanges;
+        this.speed = speed;
+    }
+
+    /**
+     * Create a launcher that replays a recorded session
+     *
+     * @param sessionFile a file written by UciSessionRecorder
+     * @param speed playback speed: 1.0 keeps the recorded timings, 2.0 halves them, 0 replies instantly
+     * @return a launcher starting a new replay engine for each process
+     * @throws IOException if the recording cannot be read
+     */
+    public static EngineLauncher launcher(File sessionFile, double speed) throws IOException {
+        List<Exchange> exchanges = load(sessionFile);
+        return () -> new ReplayUciEngine(exchanges, speed).start();
+    }
+
+    static List<Exchange> load(File sessionFile) throws IOException {
+        List<Exchange> exchanges = new ArrayList<>();
+        List<String> leadingOutput = new ArrayList<>();
+        Exchange current = null;
+        long commandMicros = 0;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(sessionFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // "<ms> <direction> <text>"
+                int first = line.indexOf(' ');
+                if (first < 0 || first + 2 >= line.length()) continue;
+                long micros;
+                try {
+                    micros = (long) (Double.parseDouble(line.substring(0, first)) * 1000);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                char direction = line.charAt(first + 1);
+                String text = line.length() > first + 3 ? line.substring(first + 3) : "";
+
+                if (direction == '>') {
+                    current = new Exchange(text);
+                    commandMicros = micros;
+                    exchanges.add(current);
+                } else if (direction == '<') {
+                    if (current == null) {
+                        // Banner printed before the first command
+                        leadingOutput.add(text);
+                    } else {
+                        current.responseDelaysMicros.add(Math.max(0, micros - commandMicros));
+                        current.responses.add(text);
+                    }
+                }
+            }
+        }
+
+        if (!exchanges.isEmpty() && !leadingOutput.isEmpty()) {
+            Exchange first = exchanges.get(0);
+            for (int i = leadingOutput.size() - 1; i >= 0; i--) {
+                first.responses.add(0, leadingOutput.get(i));
+                first.responseDelaysMicros.add(0, 0L);
+            }
+        }
+        return exchanges;
+    }
+
+    @Override
+    protected boolean handleCommand(String command, PrintWriter out) throws InterruptedException {
+        if (command.equals("quit")) {
+            return false;
+        }
+
+        Exchange exchange = findExchange(command);
+        if (exchange == null) {
+            respondWithoutRecording(command, out);
+            return true;
+        }
+
+        long elapsedMicros = 0;
+        for (int i = 0; i < exchange.responses.size(); i++) {
+            long delay = exchange.responseDelaysMicros.get(i);
+            if (speed > 0 && delay > elapsedMicros) {
+                pause((long) ((delay - elapsedMicros) / speed / 1000));
+                elapsedMicros = delay;
+            }
+            out.println(exchange.responses.get(i));
+        }
+        return true;
+    }
+
+    private Exchange findExchange(String command) {
+        int size = exchanges.size();
+        if (size == 0) return null;
+
+        int exact = scan(command, true);
+        int index = exact >= 0 ? exact : scan(command, false);
+        if (index < 0) return null;
+
+        cursor = (index + 1) % size;
+        return exchanges.get(index);
+    }
+
+    /**
+     * Search forward from the cursor, wrapping around once
+     */
+    private int scan(String command, boolean exact) {
+        int size = exchanges.size();
+        int space = command.indexOf(' ');
+        String verb = space < 0 ? command : command.substring(0, space);
+        for (int i = 0; i < size; i++) {
+            int index = (cursor + i) % size;
+            Exchange exchange = exchanges.get(index);
+            if (exact ? exchange.command.equals(command) : exchange.verb.equals(verb)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Minimal answers for commands that never appear in the recording
+     */
+    private static void respondWithoutRecording(String command, PrintWriter out) {
+        if (command.equals("uci")) {
+            out.println("id name Replay");
+            out.println("uciok");
+        } else if (command.equals("isready")) {
+            out.println("readyok");
+        } else if (command.startsWith("go")) {
+            out.println("bestmove 0000");
+        }
+    }
+}
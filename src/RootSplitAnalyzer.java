@@ -0,0 +1,227 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Analyzes one position on several engine processes at once by splitting
+ * the root moves between them. Each engine searches its share of the moves
+ * with "go searchmoves" to the same depth, and the per-move scores are
+ * merged into a single ranking. Wall-clock time to a full root ranking
+ * drops roughly with the number of processes, since each one only has to
+ * search its own subset of the root.
+ */
+public class RootSplitAnalyzer {
+    private static final int MATE_SCORE = 100000;
+
+    /**
+     * The merged ranking of a position's root moves, and the moves missing
+     * from it because their share of the search failed or no line came back
+     */
+    public static class Ranking {
+        private final List<UciInfo> lines;
+        private final List<String> missingMoves;
+
+        Ranking(List<UciInfo> lines, List<String> missingMoves) {
+            this.lines = lines;
+            this.missingMoves = missingMoves;
+        }
+
+        /**
+         * Get one line per searched root move, best first
+         */
+        public List<UciInfo> getLines() {
+            return lines;
+        }
+
+        public List<String> getMissingMoves() {
+            return missingMoves;
+        }
+
+        /**
+         * Whether every root move was searched
+         */
+        public boolean isComplete() {
+            return missingMoves.isEmpty();
+        }
+    }
+
+    private final EnginePool pool;
+    private final ExecutorService executor;
+
+    /**
+     * Creates an analyzer over the given pool
+     *
+     * @param pool the engines to split the work across
+     */
+    public RootSplitAnalyzer(EnginePool pool) {
+        this.pool = pool;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, pool.size()), r -> {
+            Thread thread = new Thread(r, "root-split");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Rank all root moves of a position
+     *
+     * @param fen the position in FEN notation
+     * @param depth the depth every root move is searched to
+     * @param multiPv the number of top lines to report in "pvMoves"
+     * @return a map in the same shape as StockfishEngine.analyzePosition, plus
+     *         "rootMoves" (every root move with its score, best first), "complete"
+     *         and "missingMoves" (the moves with no line), or null if no engine is available
+     */
+    public Map<String, Object> analyze(String fen, int depth, int multiPv) {
+        Ranking ranking = rankRootMoves(fen, depth);
+        if (ranking == null) return null;
+        List<UciInfo> ranked = ranking.getLines();
+
+        Map<String, Object> analysis = new HashMap<>();
+        List<String> pvMoves = new ArrayList<>();
+        List<String> rootMoves = new ArrayList<>();
+        int minDepth = Integer.MAX_VALUE;
+
+        for (int i = 0; i < ranked.size(); i++) {
+            UciInfo line = ranked.get(i);
+            if (i < multiPv) {
+                pvMoves.add(line.getPv());
+            }
+            rootMoves.add(line.getFirstPvMove() + " " + formatScore(line));
+            minDepth = Math.min(minDepth, line.getDepth());
+        }
+
+        if (!ranked.isEmpty()) {
+            UciInfo best = ranked.get(0);
+            analysis.put("bestMove", best.getFirstPvMove());
+            if (best.isMateScore()) {
+                analysis.put("mateIn", best.getScoreMate());
+            } else {
+                analysis.put("score", best.getScoreCp() / 100.0);
+            }
+            analysis.put("depth", minDepth);
+        }
+        analysis.put("pvMoves", pvMoves);
+        analysis.put("rootMoves", rootMoves);
+        analysis.put("complete", ranking.isComplete());
+        analysis.put("missingMoves", ranking.getMissingMoves());
+        return analysis;
+    }
+
+    /**
+     * Search every root move and return them best first
+     *
+     * @param fen the position in FEN notation
+     * @param depth the depth every root move is searched to
+     * @return one line per root move, best first, with the moves that could not be searched;
+     *         or null if no engine is available
+     */
+    public Ranking rankRootMoves(String fen, int depth) {
+        List<String> rootMoves = listRootMoves(fen);
+        if (rootMoves == null) return null;
+
+        // Round-robin so every engine gets a similar mix of moves
+        int parts = Math.max(1, Math.min(pool.size(), rootMoves.size()));
+        List<List<String>> partitions = new ArrayList<>();
+        for (int i = 0; i < parts; i++) {
+            partitions.add(new ArrayList<>());
+        }
+        for (int i = 0; i < rootMoves.size(); i++) {
+            partitions.get(i % parts).add(rootMoves.get(i));
+        }
+
+        List<Future<List<UciInfo>>> futures = new ArrayList<>();
+        for (List<String> partition : partitions) {
+            futures.add(executor.submit(() -> searchPartition(fen, depth, partition)));
+        }
+
+        List<UciInfo> merged = new ArrayList<>();
+        try {
+            for (Future<List<UciInfo>> future : futures) {
+                List<UciInfo> lines = future.get();
+                if (lines != null) {
+                    merged.addAll(lines);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            System.err.println("Error in split analysis: " + e.getCause());
+            return null;
+        }
+
+        // A move is missing if its share failed or the engine never reported a line for it
+        Set<String> reported = new HashSet<>();
+        for (UciInfo line : merged) {
+            reported.add(line.getFirstPvMove());
+        }
+        List<String> missing = new ArrayList<>();
+        for (String move : rootMoves) {
+            if (!reported.contains(move)) {
+                missing.add(move);
+            }
+        }
+        if (!missing.isEmpty()) {
+            System.err.println("Split analysis is missing " + missing.size() + " of " + rootMoves.size() + " root moves");
+        }
+        merged.sort(Comparator.comparingInt(RootSplitAnalyzer::sortKey).reversed());
+        return new Ranking(merged, missing);
+    }
+
+    private List<String> listRootMoves(String fen) {
+        StockfishEngine engine = null;
+        try {
+            engine = pool.acquire();
+            return engine != null ? engine.getLegalMoves(fen) : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            pool.release(engine);
+        }
+    }
+
+    private List<UciInfo> searchPartition(String fen, int depth, List<String> moves) throws InterruptedException {
+        StockfishEngine engine = pool.acquire();
+        if (engine == null) return null;
+        try {
+            return engine.analyzeRootMoves(fen, depth, moves);
+        } finally {
+            pool.release(engine);
+        }
+    }
+
+    /**
+     * Map a score onto one scale: mates beat any centipawn score, and shorter mates beat longer ones
+     */
+    static int sortKey(UciInfo line) {
+        if (line.isMateScore()) {
+            int mate = line.getScoreMate();
+            return mate > 0 ? MATE_SCORE - mate : -MATE_SCORE - mate;
+        }
+        return line.hasScore() ? line.getScoreCp() : 0;
+    }
+
+    private static String formatScore(UciInfo line) {
+        if (line.isMateScore()) {
+            return "#" + line.getScoreMate();
+        }
+        return String.format("%+.2f", line.getScoreCp() / 100.0);
+    }
+
+    /**
+     * Stop the worker threads; the pool itself is left open
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -5,6 +5,7 @@ public class Round {
     private int roundID;
     private List<Match> matches;
     private String status;
+    private Player bye;
 
     public Round() {
         matches = new ArrayList<>();
@@ -32,6 +33,22 @@ public class Round {
         System.out.println("Scheduled " + matches.size() + " matches for round " + roundID);
     }
 
+    /**
+     * Schedule the boards of a Swiss pairing, White first on each
+     */
+    public void schedulePairings(SwissPairing.Pairing pairing) {
+        matches.clear();
+        int matchId = 1000;
+        for (Player[] pair : pairing.getPairs()) {
+            matches.add(new Match(matchId++, pair[0], pair[1], "10|0"));
+        }
+        bye = pairing.getBye();
+        if (bye != null) {
+            System.out.println("Bye for: " + bye.getUsername());
+        }
+        System.out.println("Scheduled " + matches.size() + " matches for round " + roundID);
+    }
+
     public void startRound() {
         status = "in progress";
     }
@@ -55,5 +72,37 @@ public class Round {
     public List<Match> getMatches() {
         return matches;
     }
+
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the player who sits this round out with a point, or null
+     */
+    public Player getBye() {
+        return bye;
+    }
+
+    /**
+     * Add a match read back from storage
+     */
+    void addMatch(Match match) {
+        matches.add(match);
+    }
+
+    /**
+     * Set the status read back from storage
+     */
+    void restoreStatus(String status) {
+        this.status = status;
+    }
+
+    /**
+     * Set the bye read back from storage
+     */
+    void restoreBye(Player bye) {
+        this.bye = bye;
+    }
 }
 
@@ -0,0 +1,110 @@
+/**
+ * Limits for one engine search, turned into a UCI "go" command.
+ * A limit of 0 means "no limit"; the engine stops at whichever limit it reaches first.
+ */
+public final class SearchLimits {
+    private final int moveTimeMs;
+    private final int depth;
+    private final long nodes;
+    // Game clock; only sent when whiteTimeMs or blackTimeMs is set
+    private final long whiteTimeMs;
+    private final long blackTimeMs;
+    private final long whiteIncrementMs;
+    private final long blackIncrementMs;
+
+    private SearchLimits(int moveTimeMs, int depth, long nodes,
+                         long whiteTimeMs, long blackTimeMs, long whiteIncrementMs, long blackIncrementMs) {
+        this.moveTimeMs = Math.max(0, moveTimeMs);
+        this.depth = Math.max(0, depth);
+        this.nodes = Math.max(0, nodes);
+        this.whiteTimeMs = Math.max(0, whiteTimeMs);
+        this.blackTimeMs = Math.max(0, blackTimeMs);
+        this.whiteIncrementMs = Math.max(0, whiteIncrementMs);
+        this.blackIncrementMs = Math.max(0, blackIncrementMs);
+    }
+
+    /**
+     * Limits with only a time budget
+     *
+     * @param moveTimeMs the time to think in milliseconds
+     */
+    public static SearchLimits moveTime(int moveTimeMs) {
+        return new SearchLimits(moveTimeMs, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Limits for a game under a clock; the engine decides how much of its time to spend
+     *
+     * @param whiteTimeMs white's remaining time
+     * @param blackTimeMs black's remaining time
+     * @param whiteIncrementMs white's increment per move
+     * @param blackIncrementMs black's increment per move
+     */
+    public static SearchLimits clock(long whiteTimeMs, long blackTimeMs, long whiteIncrementMs, long blackIncrementMs) {
+        return new SearchLimits(0, 0, 0, Math.max(1, whiteTimeMs), Math.max(1, blackTimeMs),
+                whiteIncrementMs, blackIncrementMs);
+    }
+
+    public SearchLimits withDepth(int depth) {
+        return new SearchLimits(moveTimeMs, depth, nodes, whiteTimeMs, blackTimeMs, whiteIncrementMs, blackIncrementMs);
+    }
+
+    public SearchLimits withNodes(long nodes) {
+        return new SearchLimits(moveTimeMs, depth, nodes, whiteTimeMs, blackTimeMs, whiteIncrementMs, blackIncrementMs);
+    }
+
+    /**
+     * Lower the depth limit to at most the given depth
+     *
+     * @param maxDepth the cap, or 0 to leave the limits unchanged
+     */
+    public SearchLimits capDepth(int maxDepth) {
+        if (maxDepth <= 0 || (depth > 0 && depth <= maxDepth)) return this;
+        return withDepth(maxDepth);
+    }
+
+    public int getMoveTimeMs() {
+        return moveTimeMs;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public boolean hasClock() {
+        return whiteTimeMs > 0 || blackTimeMs > 0;
+    }
+
+    /**
+     * Get the longer of the two remaining clock times, or 0 without a clock
+     */
+    public long getLongestClockMs() {
+        return Math.max(whiteTimeMs, blackTimeMs);
+    }
+
+    /**
+     * Get the UCI command that starts a search with these limits
+     */
+    public String toGoCommand() {
+        StringBuilder command = new StringBuilder("go");
+        if (moveTimeMs > 0) command.append(" movetime ").append(moveTimeMs);
+        if (depth > 0) command.append(" depth ").append(depth);
+        if (nodes > 0) command.append(" nodes ").append(nodes);
+        if (hasClock()) {
+            command.append(" wtime ").append(whiteTimeMs).append(" btime ").append(blackTimeMs);
+            if (whiteIncrementMs > 0) command.append(" winc ").append(whiteIncrementMs);
+            if (blackIncrementMs > 0) command.append(" binc ").append(blackIncrementMs);
+        }
+        if (command.length() == 2) command.append(" infinite");
+        return command.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toGoCommand().substring(3);
+    }
+}
@@ -0,0 +1,75 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures recording results through PlayerStatsRepository's journal:
+ * results per second and how many results share each fsync, for a
+ * generated stats file of the given size.
+ *
+ * Run with: java -cp build StatsJournalBenchmark [players] [threads] [results]
+ */
+public class StatsJournalBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int results = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+
+        File directory = Files.createTempDirectory("stats-journal").toFile();
+        File statsFile = new File(directory, "playerStats.txt");
+        writeStats(statsFile, players);
+
+        PlayerStatsRepository repository = new PlayerStatsRepository(statsFile);
+        repository.size();
+
+        long start = System.nanoTime();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            Thread worker = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < results / threads; i++) {
+                    repository.recordResult("player" + random.nextInt(players), 1, 0, 0, 8);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long syncs = repository.getSyncCount();
+        repository.close();
+
+        System.out.printf("%d results from %d threads over %d players in %.2f s: %.0f results/s%n",
+                results, threads, players, seconds, results / seconds);
+        System.out.printf("%d fsyncs, %.1f results per fsync%n", syncs, syncs == 0 ? 0 : (double) results / syncs);
+
+        // A fresh repository must see every result after replaying the journal
+        PlayerStatsRepository reopened = new PlayerStatsRepository(statsFile);
+        long wins = 0;
+        for (PlayerStatsRepository.PlayerStats stats : reopened.getAll()) {
+            wins += stats.getWins();
+        }
+        reopened.close();
+        System.out.println("Wins after reopening: " + wins + " (expected " + (results / threads) * threads + ")");
+    }
+
+    private static void writeStats(File file, int players) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("name, wins, losses, draws, rating");
+            writer.newLine();
+            for (int i = 0; i < players; i++) {
+                writer.write("player" + i + ",0,0,0,1200");
+                writer.newLine();
+            }
+        }
+    }
+}
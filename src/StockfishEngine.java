@@ -1,14 +1,32 @@
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Predicate;
 
-public class StockfishEngine {
+public class StockfishEngine implements ChessEngine {
     private Process engineProcess;
-    private BufferedReader processReader;
+    private UciLineReader processReader;
     private BufferedWriter processWriter;
     private int engineStrength = 20; // Default strength out of 20
-    private boolean isReady = false;
-    private String enginePath;
+    // Written by the manager's rebalancing, read by whichever thread sends the next request
+    private volatile int threads = 1;
+    private volatile int hashMb = 128;
+    private volatile boolean resourcesPending = false;
+    private volatile boolean isReady = false;
+    private volatile boolean closed = false;
+    private final EngineLauncher launcher;
+    
+    // Crash recovery: requests that hit a dead process wait for the supervisor to restart it
+    private static final int MAX_REPLAYS = 2;
+    private static final int UNTIMED_SEARCH_LIMIT_MS = 30000;
+    private static final long RECOVERY_TIMEOUT_MS = 30000;
+    private final Object recoveryLock = new Object();
+    private EngineSupervisor supervisor;
+    
+    // Reused by analyzePosition so info lines can be parsed without allocating
+    private static final int ANALYSIS_MULTI_PV = 3;
+    private final UciInfo scratchInfo = new UciInfo();
+    private final UciInfo[] pvLines = new UciInfo[ANALYSIS_MULTI_PV];
     
     /**
      * Creates a new StockfishEngine instance
@@ -16,7 +34,20 @@ public class StockfishEngine {
      * @param enginePath the path to the Stockfish engine executable
      */
     public StockfishEngine(String enginePath) {
-        this.enginePath = enginePath;
+        this(EngineLauncher.forExecutable(enginePath));
+    }
+    
+    /**
+     * Creates a new StockfishEngine that talks UCI to whatever process the launcher starts,
+     * e.g. a recorded session replay or a synthetic engine
+     * 
+     * @param launcher starts the engine process; called again on every restart
+     */
+    public StockfishEngine(EngineLauncher launcher) {
+        this.launcher = launcher;
+        for (int i = 0; i < pvLines.length; i++) {
+            pvLines[i] = new UciInfo();
+        }
         initializeEngine();
     }
     
@@ -25,11 +56,9 @@ public class StockfishEngine {
      */
     private void initializeEngine() {
         try {
-            ProcessBuilder processBuilder = new ProcessBuilder(enginePath);
-            processBuilder.redirectErrorStream(true);
-            engineProcess = processBuilder.start();
+            engineProcess = launcher.launch();
             
-            processReader = new BufferedReader(new InputStreamReader(engineProcess.getInputStream()));
+            processReader = new UciLineReader(new InputStreamReader(engineProcess.getInputStream()));
             processWriter = new BufferedWriter(new OutputStreamWriter(engineProcess.getOutputStream()));
             
             // Initialize the engine
@@ -37,7 +66,7 @@ public class StockfishEngine {
             boolean uciOk = waitForResponse("uciok", 5000);
             if (!uciOk) {
                 System.err.println("Stockfish engine did not respond to UCI command");
-                close();
+                shutdownProcess();
                 return;
             }
             
@@ -45,18 +74,139 @@ public class StockfishEngine {
             boolean readyOk = waitForResponse("readyok", 5000);
             if (!readyOk) {
                 System.err.println("Stockfish engine is not ready");
-                close();
+                shutdownProcess();
                 return;
             }
             
-            // Set default engine strength
+            // Set default engine strength and the current resource share
             setEngineStrength(engineStrength);
+            applyResources();
             
             isReady = true;
         } catch (IOException e) {
             System.err.println("Error initializing Stockfish engine: " + e.getMessage());
             isReady = false;
-            close();
+            shutdownProcess();
+        }
+    }
+    
+    /**
+     * Replace a dead engine process with a fresh one.
+     * Called by the EngineSupervisor; the previous strength setting is re-applied.
+     * 
+     * @return true if the new process came up and is ready
+     */
+    boolean restart() {
+        if (closed) return false;
+        
+        isReady = false;
+        shutdownProcess();
+        initializeEngine();
+        
+        synchronized (recoveryLock) {
+            recoveryLock.notifyAll();
+        }
+        return isReady;
+    }
+    
+    /**
+     * Mark the engine as crashed so new requests wait for recovery
+     */
+    void markCrashed() {
+        isReady = false;
+    }
+    
+    void setSupervisor(EngineSupervisor supervisor) {
+        this.supervisor = supervisor;
+    }
+    
+    Process getProcess() {
+        return engineProcess;
+    }
+    
+    boolean isClosed() {
+        return closed;
+    }
+    
+    /**
+     * Wait until the supervisor has restarted the engine
+     * 
+     * @return true if the engine is usable again, false if it was closed, abandoned or nobody supervises it
+     */
+    private boolean awaitRecovery() {
+        if (supervisor == null) return false;
+        
+        long deadline = System.currentTimeMillis() + RECOVERY_TIMEOUT_MS;
+        synchronized (recoveryLock) {
+            while (!isReady && !closed) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                try {
+                    recoveryLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return isReady;
+    }
+    
+    /**
+     * Run a request against the engine, replaying it on a restarted process if the engine dies mid-request
+     * 
+     * @param action description used in error messages
+     * @param fallback the value returned when the request cannot be completed
+     * @param request the request to run
+     * @return the request result, or the fallback
+     */
+    private <T> T runRequest(String action, T fallback, EngineRequest<T> request) {
+        for (int attempt = 0; ; attempt++) {
+            if (!isReady && !awaitRecovery()) return fallback;
+            
+            if (resourcesPending) {
+                applyResources();
+            }
+            
+            try {
+                return request.run();
+            } catch (EngineCrashedException e) {
+                markCrashed();
+                if (attempt >= MAX_REPLAYS || !awaitRecovery()) {
+                    System.err.println("Stockfish engine died while " + action);
+                    return fallback;
+                }
+                System.err.println("Stockfish engine restarted, replaying request: " + action);
+            } catch (IOException e) {
+                System.err.println("Error " + action + " with Stockfish: " + e.getMessage());
+                return fallback;
+            }
+        }
+    }
+    
+    /**
+     * Read the next line from the engine
+     * 
+     * @return the line length
+     * @throws EngineCrashedException if the engine closed its output, i.e. the process died
+     */
+    private int readEngineLine() throws IOException {
+        int length = processReader.readLine();
+        if (length < 0) {
+            throw new EngineCrashedException();
+        }
+        return length;
+    }
+    
+    private interface EngineRequest<T> {
+        T run() throws IOException;
+    }
+    
+    private static class EngineCrashedException extends IOException {
+        private static final long serialVersionUID = 1L;
+        
+        EngineCrashedException() {
+            super("engine process terminated");
         }
     }
     
@@ -83,13 +233,11 @@ public class StockfishEngine {
      */
     private boolean waitForResponse(String expected, int timeoutMs) {
         try {
-            String line;
             long startTime = System.currentTimeMillis();
             
             while ((System.currentTimeMillis() - startTime) < timeoutMs) {
                 if (processReader.ready()) {
-                    line = processReader.readLine();
-                    if (line != null && line.contains(expected)) {
+                    if (processReader.readLine() >= 0 && processReader.contains(expected)) {
                         return true;
                     }
                 } else {
@@ -119,17 +267,71 @@ public class StockfishEngine {
         
         this.engineStrength = strength;
         
-        // Convert strength to skill level and depth
+        // Convert strength to skill level; the depth cap is applied per search (see getStrengthDepth)
         int skillLevel = strength;
-        int depth = 1 + strength;
         
-        // Apply settings
+        // Apply settings; Threads and Hash are handed out by StockfishManager
         sendCommand("setoption name Skill Level value " + skillLevel);
-        sendCommand("setoption name Threads value 1");
-        sendCommand("setoption name Hash value 128");
         sendCommand("setoption name MultiPV value 1");
     }
     
+    public int getEngineStrength() {
+        return engineStrength;
+    }
+    
+    /**
+     * Get the search depth cap for the current strength: 1 + strength below full strength,
+     * none (0) at full strength. Weaker settings therefore also answer faster.
+     */
+    public int getStrengthDepth() {
+        return engineStrength >= 20 ? 0 : 1 + engineStrength;
+    }
+    
+    /**
+     * Tell the engine that the next search is from a different game, and wait until it has reset
+     */
+    public void newGame() {
+        runRequest("starting a new game", false, () -> {
+            sendCommand("ucinewgame");
+            sendCommand("isready");
+            while (true) {
+                readEngineLine();
+                if (processReader.startsWith("readyok")) {
+                    return true;
+                }
+            }
+        });
+    }
+    
+    /**
+     * Set the CPU threads and hash memory this engine may use.
+     * The options are sent before the next request so a running search is never resized.
+     * 
+     * @param threads the number of search threads
+     * @param hashMb the transposition table size in megabytes
+     */
+    public void setResources(int threads, int hashMb) {
+        if (threads == this.threads && hashMb == this.hashMb) return;
+        
+        this.threads = Math.max(1, threads);
+        this.hashMb = Math.max(1, hashMb);
+        resourcesPending = true;
+    }
+    
+    public int getThreads() {
+        return threads;
+    }
+    
+    public int getHashMb() {
+        return hashMb;
+    }
+    
+    private void applyResources() {
+        resourcesPending = false;
+        sendCommand("setoption name Threads value " + threads);
+        sendCommand("setoption name Hash value " + hashMb);
+    }
+    
     /**
      * Analyze the current position and get the best move
      * 
@@ -138,37 +340,59 @@ public class StockfishEngine {
      * @return the best move in UCI notation (e.g., "e2e4")
      */
     public String getBestMove(String fen, int timeInMs) {
-        if (!isReady) return null;
+        return runRequest("getting best move", null, () -> searchBestMove(fen, SearchLimits.moveTime(timeInMs), null));
+    }
+    
+    /**
+     * Get the best move within the given limits, reporting the top line of every iteration as it arrives
+     * 
+     * @param fen the FEN notation of the position
+     * @param limits the time, depth and node limits of the search
+     * @param progress receives each new top line (a reused object); returning false stops the search. May be null
+     * @return the best move in UCI notation
+     */
+    public String getBestMove(String fen, SearchLimits limits, Predicate<UciInfo> progress) {
+        return runRequest("getting best move", null, () -> searchBestMove(fen, limits, progress));
+    }
+    
+    private String searchBestMove(String fen, SearchLimits limits, Predicate<UciInfo> progress) throws IOException {
+        // Below full strength the search is also cut off at the strength's depth
+        limits = limits.capDepth(getStrengthDepth());
         
         sendCommand("position fen " + fen);
-        sendCommand("go movetime " + timeInMs);
+        sendCommand(limits.toGoCommand());
         
-        try {
-            String line;
-            String bestMove = null;
-            
-            // Set a timeout to prevent infinite waiting
-            long startTime = System.currentTimeMillis();
-            long timeout = timeInMs + 1000; // Add a buffer of 1 second
+        String bestMove = null;
+        boolean stopped = false;
+        
+        // Set a timeout to prevent infinite waiting
+        long startTime = System.currentTimeMillis();
+        long budget = limits.getMoveTimeMs() > 0 ? limits.getMoveTimeMs()
+                : limits.hasClock() ? limits.getLongestClockMs() : UNTIMED_SEARCH_LIMIT_MS;
+        long timeout = budget + 1000; // Add a buffer of 1 second
+        
+        while (true) {
+            int length = readEngineLine();
+            if (processReader.startsWith("bestmove")) {
+                bestMove = processReader.secondToken();
+                break;
+            }
             
-            while ((line = processReader.readLine()) != null) {
-                if (line.startsWith("bestmove")) {
-                    bestMove = line.split("\\s+")[1];
-                    break;
-                }
-                
-                // Check for timeout
-                if (System.currentTimeMillis() - startTime > timeout) {
-                    sendCommand("stop");
-                    break;
-                }
+            // Only parse info lines when someone is listening
+            if (progress != null && !stopped && UciInfoParser.parse(processReader.buffer(), length, scratchInfo)
+                    && scratchInfo.hasPv() && scratchInfo.getMultiPv() <= 1 && !progress.test(scratchInfo)) {
+                sendCommand("stop");
+                stopped = true;
             }
             
-            return bestMove;
-        } catch (IOException e) {
-            System.err.println("Error getting best move from Stockfish: " + e.getMessage());
-            return null;
+            // Check for timeout; keep reading so the bestmove is not left for the next request
+            if (!stopped && System.currentTimeMillis() - startTime > timeout) {
+                sendCommand("stop");
+                stopped = true;
+            }
         }
+        
+        return bestMove;
     }
     
     /**
@@ -179,64 +403,59 @@ public class StockfishEngine {
      * @return a map containing analysis information
      */
     public Map<String, Object> analyzePosition(String fen, int depth) {
-        if (!isReady) return null;
-        
+        return runRequest("analyzing position", null, () -> searchAnalysis(fen, depth));
+    }
+    
+    private Map<String, Object> searchAnalysis(String fen, int depth) throws IOException {
         Map<String, Object> analysis = new HashMap<>();
         List<String> pvMoves = new ArrayList<>();
         
         sendCommand("position fen " + fen);
-        sendCommand("setoption name MultiPV value 3");
+        sendCommand("setoption name MultiPV value " + ANALYSIS_MULTI_PV);
         sendCommand("go depth " + depth);
         
-        try {
-            String line;
-            boolean collecting = true;
-            int score = 0;
+        // Keep only the latest line per MultiPV slot; Strings are created once at the end
+        for (UciInfo pvLine : pvLines) {
+            pvLine.reset();
+        }
+        int linesSeen = 0;
+        
+        while (true) {
+            int length = readEngineLine();
+            if (processReader.startsWith("bestmove")) {
+                analysis.put("bestMove", processReader.secondToken());
+                break;
+            }
             
-            while (collecting && (line = processReader.readLine()) != null) {
-                if (line.startsWith("bestmove")) {
-                    String bestMove = line.split("\\s+")[1];
-                    analysis.put("bestMove", bestMove);
-                    collecting = false;
-                } else if (line.contains(" pv ")) {
-                    // Parse info line
-                    String[] parts = line.split("\\s+");
-                    
-                    // Find the score
-                    for (int i = 0; i < parts.length; i++) {
-                        if (parts[i].equals("cp") && i + 1 < parts.length) {
-                            score = Integer.parseInt(parts[i + 1]);
-                            analysis.put("score", score / 100.0); // Convert to pawns
-                        }
-                        
-                        if (parts[i].equals("mate") && i + 1 < parts.length) {
-                            int mateIn = Integer.parseInt(parts[i + 1]);
-                            analysis.put("mateIn", mateIn);
-                        }
-                        
-                        // Find the PV (principal variation)
-                        if (parts[i].equals("pv")) {
-                            StringBuilder pv = new StringBuilder();
-                            for (int j = i + 1; j < parts.length; j++) {
-                                pv.append(parts[j]).append(" ");
-                            }
-                            pvMoves.add(pv.toString().trim());
-                            break;
-                        }
-                    }
+            if (UciInfoParser.parse(processReader.buffer(), length, scratchInfo) && scratchInfo.hasPv()) {
+                int slot = scratchInfo.getMultiPv() - 1;
+                if (slot >= 0 && slot < pvLines.length) {
+                    pvLines[slot].copyFrom(scratchInfo);
+                    linesSeen = Math.max(linesSeen, slot + 1);
                 }
             }
-            
-            analysis.put("pvMoves", pvMoves);
-            
-            // Reset MultiPV
-            sendCommand("setoption name MultiPV value 1");
-            return analysis;
-            
-        } catch (IOException e) {
-            System.err.println("Error analyzing position with Stockfish: " + e.getMessage());
-            return null;
         }
+        
+        UciInfo topLine = pvLines[0];
+        if (topLine.isMateScore()) {
+            analysis.put("mateIn", topLine.getScoreMate());
+        } else if (topLine.hasScore()) {
+            analysis.put("score", topLine.getScoreCp() / 100.0); // Convert to pawns
+        }
+        if (topLine.getDepth() != UciInfo.UNSET) {
+            analysis.put("depth", topLine.getDepth());
+        }
+        for (int i = 0; i < linesSeen; i++) {
+            if (pvLines[i].hasPv()) {
+                pvMoves.add(pvLines[i].getPv());
+            }
+        }
+        
+        analysis.put("pvMoves", pvMoves);
+        
+        // Reset MultiPV
+        sendCommand("setoption name MultiPV value 1");
+        return analysis;
     }
     
     /**
@@ -301,26 +520,146 @@ public class StockfishEngine {
      * @return true if the move is valid, false otherwise
      */
     public boolean isValidMove(String fen, String move) {
-        if (!isReady) return false;
+        return runRequest("checking move validity", false, () -> searchValidMove(fen, move));
+    }
+    
+    private boolean searchValidMove(String fen, String move) throws IOException {
+        sendCommand("position fen " + fen);
+        sendCommand("go perft 1");
+        
+        // Read the whole perft listing so no output is left behind for the next request
+        String perftEntry = move + ":";
+        boolean found = false;
+        while (true) {
+            readEngineLine();
+            if (processReader.startsWith(perftEntry)) {
+                found = true;
+            }
+            if (isEndOfPerft()) {
+                break;
+            }
+        }
         
+        return found;
+    }
+    
+    /**
+     * Get all legal moves in a position, as listed by the engine's perft command
+     * 
+     * @param fen the position in FEN notation
+     * @return the legal moves in UCI notation, or null if the engine is unavailable
+     */
+    public List<String> getLegalMoves(String fen) {
+        return runRequest("listing legal moves", null, () -> searchLegalMoves(fen));
+    }
+    
+    private List<String> searchLegalMoves(String fen) throws IOException {
         sendCommand("position fen " + fen);
         sendCommand("go perft 1");
         
-        try {
-            String line;
-            while ((line = processReader.readLine()) != null) {
-                if (line.contains(move + ":")) {
-                    return true;
-                }
-                if (line.startsWith("Nodes searched")) {
-                    break;
+        List<String> moves = new ArrayList<>();
+        while (true) {
+            int length = readEngineLine();
+            if (isEndOfPerft()) {
+                break;
+            }
+            
+            // Perft lines look like "e2e4: 1" or "e7e8q: 1"
+            char[] line = processReader.buffer();
+            int colon = length > 5 && line[4] == ':' ? 4 : length > 6 && line[5] == ':' ? 5 : -1;
+            if (colon > 0 && line[0] >= 'a' && line[0] <= 'h' && line[1] >= '1' && line[1] <= '8') {
+                moves.add(new String(line, 0, colon));
+            }
+        }
+        
+        return moves;
+    }
+    
+    private boolean isEndOfPerft() {
+        // Engines without perft support answer "go" with a bestmove instead
+        return processReader.startsWith("Nodes searched") || processReader.startsWith("bestmove");
+    }
+    
+    /**
+     * Search a position restricted to the given root moves (UCI "go searchmoves").
+     * MultiPV is raised to the number of moves so every move gets its own score
+     * from the same final iteration.
+     * 
+     * @param fen the position in FEN notation
+     * @param depth the depth to search to
+     * @param moves the root moves to search, in UCI notation
+     * @return one line per searched move as reported at the deepest iteration, or null if the engine is unavailable
+     */
+    public List<UciInfo> analyzeRootMoves(String fen, int depth, List<String> moves) {
+        return runRequest("analyzing root moves", null, () -> searchRootMoves(fen, depth, moves));
+    }
+    
+    private List<UciInfo> searchRootMoves(String fen, int depth, List<String> moves) throws IOException {
+        List<UciInfo> lines = new ArrayList<>();
+        if (moves.isEmpty()) return lines;
+        
+        sendCommand("position fen " + fen);
+        sendCommand("setoption name MultiPV value " + moves.size());
+        sendCommand("go depth " + depth + " searchmoves " + String.join(" ", moves));
+        
+        UciInfo[] slots = new UciInfo[moves.size()];
+        while (true) {
+            int length = readEngineLine();
+            if (processReader.startsWith("bestmove")) {
+                break;
+            }
+            
+            if (UciInfoParser.parse(processReader.buffer(), length, scratchInfo) && scratchInfo.hasPv()) {
+                int slot = scratchInfo.getMultiPv() - 1;
+                if (slot >= 0 && slot < slots.length) {
+                    if (slots[slot] == null) {
+                        slots[slot] = new UciInfo();
+                    }
+                    slots[slot].copyFrom(scratchInfo);
                 }
             }
-        } catch (IOException e) {
-            System.err.println("Error checking move validity: " + e.getMessage());
         }
         
-        return false;
+        for (UciInfo line : slots) {
+            if (line != null) {
+                lines.add(line);
+            }
+        }
+        
+        sendCommand("setoption name MultiPV value 1");
+        return lines;
+    }
+    
+    /**
+     * Evaluate a position with a single principal variation
+     * 
+     * @param fen the position in FEN notation
+     * @param depth the depth to search to
+     * @param moveTimeMs an upper bound on the search time, or 0 for none
+     * @return the deepest line reported, scored from the side to move, or null if the engine is unavailable
+     */
+    public UciInfo evaluatePosition(String fen, int depth, int moveTimeMs) {
+        return runRequest("evaluating position", null, () -> searchEvaluation(fen, depth, moveTimeMs));
+    }
+    
+    private UciInfo searchEvaluation(String fen, int depth, int moveTimeMs) throws IOException {
+        sendCommand("position fen " + fen);
+        sendCommand("go depth " + depth + (moveTimeMs > 0 ? " movetime " + moveTimeMs : ""));
+        
+        UciInfo result = new UciInfo();
+        while (true) {
+            int length = readEngineLine();
+            if (processReader.startsWith("bestmove")) {
+                break;
+            }
+            
+            if (UciInfoParser.parse(processReader.buffer(), length, scratchInfo)
+                    && scratchInfo.hasScore() && scratchInfo.getMultiPv() <= 1) {
+                result.copyFrom(scratchInfo);
+            }
+        }
+        
+        return result;
     }
     
     /**
@@ -337,19 +676,33 @@ public class StockfishEngine {
      * Close the engine process
      */
     public void close() {
+        closed = true;
+        isReady = false;
+        shutdownProcess();
+        
+        synchronized (recoveryLock) {
+            recoveryLock.notifyAll();
+        }
+    }
+    
+    private void shutdownProcess() {
         try {
-            if (processWriter != null) {
+            if (processWriter != null && engineProcess != null && engineProcess.isAlive()) {
                 sendCommand("quit");
+            }
+            if (processWriter != null) {
                 processWriter.close();
             }
             if (processReader != null) {
                 processReader.close();
             }
+        } catch (IOException e) {
+            System.err.println("Error closing Stockfish engine: " + e.getMessage());
+        } finally {
+            // A dead or wedged process must still be reaped
             if (engineProcess != null) {
                 engineProcess.destroy();
             }
-        } catch (IOException e) {
-            System.err.println("Error closing Stockfish engine: " + e.getMessage());
         }
     }
     
@@ -359,7 +712,7 @@ public class StockfishEngine {
      * @return true if the engine is ready, false otherwise
      */
     public boolean isReady() {
-        if (engineProcess == null) {
+        if (engineProcess == null || !engineProcess.isAlive()) {
             return false;
         }
         
@@ -6,23 +6,76 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.util.HashMap;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
- * Singleton class to manage Stockfish engine instances across the application
+ * Singleton class to manage Stockfish engine instances across the application.
+ * It also acts as the resource governor for the engines: the available CPU
+ * cores and a hash memory budget are divided among the engines that are
+ * currently running, and re-divided whenever an engine starts or stops.
  */
 public class StockfishManager {
+    private static final int MIN_HASH_MB = 1;
+    private static final int DEFAULT_MAX_HASH_BUDGET_MB = 2048;
+    
     private static StockfishManager instance;
     private Map<String, StockfishEngine> engines;
     private String stockfishPath;
+    private final EngineSupervisor supervisor;
+    private int threadBudget;
+    private int hashBudgetMb;
+    private boolean overcommitReported;
+    private volatile EngineLauncher engineLauncher;
+    private File recordingDirectory;
+    private final EngineSessionMultiplexer sessions;
+    
+    /**
+     * The share of CPU and memory currently assigned to one engine
+     */
+    public static class EngineAllocation {
+        private final String purpose;
+        private final int threads;
+        private final int hashMb;
+        
+        EngineAllocation(String purpose, int threads, int hashMb) {
+            this.purpose = purpose;
+            this.threads = threads;
+            this.hashMb = hashMb;
+        }
+        
+        public String getPurpose() {
+            return purpose;
+        }
+        
+        public int getThreads() {
+            return threads;
+        }
+        
+        public int getHashMb() {
+            return hashMb;
+        }
+        
+        @Override
+        public String toString() {
+            return purpose + ": " + threads + " threads, " + hashMb + " MB hash";
+        }
+    }
     
     /**
      * Private constructor for singleton pattern
      */
     private StockfishManager() {
-        engines = new HashMap<>();
+        engines = new LinkedHashMap<>();
+        supervisor = new EngineSupervisor(this::removeAbandonedEngine);
+        threadBudget = Integer.getInteger("chess.engine.threads", Runtime.getRuntime().availableProcessors());
+        hashBudgetMb = Integer.getInteger("chess.engine.hashBudgetMb", defaultHashBudgetMb());
+        sessions = new EngineSessionMultiplexer(Integer.getInteger("chess.engine.sharedProcesses", 1));
         initializeStockfish();
+        configureStandInEngine();
     }
     
     /**
@@ -159,6 +212,61 @@ public class StockfishManager {
         }
     }
     
+    /**
+     * Apply the engine stand-in and recording options given as system properties:
+     * chess.engine.replay (a recorded session file), chess.engine.synthetic
+     * (a latency model such as "lognormal:20:0.5") and chess.engine.record
+     * (a directory to record every engine session into)
+     */
+    private void configureStandInEngine() {
+        String replay = System.getProperty("chess.engine.replay");
+        String synthetic = System.getProperty("chess.engine.synthetic");
+        String record = System.getProperty("chess.engine.record");
+        
+        try {
+            if (replay != null) {
+                engineLauncher = ReplayUciEngine.launcher(new File(replay), 1.0);
+                System.out.println("Using recorded engine session: " + replay);
+            } else if (synthetic != null) {
+                engineLauncher = SyntheticUciEngine.launcher(SyntheticUciEngine.LatencyModel.parse(synthetic), 1.0, 1L);
+                System.out.println("Using synthetic engine: " + synthetic);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error configuring stand-in engine: " + e.getMessage());
+        }
+        
+        if (record != null) {
+            recordingDirectory = new File(record);
+        }
+    }
+    
+    /**
+     * Replace the Stockfish executable with another engine for engines created from now on,
+     * e.g. ReplayUciEngine or SyntheticUciEngine for benchmarking without the real binary
+     * 
+     * @param launcher the launcher to use, or null to go back to the Stockfish executable
+     */
+    public synchronized void setEngineLauncher(EngineLauncher launcher) {
+        this.engineLauncher = launcher;
+    }
+    
+    /**
+     * Record the UCI traffic of engines created from now on
+     * 
+     * @param directory where session files are written, or null to stop recording
+     */
+    public synchronized void setRecordingDirectory(File directory) {
+        this.recordingDirectory = directory;
+    }
+    
+    private EngineLauncher currentLauncher() {
+        EngineLauncher launcher = engineLauncher != null ? engineLauncher : EngineLauncher.forExecutable(stockfishPath);
+        if (recordingDirectory != null) {
+            launcher = UciSessionRecorder.recording(launcher, recordingDirectory);
+        }
+        return launcher;
+    }
+    
     /**
      * Get or create a Stockfish engine for a specific purpose
      * 
@@ -166,15 +274,29 @@ public class StockfishManager {
      * @return the StockfishEngine instance or null if initialization failed
      */
     public synchronized StockfishEngine getEngine(String purpose) {
-        if (stockfishPath == null) {
+        return getEngine(purpose, null);
+    }
+    
+    /**
+     * Get or create an engine for a specific purpose, started by the given launcher,
+     * e.g. to pit a different engine or build against Stockfish
+     * 
+     * @param purpose the purpose identifier
+     * @param launcher starts the engine process, or null for the configured engine
+     * @return the StockfishEngine instance or null if initialization failed
+     */
+    public synchronized StockfishEngine getEngine(String purpose, EngineLauncher launcher) {
+        if (launcher == null && stockfishPath == null && engineLauncher == null) {
             return null;
         }
         
         StockfishEngine engine = engines.get(purpose);
         if (engine == null) {
-            engine = new StockfishEngine(stockfishPath);
+            engine = new StockfishEngine(launcher != null ? launcher : currentLauncher());
             if (engine.isReady()) {
                 engines.put(purpose, engine);
+                supervisor.watch(purpose, engine);
+                rebalanceResources();
             } else {
                 engine = null;
             }
@@ -183,6 +305,152 @@ public class StockfishManager {
         return engine;
     }
     
+    /**
+     * Start an engine under a purpose no other engine is using, e.g. for a pool that
+     * needs processes of its own rather than whichever engine already has the purpose
+     * 
+     * @param purpose the purpose identifier
+     * @param launcher starts the engine process, or null for the configured engine
+     * @return the new engine, or null if the purpose is taken or the engine did not start
+     */
+    public synchronized StockfishEngine startEngine(String purpose, EngineLauncher launcher) {
+        if (engines.containsKey(purpose)) {
+            System.err.println("An engine is already running for " + purpose);
+            return null;
+        }
+        return getEngine(purpose, launcher);
+    }
+    
+    /**
+     * Drop an engine the supervisor could not bring back, so the next
+     * getEngine call for that purpose starts a fresh one
+     */
+    private synchronized void removeAbandonedEngine(String purpose, StockfishEngine engine) {
+        if (engines.get(purpose) == engine) {
+            engines.remove(purpose);
+            rebalanceResources();
+        }
+    }
+    
+    /**
+     * Default hash budget: a quarter of physical memory, capped so a
+     * desktop install never hands most of the machine to the engines
+     */
+    private static int defaultHashBudgetMb() {
+        try {
+            com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+            long physicalMb = os.getTotalMemorySize() / (1024 * 1024);
+            return (int) Math.max(64, Math.min(DEFAULT_MAX_HASH_BUDGET_MB, physicalMb / 4));
+        } catch (Exception | LinkageError e) {
+            return 512;
+        }
+    }
+    
+    /**
+     * Divide the thread and hash budgets among the running engines.
+     * Cores left over after an even split go to the longest-running engines;
+     * hash is split evenly so the total never exceeds the budget. An engine
+     * cannot search with fewer than one thread, so with more engines than
+     * threads each gets one and the overcommit is reported.
+     */
+    private synchronized void rebalanceResources() {
+        int count = engines.size();
+        if (count == 0) return;
+        
+        int threadsEach = Math.max(1, threadBudget / count);
+        int spareThreads = threadBudget > count ? threadBudget % count : 0;
+        int hashEach = Math.max(MIN_HASH_MB, hashBudgetMb / count);
+        if (count > threadBudget && !overcommitReported) {
+            System.err.println("Engine thread budget of " + threadBudget + " is overcommitted by "
+                + count + " running engines; each has the minimum of one thread");
+        }
+        overcommitReported = count > threadBudget;
+        
+        int index = 0;
+        for (StockfishEngine engine : engines.values()) {
+            int threads = threadsEach + (index < spareThreads ? 1 : 0);
+            engine.setResources(threads, hashEach);
+            index++;
+        }
+    }
+    
+    /**
+     * Change the resource budget shared by all engines and re-divide it
+     * 
+     * @param threads total search threads across all engines
+     * @param hashMb total hash memory in megabytes across all engines
+     */
+    public synchronized void setResourceBudget(int threads, int hashMb) {
+        this.threadBudget = Math.max(1, threads);
+        this.hashBudgetMb = Math.max(MIN_HASH_MB, hashMb);
+        rebalanceResources();
+    }
+    
+    public synchronized int getThreadBudget() {
+        return threadBudget;
+    }
+    
+    public synchronized int getHashBudgetMb() {
+        return hashBudgetMb;
+    }
+    
+    /**
+     * Get the current resource allocation of every running engine
+     * 
+     * @return allocations keyed by engine purpose, oldest engine first
+     */
+    public synchronized Map<String, EngineAllocation> getAllocation() {
+        Map<String, EngineAllocation> allocation = new LinkedHashMap<>();
+        for (Map.Entry<String, StockfishEngine> entry : engines.entrySet()) {
+            StockfishEngine engine = entry.getValue();
+            allocation.put(entry.getKey(), new EngineAllocation(entry.getKey(), engine.getThreads(), engine.getHashMb()));
+        }
+        return Collections.unmodifiableMap(allocation);
+    }
+    
+    /**
+     * Get the incidents (crashes, restarts) reported by the engine supervisor
+     * 
+     * @return the recent incident history, oldest first
+     */
+    public List<EngineSupervisor.Incident> getEngineIncidents() {
+        return supervisor.getIncidents();
+    }
+    
+    /**
+     * Get the supervisor that restarts crashed engines
+     * 
+     * @return the engine supervisor
+     */
+    public EngineSupervisor getSupervisor() {
+        return supervisor;
+    }
+    
+    /**
+     * Open a logical engine session for a client such as a game window or training board.
+     * Sessions share a small number of engine processes (chess.engine.sharedProcesses,
+     * default 1), so opening more windows does not start more processes.
+     * 
+     * @param purpose what the session is for, e.g. "match" or "training"
+     * @return the session, or null if no engine is available
+     */
+    public EngineSession openSession(String purpose) {
+        if (!isStockfishAvailable()) {
+            return null;
+        }
+        return sessions.openSession(purpose);
+    }
+    
+    /**
+     * Get the multiplexer that shares engine processes among sessions
+     * 
+     * @return the session multiplexer
+     */
+    public EngineSessionMultiplexer getSessionMultiplexer() {
+        return sessions;
+    }
+    
     /**
      * Close a specific engine
      * 
@@ -192,6 +460,7 @@ public class StockfishManager {
         StockfishEngine engine = engines.remove(purpose);
         if (engine != null) {
             engine.close();
+            rebalanceResources();
         }
     }
     
@@ -211,7 +480,7 @@ public class StockfishManager {
      * @return true if Stockfish is available, false otherwise
      */
     public boolean isStockfishAvailable() {
-        return stockfishPath != null && new File(stockfishPath).exists();
+        return engineLauncher != null || (stockfishPath != null && new File(stockfishPath).exists());
     }
     
     /**
@@ -227,6 +496,8 @@ public class StockfishManager {
      * Clean up resources when the application shuts down
      */
     public void shutdown() {
+        sessions.shutdown();
         closeAllEngines();
+        supervisor.shutdown();
     }
 } 
\ No newline at end of file
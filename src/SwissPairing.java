@@ -0,0 +1,474 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pairs the next round of a Swiss tournament by the Dutch system, from the
+ * results of the rounds already played.
+ *
+ * Players are ranked by score, then rating, and split into score brackets.
+ * Players who cannot be paired in their bracket float down to the next
+ * one and are paired first there. Within a bracket, the top half meets
+ * the bottom half in order (1 v n/2+1, 2 v n/2+2, ...), moving down the
+ * bottom half past opponents already met or whose colours clash. Nobody
+ * meets the same opponent twice, nobody gets a third game in a row with
+ * one colour or a colour balance beyond two, and nobody floats the same
+ * way two rounds running if another player can. With an odd number of
+ * players, the lowest-ranked player without a bye gets one, worth a win.
+ *
+ * The previous results are read once into arrays indexed by player, and
+ * the games played into a hash set, so a round of 10,000 players pairs in
+ * a fraction of a second.
+ */
+public class SwissPairing {
+    // How far down the bottom half to look for an opponent who also gets their colour
+    private static final int COLOUR_WINDOW = 8;
+
+    /**
+     * A round's pairings: White and Black for each board, best first, and the player with the bye
+     */
+    public static class Pairing {
+        private final List<Player[]> pairs;
+        private final Player bye;
+
+        public Pairing(List<Player[]> pairs, Player bye) {
+            this.pairs = pairs;
+            this.bye = bye;
+        }
+
+        /**
+         * Get the boards, each as {White, Black}
+         */
+        public List<Player[]> getPairs() {
+            return pairs;
+        }
+
+        /**
+         * Get the player with the bye, or null if everyone plays
+         */
+        public Player getBye() {
+            return bye;
+        }
+    }
+
+    /**
+     * What the previous rounds say about each player, indexed by position in the player list
+     */
+    static class History {
+        final Player[] players;
+        final int[] rating;
+        // In half points, so a draw is 1 and a win or bye 2
+        final int[] score;
+        // White games minus Black games
+        final int[] colourBalance;
+        // +1 White, -1 Black, 0 no game; for the last round and the one before
+        final int[] lastColour;
+        final int[] previousColour;
+        // +1 floated up last round, -1 floated down (or had the bye), 0 neither
+        final int[] lastFloat;
+        final boolean[] hadBye;
+        private final Set<Long> played = new HashSet<>();
+
+        History(List<Player> playerList, List<Round> rounds) {
+            int n = playerList.size();
+            players = playerList.toArray(new Player[0]);
+            rating = new int[n];
+            score = new int[n];
+            colourBalance = new int[n];
+            lastColour = new int[n];
+            previousColour = new int[n];
+            lastFloat = new int[n];
+            hadBye = new boolean[n];
+            Map<String, Integer> index = new HashMap<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                index.put(players[i].getUsername(), i);
+                rating[i] = players[i].getRating();
+            }
+
+            for (Round round : rounds) {
+                int[] before = score.clone();
+                Arrays.fill(lastFloat, 0);
+                System.arraycopy(lastColour, 0, previousColour, 0, n);
+                Arrays.fill(lastColour, 0);
+                for (Match match : round.getMatches()) {
+                    Integer white = index.get(match.getPlayer1().getUsername());
+                    Integer black = index.get(match.getPlayer2().getUsername());
+                    if (white == null || black == null) continue;
+                    played.add(key(white, black));
+                    colourBalance[white]++;
+                    colourBalance[black]--;
+                    lastColour[white] = 1;
+                    lastColour[black] = -1;
+                    if (before[white] != before[black]) {
+                        lastFloat[white] = before[white] > before[black] ? -1 : 1;
+                        lastFloat[black] = -lastFloat[white];
+                    }
+                    Player winner = match.getWinner();
+                    if (winner != null) {
+                        score[winner == match.getPlayer1() ? white : black] += 2;
+                    } else if (match.getStatus() != null && match.getStatus().contains("Draw")) {
+                        score[white]++;
+                        score[black]++;
+                    }
+                }
+                Player bye = round.getBye();
+                Integer byePlayer = bye == null ? null : index.get(bye.getUsername());
+                if (byePlayer != null) {
+                    hadBye[byePlayer] = true;
+                    score[byePlayer] += 2;
+                    lastFloat[byePlayer] = -1;
+                }
+            }
+        }
+
+        boolean played(int a, int b) {
+            return played.contains(key(a, b));
+        }
+
+        /**
+         * Get the colour a player should have next: the sign is the colour (+1 White), the size how
+         * strongly: 3 absolute, 2 strong, 1 mild, 0 none
+         */
+        int preference(int p) {
+            int balance = colourBalance[p];
+            if (balance < -1 || (lastColour[p] == -1 && previousColour[p] == -1)) return 3;
+            if (balance > 1 || (lastColour[p] == 1 && previousColour[p] == 1)) return -3;
+            if (balance != 0) return balance < 0 ? 2 : -2;
+            return -lastColour[p];
+        }
+
+        /**
+         * Whether two players may meet: not a rematch, and not both needing the same colour
+         */
+        boolean compatible(int a, int b) {
+            if (played(a, b)) return false;
+            int pa = preference(a);
+            int pb = preference(b);
+            return !(Math.abs(pa) == 3 && pa == pb);
+        }
+
+        /**
+         * Whether both players get the colour they would like
+         */
+        boolean coloursFit(int a, int b) {
+            int pa = preference(a);
+            int pb = preference(b);
+            return pa == 0 || pb == 0 || Integer.signum(pa) != Integer.signum(pb);
+        }
+
+        /**
+         * Give colours to two players, the first ranked higher; returns {White, Black}. When neither
+         * has a preference, as in the first round, the higher player has White on odd boards.
+         */
+        int[] colours(int higher, int lower, int board) {
+            int ph = preference(higher);
+            int pl = preference(lower);
+            boolean higherWhite;
+            if (Integer.signum(ph) != Integer.signum(pl)) {
+                higherWhite = ph != 0 ? ph > 0 : pl < 0;
+            } else if (ph == 0) {
+                higherWhite = board % 2 == 0;
+            } else if (Math.abs(ph) != Math.abs(pl)) {
+                // The stronger preference wins
+                higherWhite = (Math.abs(ph) > Math.abs(pl)) == (ph > 0);
+            } else if (lastColour[higher] != lastColour[lower]) {
+                // Both alternate from the last round in which their colours differed
+                higherWhite = lastColour[higher] < 0;
+            } else {
+                higherWhite = ph > 0;
+            }
+            return higherWhite ? new int[] {higher, lower} : new int[] {lower, higher};
+        }
+
+        private static long key(int a, int b) {
+            return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+        }
+    }
+
+    private final History history;
+    private final int[] order;
+    private final int[] rank;
+
+    /**
+     * Prepare to pair the next round
+     *
+     * @param players the tournament's players
+     * @param rounds the rounds already scheduled, with whatever results they have
+     */
+    public SwissPairing(List<Player> players, List<Round> rounds) {
+        this(new History(players, rounds));
+    }
+
+    SwissPairing(History history) {
+        this.history = history;
+        order = ranking(history);
+        rank = ranks(order);
+    }
+
+    /**
+     * Rank players by score, then rating, then username; returns player indexes, best first
+     */
+    static int[] ranking(History history) {
+        Integer[] order = new Integer[history.players.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> {
+            if (history.score[a] != history.score[b]) return Integer.compare(history.score[b], history.score[a]);
+            if (history.rating[a] != history.rating[b]) return Integer.compare(history.rating[b], history.rating[a]);
+            return history.players[a].getUsername().compareTo(history.players[b].getUsername());
+        });
+        int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i++) result[i] = order[i];
+        return result;
+    }
+
+    /**
+     * Invert a ranking: each player's rank, 0 for the best
+     */
+    static int[] ranks(int[] order) {
+        int[] rank = new int[order.length];
+        for (int r = 0; r < order.length; r++) {
+            rank[order[r]] = r;
+        }
+        return rank;
+    }
+
+    /**
+     * Choose the bye for an odd number of players: the lowest-ranked player who has not had one
+     *
+     * @return the player's index, or -1 if the number of players is even
+     */
+    static int chooseBye(History history, int[] order) {
+        if (order.length % 2 == 0) return -1;
+        for (int r = order.length - 1; r >= 0; r--) {
+            if (!history.hadBye[order[r]]) return order[r];
+        }
+        return order[order.length - 1];
+    }
+
+    /**
+     * Turn pairs of player indexes into boards, ordered by the better player's rank, with colours
+     */
+    static Pairing toPairing(History history, int[] rank, List<int[]> pairs, int bye) {
+        pairs.sort((x, y) -> Integer.compare(Math.min(rank[x[0]], rank[x[1]]), Math.min(rank[y[0]], rank[y[1]])));
+        List<Player[]> boards = new ArrayList<>(pairs.size());
+        for (int[] pair : pairs) {
+            boolean firstHigher = rank[pair[0]] < rank[pair[1]];
+            int board = boards.size();
+            int[] colours = firstHigher ? history.colours(pair[0], pair[1], board) : history.colours(pair[1], pair[0], board);
+            boards.add(new Player[] {history.players[colours[0]], history.players[colours[1]]});
+        }
+        return new Pairing(boards, bye < 0 ? null : history.players[bye]);
+    }
+
+    /**
+     * Pair the next round
+     */
+    public Pairing pairNextRound() {
+        int bye = chooseBye(history, order);
+
+        // Score brackets, best first, each in rank order
+        List<List<Integer>> brackets = new ArrayList<>();
+        int bracketScore = Integer.MIN_VALUE;
+        for (int p : order) {
+            if (p == bye) continue;
+            if (history.score[p] != bracketScore) {
+                brackets.add(new ArrayList<>());
+                bracketScore = history.score[p];
+            }
+            brackets.get(brackets.size() - 1).add(p);
+        }
+
+        List<int[]> pairs = new ArrayList<>(order.length / 2);
+        List<Integer> floaters = new ArrayList<>();
+        for (int b = 0; b < brackets.size(); b++) {
+            floaters = pairBracket(floaters, brackets.get(b), b == brackets.size() - 1, pairs);
+        }
+        if (!floaters.isEmpty()) {
+            repair(floaters, pairs);
+        }
+        return toPairing(history, rank, pairs, bye);
+    }
+
+    /**
+     * Pair a score bracket together with the players floating down into it
+     *
+     * @return the players left for the next bracket, in rank order
+     */
+    private List<Integer> pairBracket(List<Integer> floaters, List<Integer> residents, boolean last, List<int[]> pairs) {
+        boolean[] used = new boolean[residents.size()];
+        List<Integer> left = new ArrayList<>();
+
+        // Players floating down meet the best residents they can, preferring those who did not float up last round
+        for (int floater : floaters) {
+            int match = -1;
+            for (int i = 0; i < residents.size(); i++) {
+                int resident = residents.get(i);
+                if (used[i] || !history.compatible(floater, resident)) continue;
+                if (history.lastFloat[resident] != 1) {
+                    match = i;
+                    break;
+                }
+                if (match < 0) match = i;
+            }
+            if (match < 0) {
+                left.add(floater);
+            } else {
+                used[match] = true;
+                pairs.add(new int[] {floater, residents.get(match)});
+            }
+        }
+
+        List<Integer> remaining = new ArrayList<>(residents.size());
+        for (int i = 0; i < residents.size(); i++) {
+            if (!used[i]) remaining.add(residents.get(i));
+        }
+        // An odd bracket sends its lowest player down, unless that player floated down last round
+        int downFloater = -1;
+        if (remaining.size() % 2 == 1 && !last) {
+            downFloater = remaining.size() - 1;
+            for (int i = remaining.size() - 1; i >= 0; i--) {
+                if (history.lastFloat[remaining.get(i)] != -1) {
+                    downFloater = i;
+                    break;
+                }
+            }
+            left.add(remaining.remove(downFloater));
+        }
+
+        left.addAll(pairHalves(remaining, pairs));
+        left.sort((a, b) -> Integer.compare(rank[a], rank[b]));
+        return left;
+    }
+
+    /**
+     * Pair the top half of a bracket with the bottom half in order, moving down the bottom half
+     * past opponents already met or of the same colour preference
+     *
+     * @return the players who could not be paired
+     */
+    private List<Integer> pairHalves(List<Integer> players, List<int[]> pairs) {
+        int half = players.size() / 2;
+        int bottom = players.size() - half;
+        // next[j] leads to the first unpaired bottom-half player at or after j; bottom means none
+        int[] next = new int[bottom + 1];
+        for (int j = 0; j <= bottom; j++) next[j] = j;
+
+        List<Integer> unpaired = new ArrayList<>();
+        for (int i = 0; i < half; i++) {
+            int player = players.get(i);
+            int opponent = findOpponent(player, players, half, next, i);
+            if (opponent < 0) {
+                opponent = findOpponent(player, players, half, next, 0);
+            }
+            if (opponent < 0) {
+                unpaired.add(player);
+            } else {
+                next[opponent] = opponent + 1;
+                pairs.add(new int[] {player, players.get(half + opponent)});
+            }
+        }
+        for (int j = find(next, 0); j < bottom; j = find(next, j + 1)) {
+            unpaired.add(players.get(half + j));
+        }
+
+        // Pair the leftovers among themselves where they can
+        List<Integer> left = new ArrayList<>();
+        boolean[] done = new boolean[unpaired.size()];
+        for (int a = 0; a < unpaired.size(); a++) {
+            if (done[a]) continue;
+            for (int b = a + 1; b < unpaired.size(); b++) {
+                if (!done[b] && history.compatible(unpaired.get(a), unpaired.get(b))) {
+                    done[a] = done[b] = true;
+                    pairs.add(new int[] {unpaired.get(a), unpaired.get(b)});
+                    break;
+                }
+            }
+            if (!done[a]) left.add(unpaired.get(a));
+        }
+        return left;
+    }
+
+    /**
+     * Find a bottom-half opponent from position start on: the first who may be met, or one a few
+     * places further on who also gets the colour they want
+     *
+     * @return the position in the bottom half, or -1
+     */
+    private int findOpponent(int player, List<Integer> players, int half, int[] next, int start) {
+        int bottom = next.length - 1;
+        int first = -1;
+        int looked = 0;
+        for (int j = find(next, start); j < bottom; j = find(next, j + 1)) {
+            int opponent = players.get(half + j);
+            if (!history.compatible(player, opponent)) continue;
+            if (history.coloursFit(player, opponent)) return j;
+            if (first < 0) first = j;
+            if (++looked >= COLOUR_WINDOW) break;
+        }
+        return first;
+    }
+
+    private static int find(int[] next, int j) {
+        int root = j;
+        while (next[root] != root) root = next[root];
+        while (next[j] != root) {
+            int up = next[j];
+            next[j] = root;
+            j = up;
+        }
+        return root;
+    }
+
+    /**
+     * Pair the players no bracket could take, breaking up pairs from the lowest brackets up if
+     * they have nobody left to meet; a rematch is the last resort
+     */
+    private void repair(List<Integer> left, List<int[]> pairs) {
+        List<Integer> waiting = new ArrayList<>(left);
+        while (waiting.size() >= 2) {
+            int player = waiting.remove(0);
+            int partner = -1;
+            for (int i = 0; i < waiting.size(); i++) {
+                if (history.compatible(player, waiting.get(i))) {
+                    partner = i;
+                    break;
+                }
+            }
+            if (partner >= 0) {
+                pairs.add(new int[] {player, waiting.remove(partner)});
+                continue;
+            }
+            if (swapIntoPair(player, waiting, pairs)) continue;
+            int other = waiting.remove(0);
+            System.err.println("No Swiss pairing without a rematch for " + history.players[player].getUsername()
+                    + " and " + history.players[other].getUsername());
+            pairs.add(new int[] {player, other});
+        }
+    }
+
+    /**
+     * Find a pair (a, b) and a waiting player q such that the player can meet a and q can meet b
+     */
+    private boolean swapIntoPair(int player, List<Integer> waiting, List<int[]> pairs) {
+        for (int p = pairs.size() - 1; p >= 0; p--) {
+            int[] pair = pairs.get(p);
+            for (int side = 0; side < 2; side++) {
+                int a = pair[side];
+                int b = pair[1 - side];
+                if (!history.compatible(player, a)) continue;
+                for (int i = 0; i < waiting.size(); i++) {
+                    if (history.compatible(waiting.get(i), b)) {
+                        pairs.set(p, new int[] {player, a});
+                        pairs.add(new int[] {waiting.remove(i), b});
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
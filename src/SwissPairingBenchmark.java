@@ -0,0 +1,92 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Plays a Swiss tournament of generated players with SwissPairing (or
+ * BlossomPairing, given "blossom" as the third argument), deciding
+ * each game at random by the Elo expectation, and times the pairing of
+ * every round. The pairings are checked as they are made: no rematches, at
+ * most one bye per player, no colour balance beyond two and no three games
+ * in a row with one colour.
+ *
+ * Run with: java -cp build SwissPairingBenchmark [players] [rounds] [dutch|blossom]
+ */
+public class SwissPairingBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10001;
+        int roundCount = args.length > 1 ? Integer.parseInt(args[1]) : 11;
+        boolean blossom = args.length > 2 && args[2].equals("blossom");
+
+        File directory = Files.createTempDirectory("swiss-pairing").toFile();
+        System.setProperty("chess.stats.file", new File(directory, "playerStats.txt").getPath());
+        Random random = new Random(42);
+        List<Player> players = new ArrayList<>();
+        for (int p = 0; p < count; p++) {
+            players.add(new Player("player" + p, 1000 + random.nextInt(1800), "XX"));
+        }
+
+        List<Round> rounds = new ArrayList<>();
+        Set<String> games = new HashSet<>();
+        Set<Player> byes = new HashSet<>();
+        Map<Player, String> colours = new HashMap<>();
+        int violations = 0;
+        double total = 0;
+        for (int r = 1; r <= roundCount; r++) {
+            long start = System.nanoTime();
+            SwissPairing.Pairing pairing = blossom ? new BlossomPairing(players, rounds).pairNextRound()
+                    : new SwissPairing(players, rounds).pairNextRound();
+            double millis = (System.nanoTime() - start) / 1e6;
+            total += millis;
+
+            Round round = new Round();
+            round.setRoundID(r);
+            round.schedulePairings(pairing);
+            rounds.add(round);
+
+            int floats = 0;
+            for (Match match : round.getMatches()) {
+                Player white = match.getPlayer1();
+                Player black = match.getPlayer2();
+                String a = white.getUsername();
+                String b = black.getUsername();
+                if (!games.add(a.compareTo(b) < 0 ? a + " " + b : b + " " + a)) violations++;
+                for (Player player : new Player[] {white, black}) {
+                    String history = colours.getOrDefault(player, "") + (player == white ? "W" : "B");
+                    colours.put(player, history);
+                    long balance = history.chars().filter(c -> c == 'W').count() * 2 - history.length();
+                    if (Math.abs(balance) > 2 || history.endsWith("WWW") || history.endsWith("BBB")) violations++;
+                }
+                if (white.getTotalPoints() != black.getTotalPoints()) floats++;
+
+                double expected = 1 / (1 + Math.pow(10, (black.getRating() - white.getRating()) / 400.0));
+                double roll = random.nextDouble();
+                if (roll < 0.3) {
+                    match.restoreResult(null, "Completed (Draw)");
+                    white.recordDraw();
+                    black.recordDraw();
+                } else {
+                    Player winner = (roll - 0.3) / 0.7 < expected ? white : black;
+                    match.restoreResult(winner, "Completed");
+                    winner.recordWin();
+                }
+            }
+            if (pairing.getBye() != null) {
+                if (!byes.add(pairing.getBye())) violations++;
+                pairing.getBye().recordWin();
+            }
+            System.out.printf("round %2d: paired %d boards in %7.1f ms, %d between different scores%n",
+                    r, round.getMatches().size(), millis, floats);
+        }
+        System.out.printf("%d players, %d rounds: %.1f ms per round, %d rule violations%n",
+                count, roundCount, total / roundCount, violations);
+    }
+}
@@ -0,0 +1,204 @@
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-JVM stand-in engine with configurable think-time distributions.
+ *
+ * It speaks enough UCI for StockfishEngine (uci, isready, setoption MultiPV,
+ * position, go with movetime/depth/searchmoves, go perft 1, quit) and emits
+ * a realistic stream of info lines before each bestmove, so benchmarks of
+ * StockfishManager, caching and scheduling run on machines without the real
+ * binary. Moves are picked at random among the legal moves of the position,
+ * so whole games can be played with it. Output is deterministic for a given seed.
+ */
+public class SyntheticUciEngine extends InProcessUciEngine {
+    private static final int DEFAULT_DEPTH = 12;
+
+    /**
+     * Distribution of the extra think time added to every search
+     */
+    public interface LatencyModel {
+        long sampleMillis(Random random);
+
+        static LatencyModel fixed(long millis) {
+            return random -> millis;
+        }
+
+        static LatencyModel uniform(long minMillis, long maxMillis) {
+            return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+        }
+
+        static LatencyModel exponential(double meanMillis) {
+            return random -> (long) (-meanMillis * Math.log(1 - random.nextDouble()));
+        }
+
+        static LatencyModel logNormal(double medianMillis, double sigma) {
+            return random -> (long) (medianMillis * Math.exp(sigma * random.nextGaussian()));
+        }
+
+        /**
+         * Parse a model from text such as "fixed:5", "uniform:5:50", "exponential:20" or "lognormal:20:0.5"
+         *
+         * @param spec the model description
+         * @return the model
+         * @throws IllegalArgumentException if the description is not understood
+         */
+        static LatencyModel parse(String spec) {
+            String[] parts = spec.trim().toLowerCase().split(":");
+            try {
+                switch (parts[0]) {
+                    case "fixed": return fixed(Long.parseLong(parts[1]));
+                    case "uniform": return uniform(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                    case "exponential": return exponential(Double.parseDouble(parts[1]));
+                    case "lognormal": return logNormal(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+                    default: break;
+                }
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                // fall through to the error below
+            }
+            throw new IllegalArgumentException("Unknown latency model: " + spec);
+        }
+    }
+
+    private static final AtomicLong launchCounter = new AtomicLong();
+
+    private final LatencyModel latency;
+    private final double moveTimeScale;
+    private final Random random;
+    private int multiPv = 1;
+    private Position position = Position.startPosition();
+
+    private SyntheticUciEngine(LatencyModel latency, double moveTimeScale, long seed) {
+        super("uci-synthetic");
+        this.latency = latency;
+        this.moveTimeScale = moveTimeScale;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Create a launcher for synthetic engines
+     *
+     * @param latency extra think time per search
+     * @param moveTimeScale how much of a requested movetime is actually spent (0 ignores movetime, 1 honours it)
+     * @param seed base seed; each launched engine derives its own seed from it
+     * @return a launcher starting a new synthetic engine for each process
+     */
+    public static EngineLauncher launcher(LatencyModel latency, double moveTimeScale, long seed) {
+        return () -> new SyntheticUciEngine(latency, moveTimeScale, seed + launchCounter.getAndIncrement()).start();
+    }
+
+    @Override
+    protected boolean handleCommand(String command, PrintWriter out) throws InterruptedException {
+        if (command.equals("uci")) {
+            out.println("id name Synthetic");
+            out.println("id author Chess Tournament Manager");
+            out.println("option name Threads type spin default 1 min 1 max 512");
+            out.println("option name Hash type spin default 16 min 1 max 33554432");
+            out.println("option name MultiPV type spin default 1 min 1 max 500");
+            out.println("option name Skill Level type spin default 20 min 0 max 20");
+            out.println("uciok");
+        } else if (command.equals("isready")) {
+            out.println("readyok");
+        } else if (command.equals("quit")) {
+            return false;
+        } else if (command.startsWith("setoption name MultiPV value ")) {
+            multiPv = Math.max(1, parseIntOr(command.substring("setoption name MultiPV value ".length()), 1));
+        } else if (command.startsWith("position ")) {
+            setPosition(command);
+        } else if (command.startsWith("go perft")) {
+            List<String> moves = position.legalMoves();
+            for (String move : moves) {
+                out.println(move + ": 1");
+            }
+            out.println();
+            out.println("Nodes searched: " + moves.size());
+        } else if (command.startsWith("go")) {
+            search(command, out);
+        }
+        // ucinewgame, stop and other setoptions need no reply
+        return true;
+    }
+
+    /**
+     * Handle "position startpos|fen &lt;fen&gt; [moves ...]"
+     */
+    private void setPosition(String command) {
+        int movesAt = command.indexOf(" moves ");
+        String setup = movesAt < 0 ? command : command.substring(0, movesAt);
+        try {
+            position = setup.startsWith("position fen ")
+                    ? Position.fromFen(setup.substring("position fen ".length()))
+                    : Position.startPosition();
+            if (movesAt >= 0) {
+                for (String move : command.substring(movesAt + 7).trim().split(" ")) {
+                    position = position.play(move);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Synthetic engine ignoring bad position: " + e.getMessage());
+            position = Position.startPosition();
+        }
+    }
+
+    private void search(String command, PrintWriter out) throws InterruptedException {
+        String[] tokens = command.split(" ");
+        long moveTime = -1;
+        int depth = DEFAULT_DEPTH;
+        List<String> candidates = position.legalMoves();
+        for (int i = 1; i < tokens.length; i++) {
+            if (tokens[i].equals("movetime") && i + 1 < tokens.length) {
+                moveTime = parseIntOr(tokens[++i], 0);
+            } else if (tokens[i].equals("depth") && i + 1 < tokens.length) {
+                depth = Math.max(1, parseIntOr(tokens[++i], DEFAULT_DEPTH));
+            } else if (tokens[i].equals("searchmoves")) {
+                candidates = new ArrayList<>(Arrays.asList(tokens).subList(i + 1, tokens.length));
+                break;
+            }
+        }
+
+        long thinkTime = latency.sampleMillis(random);
+        if (moveTime > 0) {
+            thinkTime += (long) (moveTime * moveTimeScale);
+        }
+
+        if (candidates.isEmpty()) {
+            // Checkmate or stalemate
+            pause(latency.sampleMillis(random));
+            out.println("info depth 0 score " + (position.isInCheck() ? "mate 0" : "cp 0"));
+            out.println("bestmove (none)");
+            return;
+        }
+
+        int lines = Math.min(multiPv, candidates.size());
+        List<String> ranked = new ArrayList<>(candidates);
+        Collections.shuffle(ranked, random);
+        int baseScore = random.nextInt(80) - 20;
+
+        long perDepth = thinkTime / depth;
+        long nodes = 0;
+        for (int d = 1; d <= depth; d++) {
+            pause(perDepth);
+            nodes += 1000L * d * d;
+            for (int k = 0; k < lines; k++) {
+                out.println("info depth " + d + " seldepth " + (d + 4) + " multipv " + (k + 1)
+                        + " score cp " + (baseScore - 15 * k) + " nodes " + nodes
+                        + " nps " + (nodes * 1000 / Math.max(1, perDepth * d))
+                        + " time " + (perDepth * d) + " pv " + ranked.get(k));
+            }
+        }
+        out.println("bestmove " + ranked.get(0));
+    }
+
+    private static int parseIntOr(String text, int fallback) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -2,6 +2,7 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Map;
 
 public class Tournament {
     private int tournamentID;
@@ -64,7 +65,7 @@ public String getLeaderboard() {
         
         // Initialize first round
         currentRound = 0;
-        scheduleRounds();
+        scheduleNextRound();
         
         // Notify all players
         for (Player player : players) {
@@ -91,65 +92,37 @@ public String getLeaderboard() {
         return true;
     }
 
-    public void scheduleRounds() {
-        // Swiss tournament pairing
-        Collections.sort(players, Comparator.comparingInt(Player::getRating).reversed());
-
-        for (int i = 0; i < maxRounds; i++) {
-            Round round = new Round();
-            round.setRoundID(i + 1);
-
-            List<Player> pairedPlayers = new ArrayList<>();
-            List<Player> availablePlayers = new ArrayList<>(players);
-
-            while (availablePlayers.size() >= 2) {
-                Player player1 = availablePlayers.remove(0);
-                Player player2 = findBestOpponent(player1, availablePlayers, pairedPlayers);
-
-                if (player2 == null) {
-                    // No suitable opponent found, give bye to player1
-                    System.out.println("No suitable opponent found for " + player1.getName() + ", giving bye.");
-                    break; // or handle bye situation differently
-                }
-
-                availablePlayers.remove(player2);
-                pairedPlayers.add(player1);
-                pairedPlayers.add(player2);
-
-                // In real system would create matches between player1 and player2
-                round.scheduleMatches(players);
-            }
-
-            rounds.add(round);
+    /**
+     * Pair the next round by the Dutch Swiss system, from the results of the rounds so far.
+     * With -Dchess.pairing=blossom the round is paired as a maximum-weight matching instead.
+     */
+    public void scheduleNextRound() {
+        if (rounds.size() >= maxRounds) return;
+        Round round = new Round();
+        round.setRoundID(rounds.size() + 1);
+        if ("blossom".equals(System.getProperty("chess.pairing"))) {
+            round.schedulePairings(new BlossomPairing(players, rounds).pairNextRound());
+        } else {
+            round.schedulePairings(new SwissPairing(players, rounds).pairNextRound());
         }
-    }
-
-    private Player findBestOpponent(Player player1, List<Player> availablePlayers, List<Player> pairedPlayers) {
-        // Find the best opponent based on rating and previous opponents
-        Player bestOpponent = null;
-        int bestRatingDifference = Integer.MAX_VALUE;
-
-        for (Player player2 : availablePlayers) {
-            if (pairedPlayers.contains(player2)) {
-                continue; // Skip already paired players
-            }
-
-            int ratingDifference = Math.abs(player1.getRating() - player2.getRating());
-
-            if (ratingDifference < bestRatingDifference) {
-                bestOpponent = player2;
-                bestRatingDifference = ratingDifference;
-            }
+        for (Match match : round.getMatches()) {
+            match.setTournamentId(tournamentID);
         }
-
-        return bestOpponent;
+        rounds.add(round);
     }
 
+    /**
+     * Start the next round, pairing it first from the results so far if it has not been paired
+     */
     public boolean advanceRound() {
+        if (!status.equals("in progress")) return false;
+        if (currentRound == rounds.size()) {
+            scheduleNextRound();
+        }
         if (currentRound >= rounds.size()) return false;
         rounds.get(currentRound).startRound();
         currentRound++;
-        if (currentRound == rounds.size()) {
+        if (currentRound >= maxRounds) {
             endTournament();
         }
         return true;
@@ -169,6 +142,13 @@ public String getLeaderboard() {
         }
     }
 
+    /**
+     * Get the players' points from the tournament's finished matches, best first
+     */
+    public List<Map.Entry<String, Float>> getStandings() {
+        return MatchEventLog.getInstance().getStandings(tournamentID);
+    }
+
     public String getTournamentDetails() {
         return String.format("%s (ID: %d)\nLocation: %s\nDates: %s to %s\nTime Control: %s\nStatus: %s\nPlayers: %d\nRounds: %d/%d",
                 name, tournamentID, location, startDate, endDate, timeControl, status, players.size(), currentRound, maxRounds);
@@ -216,5 +196,28 @@ public String getLeaderboard() {
     public String getStatus() {
         return status;
     }
+
+    public int getMaxRounds() {
+        return maxRounds;
+    }
+
+    public List<Round> getRounds() {
+        return new ArrayList<>(rounds);
+    }
+
+    /**
+     * Add a round read back from storage
+     */
+    void restoreRound(Round round) {
+        rounds.add(round);
+    }
+
+    /**
+     * Set the status and round read back from storage, once the players and rounds are in
+     */
+    void restoreState(String status, int currentRound) {
+        this.status = status;
+        this.currentRound = currentRound;
+    }
 }
 
@@ -135,6 +135,7 @@ public class TournamentGUI extends JFrame implements ActionListener {
         if (e.getSource() == startButton) {
             try {
                 tournament.startTournament();
+                TournamentStore.getInstance().save(tournament);
                 updateDetails();
             } catch (IllegalStateException ex) {
                 JOptionPane.showMessageDialog(this, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
@@ -142,6 +143,7 @@ public class TournamentGUI extends JFrame implements ActionListener {
         } else if (e.getSource() == advanceButton) {
             boolean advanced = tournament.advanceRound();
             if (advanced) {
+                TournamentStore.getInstance().save(tournament);
                 System.out.println("Advanced to next round");
             } else {
                 System.out.println("Cannot advance round");
@@ -189,7 +191,9 @@ public class TournamentGUI extends JFrame implements ActionListener {
         try {
             int rating = Integer.parseInt(ratingStr);
             Player newPlayer = new Player(username, rating, country);
-            tournament.addPlayer(newPlayer);
+            if (tournament.addPlayer(newPlayer)) {
+                TournamentStore.getInstance().save(tournament);
+            }
             JOptionPane.showMessageDialog(this, "Player created successfully!", "Info", JOptionPane.INFORMATION_MESSAGE);
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Invalid rating.", "Error", JOptionPane.ERROR_MESSAGE);
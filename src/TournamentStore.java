@@ -0,0 +1,677 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Tournaments with their players, rounds and match results, stored in an
+ * append-only log, tournaments.log (or the file named by
+ * -Dchess.tournaments.file).
+ *
+ * Saving a tournament appends only what changed since it was last saved:
+ * a new player, a new status, a round's matches once they have results.
+ * So saving after every round costs a few lines, however long the
+ * tournament's history. The log is read once into memory and indexed by
+ * status, by start date and by player. When most of the log is history
+ * that has been superseded, it is rewritten with only the current state.
+ *
+ * Like UserDirectory, writers take the file's DataFileLock and first read
+ * whatever other instances appended, so tournament IDs stay unique.
+ * Readers take no lock.
+ *
+ * Log format, one tab-separated record per line after a header line
+ * ("# tournaments generation first-free-id"):
+ *   T id name location startDate timeControl maxRounds   (created or edited)
+ *   P id username name country rating userId             (player joined)
+ *   S id status currentRound                             (status changed)
+ *   R id round status bye                                (round status or bye changed)
+ *   M id round matchId white black timeControl winner status  (match scheduled or finished)
+ *   X id                                                 (removed)
+ */
+public class TournamentStore {
+    private static final String HEADER_PREFIX = "# tournaments ";
+    private static final int COMPACT_MIN_RECORDS = 1000;
+    private static final String NONE = "-";
+
+    private static TournamentStore instance;
+
+    /**
+     * A match as last stored
+     */
+    private static class MatchEntry {
+        final int matchId;
+        final String white;
+        final String black;
+        final String timeControl;
+        final String winner;
+        final String status;
+
+        MatchEntry(int matchId, String white, String black, String timeControl, String winner, String status) {
+            this.matchId = matchId;
+            this.white = white;
+            this.black = black;
+            this.timeControl = timeControl;
+            this.winner = winner;
+            this.status = status;
+        }
+    }
+
+    /**
+     * A round as last stored
+     */
+    private static class RoundEntry {
+        String status = "scheduled";
+        String bye = NONE;
+        final List<MatchEntry> matches = new ArrayList<>();
+    }
+
+    /**
+     * A player as last stored
+     */
+    private static class PlayerEntry {
+        final String username;
+        final String name;
+        final String country;
+        final int rating;
+        final int userId;
+
+        PlayerEntry(String username, String name, String country, int rating, int userId) {
+            this.username = username;
+            this.name = name;
+            this.country = country;
+            this.rating = rating;
+            this.userId = userId;
+        }
+    }
+
+    /**
+     * A tournament as last stored
+     */
+    private static class TournamentRecord {
+        final int id;
+        String name;
+        String location;
+        String startDate;
+        String timeControl;
+        int maxRounds;
+        String status = "upcoming";
+        int currentRound;
+        final Map<String, PlayerEntry> players = new LinkedHashMap<>();
+        // Round and match records, most of the log, left unparsed until the rounds are asked for:
+        // runs of whole lines in the buffers they were read into
+        private final List<byte[]> unparsedBuffers = new ArrayList<>();
+        private final List<int[]> unparsedRanges = new ArrayList<>();
+        private final Map<Integer, RoundEntry> rounds = new TreeMap<>();
+
+        TournamentRecord(int id) {
+            this.id = id;
+        }
+
+        void addRoundRecord(byte[] buffer, int start, int end) {
+            int last = unparsedRanges.size() - 1;
+            if (last >= 0 && unparsedBuffers.get(last) == buffer && unparsedRanges.get(last)[1] == start) {
+                unparsedRanges.get(last)[1] = end;
+            } else {
+                unparsedBuffers.add(buffer);
+                unparsedRanges.add(new int[] {start, end});
+            }
+        }
+
+        /**
+         * Get the rounds, parsing the round and match records read since the last call
+         */
+        Map<Integer, RoundEntry> rounds() {
+            for (int i = 0; i < unparsedRanges.size(); i++) {
+                int[] range = unparsedRanges.get(i);
+                String text = new String(unparsedBuffers.get(i), range[0], range[1] - range[0], StandardCharsets.UTF_8);
+                for (String line : text.split("\n")) {
+                    parseRoundRecord(line);
+                }
+            }
+            unparsedBuffers.clear();
+            unparsedRanges.clear();
+            return rounds;
+        }
+
+        private void parseRoundRecord(String line) {
+            try {
+                String[] parts = line.split("\t", -1);
+                RoundEntry round = rounds.computeIfAbsent(Integer.parseInt(parts[2]), n -> new RoundEntry());
+                if (parts[0].equals("R")) {
+                    round.status = parts[3];
+                    // Records written before byes were stored have no bye field
+                    round.bye = parts.length > 4 ? parts[4] : NONE;
+                } else {
+                    replaceMatch(round.matches, new MatchEntry(Integer.parseInt(parts[3]), parts[4], parts[5],
+                            parts[6], parts[7], parts[8]));
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Ignoring damaged tournament record: " + line);
+            }
+        }
+
+        int liveRecords() {
+            int records = 2 + players.size();
+            for (RoundEntry round : rounds().values()) {
+                records += 1 + round.matches.size();
+            }
+            return records;
+        }
+    }
+
+    private final File file;
+    private final Map<Integer, TournamentRecord> records = new HashMap<>();
+    private final Map<String, Set<Integer>> byStatus = new HashMap<>();
+    private final TreeMap<String, Set<Integer>> byStartDate = new TreeMap<>();
+    private final Map<String, Set<Integer>> byPlayer = new HashMap<>();
+    private String generation;
+    private long indexedLength;
+    private int logRecords;
+    private int nextId = 1;
+
+    public TournamentStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Get the store for the application's tournaments.log, or the file named by -Dchess.tournaments.file
+     */
+    public static synchronized TournamentStore getInstance() {
+        if (instance == null) {
+            instance = new TournamentStore(new File(System.getProperty("chess.tournaments.file", "tournaments.log")));
+        }
+        return instance;
+    }
+
+    /**
+     * Create a tournament with the next free ID and store it
+     *
+     * @return the new tournament, or null if it could not be stored
+     */
+    public Tournament create(String name, String location, String startDate, String timeControl, int maxRounds) {
+        try {
+            return DataFileLock.withLock(file, () -> {
+                synchronized (this) {
+                    catchUp();
+                    Tournament tournament = new Tournament(nextId, name, location, startDate, timeControl, maxRounds);
+                    List<String> lines = new ArrayList<>();
+                    describeChanges(tournament, null, lines);
+                    write(lines);
+                    return tournament;
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Error saving tournament: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Store whatever changed in the tournament since it was last saved: details, new players,
+     * status, and rounds whose status or match results changed
+     *
+     * @return false if the changes could not be stored
+     */
+    public boolean save(Tournament tournament) {
+        try {
+            return DataFileLock.withLock(file, () -> {
+                synchronized (this) {
+                    catchUp();
+                    List<String> lines = new ArrayList<>();
+                    describeChanges(tournament, records.get(tournament.getTournamentID()), lines);
+                    write(lines);
+                    return true;
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Error saving tournament: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Remove a tournament
+     *
+     * @return false if there is no such tournament or it could not be removed
+     */
+    public boolean remove(int tournamentId) {
+        try {
+            return DataFileLock.withLock(file, () -> {
+                synchronized (this) {
+                    catchUp();
+                    if (!records.containsKey(tournamentId)) return false;
+                    write(Collections.singletonList("X\t" + tournamentId));
+                    return true;
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Error removing tournament: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Get every stored tournament, ordered by ID
+     */
+    public synchronized List<Tournament> loadAll() {
+        refresh();
+        return toTournaments(records.keySet());
+    }
+
+    /**
+     * Get the tournaments that are upcoming or in progress, ordered by ID. Finished tournaments,
+     * usually most of the history, are not built.
+     */
+    public synchronized List<Tournament> loadActive() {
+        refresh();
+        Set<Integer> ids = new TreeSet<>(byStatus.getOrDefault("upcoming", Collections.emptySet()));
+        ids.addAll(byStatus.getOrDefault("in progress", Collections.emptySet()));
+        return toTournaments(ids);
+    }
+
+    /**
+     * Get a tournament by ID
+     *
+     * @return the tournament, or null if there is none
+     */
+    public synchronized Tournament get(int tournamentId) {
+        refresh();
+        TournamentRecord record = records.get(tournamentId);
+        return record == null ? null : toTournament(record);
+    }
+
+    /**
+     * Get the tournaments with the given status ("upcoming", "in progress" or "completed")
+     */
+    public synchronized List<Tournament> findByStatus(String status) {
+        refresh();
+        return toTournaments(byStatus.getOrDefault(status, Collections.emptySet()));
+    }
+
+    /**
+     * Get the tournaments starting between two dates (yyyy-MM-dd), both included
+     */
+    public synchronized List<Tournament> findByStartDate(String from, String to) {
+        refresh();
+        Set<Integer> ids = new TreeSet<>();
+        for (Set<Integer> sameDay : byStartDate.subMap(from, true, to, true).values()) {
+            ids.addAll(sameDay);
+        }
+        return toTournaments(ids);
+    }
+
+    /**
+     * Get the tournaments a player has joined
+     */
+    public synchronized List<Tournament> findByPlayer(String username) {
+        refresh();
+        return toTournaments(byPlayer.getOrDefault(username, Collections.emptySet()));
+    }
+
+    public synchronized int size() {
+        refresh();
+        return records.size();
+    }
+
+    private void refresh() {
+        try {
+            catchUp();
+        } catch (IOException e) {
+            System.err.println("Error reading tournaments: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compare the tournament with its stored record and describe the differences as log records
+     */
+    private static void describeChanges(Tournament tournament, TournamentRecord stored, List<String> lines) {
+        int id = tournament.getTournamentID();
+        if (stored == null || !stored.name.equals(clean(tournament.getName()))
+                || !stored.location.equals(clean(tournament.getLocation()))
+                || !stored.startDate.equals(clean(tournament.getStartDate()))
+                || !stored.timeControl.equals(clean(tournament.getTimeControl()))
+                || stored.maxRounds != tournament.getMaxRounds()) {
+            lines.add(join("T", id, tournament.getName(), tournament.getLocation(), tournament.getStartDate(),
+                    tournament.getTimeControl(), tournament.getMaxRounds()));
+        }
+        for (Player player : tournament.getPlayers()) {
+            if (stored == null || !stored.players.containsKey(clean(player.getUsername()))) {
+                lines.add(join("P", id, player.getUsername(), player.getName(), player.getCountry(),
+                        player.getRating(), player.getID()));
+            }
+        }
+        if (stored == null ? !tournament.getStatus().equals("upcoming") || tournament.getCurrentRound() != 0
+                : !stored.status.equals(tournament.getStatus()) || stored.currentRound != tournament.getCurrentRound()) {
+            lines.add(join("S", id, tournament.getStatus(), tournament.getCurrentRound()));
+        }
+        for (Round round : tournament.getRounds()) {
+            RoundEntry storedRound = stored == null ? null : stored.rounds().get(round.getRoundID());
+            String bye = round.getBye() == null ? NONE : round.getBye().getUsername();
+            if (storedRound == null || !storedRound.status.equals(round.getStatus())
+                    || !storedRound.bye.equals(clean(bye))) {
+                lines.add(join("R", id, round.getRoundID(), round.getStatus(), bye));
+            }
+            List<Match> matches = round.getMatches();
+            for (int i = 0; i < matches.size(); i++) {
+                Match match = matches.get(i);
+                String winner = match.getWinner() == null ? NONE : match.getWinner().getUsername();
+                MatchEntry storedMatch = storedRound != null && i < storedRound.matches.size()
+                        ? storedRound.matches.get(i) : null;
+                if (storedMatch == null || !storedMatch.winner.equals(clean(winner))
+                        || !storedMatch.status.equals(clean(match.getStatus()))) {
+                    lines.add(join("M", id, round.getRoundID(), match.getMatchID(),
+                            match.getPlayer1().getUsername(), match.getPlayer2().getUsername(),
+                            match.getTimeControl(), winner, match.getStatus()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Append the records with one fsync, then apply them to the in-memory state. Called holding
+     * the file lock, after catching up, so the file ends where our state does.
+     */
+    private void write(List<String> lines) throws IOException {
+        if (lines.isEmpty()) return;
+        StringBuilder text = new StringBuilder();
+        if (generation == null) {
+            generation = Long.toString(System.currentTimeMillis());
+            text.append(HEADER_PREFIX).append(generation).append(' ').append(nextId).append('\n');
+        }
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(bytes);
+            out.getFD().sync();
+        }
+        applyLines(bytes, bytes.length);
+        indexedLength += bytes.length;
+        compactIfMostlyHistory();
+    }
+
+    /**
+     * Rewrite the log with only the current state once superseded records make up most of it
+     */
+    private void compactIfMostlyHistory() throws IOException {
+        int live = 0;
+        for (TournamentRecord record : records.values()) {
+            live += record.liveRecords();
+        }
+        if (logRecords < COMPACT_MIN_RECORDS || logRecords < 2 * live) return;
+
+        String newGeneration = Long.toString(System.currentTimeMillis());
+        StringBuilder text = new StringBuilder(HEADER_PREFIX).append(newGeneration).append(' ').append(nextId)
+                .append('\n');
+        int written = 0;
+        for (TournamentRecord record : new TreeMap<>(records).values()) {
+            text.append(join("T", record.id, record.name, record.location, record.startDate, record.timeControl,
+                    record.maxRounds)).append('\n');
+            for (PlayerEntry player : record.players.values()) {
+                text.append(join("P", record.id, player.username, player.name, player.country, player.rating,
+                        player.userId)).append('\n');
+            }
+            text.append(join("S", record.id, record.status, record.currentRound)).append('\n');
+            for (Map.Entry<Integer, RoundEntry> round : record.rounds().entrySet()) {
+                text.append(join("R", record.id, round.getKey(), round.getValue().status, round.getValue().bye))
+                        .append('\n');
+                for (MatchEntry match : round.getValue().matches) {
+                    text.append(join("M", record.id, round.getKey(), match.matchId, match.white, match.black,
+                            match.timeControl, match.winner, match.status)).append('\n');
+                }
+            }
+            written += record.liveRecords();
+        }
+        DataFileLock.replace(file, text.toString());
+        generation = newGeneration;
+        indexedLength = file.length();
+        logRecords = written;
+    }
+
+    /**
+     * Apply the records other instances appended since we last read the file. If the file was
+     * rewritten (its header names another generation) it is read again from the start.
+     */
+    private void catchUp() throws IOException {
+        long length = file.length();
+        if (length == indexedLength && generation != null) return;
+
+        byte[] bytes;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            String header = raf.readLine();
+            String[] fields = header != null && header.startsWith(HEADER_PREFIX)
+                    ? header.substring(HEADER_PREFIX.length()).trim().split(" ") : new String[0];
+            String fileGeneration = fields.length > 0 ? fields[0] : null;
+            if (fileGeneration == null || !fileGeneration.equals(generation) || raf.length() < indexedLength) {
+                clear();
+                generation = fileGeneration;
+                indexedLength = header == null ? 0 : raf.getFilePointer();
+                // IDs of tournaments removed before the log was rewritten are not handed out again
+                nextId = fields.length > 1 ? Integer.parseInt(fields[1]) : 1;
+            }
+            length = raf.length();
+            bytes = new byte[(int) Math.max(0, length - indexedLength)];
+            raf.seek(indexedLength);
+            raf.readFully(bytes);
+        } catch (FileNotFoundException e) {
+            // No tournaments yet
+            return;
+        } catch (NumberFormatException e) {
+            throw new IOException("Damaged tournament log header in " + file);
+        }
+
+        // A record counts only with its newline; anything after the last one is still being written
+        int complete = bytes.length;
+        while (complete > 0 && bytes[complete - 1] != '\n') {
+            complete--;
+        }
+        applyLines(bytes, complete);
+        indexedLength += complete;
+    }
+
+    /**
+     * Apply the lines in the first bytes of the buffer, each ending in a newline. Round and
+     * match records are only handed to their tournament, to be parsed when its rounds are needed.
+     */
+    private void applyLines(byte[] bytes, int length) {
+        int start = 0;
+        for (int end = 0; end < length; end++) {
+            if (bytes[end] != '\n') continue;
+            if (end > start && bytes[start] != '#') {
+                int id = roundRecordId(bytes, start, end);
+                if (id > 0) {
+                    logRecords++;
+                    TournamentRecord record = records.get(id);
+                    if (record != null) {
+                        record.addRoundRecord(bytes, start, end + 1);
+                    }
+                } else {
+                    apply(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Get the tournament ID of an R or M record without decoding the line
+     *
+     * @return the ID, or -1 if the line is some other record
+     */
+    private static int roundRecordId(byte[] bytes, int start, int end) {
+        if ((bytes[start] != 'R' && bytes[start] != 'M') || start + 2 >= end || bytes[start + 1] != '\t') {
+            return -1;
+        }
+        int id = 0;
+        int i = start + 2;
+        for (; i < end && bytes[i] != '\t'; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9' || id > Integer.MAX_VALUE / 10 - 1) return -1;
+            id = id * 10 + (bytes[i] - '0');
+        }
+        return i > start + 2 && i < end ? id : -1;
+    }
+
+    private void clear() {
+        records.clear();
+        byStatus.clear();
+        byStartDate.clear();
+        byPlayer.clear();
+        logRecords = 0;
+        nextId = 1;
+    }
+
+    /**
+     * Apply one log record to the in-memory state and the indexes
+     */
+    private void apply(String line) {
+        String[] parts = line.split("\t", -1);
+        logRecords++;
+        try {
+            int id = Integer.parseInt(parts[1]);
+            TournamentRecord record = records.get(id);
+            switch (parts[0]) {
+                case "T":
+                    if (record == null) {
+                        record = new TournamentRecord(id);
+                        records.put(id, record);
+                        index(byStatus, record.status, id);
+                    } else {
+                        unindex(byStartDate, record.startDate, id);
+                    }
+                    record.name = parts[2];
+                    record.location = parts[3];
+                    record.startDate = parts[4];
+                    record.timeControl = parts[5];
+                    record.maxRounds = Integer.parseInt(parts[6]);
+                    index(byStartDate, record.startDate, id);
+                    nextId = Math.max(nextId, id + 1);
+                    break;
+                case "P":
+                    if (record == null) break;
+                    record.players.put(parts[2], new PlayerEntry(parts[2], parts[3], parts[4],
+                            Integer.parseInt(parts[5]), Integer.parseInt(parts[6])));
+                    index(byPlayer, parts[2], id);
+                    break;
+                case "S":
+                    if (record == null) break;
+                    unindex(byStatus, record.status, id);
+                    record.status = parts[2];
+                    record.currentRound = Integer.parseInt(parts[3]);
+                    index(byStatus, record.status, id);
+                    break;
+                case "X":
+                    if (record == null) break;
+                    records.remove(id);
+                    unindex(byStatus, record.status, id);
+                    unindex(byStartDate, record.startDate, id);
+                    for (String username : record.players.keySet()) {
+                        unindex(byPlayer, username, id);
+                    }
+                    break;
+                default:
+                    System.err.println("Ignoring unknown tournament record: " + line);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Ignoring damaged tournament record: " + line);
+        }
+    }
+
+    /**
+     * Replace the stored match between the same players with the same ID, or add it
+     */
+    private static void replaceMatch(List<MatchEntry> matches, MatchEntry match) {
+        for (int i = 0; i < matches.size(); i++) {
+            MatchEntry existing = matches.get(i);
+            if (existing.matchId == match.matchId && existing.white.equals(match.white)
+                    && existing.black.equals(match.black)) {
+                matches.set(i, match);
+                return;
+            }
+        }
+        matches.add(match);
+    }
+
+    private List<Tournament> toTournaments(Set<Integer> ids) {
+        List<Tournament> tournaments = new ArrayList<>(ids.size());
+        for (int id : new TreeSet<>(ids)) {
+            TournamentRecord record = records.get(id);
+            if (record != null) {
+                tournaments.add(toTournament(record));
+            }
+        }
+        return tournaments;
+    }
+
+    private static Tournament toTournament(TournamentRecord record) {
+        Tournament tournament = new Tournament(record.id, record.name, record.location, record.startDate,
+                record.timeControl, record.maxRounds);
+        Map<String, Player> players = new HashMap<>();
+        for (PlayerEntry entry : record.players.values()) {
+            Player player = new Player(entry.name, entry.rating, entry.country, entry.username, "", entry.userId);
+            players.put(entry.username, player);
+            tournament.addPlayer(player);
+        }
+        for (Map.Entry<Integer, RoundEntry> entry : record.rounds().entrySet()) {
+            Round round = new Round();
+            round.setRoundID(entry.getKey());
+            round.restoreStatus(entry.getValue().status);
+            String bye = entry.getValue().bye;
+            if (!NONE.equals(bye)) {
+                round.restoreBye(players.computeIfAbsent(bye, name -> new Player(name, 1200, "")));
+            }
+            for (MatchEntry stored : entry.getValue().matches) {
+                Player white = players.computeIfAbsent(stored.white, name -> new Player(name, 1200, ""));
+                Player black = players.computeIfAbsent(stored.black, name -> new Player(name, 1200, ""));
+                Match match = new Match(stored.matchId, white, black, stored.timeControl);
+                match.setTournamentId(record.id);
+                match.restoreResult(NONE.equals(stored.winner) ? null : players.get(stored.winner), stored.status);
+                round.addMatch(match);
+            }
+            tournament.restoreRound(round);
+        }
+        tournament.restoreState(record.status, record.currentRound);
+        return tournament;
+    }
+
+    private static void index(Map<String, Set<Integer>> index, String key, int id) {
+        index.computeIfAbsent(key, k -> new TreeSet<>()).add(id);
+    }
+
+    private static void unindex(Map<String, Set<Integer>> index, String key, int id) {
+        Set<Integer> ids = index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static String join(Object... fields) {
+        StringBuilder line = new StringBuilder();
+        for (Object field : fields) {
+            if (line.length() > 0) line.append('\t');
+            line.append(field == null ? "" : clean(String.valueOf(field)));
+        }
+        return line.toString();
+    }
+
+    /**
+     * Keep a field on one line and in one column
+     */
+    private static String clean(String field) {
+        return field == null ? "" : field.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,83 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+/**
+ * Measures TournamentStore on a generated history of mostly finished
+ * tournaments: saving after every round, loading the store and the list of
+ * active tournaments at startup, and the status, date and player queries.
+ *
+ * Run with: java -cp build TournamentStoreBenchmark [tournaments] [players]
+ */
+public class TournamentStoreBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+
+        File file = new File(Files.createTempDirectory("tournaments").toFile(), "tournaments.log");
+        System.setProperty("chess.stats.file", new File(file.getParentFile(), "playerStats.txt").getPath());
+        TournamentStore store = new TournamentStore(file);
+
+        // Tournament and Round report every pairing on stdout
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+        long saves = 0;
+        for (int t = 0; t < count; t++) {
+            String date = String.format("20%02d-%02d-%02d", 10 + t % 15, 1 + t % 12, 1 + t % 28);
+            Tournament tournament = store.create("Open " + t, "City " + t % 50, date, "90+30", 5);
+            for (int p = 0; p < players; p++) {
+                tournament.addPlayer(new Player("player" + ((t * 7 + p) % (count * 2)), 1500, "XX"));
+            }
+            store.save(tournament);
+            if (t % 10 == 0) {
+                // Leave some registration open
+                saves++;
+                continue;
+            }
+            tournament.startTournament();
+            store.save(tournament);
+            saves += 2;
+            while (tournament.advanceRound()) {
+                store.save(tournament);
+                saves++;
+            }
+        }
+        System.setOut(out);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Saved %d tournaments (%d saves) in %.1f s, %.2f ms per save; log is %.1f MB%n",
+                count, saves, seconds, seconds * 1000 / saves, file.length() / 1e6);
+
+        start = System.nanoTime();
+        TournamentStore reopened = new TournamentStore(file);
+        int size = reopened.size();
+        report("load " + size + " tournaments", start);
+
+        start = System.nanoTime();
+        int active = reopened.loadActive().size();
+        report("loadActive (dashboard list): " + active, start);
+
+        start = System.nanoTime();
+        reopened.loadAll();
+        report("loadAll (every Tournament with its rounds)", start);
+
+        start = System.nanoTime();
+        int completed = reopened.findByStatus("completed").size();
+        report("findByStatus(completed): " + completed, start);
+
+        start = System.nanoTime();
+        int inYear = reopened.findByStartDate("2015-01-01", "2015-12-31").size();
+        report("findByStartDate(2015): " + inYear, start);
+
+        start = System.nanoTime();
+        int forPlayer = reopened.findByPlayer("player42").size();
+        report("findByPlayer(player42): " + forPlayer, start);
+    }
+
+    private static void report(String label, long startNanos) {
+        System.out.printf("%-40s %10.2f ms%n", label, (System.nanoTime() - startNanos) / 1e6);
+    }
+}
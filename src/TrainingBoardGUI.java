@@ -38,7 +38,10 @@ public class TrainingBoardGUI extends JFrame {
     private int selectedRow = -1;
     private int selectedCol = -1;
     
-    private StockfishEngine stockfishEngine;
+    private ChessEngine stockfishEngine;
+    private ProgressiveHintService hintService;
+    private int[] highlightedSquares; // {fromRank, fromFile, toRank, toFile}
+    private Timer highlightTimer;
     private JTextArea analysisTextArea;
     private static boolean stockfishWarningShown = false;
 
@@ -89,8 +92,11 @@ public class TrainingBoardGUI extends JFrame {
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
+                if (hintService != null) {
+                    hintService.shutdown();
+                }
                 if (stockfishEngine != null) {
-                    StockfishManager.getInstance().closeEngine("training");
+                    stockfishEngine.close();
                 }
             }
         });
@@ -789,26 +795,29 @@ public class TrainingBoardGUI extends JFrame {
         
         statusLabel.setText("Getting hint...");
         
-        new Thread(() -> {
-            String hint = stockfishEngine.getHint(fen);
-            
-            if (hint != null) {
-                SwingUtilities.invokeLater(() -> {
-                    statusLabel.setText("Hint: " + formatMove(hint));
-                    
-                    // Highlight the hint move on the board
-                    highlightMove(hint);
-                });
+        // The first answer shows at once; deeper answers replace it as the search goes on
+        hintService.requestHint(fen, hint -> SwingUtilities.invokeLater(() -> {
+            if (hint != null && hint.getMove() == null) {
+                statusLabel.setText("No hint yet, thinking...");
+            } else if (hint != null) {
+                statusLabel.setText("Hint: " + formatMove(hint.getMove())
+                        + (hint.isFinal() ? "" : " (thinking...)"));
+                
+                // Highlight the hint move on the board
+                highlightMove(hint.getMove());
             } else {
-                SwingUtilities.invokeLater(() -> {
-                    statusLabel.setText("Could not get a hint.");
-                });
+                statusLabel.setText("Could not get a hint.");
             }
-        }).start();
+        }));
     }
     
+    /**
+     * Highlight a move, replacing any highlight still showing so improving hints update in place
+     */
     private void highlightMove(String uciMove) {
-        if (uciMove.length() < 4) return;
+        if (uciMove == null || uciMove.length() < 4) return;
+        
+        clearHighlight();
         
         // Extract source and destination coordinates
         int fromFile = uciMove.charAt(0) - 'a';
@@ -821,14 +830,24 @@ public class TrainingBoardGUI extends JFrame {
         
         // Highlight destination square
         squares[toRank][toFile].setBackground(MOVE_INDICATOR);
+        highlightedSquares = new int[] { fromRank, fromFile, toRank, toFile };
         
-        // Schedule removal of highlights
-        Timer timer = new Timer(2000, e -> {
-            squares[fromRank][fromFile].setBackground((fromRank + fromFile) % 2 == 0 ? LIGHT_SQUARE : DARK_SQUARE);
-            squares[toRank][toFile].setBackground((toRank + toFile) % 2 == 0 ? LIGHT_SQUARE : DARK_SQUARE);
-        });
-        timer.setRepeats(false);
-        timer.start();
+        // Schedule removal of highlights, counted from the latest update
+        if (highlightTimer == null) {
+            highlightTimer = new Timer(2000, e -> clearHighlight());
+            highlightTimer.setRepeats(false);
+        }
+        highlightTimer.restart();
+    }
+    
+    private void clearHighlight() {
+        if (highlightedSquares == null) return;
+        for (int i = 0; i < highlightedSquares.length; i += 2) {
+            int rank = highlightedSquares[i];
+            int file = highlightedSquares[i + 1];
+            squares[rank][file].setBackground((rank + file) % 2 == 0 ? LIGHT_SQUARE : DARK_SQUARE);
+        }
+        highlightedSquares = null;
     }
     
     private String formatMove(String uciMove) {
@@ -875,9 +894,11 @@ public class TrainingBoardGUI extends JFrame {
     private void initializeStockfish() {
         StockfishManager manager = StockfishManager.getInstance();
         if (manager.isStockfishAvailable()) {
-            stockfishEngine = manager.getEngine("training");
+            stockfishEngine = manager.openSession("training");
             if (stockfishEngine == null) {
                 displayStockfishError();
+            } else {
+                hintService = new ProgressiveHintService(stockfishEngine);
             }
         } else {
             displayStockfishError();
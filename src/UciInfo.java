@@ -0,0 +1,148 @@
+/**
+ * Mutable holder for the fields of a UCI "info" line.
+ * Instances are meant to be reused across lines so that parsing does not
+ * allocate; the principal variation is kept as raw characters and only
+ * turned into a String when a caller decides to keep it.
+ */
+public class UciInfo {
+    public static final int UNSET = Integer.MIN_VALUE;
+
+    int depth;
+    int selDepth;
+    int multiPv;
+    int scoreCp;
+    int scoreMate;
+    long nodes;
+    long nps;
+
+    private char[] pv = new char[256];
+    private int pvLength;
+
+    public UciInfo() {
+        reset();
+    }
+
+    /**
+     * Clear all fields so the instance can be filled from a new line
+     */
+    public void reset() {
+        depth = UNSET;
+        selDepth = UNSET;
+        multiPv = 1;
+        scoreCp = UNSET;
+        scoreMate = UNSET;
+        nodes = -1;
+        nps = -1;
+        pvLength = 0;
+    }
+
+    /**
+     * Copy another record into this one, reusing this record's PV buffer
+     *
+     * @param other the record to copy from
+     */
+    public void copyFrom(UciInfo other) {
+        depth = other.depth;
+        selDepth = other.selDepth;
+        multiPv = other.multiPv;
+        scoreCp = other.scoreCp;
+        scoreMate = other.scoreMate;
+        nodes = other.nodes;
+        nps = other.nps;
+        setPv(other.pv, 0, other.pvLength);
+    }
+
+    void setPv(char[] source, int offset, int length) {
+        if (pv.length < length) {
+            pv = new char[Math.max(length, pv.length * 2)];
+        }
+        System.arraycopy(source, offset, pv, 0, length);
+        pvLength = length;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSelDepth() {
+        return selDepth;
+    }
+
+    public int getMultiPv() {
+        return multiPv;
+    }
+
+    public boolean hasScore() {
+        return scoreCp != UNSET || scoreMate != UNSET;
+    }
+
+    public boolean isMateScore() {
+        return scoreMate != UNSET;
+    }
+
+    public int getScoreCp() {
+        return scoreCp;
+    }
+
+    public int getScoreMate() {
+        return scoreMate;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getNps() {
+        return nps;
+    }
+
+    public boolean hasPv() {
+        return pvLength > 0;
+    }
+
+    /**
+     * Get the principal variation as a space separated list of UCI moves.
+     * This allocates a new String, so only call it for lines that are kept.
+     *
+     * @return the PV, or an empty string if the line had none
+     */
+    public String getPv() {
+        return new String(pv, 0, pvLength);
+    }
+
+    /**
+     * Get the first move of the principal variation
+     *
+     * @return the first PV move, or null if the line had no PV
+     */
+    public String getFirstPvMove() {
+        if (pvLength == 0) return null;
+        int end = 0;
+        while (end < pvLength && pv[end] != ' ') {
+            end++;
+        }
+        return new String(pv, 0, end);
+    }
+
+    /**
+     * Check whether the PV starts with the given move without allocating
+     *
+     * @param move a move in UCI notation
+     * @return true if the first PV move equals the given move
+     */
+    public boolean pvStartsWith(String move) {
+        int len = move.length();
+        if (pvLength < len || (pvLength > len && pv[len] != ' ')) return false;
+        for (int i = 0; i < len; i++) {
+            if (pv[i] != move.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "info depth " + depth + " seldepth " + selDepth + " multipv " + multiPv
+                + (isMateScore() ? " score mate " + scoreMate : " score cp " + scoreCp)
+                + " nodes " + nodes + " nps " + nps + " pv " + getPv();
+    }
+}
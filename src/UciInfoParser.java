@@ -0,0 +1,135 @@
+/**
+ * Hand-rolled parser for UCI "info" lines.
+ * Works directly on a char buffer (see UciLineReader) and fills a reused
+ * UciInfo, so parsing an info line performs no allocation.
+ */
+public final class UciInfoParser {
+
+    private UciInfoParser() {
+    }
+
+    /**
+     * Parse an info line
+     *
+     * @param line the characters of the line
+     * @param length the number of valid characters in the buffer
+     * @param out the record to fill; it is reset first
+     * @return true if the line was an info line, false otherwise
+     */
+    public static boolean parse(char[] line, int length, UciInfo out) {
+        int pos = skipSpaces(line, 0, length);
+        int end = tokenEnd(line, pos, length);
+        if (!tokenEquals(line, pos, end, "info")) {
+            return false;
+        }
+
+        out.reset();
+        pos = skipSpaces(line, end, length);
+        while (pos < length) {
+            end = tokenEnd(line, pos, length);
+            int next = skipSpaces(line, end, length);
+
+            if (tokenEquals(line, pos, end, "depth")) {
+                end = tokenEnd(line, next, length);
+                out.depth = (int) parseLong(line, next, end);
+            } else if (tokenEquals(line, pos, end, "seldepth")) {
+                end = tokenEnd(line, next, length);
+                out.selDepth = (int) parseLong(line, next, end);
+            } else if (tokenEquals(line, pos, end, "multipv")) {
+                end = tokenEnd(line, next, length);
+                out.multiPv = (int) parseLong(line, next, end);
+            } else if (tokenEquals(line, pos, end, "nodes")) {
+                end = tokenEnd(line, next, length);
+                out.nodes = parseLong(line, next, end);
+            } else if (tokenEquals(line, pos, end, "nps")) {
+                end = tokenEnd(line, next, length);
+                out.nps = parseLong(line, next, end);
+            } else if (tokenEquals(line, pos, end, "score")) {
+                int kindEnd = tokenEnd(line, next, length);
+                int valueStart = skipSpaces(line, kindEnd, length);
+                end = tokenEnd(line, valueStart, length);
+                if (tokenEquals(line, next, kindEnd, "cp")) {
+                    out.scoreCp = (int) parseLong(line, valueStart, end);
+                } else if (tokenEquals(line, next, kindEnd, "mate")) {
+                    out.scoreMate = (int) parseLong(line, valueStart, end);
+                }
+            } else if (tokenEquals(line, pos, end, "wdl")) {
+                // Three numbers follow; none of them are tracked
+                end = next;
+                for (int i = 0; i < 3; i++) {
+                    end = skipSpaces(line, tokenEnd(line, end, length), length);
+                }
+            } else if (tokenEquals(line, pos, end, "pv")) {
+                int pvEnd = length;
+                while (pvEnd > next && line[pvEnd - 1] == ' ') {
+                    pvEnd--;
+                }
+                out.setPv(line, next, pvEnd - next);
+                return true;
+            } else if (tokenEquals(line, pos, end, "string")
+                    || tokenEquals(line, pos, end, "refutation")
+                    || tokenEquals(line, pos, end, "currline")) {
+                // These run to the end of the line
+                return true;
+            } else if (tokenEquals(line, pos, end, "lowerbound")
+                    || tokenEquals(line, pos, end, "upperbound")) {
+                // Flag without a value
+                pos = next;
+                continue;
+            } else {
+                // Unknown or untracked keyword with a single value (time, hashfull, tbhits, ...)
+                end = tokenEnd(line, next, length);
+            }
+            pos = skipSpaces(line, end, length);
+        }
+        return true;
+    }
+
+    /**
+     * Convenience overload for lines that are already Strings
+     */
+    public static boolean parse(String line, UciInfo out) {
+        char[] chars = line.toCharArray();
+        return parse(chars, chars.length, out);
+    }
+
+    private static int skipSpaces(char[] line, int pos, int length) {
+        while (pos < length && (line[pos] == ' ' || line[pos] == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int tokenEnd(char[] line, int pos, int length) {
+        while (pos < length && line[pos] != ' ' && line[pos] != '\t') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean tokenEquals(char[] line, int start, int end, String token) {
+        int len = token.length();
+        if (end - start != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (line[start + i] != token.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static long parseLong(char[] line, int start, int end) {
+        if (start >= end) return UciInfo.UNSET;
+        boolean negative = false;
+        int i = start;
+        if (line[i] == '-' || line[i] == '+') {
+            negative = line[i] == '-';
+            i++;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char c = line[i];
+            if (c < '0' || c > '9') return UciInfo.UNSET;
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+}
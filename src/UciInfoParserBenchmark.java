@@ -0,0 +1,97 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Micro-benchmark comparing the split-based info line parsing that
+ * StockfishEngine used to do with UciInfoParser.
+ *
+ * Run with: java -cp build UciInfoParserBenchmark [iterations]
+ */
+public class UciInfoParserBenchmark {
+    private static final String[] SAMPLE_LINES = {
+        "info depth 18 seldepth 27 multipv 1 score cp 31 nodes 1843219 nps 1502623 hashfull 612 tbhits 0 time 1227 pv e2e4 e7e5 g1f3 b8c6 f1b5 a7a6 b5a4 g8f6 e1g1 f8e7 f1e1 b7b5 a4b3 d7d6 c2c3 e8g8",
+        "info depth 18 seldepth 25 multipv 2 score cp 24 nodes 1843219 nps 1502623 hashfull 612 tbhits 0 time 1227 pv d2d4 g8f6 c2c4 e7e6 g1f3 d7d5 b1c3 f8e7 c1f4 e8g8 e2e3 c7c5",
+        "info depth 18 seldepth 24 multipv 3 score cp 19 upperbound nodes 1843219 nps 1502623 hashfull 612 tbhits 0 time 1227 pv g1f3 d7d5 d2d4 g8f6 c2c4 e7e6 b1c3",
+        "info depth 31 seldepth 12 multipv 1 score mate 6 nodes 92817364 nps 2211093 time 41977 pv h5h7 g8f8 h7h8 f8e7 h8g7 e7d6",
+        "info depth 19 currmove g1f3 currmovenumber 3",
+    };
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+
+        char[][] buffers = new char[SAMPLE_LINES.length][];
+        for (int i = 0; i < SAMPLE_LINES.length; i++) {
+            buffers[i] = SAMPLE_LINES[i].toCharArray();
+        }
+
+        // Warm up both paths so the JIT has compiled them before measuring
+        for (int round = 0; round < 3; round++) {
+            runLegacy(iterations / 4);
+            runParser(buffers, iterations / 4);
+        }
+
+        report("split(\"\\\\s+\") + StringBuilder", iterations, () -> runLegacy(iterations));
+        report("UciInfoParser", iterations, () -> runParser(buffers, iterations));
+    }
+
+    private static long runLegacy(int iterations) {
+        long checksum = 0;
+        List<String> pvMoves = new ArrayList<>();
+        for (int n = 0; n < iterations; n++) {
+            String line = SAMPLE_LINES[n % SAMPLE_LINES.length];
+            if (!line.contains(" pv ")) continue;
+            String[] parts = line.split("\\s+");
+            for (int i = 0; i < parts.length; i++) {
+                if (parts[i].equals("cp") && i + 1 < parts.length) {
+                    checksum += Integer.parseInt(parts[i + 1]);
+                }
+                if (parts[i].equals("mate") && i + 1 < parts.length) {
+                    checksum += Integer.parseInt(parts[i + 1]);
+                }
+                if (parts[i].equals("pv")) {
+                    StringBuilder pv = new StringBuilder();
+                    for (int j = i + 1; j < parts.length; j++) {
+                        pv.append(parts[j]).append(" ");
+                    }
+                    pvMoves.add(pv.toString().trim());
+                    break;
+                }
+            }
+            if (pvMoves.size() > 64) {
+                pvMoves.clear();
+            }
+        }
+        return checksum;
+    }
+
+    private static long runParser(char[][] buffers, int iterations) {
+        long checksum = 0;
+        UciInfo info = new UciInfo();
+        UciInfo kept = new UciInfo();
+        for (int n = 0; n < iterations; n++) {
+            char[] line = buffers[n % buffers.length];
+            if (UciInfoParser.parse(line, line.length, info) && info.hasPv()) {
+                checksum += info.isMateScore() ? info.getScoreMate() : info.getScoreCp();
+                kept.copyFrom(info);
+            }
+        }
+        return checksum;
+    }
+
+    private static void report(String name, int iterations, Runnable body) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        body.run();
+        long elapsed = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+
+        System.out.printf("%-34s %8.1f ns/line %10.1f bytes/line %12.0f lines/s%n",
+                name, (double) elapsed / iterations, (double) bytes / iterations,
+                iterations / (elapsed / 1e9));
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Line reader for engine output that reads into a reused char buffer.
+ * Unlike BufferedReader.readLine it does not create a String per line,
+ * which matters when an engine emits thousands of info lines per second.
+ */
+public class UciLineReader {
+    private final Reader in;
+    private final char[] input = new char[8192];
+    private int inputPos;
+    private int inputLimit;
+
+    private char[] line = new char[512];
+    private int lineLength;
+
+    public UciLineReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Read the next line into the internal buffer
+     *
+     * @return the length of the line, or -1 at end of stream
+     * @throws IOException if reading from the engine fails
+     */
+    public int readLine() throws IOException {
+        lineLength = 0;
+        boolean sawAny = false;
+        while (true) {
+            if (inputPos >= inputLimit) {
+                inputLimit = in.read(input, 0, input.length);
+                inputPos = 0;
+                if (inputLimit <= 0) {
+                    inputLimit = 0;
+                    return sawAny ? lineLength : -1;
+                }
+            }
+            sawAny = true;
+            char c = input[inputPos++];
+            if (c == '\n') {
+                if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                    lineLength--;
+                }
+                return lineLength;
+            }
+            if (lineLength == line.length) {
+                char[] bigger = new char[line.length * 2];
+                System.arraycopy(line, 0, bigger, 0, lineLength);
+                line = bigger;
+            }
+            line[lineLength++] = c;
+        }
+    }
+
+    /**
+     * Read the next line as a String, for the rare lines that are kept
+     *
+     * @return the line, or null at end of stream
+     * @throws IOException if reading from the engine fails
+     */
+    public String readLineAsString() throws IOException {
+        return readLine() < 0 ? null : lineToString();
+    }
+
+    /**
+     * Check whether a line can be read without blocking on an empty pipe
+     */
+    public boolean ready() throws IOException {
+        return inputPos < inputLimit || in.ready();
+    }
+
+    public char[] buffer() {
+        return line;
+    }
+
+    public int length() {
+        return lineLength;
+    }
+
+    public String lineToString() {
+        return new String(line, 0, lineLength);
+    }
+
+    public boolean startsWith(String prefix) {
+        int len = prefix.length();
+        if (lineLength < len) return false;
+        for (int i = 0; i < len; i++) {
+            if (line[i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    public boolean contains(String text) {
+        int len = text.length();
+        outer:
+        for (int start = 0; start + len <= lineLength; start++) {
+            for (int i = 0; i < len; i++) {
+                if (line[start + i] != text.charAt(i)) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the second whitespace separated token of the current line,
+     * e.g. the move of a "bestmove e2e4 ponder e7e5" line
+     *
+     * @return the token, or null if the line has fewer than two tokens
+     */
+    public String secondToken() {
+        int i = 0;
+        while (i < lineLength && line[i] != ' ') i++;
+        while (i < lineLength && line[i] == ' ') i++;
+        int start = i;
+        while (i < lineLength && line[i] != ' ') i++;
+        return i > start ? new String(line, start, i - start) : null;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the UCI traffic between StockfishEngine and a real engine.
+ *
+ * Each engine process gets its own session file with one line per UCI line:
+ * the time since the session started in milliseconds, a direction marker
+ * ("&gt;" for commands sent to the engine, "&lt;" for engine output) and the text.
+ * <pre>
+ *     0.000 &gt; uci
+ *     3.412 &lt; id name Stockfish 16
+ * </pre>
+ * Session files can be played back with ReplayUciEngine.
+ */
+public class UciSessionRecorder {
+    private static final AtomicInteger sessionCounter = new AtomicInteger();
+
+    private UciSessionRecorder() {
+    }
+
+    /**
+     * Wrap a launcher so that every process it starts is recorded
+     *
+     * @param delegate the launcher that starts the real engine
+     * @param directory where session files are written
+     * @return a recording launcher
+     */
+    public static EngineLauncher recording(EngineLauncher delegate, File directory) {
+        return () -> {
+            if (!directory.exists()) {
+                directory.mkdirs();
+            }
+            File sessionFile = new File(directory, "session-" + System.currentTimeMillis()
+                    + "-" + sessionCounter.incrementAndGet() + ".uci");
+            return new RecordingProcess(delegate.launch(), sessionFile);
+        };
+    }
+
+    /**
+     * A process whose stdin and stdout are copied, line by line, into a session file
+     */
+    private static class RecordingProcess extends Process {
+        private final Process delegate;
+        private final BufferedWriter log;
+        private final long startNanos = System.nanoTime();
+        private final OutputStream output;
+        private final InputStream input;
+        private boolean logClosed;
+
+        RecordingProcess(Process delegate, File sessionFile) throws IOException {
+            this.delegate = delegate;
+            this.log = new BufferedWriter(new FileWriter(sessionFile));
+            this.output = new TeeOutputStream(delegate.getOutputStream(), '>');
+            this.input = new TeeInputStream(delegate.getInputStream(), '<');
+            delegate.onExit().thenRun(this::closeLog);
+        }
+
+        private synchronized void record(char direction, ByteArrayOutputStream line) {
+            if (logClosed) return;
+
+            String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+            if (text.endsWith("\r")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            double elapsedMs = (System.nanoTime() - startNanos) / 1e6;
+            try {
+                log.write(String.format(Locale.ROOT, "%.3f %c %s", elapsedMs, direction, text));
+                log.newLine();
+                if (direction == '>') {
+                    // Flush on every command so a crash still leaves a usable recording
+                    log.flush();
+                }
+            } catch (IOException e) {
+                System.err.println("Error recording UCI session: " + e.getMessage());
+            }
+        }
+
+        private synchronized void closeLog() {
+            logClosed = true;
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.err.println("Error closing UCI session recording: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return output;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return input;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return delegate.getErrorStream();
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            return delegate.waitFor();
+        }
+
+        @Override
+        public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.waitFor(timeout, unit);
+        }
+
+        @Override
+        public int exitValue() {
+            return delegate.exitValue();
+        }
+
+        @Override
+        public boolean isAlive() {
+            return delegate.isAlive();
+        }
+
+        @Override
+        public CompletableFuture<Process> onExit() {
+            return delegate.onExit().thenApply(p -> this);
+        }
+
+        @Override
+        public void destroy() {
+            delegate.destroy();
+        }
+
+        private class TeeOutputStream extends FilterOutputStream {
+            private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+            private final char direction;
+
+            TeeOutputStream(OutputStream out, char direction) {
+                super(out);
+                this.direction = direction;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                capture(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                for (int i = 0; i < len; i++) {
+                    capture(b[off + i]);
+                }
+            }
+
+            private void capture(int b) {
+                if (b == '\n') {
+                    record(direction, line);
+                    line.reset();
+                } else {
+                    line.write(b);
+                }
+            }
+        }
+
+        private class TeeInputStream extends FilterInputStream {
+            private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+            private final char direction;
+
+            TeeInputStream(InputStream in, char direction) {
+                super(in);
+                this.direction = direction;
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b >= 0) {
+                    capture(b);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = in.read(b, off, len);
+                for (int i = 0; i < n; i++) {
+                    capture(b[off + i]);
+                }
+                return n;
+            }
+
+            private void capture(int b) {
+                if (b == '\n') {
+                    record(direction, line);
+                    line.reset();
+                } else {
+                    line.write(b);
+                }
+            }
+        }
+    }
+}
@@ -1,7 +1,7 @@
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Objects;
-import java.io.*;
+import java.io.IOException;
 
 public class User {
     private int ID;
@@ -31,23 +31,17 @@ public class User {
             return false;
         }
 
-        try (BufferedReader br = new BufferedReader(new FileReader("users.txt"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length == 6 && parts[0].equals(username)) {
-                    String storedPasswordHash = parts[1];
-                    if (verifyPasswordHash(password, storedPasswordHash)) {
-                        this.ID = Integer.parseInt(parts[5]);
-                        this.name = parts[3];
-                        this.country = parts[4];
-                        this.username = username.trim();
-                        this.passwordHash = storedPasswordHash;
-                        this.role = Integer.parseInt(parts[2]);
-                        this.isLoggedIn = true;
-                        return true;
-                    }
-                }
+        try {
+            UserDirectory.UserRecord record = UserDirectory.getInstance().authenticate(username, password);
+            if (record != null) {
+                this.ID = record.getId();
+                this.name = record.getName();
+                this.country = record.getCountry();
+                this.username = username.trim();
+                this.passwordHash = record.getPasswordHash();
+                this.role = record.getRole();
+                this.isLoggedIn = true;
+                return true;
             }
         } catch (IOException e) {
             System.err.println("Error reading user data: " + e.getMessage());
@@ -114,10 +108,11 @@ public class User {
         String passwordHash = hashPassword(password);
         User newUser = new User(ID, name, country, username, passwordHash, role);
 
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter("users.txt", true))) {
-            String line = String.format("%s,%s,%d,%s,%s,%d", username, passwordHash, role, name, country, ID);
-            bw.write(line);
-            bw.newLine();
+        try {
+            if (!UserDirectory.getInstance().add(new UserDirectory.UserRecord(username, passwordHash, role, name, country, ID))) {
+                System.err.println("User " + username + " or ID " + ID + " already exists");
+                return null;
+            }
             return newUser;
         } catch (IOException e) {
             System.err.println("Error writing user data: " + e.getMessage());
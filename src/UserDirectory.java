@@ -0,0 +1,319 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The accounts in users.txt, indexed in memory.
+ *
+ * The file is read once into hash maps by username and by ID, so logins,
+ * existence checks and ID allocation no longer scan the file. The next
+ * free ID is kept in a counter instead of being derived from the largest
+ * ID every time. New accounts are appended to the file and synced to disk
+ * before they become visible.
+ *
+ * Several instances of the application may share the file. Lookups never
+ * lock: the file only grows by whole lines, so when a username is not
+ * found the lines other instances appended since the last read are
+ * indexed and the lookup is tried again. Registrations take the file's
+ * DataFileLock, catch up with the file if it grew since it was last read
+ * (the file length serves as its version), and only then check the
+ * username and pick the next ID, so two instances can never hand out the
+ * same username or ID.
+ *
+ * File format, one account per line: username,passwordHash,role,name,country,id
+ */
+public class UserDirectory {
+    private static UserDirectory instance;
+
+    /**
+     * One line of users.txt
+     */
+    public static class UserRecord {
+        private final String username;
+        private final String passwordHash;
+        private final int role;
+        private final String name;
+        private final String country;
+        private final int id;
+
+        public UserRecord(String username, String passwordHash, int role, String name, String country, int id) {
+            this.username = username;
+            this.passwordHash = passwordHash;
+            this.role = role;
+            this.name = name;
+            this.country = country;
+            this.id = id;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public String getPasswordHash() {
+            return passwordHash;
+        }
+
+        public int getRole() {
+            return role;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getCountry() {
+            return country;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        String toLine() {
+            return username + "," + passwordHash + "," + role + "," + name + "," + country + "," + id;
+        }
+    }
+
+    private final File file;
+    private final Map<String, UserRecord> byUsername = new ConcurrentHashMap<>();
+    private final Map<Integer, UserRecord> byId = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    // Bytes of the file indexed so far; the file only ever grows, so this is the version we have seen
+    private long indexedLength;
+    private volatile boolean loaded;
+
+    public UserDirectory(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Get the directory for the application's users.txt, or the file named by -Dchess.users.file
+     */
+    public static synchronized UserDirectory getInstance() {
+        if (instance == null) {
+            instance = new UserDirectory(new File(System.getProperty("chess.users.file", "users.txt")));
+        }
+        return instance;
+    }
+
+    /**
+     * Find an account by username
+     *
+     * @return the account, or null if there is none
+     * @throws IOException if users.txt cannot be read
+     */
+    public UserRecord findByUsername(String username) throws IOException {
+        ensureLoaded();
+        if (username == null) return null;
+        UserRecord record = byUsername.get(username);
+        if (record == null && catchUp()) {
+            // Registered by another instance since we last read the file
+            record = byUsername.get(username);
+        }
+        return record;
+    }
+
+    /**
+     * Find an account by ID
+     *
+     * @return the account, or null if there is none
+     * @throws IOException if users.txt cannot be read
+     */
+    public UserRecord findById(int id) throws IOException {
+        ensureLoaded();
+        UserRecord record = byId.get(id);
+        if (record == null && catchUp()) {
+            record = byId.get(id);
+        }
+        return record;
+    }
+
+    public boolean exists(String username) throws IOException {
+        return findByUsername(username) != null;
+    }
+
+    /**
+     * Check a username and password
+     *
+     * @return the account, or null if the username is unknown or the password is wrong
+     * @throws IOException if users.txt cannot be read
+     */
+    public UserRecord authenticate(String username, String password) throws IOException {
+        UserRecord record = findByUsername(username);
+        if (record == null || !User.verifyPasswordHash(password, record.getPasswordHash())) {
+            return null;
+        }
+        return record;
+    }
+
+    public int size() throws IOException {
+        ensureLoaded();
+        catchUp();
+        return byUsername.size();
+    }
+
+    /**
+     * Create an account with the next free ID
+     *
+     * @return the new account
+     * @throws IllegalArgumentException if the username is taken
+     * @throws IOException if the account cannot be stored
+     */
+    public UserRecord register(String username, String password, int role, String name, String country)
+            throws IOException {
+        ensureLoaded();
+        String passwordHash = User.hashPassword(password);
+        return DataFileLock.withLock(file, () -> {
+            synchronized (this) {
+                terminateLastLine();
+                catchUp();
+                if (byUsername.containsKey(username)) {
+                    throw new IllegalArgumentException("Username already exists");
+                }
+                UserRecord record = new UserRecord(username, passwordHash, role, name, country, nextId.get());
+                store(record);
+                nextId.incrementAndGet();
+                return record;
+            }
+        });
+    }
+
+    /**
+     * Store an account with a given ID
+     *
+     * @return false if the username or the ID is already taken
+     * @throws IOException if the account cannot be stored
+     */
+    public boolean add(UserRecord record) throws IOException {
+        ensureLoaded();
+        return DataFileLock.withLock(file, () -> {
+            synchronized (this) {
+                terminateLastLine();
+                catchUp();
+                if (byUsername.containsKey(record.getUsername()) || byId.containsKey(record.getId())) {
+                    return false;
+                }
+                store(record);
+                nextId.accumulateAndGet(record.getId() + 1, Math::max);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Append the account to the file, sync it, then make it visible. Called holding the file lock,
+     * after catching up, so the file ends where the index does.
+     */
+    private void store(UserRecord record) throws IOException {
+        byte[] line = (record.toLine() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(line);
+            out.getFD().sync();
+        }
+        index(record);
+        indexedLength = file.length();
+    }
+
+    /**
+     * End the file's last line if it has no newline, so the next append does not run into it.
+     * Called holding the file lock: no one else is writing, so the line is as complete as it gets.
+     */
+    private void terminateLastLine() throws IOException {
+        if (!needsNewline()) return;
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(System.lineSeparator().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Check whether the file ends in a line without a newline
+     */
+    private boolean needsNewline() throws IOException {
+        if (!file.exists() || file.length() == 0) return false;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            return last != '\n' && last != '\r';
+        }
+    }
+
+    private void index(UserRecord record) {
+        byUsername.put(record.getUsername(), record);
+        byId.put(record.getId(), record);
+    }
+
+    private void ensureLoaded() throws IOException {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            if (needsNewline()) {
+                // A last line edited in by hand; finish it so it is read like the others
+                DataFileLock.runLocked(file, this::terminateLastLine);
+            }
+            catchUp();
+            loaded = true;
+        }
+    }
+
+    /**
+     * Index the complete lines appended to the file since it was last read. A line without its
+     * newline yet is left for later. If the file got shorter it was replaced, and is read again
+     * from the start.
+     *
+     * @return true if anything new was indexed
+     */
+    private synchronized boolean catchUp() throws IOException {
+        long length = file.length();
+        if (length == indexedLength) return false;
+        if (length < indexedLength) {
+            byUsername.clear();
+            byId.clear();
+            nextId.set(1);
+            indexedLength = 0;
+        }
+
+        byte[] bytes;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            length = raf.length();
+            bytes = new byte[(int) Math.max(0, length - indexedLength)];
+            raf.seek(indexedLength);
+            raf.readFully(bytes);
+        } catch (FileNotFoundException e) {
+            // No accounts yet
+            return false;
+        }
+
+        int maxId = nextId.get() - 1;
+        int start = 0;
+        boolean added = false;
+        for (int end = 0; end < bytes.length; end++) {
+            if (bytes[end] != '\n') continue;
+            String line = new String(bytes, start, end - start, StandardCharsets.UTF_8).trim();
+            start = end + 1;
+            String[] parts = line.split(",");
+            if (parts.length < 6) continue;
+            try {
+                UserRecord record = new UserRecord(parts[0], parts[1], Integer.parseInt(parts[2]),
+                        parts[3], parts[4], Integer.parseInt(parts[5]));
+                // The first line wins, as it did when logins scanned the file
+                if (!byUsername.containsKey(record.getUsername())) {
+                    index(record);
+                    added = true;
+                }
+                maxId = Math.max(maxId, record.getId());
+            } catch (NumberFormatException e) {
+                // Skip invalid lines
+            }
+        }
+        indexedLength += start;
+        nextId.set(maxId + 1);
+        return added;
+    }
+}
@@ -0,0 +1,67 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Measures UserDirectory lookups, logins and registrations as the number
+ * of accounts grows, on generated users files.
+ *
+ * Run with: java -cp build UserDirectoryBenchmark [sizes...]
+ */
+public class UserDirectoryBenchmark {
+    private static final int LOOKUPS = 200000;
+    private static final int LOGINS = 20000;
+    private static final int REGISTRATIONS = 200;
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = {1000, 10000, 100000, 300000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        String passwordHash = User.hashPassword("Secret1!");
+        System.out.printf("%10s %10s %14s %14s %16s%n", "users", "load ms", "lookup us", "login us", "register us");
+        for (int size : sizes) {
+            File file = File.createTempFile("users", ".txt");
+            file.deleteOnExit();
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+                for (int i = 1; i <= size; i++) {
+                    writer.write("user" + i + "," + passwordHash + ",0,User " + i + ",Nowhere," + i);
+                    writer.newLine();
+                }
+            }
+
+            UserDirectory directory = new UserDirectory(file);
+            long start = System.nanoTime();
+            directory.size();
+            double loadMs = (System.nanoTime() - start) / 1e6;
+
+            Random random = new Random(size);
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                directory.exists("user" + (1 + random.nextInt(size)));
+            }
+            double lookupUs = (System.nanoTime() - start) / 1e3 / LOOKUPS;
+
+            start = System.nanoTime();
+            for (int i = 0; i < LOGINS; i++) {
+                directory.authenticate("user" + (1 + random.nextInt(size)), "Secret1!");
+            }
+            double loginUs = (System.nanoTime() - start) / 1e3 / LOGINS;
+
+            start = System.nanoTime();
+            for (int i = 0; i < REGISTRATIONS; i++) {
+                directory.register("new" + i, "Secret1!", 0, "New User", "Nowhere");
+            }
+            double registerUs = (System.nanoTime() - start) / 1e3 / REGISTRATIONS;
+
+            System.out.printf("%10d %10.1f %14.2f %14.2f %16.1f%n", size, loadMs, lookupUs, loginUs, registerUs);
+            file.delete();
+        }
+    }
+}